@@ -0,0 +1,256 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable sequence of bytes, with content equality and ordering: unlike 
+ * <code>byte[]</code>, a ByteString can be used as a key of a {@link java.util.Map}
+ * or a cache.  Its hash is computed on first use and cached.
+ * <p>
+ * {@link #wrap(byte[])} and {@link #slice(int, int)} do not copy: the byte strings
+ * share the (backing) array, which must not be modified once wrapped.  This is the
+ * case for the response buffers of a client, which are handed off to the caller: 
+ * e.g. the fields and values of a {@link JRedis#hgetallAsByteStrings(Object)} are
+ * wrapped response data.  The other factory methods copy.
+ * <p>
+ * ByteStrings are ordered as unsigned bytes, per the ordering of Redis.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public final class ByteString implements Comparable<ByteString> {
+	
+	/** the empty byte string */
+	public static final ByteString EMPTY = new ByteString(new byte[0], 0, 0);
+	
+	/** charset of the String conversions */
+	private static final String CHARSET_NAME = "UTF-8";
+	
+	private final byte[]	bytes;
+	private final int		offset;
+	private final int		length;
+	/** cached hash -- 0 if not computed */
+	private int				hash;
+	
+	private ByteString (byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Factory methods
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Wraps the array, without copying it.  The array must not be modified once wrapped.
+	 * @param bytes
+	 * @return the byte string of the array
+	 * @throws IllegalArgumentException if bytes is null
+	 */
+	public static ByteString wrap (byte[] bytes) {
+		if(null == bytes) throw new IllegalArgumentException("bytes is null");
+		return bytes.length == 0 ? EMPTY : new ByteString(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * @param bytes
+	 * @return a byte string of a copy of the array
+	 * @throws IllegalArgumentException if bytes is null
+	 */
+	public static ByteString copyOf (byte[] bytes) {
+		if(null == bytes) throw new IllegalArgumentException("bytes is null");
+		return copyOf(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return a byte string of a copy of the range of the array
+	 * @throws IllegalArgumentException if bytes is null
+	 * @throws IndexOutOfBoundsException if the range is not in the array
+	 */
+	public static ByteString copyOf (byte[] bytes, int offset, int length) {
+		if(null == bytes) throw new IllegalArgumentException("bytes is null");
+		checkRange(offset, offset + length, bytes.length);
+		if(length == 0) return EMPTY;
+		final byte[] copy = new byte[length];
+		System.arraycopy(bytes, offset, copy, 0, length);
+		return new ByteString(copy, 0, length);
+	}
+	
+	/**
+	 * Copies the remaining bytes of the buffer -- e.g. the element of an 
+	 * {@link ElementVisitor}.  The position of the buffer is not changed.
+	 * @param buffer
+	 * @return a byte string of a copy of the buffer's data
+	 * @throws IllegalArgumentException if buffer is null
+	 */
+	public static ByteString copyOf (ByteBuffer buffer) {
+		if(null == buffer) throw new IllegalArgumentException("buffer is null");
+		if(!buffer.hasRemaining()) return EMPTY;
+		final byte[] copy = new byte[buffer.remaining()];
+		buffer.duplicate().get(copy);
+		return new ByteString(copy, 0, copy.length);
+	}
+	
+	/**
+	 * @param string
+	 * @return a byte string of the UTF-8 encoding of the string
+	 * @throws IllegalArgumentException if string is null
+	 */
+	public static ByteString valueOf (String string) {
+		if(null == string) throw new IllegalArgumentException("string is null");
+		try {
+			return wrap(string.getBytes(CHARSET_NAME));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new ClientRuntimeException("UTF-8 is not supported", e);
+		}
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/** @return number of bytes */
+	public int length () { return length; }
+	
+	/** @return true if the length is 0 */
+	public boolean isEmpty () { return length == 0; }
+	
+	/**
+	 * @param index
+	 * @return the byte at the index
+	 * @throws IndexOutOfBoundsException
+	 */
+	public byte byteAt (int index) {
+		if(index < 0 || index >= length) throw new IndexOutOfBoundsException("index: " + index + " length: " + length);
+		return bytes[offset + index];
+	}
+	
+	/**
+	 * Zero copy sub-sequence: the slice shares the bytes of this byte string.
+	 * @param from index of the first byte, inclusive
+	 * @param to index of the last byte, exclusive
+	 * @return the bytes in the range
+	 * @throws IndexOutOfBoundsException if the range is not in this byte string
+	 */
+	public ByteString slice (int from, int to) {
+		checkRange(from, to, length);
+		if(from == 0 && to == length) return this;
+		if(from == to) return EMPTY;
+		return new ByteString(bytes, offset + from, to - from);
+	}
+	
+	/**
+	 * @param prefix
+	 * @return true if this byte string starts with the bytes of the prefix
+	 */
+	public boolean startsWith (ByteString prefix) {
+		if(prefix.length > length) return false;
+		for(int i=0; i<prefix.length; i++)
+			if(bytes[offset + i] != prefix.bytes[prefix.offset + i]) return false;
+		return true;
+	}
+	
+	/** @return a copy of the bytes */
+	public byte[] toByteArray () {
+		final byte[] copy = new byte[length];
+		System.arraycopy(bytes, offset, copy, 0, length);
+		return copy;
+	}
+	
+	/**
+	 * Copies the bytes to the array.
+	 * @param dest
+	 * @param destOffset
+	 * @throws IndexOutOfBoundsException if the bytes do not fit in the array
+	 */
+	public void copyTo (byte[] dest, int destOffset) {
+		System.arraycopy(bytes, offset, dest, destOffset, length);
+	}
+	
+	/** @return a read-only (zero copy) view of the bytes */
+	public ByteBuffer asByteBuffer () {
+		return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
+	}
+	
+	/** @return the UTF-8 decoding of the bytes */
+	@Override
+	public String toString () {
+		try {
+			return new String(bytes, offset, length, CHARSET_NAME);
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new ClientRuntimeException("UTF-8 is not supported", e);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode () {
+		int h = hash;
+		if(h == 0 && length > 0) {
+			h = 1;
+			for(int i=offset; i<offset + length; i++)
+				h = 31 * h + bytes[i];
+			hash = h;
+		}
+		return h;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals (Object obj) {
+		if(this == obj) return true;
+		if(!(obj instanceof ByteString)) return false;
+		final ByteString that = (ByteString) obj;
+		if(length != that.length) return false;
+		if(hash != 0 && that.hash != 0 && hash != that.hash) return false;
+		if(bytes == that.bytes && offset == that.offset) return true;
+		for(int i=0; i<length; i++)
+			if(bytes[offset + i] != that.bytes[that.offset + i]) return false;
+		return true;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	public int compareTo (ByteString that) {
+		final int n = Math.min(length, that.length);
+		for(int i=0; i<n; i++) {
+			final int diff = (bytes[offset + i] & 0xff) - (that.bytes[that.offset + i] & 0xff);
+			if(diff != 0) return diff;
+		}
+		return length - that.length;
+	}
+	
+	private static void checkRange (int from, int to, int length) {
+		if(from < 0 || to > length || from > to)
+			throw new IndexOutOfBoundsException("range: [" + from + ", " + to + ") length: " + length);
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback for the streaming variants of multi-bulk commands (e.g. 
+ * {@link JRedis#keys(Object, ElementVisitor)}): each element of the reply is 
+ * passed to the visitor as it is read, so that very large replies can be 
+ * processed in constant memory.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public interface ElementVisitor {
+	/**
+	 * @param element the data of the element, from its position to its limit, or null
+	 * for '<b>nil</b>' elements.  The buffer is only valid for the call, as it is 
+	 * reused for the next element: copy the data to retain it.
+	 * @return true to continue, false to stop the visit.  The remaining elements 
+	 * are read (and discarded) before the call returns.
+	 */
+	public boolean visit (ByteBuffer element);
+}
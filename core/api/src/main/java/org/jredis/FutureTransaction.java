@@ -0,0 +1,54 @@
+/*
+ *   Copyright 2009 - 2011 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.jredis;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import org.jredis.protocol.Command;
+
+/**
+ * Builder of a <code>MULTI</code> ... <code>EXEC</code> transaction of a {@link JRedisFuture}
+ * client.  The queued commands are sent to the server with a single write on 
+ * {@link FutureTransaction#exec()}.  Args and results are as specified by {@link Transaction}.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @since   alpha.0
+ * @see JRedisFuture#transaction()
+ */
+public interface FutureTransaction {
+	
+	/**
+	 * Queues a command in the transaction.
+	 * @param cmd
+	 * @param args
+	 * @return this transaction
+	 * @throws IllegalArgumentException if the command can not be part of a transaction
+	 * (e.g. {@link Command#QUIT}), or on null args.
+	 */
+	public FutureTransaction queue (Command cmd, Object... args) throws IllegalArgumentException;
+	
+	/** @return number of queued commands */
+	public int size ();
+	
+	/**
+	 * Queues the transaction on the connection.
+	 * @return the {@link Future} result of each queued command, in order.  The future 
+	 * raises an {@link java.util.concurrent.ExecutionException} caused by a {@link RedisException} 
+	 * if the server aborted the transaction.
+	 */
+	public Future<List<Object>> exec ();
+}
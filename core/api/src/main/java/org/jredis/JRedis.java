@@ -112,6 +112,15 @@ public interface JRedis {
 	 * @see {@link JRedis#set(String, byte[])}
 	 */
 	public <K extends Object> void set (K key, Number numberValue) throws RedisException;
+	/**
+	 * Convenient method for {@link ByteString} data binding
+	 * @Redis SET
+	 * @param key
+	 * @param value
+	 * @throws RedisException
+	 * @see {@link JRedis#set(String, byte[])}
+	 */
+	public <K extends Object> void set (K key, ByteString value) throws RedisException;
 	/**
 	 * Binds the given java {@link Object} to the key.  Serialization format is
 	 * implementation specific.  Simple implementations may apply the basic {@link Serializable}
@@ -294,6 +303,18 @@ public interface JRedis {
 	 */
 	public <K extends Object> List<byte[]> keys () throws RedisException;
 
+	/**
+	 * Streaming variant of {@link JRedis#keys(Object)}: the keys are passed to the
+	 * visitor as they are read.  
+	 * @Redis KEYS
+	 * @param pattern
+	 * @param visitor
+	 * @return number of keys visited
+	 * @throws RedisException
+	 * @see ElementVisitor
+	 */
+	public <K extends Object> long keys (K pattern, ElementVisitor visitor) throws RedisException;
+
 	/**
 	 * @Redis RANDOMKEY
 	 * @return
@@ -430,6 +451,20 @@ public interface JRedis {
 	 */
 	public <K extends Object> List<byte[]> lrange (K listkey, long from, long to) throws RedisException; 
 
+	/**
+	 * Streaming variant of {@link JRedis#lrange(Object, long, long)}: the elements 
+	 * are passed to the visitor as they are read.  
+	 * @Redis LRANGE
+	 * @param listkey
+	 * @param from
+	 * @param to
+	 * @param visitor
+	 * @return number of elements visited
+	 * @throws RedisException
+	 * @see ElementVisitor
+	 */
+	public <K extends Object> long lrange (K listkey, long from, long to, ElementVisitor visitor) throws RedisException; 
+
 	/**
 	 * @Redis LTRIM
 	 * @param listkey
@@ -595,6 +630,18 @@ public interface JRedis {
 	 * @throws RedisException
 	 */
 	public <K extends Object> List<byte[]> smembers (K setKey) throws RedisException;
+
+	/**
+	 * Streaming variant of {@link JRedis#smembers(Object)}: the members are passed
+	 * to the visitor as they are read.  
+	 * @Redis SMEMBERS
+	 * @param setKey
+	 * @param visitor
+	 * @return number of members visited
+	 * @throws RedisException
+	 * @see ElementVisitor
+	 */
+	public <K extends Object> long smembers (K setKey, ElementVisitor visitor) throws RedisException;
 	
 	/**
 	 * @Redis SRANDMEMBER
@@ -752,6 +799,23 @@ public interface JRedis {
 	 */
 	public <K extends Object> List<byte[]> zrangebyscore (K setkey, double minScore, double maxScore) throws RedisException; 
 
+	/**
+	 * Equivalent to {@link JRedis#zrangebyscore(Object, double, double)} with the 
+	 * {@link Command.Option#LIMIT} option: returns at most count members of the score
+	 * range, starting at offset.
+	 * 
+	 * @Redis ZRANGEBYSCORE ... LIMIT
+	 * @param setkey
+	 * @param minScore
+	 * @param maxScore
+	 * @param offset of the first member returned, in the score range
+	 * @param count max number of members returned
+	 * @return
+	 * @throws RedisException
+	 */
+	@Redis(versions="1.1")
+	public <K extends Object> List<byte[]> zrangebyscore (K setkey, double minScore, double maxScore, long offset, long count) throws RedisException; 
+
 	/**
 	 * @Redis ZREMRANGEBYSCORE
 	 * @param setkey
@@ -830,6 +894,16 @@ public interface JRedis {
 	@Redis(versions="1.3.n")
 	public <K extends Object> boolean hset(K key, K field, Number number)  throws RedisException;
 	
+	/**
+	 * @Redis HSET
+	 * @param key
+	 * @param field
+	 * @param value
+	 * @return
+	 */
+	@Redis(versions="1.3.n")
+	public <K extends Object> boolean hset(K key, K field, ByteString value)  throws RedisException;
+	
 	/**
 	 * @Redis HSET
 	 * @param <T>
@@ -851,6 +925,55 @@ public interface JRedis {
 	@Redis(versions="1.3.4")
 	public <K extends Object> byte[] hget(K key, K field)  throws RedisException;
 	
+	/**
+	 * @Redis HSETNX
+	 * @param key
+	 * @param field
+	 * @param value
+	 * @return true if the field was set, false if it exists
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> boolean hsetnx(K key, K field, byte[] value)  throws RedisException;
+	@Redis(versions="2.0")
+	public <K extends Object> boolean hsetnx(K key, K field, String string)  throws RedisException;
+	@Redis(versions="2.0")
+	public <K extends Object> boolean hsetnx(K key, K field, Number number)  throws RedisException;
+	@Redis(versions="2.0")
+	public <K extends Object, T extends Serializable> 
+		boolean hsetnx(K key, K field, T object)  throws RedisException;
+	
+	/**
+	 * Sets the fields of the hash in a single request.
+	 * @Redis HMSET
+	 * @param key
+	 * @param fieldValueMap fields and their values
+	 * @throws RedisException
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> void hmset(K key, Map<K, byte[]> fieldValueMap)  throws RedisException;
+	
+	/**
+	 * Gets the fields of the hash in a single request.
+	 * @Redis HMGET
+	 * @param key
+	 * @param fields
+	 * @return the values of the fields, in order -- null for fields that do not exist
+	 * @throws RedisException
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> List<byte[]> hmget(K key, K...fields)  throws RedisException;
+	
+	/**
+	 * @Redis HINCRBY
+	 * @param key
+	 * @param field
+	 * @param delta
+	 * @return the value of the field after the increment
+	 * @throws RedisException
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> long hincrby(K key, K field, long delta)  throws RedisException;
+	
 	
 	/**
 	 * 
@@ -914,23 +1037,69 @@ public interface JRedis {
 	@Redis(versions="1.3.n")
 	public <K extends Object> Map<byte[], byte[]> hgetall(K key)  throws RedisException;
 	
+	/**
+	 * Variant of {@link JRedis#hgetall(Object)} that can be queried by field: the 
+	 * fields and values are (zero copy) {@link ByteString}s of the response data. 
+	 * @Redis HGETALL
+	 * @param key
+	 * @return the given hash as a Map<ByteString, ByteString>
+	 * @throws RedisException
+	 */
+	@Redis(versions="1.3.n")
+	public <K extends Object> Map<ByteString, ByteString> hgetallAsByteStrings(K key)  throws RedisException;
+	
 	// ------------------------------------------------------------------------
 	// Transactional commands
 	// ------------------------------------------------------------------------
 	/**
-	 * one option is to return a subclass of JRedis (e.g. JRedisCommandSequence)
-	 * and have that interface declare discard and multi.  Benefit is being able
-	 * to associate state with the transaction.
+	 * Creates a new transaction.  The queued commands are sent as a single 
+	 * <code>MULTI</code> ... <code>EXEC</code> request on {@link Transaction#exec()},
+	 * so the transaction costs one round-trip and is not interleaved with other 
+	 * requests of this client.
+	 * @Redis MULTI, EXEC
+	 * @return a new (empty) transaction
+	 */
+	@Redis(versions="2.0")
+	public Transaction transaction ();
+	/**
+	 * Not supported: a <code>MULTI</code> left open on the client's connection would
+	 * capture the requests of other users of the connection.  
 	 * @throws RedisException
+	 * @see JRedis#transaction()
 	 */
 	@Redis(versions="2.0")
 	public <K extends Object> JRedis multi() throws RedisException;
 	/**
+	 * Not supported.
 	 * @throws RedisException
+	 * @see JRedis#transaction()
 	 */
 	@Redis(versions="2.0")
 	public <K extends Object> JRedis discard () throws RedisException;
 	
+	// ------------------------------------------------------------------------
+	// Publish/Subscribe commands
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Publishes the message on the channel.  Messages are received by the
+	 * {@link org.jredis.connector.Subscriber}s of the channel.
+	 * @Redis PUBLISH
+	 * @param channel
+	 * @param message
+	 * @return number of subscribers that received the message
+	 * @throws RedisException
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> long publish (K channel, byte[] message) throws RedisException;
+	@Redis(versions="2.0")
+	public <K extends Object> long publish (K channel, String message) throws RedisException;
+	@Redis(versions="2.0")
+	public <K extends Object> long publish (K channel, Number message) throws RedisException;
+	@Redis(versions="2.0")
+	public <K extends Object, T extends Serializable> 
+		long publish (K channel, T message) throws RedisException;
+	
 	// ------------------------------------------------------------------------
 	// Multiple databases handling commands
 	// ------------------------------------------------------------------------
@@ -120,6 +120,14 @@ public interface JRedisFuture {
 	 * @see {@link JRedis#set(String, byte[])}
 	 */
 	public <K extends Object> Future<ResponseStatus> set (K key, Number numberValue);
+	/**
+	 * Convenient method for {@link ByteString} data binding
+	 * @Redis SET
+	 * @param key
+	 * @param value
+	 * @see {@link JRedis#set(String, byte[])}
+	 */
+	public <K extends Object> Future<ResponseStatus> set (K key, ByteString value);
 	/**
 	 * Binds the given java {@link Object} to the key.  Serialization format is
 	 * implementation specific.  Simple implementations may apply the basic {@link Serializable}
@@ -711,6 +719,19 @@ public interface JRedisFuture {
 	 */
 	public <K extends Object> Future<List<byte[]>> zrangebyscore (K setkey, double minScore, double maxScore); 
 
+	/**
+	 * @Redis ZRANGEBYSCORE ... LIMIT
+	 * @param setkey
+	 * @param minScore
+	 * @param maxScore
+	 * @param offset of the first member returned, in the score range
+	 * @param count max number of members returned
+	 * @return
+	 * @see JRedis#zrangebyscore(Object, double, double, long, long)
+	 */
+	@Redis(versions="1.1")
+	public <K extends Object> Future<List<byte[]>> zrangebyscore (K setkey, double minScore, double maxScore, long offset, long count); 
+
 	/**
 	 * @Redis ZREMRANGEBYSCORE
 	 * @param setkey
@@ -773,6 +794,16 @@ public interface JRedisFuture {
 	@Redis(versions="1.3.n")
 	public <K extends Object> Future<Boolean> hset(K key, K entry, Number number);
 	
+	/**
+	 * @Redis HSET
+	 * @param key
+	 * @param entry
+	 * @param value
+	 * @return
+	 */
+	@Redis(versions="1.3.n")
+	public <K extends Object> Future<Boolean> hset(K key, K entry, ByteString value);
+	
 	/**
 	 * @Redis HSET
 	 * @param <T>
@@ -794,6 +825,55 @@ public interface JRedisFuture {
 	@Redis(versions="1.3.4")
 	public <K extends Object> Future<byte[]> hget(K key, K entry);
 	
+	/**
+	 * @Redis HSETNX
+	 * @param key
+	 * @param field
+	 * @param value
+	 * @return true if the field was set, false if it exists
+	 * @see JRedis#hsetnx(Object, Object, byte[])
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> Future<Boolean> hsetnx(K key, K field, byte[] value);
+	@Redis(versions="2.0")
+	public <K extends Object> Future<Boolean> hsetnx(K key, K field, String string);
+	@Redis(versions="2.0")
+	public <K extends Object> Future<Boolean> hsetnx(K key, K field, Number number);
+	@Redis(versions="2.0")
+	public <K extends Object, T extends Serializable> 
+		Future<Boolean> hsetnx(K key, K field, T object);
+	
+	/**
+	 * @Redis HMSET
+	 * @param key
+	 * @param fieldValueMap fields and their values
+	 * @return
+	 * @see JRedis#hmset(Object, Map)
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> Future<ResponseStatus> hmset(K key, Map<K, byte[]> fieldValueMap);
+	
+	/**
+	 * @Redis HMGET
+	 * @param key
+	 * @param fields
+	 * @return the values of the fields, in order -- null for fields that do not exist
+	 * @see JRedis#hmget(Object, Object...)
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> Future<List<byte[]>> hmget(K key, K...fields);
+	
+	/**
+	 * @Redis HINCRBY
+	 * @param key
+	 * @param field
+	 * @param delta
+	 * @return the value of the field after the increment
+	 * @see JRedis#hincrby(Object, Object, long)
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> Future<Long> hincrby(K key, K field, long delta);
+	
 	/**
 	 * 
 	 * @Redis HEXISTS
@@ -854,6 +934,51 @@ public interface JRedisFuture {
 	@Redis(versions="1.3.n")
 	public <K extends Object> Future<Map<byte[], byte[]>> hgetall(K key);
 	
+	/**
+	 * @Redis HGETALL
+	 * @param key
+	 * @return the given hash as a Map<ByteString, ByteString>
+	 * @see JRedis#hgetallAsByteStrings(Object)
+	 */
+	@Redis(versions="1.3.n")
+	public <K extends Object> Future<Map<ByteString, ByteString>> hgetallAsByteStrings(K key);
+	
+	// ------------------------------------------------------------------------
+	// Transactional commands
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Creates a new transaction.  The queued commands are sent as a single 
+	 * <code>MULTI</code> ... <code>EXEC</code> request on {@link FutureTransaction#exec()},
+	 * and are not interleaved with other requests of this client.
+	 * @Redis MULTI, EXEC
+	 * @return a new (empty) transaction
+	 */
+	@Redis(versions="2.0")
+	public FutureTransaction transaction ();
+	
+	// ------------------------------------------------------------------------
+	// Publish/Subscribe commands
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Publishes the message on the channel.  Messages are received by the
+	 * {@link org.jredis.connector.Subscriber}s of the channel.
+	 * @Redis PUBLISH
+	 * @param channel
+	 * @param message
+	 * @return future number of subscribers that received the message
+	 */
+	@Redis(versions="2.0")
+	public <K extends Object> Future<Long> publish (K channel, byte[] message);
+	@Redis(versions="2.0")
+	public <K extends Object> Future<Long> publish (K channel, String message);
+	@Redis(versions="2.0")
+	public <K extends Object> Future<Long> publish (K channel, Number message);
+	@Redis(versions="2.0")
+	public <K extends Object, T extends Serializable> 
+		Future<Long> publish (K channel, T message);
+	
 	// ------------------------------------------------------------------------
 	// Multiple databases handling commands
 	// ------------------------------------------------------------------------
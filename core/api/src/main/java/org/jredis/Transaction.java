@@ -0,0 +1,69 @@
+/*
+ *   Copyright 2009 - 2011 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.jredis;
+
+import java.util.List;
+import org.jredis.protocol.Command;
+
+/**
+ * Builder of a <code>MULTI</code> ... <code>EXEC</code> transaction of a {@link JRedis}
+ * client.  The queued commands are sent to the server with a single write on 
+ * {@link Transaction#exec()}, and executed atomically by the server. 
+ * <p>
+ * Command args are encoded as by the client: <code>byte[]</code> verbatim, {@link String}s
+ * as UTF-8, {@link Number}s as their decimal string, and other {@link java.io.Serializable}s 
+ * per the default codec.
+ * <p>
+ * The result of each command is typed per the command's {@link Command.ResponseType}:
+ * <ul>
+ * <li>STATUS: {@link org.jredis.protocol.ResponseStatus}
+ * <li>STRING: {@link String}
+ * <li>BOOLEAN: {@link Boolean}
+ * <li>NUMBER: {@link Long}
+ * <li>BULK: <code>byte[]</code> (null for nil)
+ * <li>MULTI_BULK: <code>List&lt;byte[]&gt;</code>
+ * </ul>
+ * A command that failed (when queued or executed) has a {@link RedisException} as
+ * its result -- Redis does not roll back the other commands of the transaction.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @since   alpha.0
+ * @see JRedis#transaction()
+ * @see FutureTransaction
+ */
+public interface Transaction {
+	
+	/**
+	 * Queues a command in the transaction.
+	 * @param cmd
+	 * @param args
+	 * @return this transaction
+	 * @throws IllegalArgumentException if the command can not be part of a transaction
+	 * (e.g. {@link Command#QUIT}), or on null args.
+	 */
+	public Transaction queue (Command cmd, Object... args) throws IllegalArgumentException;
+	
+	/** @return number of queued commands */
+	public int size ();
+	
+	/**
+	 * Sends the transaction to the server and awaits its results.
+	 * @return the result of each queued command, in order.
+	 * @throws RedisException if the server aborted the transaction.
+	 */
+	public List<Object> exec () throws RedisException;
+}
@@ -182,8 +182,32 @@ public interface Connection {
 		CONNECTION_CLASS,
 		/** if specified, is used to create the new connection. */
 		CONNECTION_FACTORY,
+		/** pipelines: maximum number of requests in flight -- an int; 0 (or not specified) for no limit */
+		MAX_PENDING_REQUESTS,
+		/** pipelines: maximum total size of the args of requests in flight -- a long; 0 (or not specified) for no limit */
+		MAX_PENDING_BYTES,
+		/** pipelines: the {@link Connection.Overflow} policy when the in-flight limits are reached -- default is {@link Connection.Overflow#BLOCK} */
+		PENDING_OVERFLOW,
+		/** pipelines: request deadline in milliseconds -- a long; 0 (or not specified) for none.  Requests not answered by the deadline fail with {@link RequestTimeoutException} */
+		REQUEST_TIMEOUT,
+		/** pipelines: number of timed out requests awaiting response at which the connection is reset -- an int; 0 for no limit */
+		MAX_TIMED_OUT_REQUESTS,
+		/** pubsub: maximum number of messages delivered per {@link Subscriber.BatchListener#onMessages(java.util.List)} call -- an int */
+		MESSAGE_BATCH_SIZE,
 		;// -- fini
 	}
+	/**
+	 * Policy of pipelined connections for requests that exceed the in-flight 
+	 * limits ({@link Property#MAX_PENDING_REQUESTS}, {@link Property#MAX_PENDING_BYTES}).
+	 * In either case, listeners are notified with a {@link Event.Type#SATURATED}
+	 * event when the limits are reached.
+	 */
+	public enum Overflow {
+		/** requesting thread blocks until responses have been received */
+		BLOCK,
+		/** request is rejected with a {@link PipelineSaturatedException} */
+		FAIL
+	}
 	/**
 	 * Enum for defining the operational modality of the protocol handlers.
 	 *   
@@ -197,9 +221,9 @@ public interface Connection {
 		Synchronous,
 		/** non-blocking request/future-response semantics */
 		Asynchronous,
-		/**  */
+		/** subscriber connections -- messages published on subscribed channels are pushed by the server.  See {@link Subscriber} */
 		PubSub,
-		/**  */
+		/** monitor connections -- commands processed by the server are pushed as a feed.  See {@link Monitor} */
 		Monitor,
 		;
 		// -- end
@@ -251,6 +275,8 @@ public interface Connection {
 			DISCONNECTED,
 			/** Raised when the Connector encounters a {@link ClientRuntimeException} or {@link ProviderException}.  */
 			FAULTED,
+			/** Raised by pipelines when the in-flight limits are reached.  Event info is the number of requests in flight. */
+			SATURATED,
 			/** 
 			 * Raised to signal the beginning of the shutdown sequence (commences after listerners are notified.  
 			 * Cease all activity on receipt 
@@ -289,6 +315,8 @@ public interface Connection {
     	STATEFUL,
     	/** if true service requests are logged (verbose/slower due to io)  */
     	TRACE,
+    	/** if true per {@link Command} request metrics are collected -- see {@link ConnectionMetrics} */
+    	METRICS,
     	;
 		public final int bitmask;
 		static final int OPAQUE_BITMASK = 0x0000;
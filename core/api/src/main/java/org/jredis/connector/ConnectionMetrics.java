@@ -0,0 +1,88 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.connector;
+
+import java.util.List;
+import org.jredis.protocol.Command;
+
+/**
+ * Client side request metrics of a {@link Connection}: per {@link Command} request 
+ * and error counts, bytes sent and received, and response latencies.  Latencies 
+ * are measured from the time the request is issued (or queued) to the time its 
+ * response has been read, and are reported in nanoseconds.
+ * <p>
+ * Metrics are collected by connections with the {@link Connection.Flag#METRICS}
+ * flag set.  All reads are snapshots, aggregated at the time of the call, and 
+ * are consistent for each {@link CommandMetrics} but not across commands.
+ *
+ * @since   alpha.0
+ * 
+ */
+public interface ConnectionMetrics {
+	
+	/** @return the modality of the measured connection */
+	public Connection.Modality getModality ();
+	
+	/** @return metrics aggregated over all commands -- its command is null */
+	public CommandMetrics getTotals ();
+	
+	/** @return metrics of the commands issued on the connection, in {@link Command} order */
+	public List<CommandMetrics> getCommandMetrics ();
+	
+	/** 
+	 * @param cmd
+	 * @return metrics of the command -- all zero if not issued 
+	 */
+	public CommandMetrics metricsFor (Command cmd);
+	
+	/** Clears all collected metrics. */
+	public void reset ();
+	
+	/** @return number of requests in flight (queued for response) -- pipelines only, 0 for others */
+	public long getPendingRequests ();
+	
+	/** @return total size of the args of requests in flight -- pipelines only, 0 for others */
+	public long getPendingBytes ();
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * A snapshot of the metrics of a {@link Command}.  Latencies are in nanoseconds.
+	 */
+	public interface CommandMetrics {
+		/** @return the command, or null for totals */
+		public Command getCommand ();
+		/** @return number of responses received, including errors */
+		public long getRequestCount ();
+		/** @return number of error responses and failed requests */
+		public long getErrorCount ();
+		public long getBytesSent ();
+		public long getBytesReceived ();
+		public long getMeanLatency ();
+		public long getMaxLatency ();
+		public long getLatencyP50 ();
+		public long getLatencyP99 ();
+		public long getLatencyP999 ();
+		/**
+		 * @param percentile in [0, 100]
+		 * @return latency at the percentile
+		 */
+		public long latencyAtPercentile (double percentile);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.connector;
+
+/**
+ * A {@link Connection.Modality#Monitor} connection, receiving the feed of the
+ * commands processed by the server (per <code>MONITOR</code>) as {@link Record}s.
+ *
+ * @since   alpha.0
+ * 
+ */
+public interface Monitor {
+	
+	/**
+	 * Closes the connection.
+	 */
+	public void quit ();
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Callback of the monitor feed.  
+	 */
+	public interface Listener {
+		/**
+		 * Called for each command, in order processed by the server.
+		 * @param record
+		 */
+		public void onCommand (Record record);
+	}
+	
+	/**
+	 * A command processed by the server.
+	 */
+	public static final class Record {
+		private final long		timestamp;
+		private final int		db;
+		private final String	client;
+		private final byte[][]	args;
+		
+		/**
+		 * @param timestamp server time, in microseconds since the epoch
+		 * @param db the client's database -- -1 if not known
+		 * @param client the client address -- null if not known
+		 * @param args the command name and its args, as sent by the client
+		 */
+		public Record (long timestamp, int db, String client, byte[][] args) {
+			if(null == args || args.length == 0) 
+				throw new IllegalArgumentException("record has no command");
+			this.timestamp = timestamp;
+			this.db = db;
+			this.client = client;
+			this.args = args;
+		}
+		/** @return server time the command was processed, in microseconds since the epoch */
+		public long getTimestamp () { return timestamp; }
+		/** @return the client's database -- -1 if not reported by the server */
+		public int getDatabase () { return db; }
+		/** @return the client address -- null if not reported by the server */
+		public String getClient () { return client; }
+		/** @return the command name (as sent) and its args */
+		public byte[][] getArgs () { return args; }
+		/** @return the command name, in upper case */
+		public String getCommandName () {
+			return new String(args[0]).toUpperCase();
+		}
+		
+		@Override
+		public String toString () {
+			return String.format("Record <%d db:%d %s> %s/%d", timestamp, db, client, getCommandName(), args.length - 1);
+		}
+	}
+}
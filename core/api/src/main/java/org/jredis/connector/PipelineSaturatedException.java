@@ -0,0 +1,37 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.connector;
+
+import org.jredis.ClientRuntimeException;
+import org.jredis._specification;
+
+/**
+ * Thrown by pipelined connections with the {@link Connection.Overflow#FAIL} 
+ * policy when a request would exceed the in-flight limits of the connection.
+ * The request has not been sent and may be retried.
+ *
+ * @since   alpha.0
+ *
+ */
+public class PipelineSaturatedException extends ClientRuntimeException {
+	/**  */
+	private static final long	serialVersionUID	= _specification.Version.major;
+
+	public PipelineSaturatedException (String msg) {
+		super (msg);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.connector;
+
+import java.util.concurrent.Future;
+import org.jredis.ClientRuntimeException;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+
+/**
+ * Intercepts the requests of a {@link Connection}.  Interceptors are chained: 
+ * each is called with the {@link Invoker} of the remainder of the chain, and may
+ * inspect or modify the command args, short-circuit the request, or inspect, 
+ * replace or decorate the {@link Response} (or its {@link Future}) before 
+ * returning it.
+ * <p>
+ * Interceptors are called on the requesting thread and may be called concurrently
+ * by threads sharing the connection.  A connection with no interceptors calls its
+ * request processing directly.
+ * <p>
+ * Note that the args array is that of the caller: an interceptor that needs to 
+ * modify args should pass a copy down the chain.
+ *
+ * @since   alpha.0
+ * 
+ */
+public interface RequestInterceptor {
+	
+	/**
+	 * Intercepts {@link Connection#serviceRequest(Command, byte[]...)}.
+	 * @param next the remainder of the chain
+	 * @param cmd
+	 * @param args
+	 * @return the response -- typically that of <code>next.serviceRequest(cmd, args)</code>
+	 */
+	public Response serviceRequest (Invoker next, Command cmd, byte[]... args) 
+		throws RedisException, ClientRuntimeException, ProviderException;
+	
+	/**
+	 * Intercepts {@link Connection#queueRequest(Command, byte[]...)}.
+	 * @param next the remainder of the chain
+	 * @param cmd
+	 * @param args
+	 * @return the future response -- typically that of <code>next.queueRequest(cmd, args)</code>
+	 */
+	public Future<Response> queueRequest (Invoker next, Command cmd, byte[]... args) 
+		throws ClientRuntimeException, ProviderException;
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * The remainder of an interceptor chain, ending with the connection's own 
+	 * request processing.
+	 */
+	public interface Invoker {
+		public Response serviceRequest (Command cmd, byte[]... args) 
+			throws RedisException, ClientRuntimeException, ProviderException;
+		public Future<Response> queueRequest (Command cmd, byte[]... args) 
+			throws ClientRuntimeException, ProviderException;
+	}
+	
+	/**
+	 * Pass-through interceptor -- extend and override the methods of interest.
+	 */
+	public static class Adapter implements RequestInterceptor {
+		/* (non-Javadoc) @see org.jredis.connector.RequestInterceptor#serviceRequest(org.jredis.connector.RequestInterceptor.Invoker, org.jredis.protocol.Command, byte[][]) */
+		public Response serviceRequest (Invoker next, Command cmd, byte[]... args) 
+			throws RedisException, ClientRuntimeException, ProviderException 
+		{
+			return next.serviceRequest(cmd, args);
+		}
+		/* (non-Javadoc) @see org.jredis.connector.RequestInterceptor#queueRequest(org.jredis.connector.RequestInterceptor.Invoker, org.jredis.protocol.Command, byte[][]) */
+		public Future<Response> queueRequest (Invoker next, Command cmd, byte[]... args) 
+			throws ClientRuntimeException, ProviderException 
+		{
+			return next.queueRequest(cmd, args);
+		}
+	}
+}
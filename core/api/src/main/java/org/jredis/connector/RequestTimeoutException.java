@@ -0,0 +1,37 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.connector;
+
+import org.jredis.ClientRuntimeException;
+import org.jredis._specification;
+
+/**
+ * Set as the cause of the failure of a pipelined request that was not answered 
+ * by its deadline (see {@link Connection.Property#REQUEST_TIMEOUT}).  The request
+ * may or may not have been processed by the server.
+ *
+ * @since   alpha.0
+ *
+ */
+public class RequestTimeoutException extends ClientRuntimeException {
+	/**  */
+	private static final long	serialVersionUID	= _specification.Version.major;
+
+	public RequestTimeoutException (String msg) {
+		super (msg);
+	}
+}
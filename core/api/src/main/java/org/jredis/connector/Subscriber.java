@@ -0,0 +1,146 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.connector;
+
+import java.util.List;
+import org.jredis.ClientRuntimeException;
+
+/**
+ * A {@link Connection.Modality#PubSub} connection, receiving the messages published
+ * on its subscribed channels and channel patterns.  Messages are published with
+ * {@link org.jredis.JRedis#publish(Object, byte[])} on a (regular) connection.
+ * <p>
+ * Each channel (or pattern) subscription has one {@link Listener}.  Messages of 
+ * a subscription are delivered to its listener in order of publication and never
+ * concurrently; messages of distinct subscriptions may be delivered concurrently,
+ * per the subscriber's executor.  
+ * <p>
+ * Subscriptions are restored on reconnect of {@link Connection.Flag#RELIABLE}
+ * connections.  Messages published while disconnected are lost.
+ *
+ * @since   alpha.0
+ * 
+ */
+public interface Subscriber {
+	
+	/**
+	 * Subscribes to the channels.  The listener replaces that of any existing 
+	 * subscription to a channel.
+	 * @Redis SUBSCRIBE
+	 * @param listener
+	 * @param channels
+	 * @throws ClientRuntimeException
+	 */
+	public void subscribe (Listener listener, String... channels) throws ClientRuntimeException;
+	
+	/**
+	 * Subscribes to the channels matching the glob-style patterns.  The listener
+	 * replaces that of any existing subscription to a pattern.
+	 * @Redis PSUBSCRIBE
+	 * @param listener
+	 * @param patterns
+	 * @throws ClientRuntimeException
+	 */
+	public void psubscribe (Listener listener, String... patterns) throws ClientRuntimeException;
+	
+	/**
+	 * Unsubscribes from the channels.  Messages of the channels that have not yet 
+	 * been delivered are discarded.
+	 * @Redis UNSUBSCRIBE
+	 * @param channels -- none for all channels
+	 * @throws ClientRuntimeException
+	 */
+	public void unsubscribe (String... channels) throws ClientRuntimeException;
+	
+	/**
+	 * Unsubscribes from the patterns.
+	 * @Redis PUNSUBSCRIBE
+	 * @param patterns -- none for all patterns
+	 * @throws ClientRuntimeException
+	 */
+	public void punsubscribe (String... patterns) throws ClientRuntimeException;
+	
+	/**
+	 * @return number of channel and pattern subscriptions, as last confirmed by the server
+	 */
+	public int getSubscriptionCount ();
+	
+	/**
+	 * Closes the connection.  Messages that have been received are delivered.
+	 */
+	public void quit ();
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Callback of a subscription.  
+	 */
+	public interface Listener {
+		/** 
+		 * Called for each message, in order of publication.
+		 * @param message
+		 */
+		public void onMessage (Publication message);
+	}
+	
+	/**
+	 * Callback of subscriptions to high-rate channels: messages are delivered in
+	 * batches of those received since the last delivery, up to the subscriber's
+	 * {@link Connection.Property#MESSAGE_BATCH_SIZE}, in place of individual 
+	 * {@link Listener#onMessage(Publication)} calls.
+	 */
+	public interface BatchListener extends Listener {
+		/**
+		 * @param messages -- in order of publication.  The list is not retained
+		 * by the subscriber.
+		 */
+		public void onMessages (List<Publication> messages);
+	}
+	
+	/**
+	 * A message published on a channel.
+	 */
+	public static final class Publication {
+		private final String channel;
+		private final String pattern;
+		private final byte[] data;
+		
+		/**
+		 * @param channel
+		 * @param pattern the matching pattern -- null for channel subscriptions
+		 * @param data
+		 */
+		public Publication (String channel, String pattern, byte[] data) {
+			this.channel = channel;
+			this.pattern = pattern;
+			this.data = data;
+		}
+		/** @return the channel the message was published on */
+		public String getChannel () { return channel; }
+		/** @return the subscribed pattern matching the channel -- null for channel subscriptions */
+		public String getPattern () { return pattern; }
+		/** @return the message */
+		public byte[] getData () { return data; }
+		
+		@Override
+		public String toString () {
+			return String.format("Publication <%s%s> %d bytes", channel, null != pattern ? " ~ " + pattern : "", data.length);
+		}
+	}
+}
@@ -35,40 +35,40 @@ import org.jredis.Redis;
 @Redis(versions={"1.n", "2.0"})
 public enum Command {
 	// security
-	AUTH 		(RequestType.KEY, 			ResponseType.STATUS),
+	AUTH 		(RequestType.KEY, 			ResponseType.STATUS, Flag.IDEMPOTENT, Flag.NO_KEY),
 	
 	// connection handling
-	PING 		(RequestType.NO_ARG, 		ResponseType.STATUS), 
+	PING 		(RequestType.NO_ARG, 		ResponseType.STATUS, Flag.READ_ONLY), 
 	QUIT 		(RequestType.NO_ARG, 		ResponseType.VIRTUAL), 
 
 	// String values operations
-	SET 		(RequestType.KEY_VALUE, 	ResponseType.STATUS), 
-	GET 		(RequestType.KEY, 			ResponseType.BULK), 
+	SET 		(RequestType.KEY_VALUE, 	ResponseType.STATUS, Flag.IDEMPOTENT), 
+	GET 		(RequestType.KEY, 			ResponseType.BULK, Flag.READ_ONLY), 
 	GETSET		(RequestType.KEY_VALUE, 	ResponseType.BULK), 
-	MGET		(RequestType.MULTI_KEY, 	ResponseType.MULTI_BULK), 
+	MGET		(RequestType.MULTI_KEY, 	ResponseType.MULTI_BULK, Flag.READ_ONLY, Flag.MULTI_KEY), 
 	SETNX		(RequestType.KEY_VALUE, 	ResponseType.BOOLEAN),
-	MSET		(RequestType.BULK_SET, 		ResponseType.STATUS), 
-	MSETNX		(RequestType.BULK_SET, 		ResponseType.BOOLEAN), 
+	MSET		(RequestType.BULK_SET, 		ResponseType.STATUS, Flag.IDEMPOTENT, Flag.MULTI_KEY), 
+	MSETNX		(RequestType.BULK_SET, 		ResponseType.BOOLEAN, Flag.MULTI_KEY), 
 	INCR		(RequestType.KEY, 			ResponseType.NUMBER), 
 	INCRBY		(RequestType.KEY_NUM,		ResponseType.NUMBER),  
 	DECR		(RequestType.KEY, 			ResponseType.NUMBER), 
 	DECRBY		(RequestType.KEY_NUM,		ResponseType.NUMBER),  
-	EXISTS		(RequestType.KEY, 			ResponseType.BOOLEAN), 
-	DEL			(RequestType.MULTI_KEY, 	ResponseType.NUMBER), 
-	TYPE		(RequestType.KEY, 			ResponseType.STRING),
-	SUBSTR		(RequestType.KEY_NUM_NUM,	ResponseType.BULK),
+	EXISTS		(RequestType.KEY, 			ResponseType.BOOLEAN, Flag.READ_ONLY), 
+	DEL			(RequestType.MULTI_KEY, 	ResponseType.NUMBER, Flag.MULTI_KEY), 
+	TYPE		(RequestType.KEY, 			ResponseType.STRING, Flag.READ_ONLY),
+	SUBSTR		(RequestType.KEY_NUM_NUM,	ResponseType.BULK, Flag.READ_ONLY),
 	APPEND		(RequestType.KEY_VALUE, 	ResponseType.NUMBER),
 
 	// "Commands operating on the key space"
-	KEYS		(RequestType.KEY, 			ResponseType.MULTI_BULK), 
-	KEYSTOLIST	(RequestType.KEY_KEY, 		ResponseType.NUMBER), 
-	RANDOMKEY	(RequestType.NO_ARG,		ResponseType.BULK),
-	RENAME		(RequestType.KEY_KEY, 		ResponseType.STATUS), 
-	RENAMENX	(RequestType.KEY_KEY, 		ResponseType.BOOLEAN), 
-	DBSIZE		(RequestType.NO_ARG,		ResponseType.NUMBER),
+	KEYS		(RequestType.KEY, 			ResponseType.MULTI_BULK, Flag.READ_ONLY, Flag.NO_KEY), 
+	KEYSTOLIST	(RequestType.KEY_KEY, 		ResponseType.NUMBER, Flag.NO_KEY), 
+	RANDOMKEY	(RequestType.NO_ARG,		ResponseType.BULK, Flag.READ_ONLY),
+	RENAME		(RequestType.KEY_KEY, 		ResponseType.STATUS, Flag.MULTI_KEY), 
+	RENAMENX	(RequestType.KEY_KEY, 		ResponseType.BOOLEAN, Flag.MULTI_KEY), 
+	DBSIZE		(RequestType.NO_ARG,		ResponseType.NUMBER, Flag.READ_ONLY),
 	EXPIRE		(RequestType.KEY_NUM,		ResponseType.BOOLEAN), 
 	EXPIREAT	(RequestType.KEY_NUM,		ResponseType.BOOLEAN), 
-	TTL			(RequestType.KEY,			ResponseType.NUMBER),
+	TTL			(RequestType.KEY,			ResponseType.NUMBER, Flag.READ_ONLY),
 	
 	// Commands operating on lists
 	RPUSH		(RequestType.KEY_VALUE,		ResponseType.NUMBER), 
@@ -76,91 +76,109 @@ public enum Command {
 	LPUSH		(RequestType.KEY_VALUE,		ResponseType.NUMBER),
 	LPUSHX		(RequestType.KEY_VALUE,		ResponseType.NUMBER),
 	LINSERT	(RequestType.BULK_SET,		ResponseType.NUMBER),
-	LLEN		(RequestType.KEY,			ResponseType.NUMBER), 
-	LRANGE		(RequestType.KEY_NUM_NUM,	ResponseType.MULTI_BULK), 
+	LLEN		(RequestType.KEY,			ResponseType.NUMBER, Flag.READ_ONLY), 
+	LRANGE		(RequestType.KEY_NUM_NUM,	ResponseType.MULTI_BULK, Flag.READ_ONLY), 
 	LTRIM		(RequestType.KEY_NUM_NUM,	ResponseType.STATUS),
-	LINDEX		(RequestType.KEY_NUM,		ResponseType.BULK), 
-	LSET		(RequestType.KEY_IDX_VALUE,	ResponseType.STATUS), 
+	LINDEX		(RequestType.KEY_NUM,		ResponseType.BULK, Flag.READ_ONLY), 
+	LSET		(RequestType.KEY_IDX_VALUE,	ResponseType.STATUS, Flag.IDEMPOTENT), 
 	LREM		(RequestType.KEY_CNT_VALUE,	ResponseType.NUMBER),
 	LPOP		(RequestType.KEY,			ResponseType.BULK), 
 	RPOP		(RequestType.KEY,			ResponseType.BULK),
-	RPOPLPUSH	(RequestType.KEY_KEY,		ResponseType.BULK),
+	RPOPLPUSH	(RequestType.KEY_KEY,		ResponseType.BULK, Flag.MULTI_KEY),
+	/** BLPOP key [key ...] timeout -- timeout (secs) is the last arg */
+	BLPOP		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK, Flag.MULTI_KEY, Flag.BLOCKING),
+	/** BRPOP key [key ...] timeout -- timeout (secs) is the last arg */
+	BRPOP		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK, Flag.MULTI_KEY, Flag.BLOCKING),
+	BRPOPLPUSH	(RequestType.KEY_KEY_VALUE,	ResponseType.BULK, Flag.MULTI_KEY, Flag.BLOCKING),
 	
 	// Commands operating on sets
 	SADD		(RequestType.KEY_VALUE,		ResponseType.BOOLEAN), 
 	SREM		(RequestType.KEY_VALUE,		ResponseType.BOOLEAN), 
-	SCARD		(RequestType.KEY,			ResponseType.NUMBER), 
-	SISMEMBER	(RequestType.KEY_VALUE,		ResponseType.BOOLEAN), 
-	SINTER		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK), 
-	SINTERSTORE (RequestType.MULTI_KEY,		ResponseType.STATUS),
-	SUNION		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK), 
-	SUNIONSTORE (RequestType.MULTI_KEY,		ResponseType.STATUS), 
-	SDIFF		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK), 
-	SDIFFSTORE  (RequestType.MULTI_KEY,		ResponseType.STATUS),
-	SMEMBERS	(RequestType.KEY,			ResponseType.MULTI_BULK), 
-	SMOVE		(RequestType.KEY_KEY_VALUE,	ResponseType.BOOLEAN),
-	SRANDMEMBER (RequestType.KEY,  			ResponseType.BULK),
+	SCARD		(RequestType.KEY,			ResponseType.NUMBER, Flag.READ_ONLY), 
+	SISMEMBER	(RequestType.KEY_VALUE,		ResponseType.BOOLEAN, Flag.READ_ONLY), 
+	SINTER		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK, Flag.READ_ONLY, Flag.MULTI_KEY), 
+	SINTERSTORE (RequestType.MULTI_KEY,		ResponseType.STATUS, Flag.MULTI_KEY),
+	SUNION		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK, Flag.READ_ONLY, Flag.MULTI_KEY), 
+	SUNIONSTORE (RequestType.MULTI_KEY,		ResponseType.STATUS, Flag.MULTI_KEY), 
+	SDIFF		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK, Flag.READ_ONLY, Flag.MULTI_KEY), 
+	SDIFFSTORE  (RequestType.MULTI_KEY,		ResponseType.STATUS, Flag.MULTI_KEY),
+	SMEMBERS	(RequestType.KEY,			ResponseType.MULTI_BULK, Flag.READ_ONLY), 
+	SMOVE		(RequestType.KEY_KEY_VALUE,	ResponseType.BOOLEAN, Flag.MULTI_KEY),
+	SRANDMEMBER (RequestType.KEY,  			ResponseType.BULK, Flag.READ_ONLY),
 	SPOP     	(RequestType.KEY,        	ResponseType.BULK),
 	// Commands operating on sorted sets
 	ZADD		(RequestType.KEY_IDX_VALUE,	ResponseType.BOOLEAN), 
 	ZREM		(RequestType.KEY_VALUE,		ResponseType.BOOLEAN),
-	ZCARD		(RequestType.KEY,			ResponseType.NUMBER), 
-	ZSCORE		(RequestType.KEY_VALUE,		ResponseType.BULK),
-	ZRANK		(RequestType.KEY_VALUE,		ResponseType.NUMBER),
-	ZREVRANK	(RequestType.KEY_VALUE,		ResponseType.NUMBER),
-	ZRANGE			(RequestType.KEY_NUM_NUM,	ResponseType.MULTI_BULK),
+	ZCARD		(RequestType.KEY,			ResponseType.NUMBER, Flag.READ_ONLY), 
+	ZSCORE		(RequestType.KEY_VALUE,		ResponseType.BULK, Flag.READ_ONLY),
+	ZRANK		(RequestType.KEY_VALUE,		ResponseType.NUMBER, Flag.READ_ONLY),
+	ZREVRANK	(RequestType.KEY_VALUE,		ResponseType.NUMBER, Flag.READ_ONLY),
+	ZRANGE			(RequestType.KEY_NUM_NUM,	ResponseType.MULTI_BULK, Flag.READ_ONLY),
 	/** ZRANGE with OPTIONS  */
-	ZRANGE$OPTS		(RequestType.KEY_NUM_NUM_OPTS,	ResponseType.MULTI_BULK),
-	ZREVRANGE		(RequestType.KEY_NUM_NUM,		ResponseType.MULTI_BULK),
+	ZRANGE$OPTS		(RequestType.KEY_NUM_NUM_OPTS,	ResponseType.MULTI_BULK, Flag.READ_ONLY),
+	ZREVRANGE		(RequestType.KEY_NUM_NUM,		ResponseType.MULTI_BULK, Flag.READ_ONLY),
 	/** ZREVRANGE with OPTIONS  */
-	ZREVRANGE$OPTS	(RequestType.KEY_NUM_NUM_OPTS,	ResponseType.MULTI_BULK),
+	ZREVRANGE$OPTS	(RequestType.KEY_NUM_NUM_OPTS,	ResponseType.MULTI_BULK, Flag.READ_ONLY),
 	ZINCRBY		(RequestType.KEY_IDX_VALUE, ResponseType.BULK),
-	ZRANGEBYSCORE		(RequestType.KEY_NUM_NUM,	ResponseType.MULTI_BULK),
+	ZRANGEBYSCORE		(RequestType.KEY_NUM_NUM,	ResponseType.MULTI_BULK, Flag.READ_ONLY),
+	/** ZRANGEBYSCORE with OPTIONS  */
+	ZRANGEBYSCORE$OPTS	(RequestType.KEY_NUM_NUM_OPTS,	ResponseType.MULTI_BULK, Flag.READ_ONLY),
 	ZREMRANGEBYSCORE	(RequestType.KEY_NUM_NUM,	ResponseType.NUMBER),
 	ZREMRANGEBYRANK	(RequestType.KEY_NUM_NUM,	ResponseType.NUMBER),
-	ZCOUNT		(RequestType.KEY_NUM_NUM, ResponseType.NUMBER),
+	ZCOUNT		(RequestType.KEY_NUM_NUM, ResponseType.NUMBER, Flag.READ_ONLY),
 		
 	// Commands operating on hashes
 	HSET 		(RequestType.KEY_KEY_VALUE, ResponseType.BOOLEAN),
-	HGET 		(RequestType.KEY_VALUE, 	ResponseType.BULK),
-	HEXISTS 	(RequestType.KEY_VALUE, 	ResponseType.BOOLEAN),
+	HGET 		(RequestType.KEY_VALUE, 	ResponseType.BULK, Flag.READ_ONLY),
+	HSETNX 		(RequestType.KEY_KEY_VALUE, ResponseType.BOOLEAN),
+	HMSET 		(RequestType.BULK_SET, 		ResponseType.STATUS, Flag.IDEMPOTENT),
+	HMGET 		(RequestType.BULK_SET, 		ResponseType.MULTI_BULK, Flag.READ_ONLY),
+	HINCRBY 	(RequestType.KEY_KEY_VALUE, ResponseType.NUMBER),
+	HEXISTS 	(RequestType.KEY_VALUE, 	ResponseType.BOOLEAN, Flag.READ_ONLY),
 	HDEL 		(RequestType.KEY_VALUE, 	ResponseType.BOOLEAN),
-	HLEN 		(RequestType.KEY, 			ResponseType.NUMBER),
-	HKEYS 		(RequestType.KEY, 			ResponseType.MULTI_BULK),
-	HVALS 		(RequestType.KEY, 			ResponseType.MULTI_BULK),
-	HGETALL 	(RequestType.KEY, 			ResponseType.MULTI_BULK),
+	HLEN 		(RequestType.KEY, 			ResponseType.NUMBER, Flag.READ_ONLY),
+	HKEYS 		(RequestType.KEY, 			ResponseType.MULTI_BULK, Flag.READ_ONLY),
+	HVALS 		(RequestType.KEY, 			ResponseType.MULTI_BULK, Flag.READ_ONLY),
+	HGETALL 	(RequestType.KEY, 			ResponseType.MULTI_BULK, Flag.READ_ONLY),
 	
 	// transactional commands
 	MULTI		(RequestType.NO_ARG, 		ResponseType.STATUS),
-	EXEC		(RequestType.NO_ARG, 		ResponseType.RESULT_SET), // NEED NEW RESPONSE TYPE
+	EXEC		(RequestType.TRANSACTION, 	ResponseType.RESULT_SET, Flag.NO_KEY),
 	DISCARD		(RequestType.NO_ARG, 		ResponseType.STATUS),
 	
+	// publish/subscribe commands -- (un)subscribe replies are pushed to the subscriber connection
+	SUBSCRIBE	(RequestType.MULTI_KEY,		ResponseType.VIRTUAL, Flag.NO_KEY),
+	UNSUBSCRIBE	(RequestType.MULTI_KEY,		ResponseType.VIRTUAL, Flag.NO_KEY),
+	PSUBSCRIBE	(RequestType.MULTI_KEY,		ResponseType.VIRTUAL, Flag.NO_KEY),
+	PUNSUBSCRIBE(RequestType.MULTI_KEY,		ResponseType.VIRTUAL, Flag.NO_KEY),
+	PUBLISH		(RequestType.KEY_VALUE,		ResponseType.NUMBER, Flag.NO_KEY),
+	
 	// "Multiple databases handling commands"
-	SELECT		(RequestType.KEY,			ResponseType.STATUS),
+	SELECT		(RequestType.KEY,			ResponseType.STATUS, Flag.IDEMPOTENT, Flag.NO_KEY),
 	FLUSHDB		(RequestType.NO_ARG,		ResponseType.STATUS), 
 	FLUSHALL	(RequestType.NO_ARG,		ResponseType.STATUS),
 	MOVE		(RequestType.KEY_NUM,		ResponseType.BOOLEAN),
 	
 	// Sorting
-	SORT		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK),
+	SORT		(RequestType.MULTI_KEY,		ResponseType.MULTI_BULK, Flag.READ_ONLY),
 	/** SORT...STORE */
 	SORT$STORE	(RequestType.MULTI_KEY,		ResponseType.NUMBER),
 	
 	// Persistence control commands
-	SAVE		(RequestType.NO_ARG,		ResponseType.STATUS), 
+	SAVE		(RequestType.NO_ARG,		ResponseType.STATUS, Flag.IDEMPOTENT), 
 	BGSAVE		(RequestType.NO_ARG,		ResponseType.STATUS), 
 	BGREWRITEAOF(RequestType.NO_ARG,		ResponseType.STRING), 
-	LASTSAVE	(RequestType.NO_ARG,		ResponseType.NUMBER),
+	LASTSAVE	(RequestType.NO_ARG,		ResponseType.NUMBER, Flag.READ_ONLY),
 	SHUTDOWN	(RequestType.NO_ARG, 		ResponseType.VIRTUAL),
 	
 	// diagnostics commands
-	ECHO    	(RequestType.VALUE,     	ResponseType.BULK),
-	DEBUG		(RequestType.KEY_KEY, 		ResponseType.STRING), 
+	ECHO    	(RequestType.VALUE,     	ResponseType.BULK, Flag.READ_ONLY),
+	DEBUG		(RequestType.KEY_KEY, 		ResponseType.STRING, Flag.NO_KEY), 
 	
 	// Remote server control commands
-	INFO		(RequestType.NO_ARG, 		ResponseType.BULK), 
+	INFO		(RequestType.NO_ARG, 		ResponseType.BULK, Flag.READ_ONLY), 
 	MONITOR	    (RequestType.NO_ARG, 		ResponseType.VIRTUAL), 
-	SLAVEOF		(RequestType.KEY_KEY, 		ResponseType.STATUS),
+	SLAVEOF		(RequestType.KEY_KEY, 		ResponseType.STATUS, Flag.IDEMPOTENT, Flag.NO_KEY),
 	
 	;// -- end --
 	
@@ -170,6 +188,12 @@ public enum Command {
 	public final RequestType requestType;
 	public final ResponseType responseType;
 	private final int flags_bitset;
+	/** index of the first key arg of the request, or -1 if the command has no key args */
+	public final int firstKey;
+	/** index of the last key arg of the request; negative values are relative to arg count (-1 is the last arg) */
+	public final int lastKey;
+	/** step between key args, 0 if the command has no key args */
+	public final int keyStep;
 	
 	/** internal */
 	static final public String OPTCODE = "$";
@@ -179,6 +203,8 @@ public enum Command {
 	 * constructor params.
 	 * @param reqType the {@link RequestType} of the Command
 	 * @param respType the {@link ResponseType} of the Command
+	 * @param flags the {@link Flag}s of the Command.  {@link Flag#READ_ONLY} implies
+	 * {@link Flag#IDEMPOTENT}.  
 	 */
 	Command (RequestType reqType, ResponseType respType, Flag... flags) { 
 		this.code = this.name();
@@ -191,10 +217,32 @@ public enum Command {
 		this.requestType = reqType;
 		this.responseType = respType;
 		
+		int bitset = Flag.OPAQUE_BITMASK_32;
 		if(flags != null && flags.length > 0)
-			this.flags_bitset = Flag.bitset(flags);
-		else
-			this.flags_bitset = Flag.OPAQUE_BITMASK_32;
+			bitset = Flag.bitset(flags);
+		if(Flag.isSet(bitset, Flag.READ_ONLY))
+			bitset = Flag.bitset(bitset, Flag.IDEMPOTENT);
+		this.flags_bitset = bitset;
+		
+		// key arg positions
+		if(reqType == RequestType.NO_ARG || reqType == RequestType.VALUE || Flag.isSet(bitset, Flag.NO_KEY)){
+			this.firstKey = -1; this.lastKey = -1; this.keyStep = 0;
+		}
+		else if(Flag.isSet(bitset, Flag.MULTI_KEY)){
+			this.firstKey = 0;
+			switch (reqType) {
+				case KEY_KEY:
+				case KEY_KEY_VALUE:
+					this.lastKey = 1; this.keyStep = 1; break;
+				case BULK_SET:
+					this.lastKey = -2; this.keyStep = 2; break;
+				default:
+					this.lastKey = Flag.isSet(bitset, Flag.BLOCKING) ? -2 : -1; this.keyStep = 1; break;
+			}
+		}
+		else {
+			this.firstKey = 0; this.lastKey = 0; this.keyStep = 1;
+		}
 	}
 
 	/**
@@ -206,6 +254,26 @@ public enum Command {
 	final public boolean isSet(Flag flag) {
 		return (flags_bitset & flag.bitmask) != Flag.OPAQUE_BITMASK_32;
 	}
+	
+	/** @return true if the command does not modify the dataset */
+	final public boolean isReadOnly() { return isSet(Flag.READ_ONLY); }
+	
+	/** @return true if the command can be safely re-sent */
+	final public boolean isIdempotent() { return isSet(Flag.IDEMPOTENT); }
+	
+	/** @return true if the command has key args */
+	final public boolean hasKeys() { return firstKey >= 0; }
+	
+	/**
+	 * Resolves {@link Command#lastKey} for a request.  Key args of a request are
+	 * <code>for(int i=cmd.firstKey; i<=cmd.lastKeyIndex(args.length); i+=cmd.keyStep)</code>
+	 * @param argc number of args of the request
+	 * @return index of the last key arg of a request with argc args, or -1 if none
+	 */
+	final public int lastKeyIndex(int argc) {
+		if(firstKey < 0) return -1;
+		return lastKey >= 0 ? Math.min(lastKey, argc-1) : argc + lastKey;
+	}
 
 	// ------------------------------------------------------------------------
 	// Inner Types
@@ -234,18 +302,28 @@ public enum Command {
 			this.bytes = name().getBytes();
 		}
 	}
-	// TODO: wtf is this doing here?
 	/**
-	 * Defines (32 bit) flags for {@link Command}
+	 * Defines (32 bit) flags for {@link Command}.  Flags are set per command at 
+	 * definition and are queried via {@link Command#isSet(Flag)}.
 	 *
 	 * @author  joubin (alphazero@sensesay.net)
 	 * @date    Sep 10, 2010
 	 * 
 	 */
 	public enum Flag {
-		TEST,
-		FOO,
-		BAR,
+		/** command does not modify the dataset and may be serviced by a read replica */
+		READ_ONLY,
+		/** command can be re-sent without changing its effect or reply (e.g. after a connection reset) */
+		IDEMPOTENT,
+		/** command takes more than one key arg -- see {@link Command#keyStep} */
+		MULTI_KEY,
+		/** command's leading arg is not a key (e.g. a pattern or a password) */
+		NO_KEY,
+		/** 
+		 * command may block the connection until its timeout (last arg) expires -- 
+		 * it must not be sent on a pipelined or shared connection
+		 */
+		BLOCKING,
 		;// -- end --
 		public final int bitmask;
 		private static final int OPAQUE_BITMASK_32 = 0x0000;
@@ -307,7 +385,12 @@ public enum Command {
     	/**  */
     	MULTI_KEY,
     	/**  */
-    	BULK_SET
+    	BULK_SET,
+    	/** 
+    	 * the commands of a <code>MULTI</code> ... <code>EXEC</code> transaction, sent in a single
+    	 * request.  Each command is specified by its code, followed by its arg count and args. 
+    	 */
+    	TRANSACTION
     }
 
     /**
@@ -341,7 +424,7 @@ public enum Command {
     	/**  */
     	MULTI_BULK (MultiBulkResponse.class),
     	/** */
-    	RESULT_SET (Response.class),
+    	RESULT_SET (ResultSetResponse.class),
     	;
     	public Class<? extends Response> respClass;
     	
@@ -89,6 +89,7 @@ public interface Response extends Message {
 	 * <li>Value Data ("String") - such as {@link Command#GET}
 	 * <li>Bulk Data - such as {@link Command#KEYS}
 	 * <li>Multi Bulk Data - such as {@link Command#LRANGE}
+	 * <li>Result Set - responses of the commands of a transaction ({@link Command#EXEC})
 	 * </ul>
 	 * <p>
 	 * This enum reflects these types and provides additional information regarding
@@ -107,7 +108,9 @@ public interface Response extends Message {
 		/**  */
 		Bulk  	  (byte[].class),
 		/**  */
-		MultiBulk (List.class);
+		MultiBulk (List.class),
+		/**  */
+		ResultSet (List.class);
 		
 		/**  */
 		public final Class<?>	dataClass;
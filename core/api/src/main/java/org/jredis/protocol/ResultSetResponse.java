@@ -0,0 +1,42 @@
+/*
+ *   Copyright 2009 - 2011 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.jredis.protocol;
+
+import java.util.List;
+
+/**
+ * Response of a {@link Command#EXEC} transaction: the server's reply to the 
+ * queueing of each command of the transaction, merged with the command's reply
+ * on exec.
+ * <p>
+ * The response is an error response if the server aborted the transaction 
+ * (e.g. <code>EXECABORT</code> due to errors queueing its commands).
+ *
+ * @since   alpha.0
+ * @see Command.RequestType#TRANSACTION
+ */
+public interface ResultSetResponse extends Response {
+	
+	/**
+	 * @return the response of each command of the transaction, in order.  Commands
+	 * rejected when queued are represented by their (error) {@link StatusResponse}.
+	 * Element responses are typed per their reply -- status and error replies as 
+	 * {@link ValueResponse#getStringValue()}, integer replies as {@link ValueResponse#getLongValue()}, 
+	 * and {@link BulkResponse} and {@link MultiBulkResponse}.  Null if the transaction
+	 * was not executed.
+	 */
+	public List<Response> getResults ();
+}
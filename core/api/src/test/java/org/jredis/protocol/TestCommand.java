@@ -43,7 +43,7 @@ public class TestCommand extends TestBase {
 	@Test
 	public void testCommandFlags() {
 		log.info("TEST:PROTOCOL Command sematics - CommandFlags");
-		Flag flags[] = {TEST, FOO, BAR};
+		Flag flags[] = {READ_ONLY, IDEMPOTENT, MULTI_KEY};
         int bitset = Flag.bitset(flags);
         for(Flag f : flags)
         	Assert.assertTrue(Flag.isSet(bitset, f), String.format("%s should have been set!\n", f.name()));
@@ -53,4 +53,41 @@ public class TestCommand extends TestBase {
         Assert.assertFalse(bitset == oldbitset, "clearing flag should have changed bitset");
         Assert.assertFalse(Flag.isSet(bitset, flags[1]), String.format("%s should have been cleared!\n", flags[1].name()));
 	}
+	@Test
+	public void testCommandMetadata() {
+		log.info("TEST:PROTOCOL Command sematics - read/write, idempotence, and key positions");
+		Assert.assertTrue(Command.GET.isReadOnly());
+		Assert.assertTrue(Command.GET.isIdempotent(), "READ_ONLY should imply IDEMPOTENT");
+		Assert.assertFalse(Command.INCR.isReadOnly());
+		Assert.assertFalse(Command.INCR.isIdempotent());
+		Assert.assertTrue(Command.SET.isIdempotent());
+		Assert.assertFalse(Command.SET.isReadOnly());
+		// LTRIM key 1 -1 drops another head element each time it is applied
+		Assert.assertFalse(Command.LTRIM.isIdempotent());
+		Assert.assertFalse(Command.LTRIM.isReadOnly());
+		// a replayed FLUSHDB would also drop the writes that followed the original
+		Assert.assertFalse(Command.FLUSHDB.isIdempotent());
+		Assert.assertFalse(Command.FLUSHALL.isIdempotent());
+		
+		// single key
+		Assert.assertEquals(Command.GET.firstKey, 0);
+		Assert.assertEquals(Command.GET.lastKeyIndex(1), 0);
+		Assert.assertEquals(Command.HSET.lastKeyIndex(3), 0);
+		
+		// no keys
+		Assert.assertFalse(Command.PING.hasKeys());
+		Assert.assertFalse(Command.KEYS.hasKeys());
+		Assert.assertFalse(Command.AUTH.hasKeys());
+		Assert.assertEquals(Command.ECHO.lastKeyIndex(1), -1);
+		
+		// multi key
+		Assert.assertTrue(Command.RENAME.isSet(MULTI_KEY));
+		Assert.assertEquals(Command.RENAME.lastKeyIndex(2), 1);
+		Assert.assertEquals(Command.SMOVE.lastKeyIndex(3), 1);
+		Assert.assertEquals(Command.SINTER.lastKeyIndex(5), 4);
+		Assert.assertEquals(Command.MSET.lastKeyIndex(6), 4);
+		Assert.assertEquals(Command.MSET.keyStep, 2);
+		Assert.assertFalse(Command.SORT.isSet(MULTI_KEY));
+		Assert.assertEquals(Command.SORT.lastKeyIndex(3), 0);
+	}
 }
@@ -17,6 +17,7 @@
 package org.jredis.bench;
 
 import static org.jredis.bench.Util.getRandomString;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -32,6 +33,7 @@ import org.jredis.ClientRuntimeException;
 import org.jredis.JRedis;
 import org.jredis.RedisException;
 import org.jredis.bench.Util.Timer;
+import org.jredis.loopback.LoopbackServer;
 import org.jredis.protocol.Command;
 
 /**
@@ -44,6 +46,22 @@ public abstract class JRedisBenchmark {
 	
 	/** password used to AUTH with redis select -- password is: jredis */
 	public static final String password = "jredis";
+	
+	/** host that runs the benchmarks against an in-process {@link LoopbackServer} */
+	public static final String LOOPBACK = "loopback";
+
+	/**
+	 * @return a new (started) in-process {@link LoopbackServer}
+	 * @throws ClientRuntimeException if the server can not bind
+	 */
+	public static LoopbackServer newLoopbackServer () throws ClientRuntimeException {
+		try {
+			return new LoopbackServer();
+		}
+		catch (IOException e) {
+			throw new ClientRuntimeException("loopback server: " + e.getMessage(), e);
+		}
+	}
 
 	// ------------------------------------------------------------------------
 	// Helper methods
@@ -87,7 +105,7 @@ public abstract class JRedisBenchmark {
 	 * <p>Further note that this will use the password <code><b>jredis</b></code> so either
 	 * make sure the redis.conf <code>requirepass</code> is set appropriately or simply comment it out.
 	 * 
-	 * @param host
+	 * @param host -- {@link #LOOPBACK} for an in-process {@link LoopbackServer}
 	 * @param port
 	 * @param threadCnt
 	 * @param reqCnt
@@ -97,6 +115,16 @@ public abstract class JRedisBenchmark {
 	
 	protected final void  runBenchmarks(String host, int port, int threadCnt, int reqCnt, int size, int db)
 	{
+		if(LOOPBACK.equals(host)) {
+			LoopbackServer server = newLoopbackServer();
+			try {
+				runBenchmarks(server.getAddress().getHostAddress(), server.getPort(), threadCnt, reqCnt, size, db);
+			}
+			finally {
+				server.shutdown();
+			}
+			return;
+		}
 //		random = new Random(System.currentTimeMillis());
 		
 		fixedbytes = new byte[size];
@@ -670,7 +698,7 @@ public abstract class JRedisBenchmark {
 		public void run() {
 			try {
 
-				jredis = newConnection (host, 6379, db, password);
+				jredis = newConnection (host, port, db, password);
 				try {
 //					jredis.auth (password).select(db).flushdb();
 					jredis.flushdb();
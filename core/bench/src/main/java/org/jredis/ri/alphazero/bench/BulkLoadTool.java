@@ -0,0 +1,117 @@
+/*
+ *   Copyright 2009 Joubin Mohammad Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.jredis.ri.alphazero.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jredis.bench.JRedisBenchmark;
+import org.jredis.bench.Util;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.ri.alphazero.connection.BulkLoadConnection;
+import org.jredis.ri.alphazero.connection.BulkLoadException;
+import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+
+/**
+ * Mass import of a command file, a la <code>redis-cli --pipe</code>, using a
+ * {@link BulkLoadConnection}.  The file has a command per line, per the inline
+ * syntax of <code>redis-cli</code> (see {@link BulkLoadConnection#readCommands(InputStream)}).
+ * <pre>
+ * &lt;file|-&gt; [host [port [db]]]
+ * gen &lt;count&gt; [size [host [port [db]]]]
+ * </pre>
+ * <code>-</code> reads the commands from stdin, and <code>gen</code> loads count SETs
+ * of size byte values (e.g. to measure the load rate).
+ * <p>
+ * The first {@link BulkLoadTool#MAX_REPORTED_ERRORS} error replies are reported with
+ * the index of their command.
+ *
+ * @since   alpha.0
+ * 
+ */
+public class BulkLoadTool {
+	
+	/** number of error replies reported */
+	public static final int MAX_REPORTED_ERRORS = 20;
+	
+	/**
+	 * @param args
+	 */
+	public static void main (String[] args) {
+		if(args.length < 1 || (args[0].equals("gen") && args.length < 2)) {
+			System.out.println("==> Usage: <file|-> [host [port [db]]] | gen <count> [size [host [port [db]]]]");
+			return;
+		}
+		final boolean gen = args[0].equals("gen");
+		int arg = gen ? 2 : 1;
+		int size = 16;
+		if(gen && args.length > arg) size = Integer.parseInt(args[arg++]);
+		String host = args.length > arg ? args[arg++] : "127.0.0.1";
+		int port = args.length > arg ? Integer.parseInt(args[arg++]) : 6379;
+		int db = args.length > arg ? Integer.parseInt(args[arg++]) : 13;
+		
+		ConnectionSpec spec = DefaultConnectionSpec.newSpec(host, port, db, JRedisBenchmark.password.getBytes());
+		BulkLoadConnection loader = null;
+		InputStream in = null;
+		try {
+			loader = new BulkLoadConnection(spec);
+			final AtomicLong reported = new AtomicLong();
+			final BulkLoadConnection.ErrorListener listener = new BulkLoadConnection.ErrorListener() {
+				public void onError (long index, String message) {
+					if(reported.incrementAndGet() <= MAX_REPORTED_ERRORS)
+						System.err.format("--- error at command %d: %s\n", index, message);
+				}
+			};
+			final BulkLoadConnection.Result result;
+			if(gen) {
+				result = loader.load(sets(Long.parseLong(args[1]), Util.getRandomBytes(size)), listener);
+			}
+			else {
+				in = args[0].equals("-") ? System.in : new FileInputStream(args[0]);
+				result = loader.load(in, listener);
+			}
+			System.out.format("--- %s\n", result);
+			if(result.getElapsedNanos() > 0)
+				System.out.format("--- %.0f commands/sec\n", result.getCount() * 1e9 / result.getElapsedNanos());
+		}
+		catch (BulkLoadException e) {
+			System.err.format("BULKLOAD::Exception => %s\n--- resume from command %d\n", e.getLocalizedMessage(), e.getReplyCount());
+		}
+		catch (Exception e) {
+			System.err.format("BULKLOAD::Exception => %s\nWill stop.\n", e.getLocalizedMessage());
+			e.printStackTrace();
+		}
+		finally {
+			if(null != loader) loader.quit();
+			if(null != in && in != System.in) {
+				try { in.close(); } catch (IOException e) { }
+			}
+		}
+	}
+	
+	/** @return count SETs of key:n to the value */
+	private static Iterator<byte[][]> sets (final long count, final byte[] value) {
+		final byte[] cmd = "SET".getBytes();
+		return new Iterator<byte[][]>() {
+			long n = 0;
+			public boolean hasNext () { return n < count; }
+			public byte[][] next () { return new byte[][]{ cmd, ("key:" + n++).getBytes(), value }; }
+			public void remove () { throw new UnsupportedOperationException(); }
+		};
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ *   Copyright 2009 Joubin Mohammad Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.jredis.ri.alphazero.bench;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.jredis.bench.JRedisBenchmark;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.ri.alphazero.MonitorCapture;
+import org.jredis.ri.alphazero.MonitorReplay;
+import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+import org.jredis.ri.alphazero.connection.MonitorConnection;
+
+/**
+ * Captures the <code>MONITOR</code> feed of a server to a {@link MonitorCapture}
+ * file, and replays a capture file against a (e.g. new) server with {@link MonitorReplay},
+ * to load test with the traffic shape of a production server.
+ * <pre>
+ * capture &lt;file&gt; &lt;seconds&gt; [host [port]]
+ * replay &lt;file&gt; [speed [host [port]]]
+ * </pre>
+ * Replay speed is a multiple of the recorded pace (1 replays at the recorded pace),
+ * or 0 to replay as fast as the server allows.
+ * <p><b>Be advised that replay writes to the target server, on the recorded dbs.</b>
+ *
+ * @since   alpha.0
+ * 
+ */
+public class MonitorCaptureTool {
+	
+	private static final String USAGE = "==> Usage: capture <file> <seconds> [host [port]] | replay <file> [speed [host [port]]]";
+	
+	/**
+	 * @param args
+	 */
+	public static void main (String[] args) {
+		if(args.length < 2 || !(args[0].equals("capture") || args[0].equals("replay"))) {
+			System.out.println(USAGE);
+			return;
+		}
+		final boolean capture = args[0].equals("capture");
+		final String file = args[1];
+		int seconds = 60;
+		double speed = 1;
+		String host = "127.0.0.1";
+		int port = 6379;
+		if(args.length > 2) {
+			if(capture) seconds = Integer.parseInt(args[2]);
+			else speed = Double.parseDouble(args[2]);
+		}
+		if(args.length > 3) host = args[3];
+		if(args.length > 4) port = Integer.parseInt(args[4]);
+		
+		ConnectionSpec spec = DefaultConnectionSpec.newSpec(host, port, 0, JRedisBenchmark.password.getBytes());
+		spec.setHeartbeat(0);
+		try {
+			if(capture) capture(spec, file, seconds);
+			else replay(spec, file, speed);
+		}
+		catch (Exception e) {
+			System.err.format("MONITOR-CAPTURE::Exception => %s\nWill stop.\n", e.getLocalizedMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Captures the feed of the server for the specified duration.
+	 */
+	public static void capture (ConnectionSpec spec, String file, int seconds) throws IOException, InterruptedException {
+		System.out.format("--- capturing %s:%d to %s for %d sec\n", spec.getAddress().getHostAddress(), spec.getPort(), file, seconds);
+		MonitorCapture.Writer writer = new MonitorCapture.Writer(new FileOutputStream(file));
+		MonitorConnection monitor = new MonitorConnection(spec, writer);
+		try {
+			final long end = System.currentTimeMillis() + seconds * 1000L;
+			long last = 0;
+			while(System.currentTimeMillis() < end) {
+				Thread.sleep(Math.min(1000, Math.max(1, end - System.currentTimeMillis())));
+				final long count = writer.getCount();
+				System.out.format("--- captured %d commands (%d/sec)\n", count, count - last);
+				last = count;
+			}
+		}
+		finally {
+			monitor.quit();
+			writer.close();
+		}
+		System.out.format("--- captured %d commands\n", writer.getCount());
+	}
+	
+	/**
+	 * Replays the capture to its end.
+	 */
+	public static void replay (ConnectionSpec spec, String file, double speed) throws IOException, InterruptedException {
+		System.out.format("--- replaying %s to %s:%d at speed %s\n", file, spec.getAddress().getHostAddress(), spec.getPort(), speed == 0 ? "max" : speed + "x");
+		MonitorCapture.Reader reader = new MonitorCapture.Reader(new FileInputStream(file));
+		try {
+			MonitorReplay.Result result = new MonitorReplay(spec, speed).replay(reader);
+			System.out.format("--- %s\n", result);
+			if(result.getElapsedNanos() > 0)
+				System.out.format("--- %.0f commands/sec\n", result.getSent() * 1e9 / result.getElapsedNanos());
+		}
+		finally {
+			reader.close();
+		}
+	}
+}
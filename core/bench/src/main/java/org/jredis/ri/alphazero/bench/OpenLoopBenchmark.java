@@ -0,0 +1,431 @@
+/*
+ *   Copyright 2009 Joubin Mohammad Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.jredis.ClientRuntimeException;
+import org.jredis.RedisException;
+import org.jredis.bench.JRedisBenchmark;
+import org.jredis.ri.alphazero.support.LatencyHistogram;
+import org.jredis.bench.Util;
+import org.jredis.connector.Connection;
+import org.jredis.connector.Connection.Modality;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.loopback.LoopbackServer;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.connection.AsyncPipelineConnection;
+import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+import org.jredis.ri.alphazero.connection.SyncConnection;
+
+/**
+ * Open-loop latency benchmark.  Unlike the (closed-loop) {@link JRedisBenchmark}, 
+ * which issues the next request when the previous one completes and reports 
+ * average throughput, requests are issued on a fixed schedule at a target rate 
+ * and each request's latency is measured from its <i>intended</i> send time.  
+ * A stall (server, network, GC, or client) therefore shows up in the latency of 
+ * every request that should have been sent during the stall, rather than being 
+ * omitted (coordinated omission).
+ * <p>
+ * Each {@link Command} is run for a warmup period and then a measured period, 
+ * for each connection modality:
+ * <ul>
+ * <li>{@link Modality#Synchronous}: a {@link SyncConnection} per sender thread.
+ * <li>{@link Modality#Asynchronous}: an {@link AsyncPipelineConnection} per sender 
+ * thread, with a collector thread per connection to await the responses in order.
+ * </ul>
+ * The target rate is the aggregate over all connections.  Latencies are recorded 
+ * in {@link LatencyHistogram}s and p50/p99/p99.9/max are reported per command and 
+ * modality.  If the achieved rate falls short of the target rate, the client (or 
+ * server) is saturated and the reported latencies include the resulting queueing.
+ * <p><b>Be advised that this will FLUSH the db specified.</b>
+ *
+ * @since   alpha.0
+ * 
+ */
+public class OpenLoopBenchmark {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** commands benchmarked, in order */
+	public static final Command[] COMMANDS = {
+		Command.PING, Command.SET, Command.GET, Command.INCR, 
+		Command.LPUSH, Command.LPOP, Command.SADD, Command.SCARD
+	};
+	
+	/** sender threads park until this close to the intended send time, and then spin */
+	static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	
+	private final ConnectionSpec	spec;
+	private final int				rate;
+	private final int				connCnt;
+	private final long				warmupNanos;
+	private final long				durationNanos;
+	private final byte[]			value;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param spec connection spec -- its modality is set per run
+	 * @param rate target aggregate requests per second
+	 * @param connCnt number of connections (and sender threads)
+	 * @param warmupSecs unmeasured warmup period per command
+	 * @param durationSecs measured period per command
+	 * @param size of values in bytes
+	 */
+	public OpenLoopBenchmark (ConnectionSpec spec, int rate, int connCnt, int warmupSecs, int durationSecs, int size) {
+		if(rate <= 0 || connCnt <= 0 || durationSecs <= 0 || warmupSecs < 0 || size <= 0)
+			throw new IllegalArgumentException("rate, connections, duration and size must be positive");
+		this.spec = spec;
+		this.rate = rate;
+		this.connCnt = connCnt;
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSecs);
+		this.durationNanos = TimeUnit.SECONDS.toNanos(durationSecs);
+		this.value = Util.getRandomBytes(size);
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Runs the benchmark.
+	 * <p>
+	 * Usage: [rate [seconds [conns [size [host [port [db]]]]]]] -- host {@link JRedisBenchmark#LOOPBACK}
+	 * runs against an in-process {@link LoopbackServer}.
+	 * @param args
+	 */
+	public static void main (String[] args) {
+		int rate = 10000;
+		int seconds = 10;
+		int connCnt = 4;
+		int size = 3;
+		String host = "127.0.0.1";
+		int port = 6379;
+		int db = 13;
+		if(args.length > 0) rate = Integer.parseInt(args[0]);
+		if(args.length > 1) seconds = Integer.parseInt(args[1]);
+		if(args.length > 2) connCnt = Integer.parseInt(args[2]);
+		if(args.length > 3) size = Integer.parseInt(args[3]);
+		if(args.length > 4) host = args[4];
+		if(args.length > 5) port = Integer.parseInt(args[5]);
+		if(args.length > 6) db = Integer.parseInt(args[6]);
+		
+		System.out.format("==> Usage: [rate [seconds [conns [size [host [port [db]]]]]]]\n");
+		
+		LoopbackServer loopback = null;
+		if(JRedisBenchmark.LOOPBACK.equals(host)) {
+			loopback = JRedisBenchmark.newLoopbackServer();
+			host = loopback.getAddress().getHostAddress();
+			port = loopback.getPort();
+		}
+		ConnectionSpec spec = DefaultConnectionSpec.newSpec(host, port, db, JRedisBenchmark.password.getBytes());
+		OpenLoopBenchmark benchmark = new OpenLoopBenchmark(spec, rate, connCnt, Math.max(1, seconds / 5), seconds, size);
+		try {
+			report(benchmark.run());
+		}
+		catch (Exception e) {
+			System.err.format("BENCHMARK::Exception => %s\nWill stop.\n", e.getLocalizedMessage());
+			e.printStackTrace();
+		}
+		finally {
+			if(null != loopback) loopback.shutdown();
+		}
+	}
+	
+	/**
+	 * Runs all {@link #COMMANDS} for each modality.
+	 * @return the results, in run order
+	 */
+	public List<Result> run () throws RedisException, InterruptedException {
+		System.out.println ();
+		System.out.println("---------------------------------------------------------- JREDIS OPEN-LOOP ----");
+		System.out.println("---");
+		System.out.format ("--- host:%s:%d (db:%d) | bytes:%d | conns:%d | rate:%d/sec | measured:%d sec\n", 
+				spec.getAddress().getHostAddress(), spec.getPort(), spec.getDatabase(), value.length, connCnt, rate, 
+				TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+		System.out.println("---");
+		System.out.println("--------------------------------------------------------------------------------\n");
+		
+		List<Result> results = new ArrayList<Result>();
+		for(Modality modality : new Modality[]{Modality.Synchronous, Modality.Asynchronous}){
+			Connection[] conns = new Connection[connCnt];
+			for(int i=0; i<connCnt; i++)
+				conns[i] = newConnection(modality);
+			try {
+				if(modality == Modality.Synchronous) conns[0].serviceRequest(Command.FLUSHDB);
+				else conns[0].queueRequest(Command.FLUSHDB).get();
+				for(Command cmd : COMMANDS){
+					Result result = runCommand(modality, cmd, conns);
+					report(result);
+					results.add(result);
+				}
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException("FLUSHDB failed", e.getCause());
+			}
+			finally {
+				for(Connection conn : conns) {
+					if(modality == Modality.Synchronous) conn.serviceRequest(Command.QUIT);
+					else conn.queueRequest(Command.QUIT);
+				}
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Prints the results as a table -- latencies in micro-seconds.
+	 * @param results
+	 */
+	public static void report (List<Result> results) {
+		System.out.println();
+		System.out.println("===== open-loop summary (latency in usecs) =====");
+		System.out.format("%-12s %-8s %10s %10s %9s %7s %10s %10s %10s %10s\n", 
+				"modality", "command", "target/s", "actual/s", "requests", "errors", "p50", "p99", "p99.9", "max");
+		for(Result r : results)
+			System.out.format("%-12s %-8s %10d %10.0f %9d %7d %10.1f %10.1f %10.1f %10.1f\n", 
+					r.modality.name(), r.command.code, r.targetRate, r.getActualRate(), r.histogram.getTotalCount(), r.errors,
+					r.histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+					r.histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+					r.histogram.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS),
+					r.histogram.getMaxValue() / 1000.0);
+		System.out.println();
+	}
+	
+	private static void report (Result r) {
+		System.out.format("===== %s | %s =====\n", r.command.code, r.modality.name());
+		System.out.format("  ==> %d requests @ %d/second target, %f/second actual, %d errors\n", 
+				r.histogram.getTotalCount(), r.targetRate, r.getActualRate(), r.errors);
+		System.out.format("\t\t\tp50: %f usecs\n\t\t\tp99: %f usecs\n\t\t\tp99.9: %f usecs\n\t\t\tmax: %f usecs\n\n",
+				r.histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+				r.histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+				r.histogram.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS),
+				r.histogram.getMaxValue() / 1000.0);
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	private Connection newConnection (Modality modality) {
+		ConnectionSpec connSpec = DefaultConnectionSpec.newSpec(spec.getAddress(), spec.getPort(), spec.getDatabase(), spec.getCredentials());
+		return modality == Modality.Synchronous ? new SyncConnection(connSpec) : new AsyncPipelineConnection(connSpec);
+	}
+	
+	private byte[][] argsFor (Command cmd) {
+		switch (cmd) {
+			case PING:			return new byte[0][];
+			case SET:			return new byte[][]{"openloop:string".getBytes(), value};
+			case GET:			return new byte[][]{"openloop:string".getBytes()};
+			case LPUSH:			return new byte[][]{"openloop:list".getBytes(), value};
+			case LPOP:			return new byte[][]{"openloop:list".getBytes()};
+			case SADD:			return new byte[][]{"openloop:set".getBytes(), value};
+			case SCARD:			return new byte[][]{"openloop:set".getBytes()};
+			default:			return new byte[][]{("openloop:" + cmd.code).getBytes()};
+		}
+	}
+	
+	/**
+	 * Runs the command at the target rate, spread evenly over the connections with
+	 * staggered schedules, and merges the recorded latencies.
+	 */
+	private Result runCommand (Modality modality, Command cmd, Connection[] conns) throws InterruptedException {
+		final byte[][] args = argsFor(cmd);
+		final long interval = TimeUnit.SECONDS.toNanos(1) * conns.length / rate;
+		final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+		final long measureStart = start + warmupNanos;
+		final long end = measureStart + durationNanos;
+		
+		Sender[] senders = new Sender[conns.length];
+		Thread[] threads = new Thread[conns.length];
+		for(int i=0; i<conns.length; i++){
+			long first = start + (interval * i) / conns.length;
+			senders[i] = modality == Modality.Synchronous 
+				? new SyncSender(conns[i], cmd, args, first, interval, measureStart, end)
+				: new PipelineSender(conns[i], cmd, args, first, interval, measureStart, end);
+			threads[i] = new Thread(senders[i], "open-loop-sender-" + i);
+			threads[i].start();
+		}
+		
+		Result result = new Result(modality, cmd, rate, durationNanos);
+		for(int i=0; i<conns.length; i++){
+			threads[i].join();
+			if(null != senders[i].fault)
+				throw new RuntimeException(String.format("%s %s sender failed", modality.name(), cmd.code), senders[i].fault);
+			result.histogram.add(senders[i].histogram);
+			result.errors += senders[i].errors;
+		}
+		return result;
+	}
+	
+	/** parks and then spins until the nanoTime is at or after the deadline */
+	static void waitUntil (long deadline) {
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0){
+			if(remaining > SPIN_NANOS) LockSupport.parkNanos(remaining - SPIN_NANOS);
+		}
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** Latencies of a command at a target rate for a connection modality. */
+	public static final class Result {
+		public final Modality			modality;
+		public final Command			command;
+		public final int				targetRate;
+		public final long				measuredNanos;
+		public final LatencyHistogram	histogram = new LatencyHistogram();
+		public long						errors;
+		
+		Result (Modality modality, Command command, int targetRate, long measuredNanos){
+			this.modality = modality;
+			this.command = command;
+			this.targetRate = targetRate;
+			this.measuredNanos = measuredNanos;
+		}
+		/** @return responses per second in the measured period */
+		public double getActualRate () {
+			return (histogram.getTotalCount() + errors) * (double) TimeUnit.SECONDS.toNanos(1) / measuredNanos;
+		}
+	}
+	
+	/**
+	 * Issues requests on a fixed schedule: the k<sup>th</sup> request is intended
+	 * to be sent at <code>first + k * interval</code>.  A request that is sent 
+	 * late (because a previous one took too long) is sent immediately, and its
+	 * latency still counts from its intended send time.
+	 */
+	static abstract class Sender implements Runnable {
+		final Connection		conn;
+		final Command			cmd;
+		final byte[][]			args;
+		final long				first;
+		final long				interval;
+		final long				measureStart;
+		final long				end;
+		final LatencyHistogram	histogram = new LatencyHistogram();
+		long					errors;
+		Throwable				fault;
+		
+		Sender (Connection conn, Command cmd, byte[][] args, long first, long interval, long measureStart, long end) {
+			this.conn = conn;
+			this.cmd = cmd;
+			this.args = args;
+			this.first = first;
+			this.interval = interval;
+			this.measureStart = measureStart;
+			this.end = end;
+		}
+		public final void run () {
+			try { send(); }
+			catch (Throwable t) { fault = t; }
+		}
+		/** records the latency of a request intended at the given time, if in the measured period */
+		final void record (long intended, long completed) {
+			if(intended >= measureStart) histogram.recordValue(completed - intended);
+		}
+		final void error (long intended) {
+			if(intended >= measureStart) errors++;
+		}
+		abstract void send () throws Exception;
+	}
+	
+	/** Sends and awaits each request in turn. */
+	static final class SyncSender extends Sender {
+		SyncSender (Connection conn, Command cmd, byte[][] args, long first, long interval, long measureStart, long end) {
+			super(conn, cmd, args, first, interval, measureStart, end);
+		}
+		@Override
+		void send () throws ClientRuntimeException {
+			for(long intended = first; intended < end; intended += interval){
+				waitUntil(intended);
+				try {
+					conn.serviceRequest(cmd, args);
+					record(intended, System.nanoTime());
+				}
+				catch (RedisException e) { error(intended); }
+			}
+		}
+	}
+	
+	/** 
+	 * Queues requests on schedule, and a collector thread awaits the responses in 
+	 * (pipeline) order.  As responses complete in order, the collector is only late
+	 * in noting a completion if it is itself behind, which would add to the 
+	 * reported latency, never hide it.
+	 */
+	static final class PipelineSender extends Sender {
+		PipelineSender (Connection conn, Command cmd, byte[][] args, long first, long interval, long measureStart, long end) {
+			super(conn, cmd, args, first, interval, measureStart, end);
+		}
+		@Override
+		void send () throws Exception {
+			final BlockingQueue<Pending> pending = new LinkedBlockingQueue<Pending>();
+			final Pending eos = new Pending(null, 0);
+			final Throwable[] collectorFault = new Throwable[1];
+			Thread collector = new Thread(new Runnable() {
+				public void run () {
+					try {
+						for(Pending p = pending.take(); p != eos; p = pending.take()){
+							try {
+								p.future.get();
+								record(p.intended, System.nanoTime());
+							}
+							catch (ExecutionException e) { error(p.intended); }
+						}
+					}
+					catch (Throwable t) { collectorFault[0] = t; }
+				}
+			}, Thread.currentThread().getName() + "-collector");
+			collector.start();
+			try {
+				for(long intended = first; intended < end; intended += interval){
+					waitUntil(intended);
+					pending.add(new Pending(conn.queueRequest(cmd, args), intended));
+				}
+			}
+			finally {
+				pending.add(eos);
+				collector.join();
+			}
+			if(null != collectorFault[0]) throw new RuntimeException("collector failed", collectorFault[0]);
+		}
+	}
+	
+	static final class Pending {
+		final Future<Response> future;
+		final long intended;
+		Pending (Future<Response> future, long intended) {
+			this.future = future;
+			this.intended = intended;
+		}
+	}
+}
@@ -0,0 +1,1300 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.loopback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import org.jredis.protocol.Command;
+
+/**
+ * In-memory implementation of the {@link Command}s over string, list, set, sorted 
+ * set and hash values, for use by the {@link LoopbackServer}.
+ * <p>
+ * This is a test fixture and not a Redis: there is no persistence and no 
+ * replication, keys expire lazily, and {@link Command#SHUTDOWN} closes the issuing 
+ * connection only.  Instances are not thread-safe and are expected to be accessed 
+ * by the (single) server thread.
+ * <p>
+ * A blocking list pop (e.g. {@link Command#BLPOP}) on empty lists blocks its 
+ * connection: the pop is served by a later push, or times out on 
+ * {@link #expireBlocked(long)}, and its reply is pushed to the connection.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public class LoopbackDataset {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** number of databases */
+	public static final int DB_COUNT = 16;
+	
+	static final String ERR_WRONG_TYPE = "ERR Operation against a key holding the wrong kind of value";
+	static final String ERR_NOT_INTEGER = "ERR value is not an integer or out of range";
+	static final String ERR_NOT_DOUBLE = "ERR value is not a double";
+	static final String ERR_NO_SUCH_KEY = "ERR no such key";
+	static final String ERR_SYNTAX = "ERR syntax error";
+	
+	/** command name to command -- first mapping wins for commands sharing a name (e.g. SORT$STORE) */
+	private static final Map<String, Command> commands = new HashMap<String, Command>();
+	static {
+		for(Command cmd : Command.values()){
+			String name = new String(cmd.bytes, LoopbackProtocol.CHARSET);
+			if(!commands.containsKey(name))
+				commands.put(name, cmd);
+		}
+	}
+	
+	private final List<Map<String, Object>>	dbs = new ArrayList<Map<String, Object>>(DB_COUNT);
+	private final List<Map<String, Long>>	expires = new ArrayList<Map<String, Long>>(DB_COUNT);
+	private final long					startTime = System.currentTimeMillis();
+	private final Random				random = new Random();
+	private long						commandCnt;
+	private int							clientCnt;
+	/** channel subscribers, by channel */
+	private final Map<String, Set<Client>>	subscribers = new HashMap<String, Set<Client>>();
+	/** pattern subscribers, by pattern */
+	private final Map<String, Set<Client>>	psubscribers = new LinkedHashMap<String, Set<Client>>();
+	/** MONITOR connections */
+	private final Set<Client>				monitors = new LinkedHashSet<Client>();
+	/** connections blocked on a list pop, in blocking order */
+	private final Set<Client>				blocked = new LinkedHashSet<Client>();
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	public LoopbackDataset () {
+		for(int i=0; i<DB_COUNT; i++){
+			dbs.add(new HashMap<String, Object>());
+			expires.add(new HashMap<String, Long>());
+		}
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/** @return number of commands executed */
+	public long getCommandCount () { return commandCnt; }
+	
+	/**
+	 * Executes the request and encodes its reply.
+	 * @param client the issuing connection's state
+	 * @param argv request args -- argv[0] is the command name
+	 * @param reply
+	 */
+	public void execute (Client client, byte[][] argv, LoopbackProtocol.Reply reply) {
+		commandCnt++;
+		if(!client.registered){
+			client.registered = true;
+			clientCnt++;
+		}
+		if(argv.length == 0) {
+			reply.error("ERR empty request");
+			return;
+		}
+		String name = str(argv[0]).toUpperCase();
+		Command cmd = commands.get(name);
+		if(null == cmd) {
+			if(null != client.multi) client.multiFailed = true;
+			reply.error("ERR unknown command '" + name + "'");
+			return;
+		}
+		if(null != client.multi && cmd != Command.MULTI && cmd != Command.EXEC && cmd != Command.DISCARD) {
+			client.multi.add(argv);
+			reply.status("QUEUED");
+			return;
+		}
+		if(!monitors.isEmpty() && cmd != Command.MONITOR && !client.monitor)
+			feed(client, argv);
+		String[] args = new String[argv.length - 1];
+		for(int i=0; i<args.length; i++)
+			args[i] = str(argv[i+1]);
+		
+		try {
+			execute(client, cmd, args, reply);
+		}
+		catch (WrongTypeException e){
+			reply.error(ERR_WRONG_TYPE);
+		}
+		catch (NumberFormatException e){
+			reply.error(ERR_NOT_INTEGER);
+		}
+		catch (ArrayIndexOutOfBoundsException e){
+			reply.error("ERR wrong number of arguments for '" + name.toLowerCase() + "' command");
+		}
+		if(!blocked.isEmpty())
+			serveBlocked();
+	}
+	
+	/** @return true if connections are blocked on list pops */
+	public boolean hasBlocked () { return !blocked.isEmpty(); }
+	
+	/**
+	 * Replies nil to the blocked list pops that have timed out.  The replies
+	 * are pushed to the blocked connections.
+	 * @param now current time in msecs
+	 */
+	public void expireBlocked (long now) {
+		for(Iterator<Client> iter = blocked.iterator(); iter.hasNext(); ){
+			Client client = iter.next();
+			if(client.blocked.deadline == 0 || client.blocked.deadline > now) 
+				continue;
+			client.blocked.reply(client.pushed(), null);
+			client.blocked = null;
+			iter.remove();
+		}
+	}
+	
+	/**
+	 * Releases the state of a closed connection -- e.g. its subscriptions.
+	 * @param client
+	 */
+	public void disconnect (Client client) {
+		for(String channel : client.channels) unregister(subscribers, channel, client);
+		for(String pattern : client.patterns) unregister(psubscribers, pattern, client);
+		client.channels.clear();
+		client.patterns.clear();
+		monitors.remove(client);
+		blocked.remove(client);
+		client.blocked = null;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	private void execute (Client client, Command cmd, String[] a, LoopbackProtocol.Reply reply) {
+		final Map<String, Object> db = db(client);
+		switch (cmd) {
+		
+		/* ------------------------------- connection & server --------- */
+		
+		case PING:
+			if(client.isSubscribed()) reply.multiBulkCount(2).bulk("pong").bulk("");
+			else reply.status("PONG");
+			break;
+		case AUTH:		reply.status("OK"); break;
+		case ECHO:		reply.bulk(a[0]); break;
+		case QUIT:
+		case SHUTDOWN:	client.close(); break;
+		case SELECT: {
+			int index = Integer.parseInt(a[0]);
+			if(index < 0 || index >= DB_COUNT) { reply.error("ERR invalid DB index"); break; }
+			client.db = index;
+			reply.status("OK");
+			break;
+		}
+		case FLUSHDB:	db.clear(); expires.get(client.db).clear(); reply.status("OK"); break;
+		case FLUSHALL:
+			for(int i=0; i<DB_COUNT; i++) { dbs.get(i).clear(); expires.get(i).clear(); }
+			reply.status("OK");
+			break;
+		case DBSIZE:	expireAll(client.db); reply.number(db.size()); break;
+		case SAVE:		reply.status("OK"); break;
+		case BGSAVE:	reply.status("Background saving started"); break;
+		case BGREWRITEAOF:	reply.status("Background append only file rewriting started"); break;
+		case LASTSAVE:	reply.number(startTime / 1000); break;
+		case SLAVEOF:	reply.status("OK"); break;
+		case INFO:		reply.bulk(info()); break;
+		case MONITOR:
+			client.monitor = true;
+			monitors.add(client);
+			reply.status("OK");
+			break;
+		case DEBUG: {
+			if(!"OBJECT".equalsIgnoreCase(a[0])) { reply.error(ERR_SYNTAX); break; }
+			Object value = lookup(client, a[1]);
+			if(null == value) { reply.error(ERR_NO_SUCH_KEY); break; }
+			int length = value instanceof String ? ((String) value).length() : 0;
+			reply.status("Value at:0x0 refcount:1 encoding:raw serializedlength:" + length + " lru:0 lru_seconds_idle:0");
+			break;
+		}
+		case MULTI: 
+			if(null != client.multi) { reply.error("ERR MULTI calls can not be nested"); break; }
+			client.multi = new ArrayList<byte[][]>();
+			client.multiFailed = false;
+			reply.status("OK");
+			break;
+		case DISCARD:
+			if(null == client.multi) { reply.error("ERR DISCARD without MULTI"); break; }
+			client.multi = null;
+			reply.status("OK");
+			break;
+		case EXEC: {
+			if(null == client.multi) { reply.error("ERR EXEC without MULTI"); break; }
+			List<byte[][]> queued = client.multi;
+			client.multi = null;
+			if(client.multiFailed) { reply.error("EXECABORT Transaction discarded because of previous errors."); break; }
+			reply.multiBulkCount(queued.size());
+			client.exec = true;
+			try {
+				for(byte[][] queuedArgv : queued)
+					execute(client, queuedArgv, reply);
+			}
+			finally {
+				client.exec = false;
+			}
+			break;
+		}
+		
+		/* ------------------------------- publish/subscribe --------- */
+		
+		case SUBSCRIBE:
+		case PSUBSCRIBE: {
+			if(a.length == 0) throw new ArrayIndexOutOfBoundsException();
+			boolean isPattern = cmd == Command.PSUBSCRIBE;
+			for(String name : a) {
+				if((isPattern ? client.patterns : client.channels).add(name)) {
+					Map<String, Set<Client>> registry = isPattern ? psubscribers : subscribers;
+					Set<Client> clients = registry.get(name);
+					if(null == clients) registry.put(name, clients = new LinkedHashSet<Client>());
+					clients.add(client);
+				}
+				replySubscription(client, cmd, name, reply);
+			}
+			break;
+		}
+		case UNSUBSCRIBE:
+		case PUNSUBSCRIBE: {
+			boolean isPattern = cmd == Command.PUNSUBSCRIBE;
+			Set<String> subscribed = isPattern ? client.patterns : client.channels;
+			List<String> names = a.length > 0 ? Arrays.asList(a) : new ArrayList<String>(subscribed);
+			if(names.isEmpty()) 
+				replySubscription(client, cmd, null, reply);
+			for(String name : names) {
+				if(subscribed.remove(name)) 
+					unregister(isPattern ? psubscribers : subscribers, name, client);
+				replySubscription(client, cmd, name, reply);
+			}
+			break;
+		}
+		case PUBLISH:	reply.number(publish(a[0], a[1])); break;
+		
+		/* ------------------------------- key space --------- */
+		
+		case EXISTS:	reply.bool(lookup(client, a[0]) != null); break;
+		case DEL: {
+			int cnt = 0;
+			for(String key : a) if(remove(client, key)) cnt++;
+			reply.number(cnt);
+			break;
+		}
+		case TYPE:		reply.status(typeOf(lookup(client, a[0]))); break;
+		case KEYS: {
+			expireAll(client.db);
+			Pattern pattern = glob(a[0]);
+			List<String> keys = new ArrayList<String>();
+			for(String key : db.keySet()) if(pattern.matcher(key).matches()) keys.add(key);
+			reply.multiBulk(keys);
+			break;
+		}
+		case RANDOMKEY: {
+			expireAll(client.db);
+			if(db.isEmpty()) { reply.bulk(null); break; }
+			int n = random.nextInt(db.size());
+			Iterator<String> iter = db.keySet().iterator();
+			while(n-- > 0) iter.next();
+			reply.bulk(iter.next());
+			break;
+		}
+		case RENAME:
+		case RENAMENX: {
+			Object value = lookup(client, a[0]);
+			if(null == value) { reply.error(ERR_NO_SUCH_KEY); break; }
+			if(a[0].equals(a[1])) { reply.error("ERR source and destination objects are the same"); break; }
+			if(cmd == Command.RENAMENX && lookup(client, a[1]) != null) { reply.bool(false); break; }
+			remove(client, a[0]);
+			remove(client, a[1]);
+			db.put(a[1], value);
+			if(cmd == Command.RENAME) reply.status("OK"); else reply.bool(true);
+			break;
+		}
+		case MOVE: {
+			int index = Integer.parseInt(a[1]);
+			if(index < 0 || index >= DB_COUNT) { reply.error("ERR index out of range"); break; }
+			Object value = lookup(client, a[0]);
+			if(null == value || index == client.db || dbs.get(index).containsKey(a[0])) { reply.bool(false); break; }
+			remove(client, a[0]);
+			dbs.get(index).put(a[0], value);
+			reply.bool(true);
+			break;
+		}
+		case EXPIRE:
+		case EXPIREAT: {
+			if(lookup(client, a[0]) == null) { reply.bool(false); break; }
+			long t = Long.parseLong(a[1]) * 1000;
+			expires.get(client.db).put(a[0], cmd == Command.EXPIRE ? System.currentTimeMillis() + t : t);
+			reply.bool(true);
+			break;
+		}
+		case TTL: {
+			Long expireAt = lookup(client, a[0]) != null ? expires.get(client.db).get(a[0]) : null;
+			reply.number(null == expireAt ? -1 : Math.max(0, (expireAt - System.currentTimeMillis()) / 1000));
+			break;
+		}
+		case SORT:		sort(client, a, reply); break;
+		
+		/* ------------------------------- strings --------- */
+		
+		case SET:		set(client, a[0], a[1]); reply.status("OK"); break;
+		case SETNX: {
+			boolean absent = lookup(client, a[0]) == null;
+			if(absent) set(client, a[0], a[1]);
+			reply.bool(absent);
+			break;
+		}
+		case GET:		reply.bulk(string(client, a[0])); break;
+		case GETSET: {
+			String old = string(client, a[0]);
+			set(client, a[0], a[1]);
+			reply.bulk(old);
+			break;
+		}
+		case MGET: {
+			List<String> values = new ArrayList<String>(a.length);
+			for(String key : a) {
+				Object value = lookup(client, key);
+				values.add(value instanceof String ? (String) value : null);
+			}
+			reply.multiBulk(values);
+			break;
+		}
+		case MSET:
+		case MSETNX: {
+			if(a.length % 2 != 0) throw new ArrayIndexOutOfBoundsException();
+			if(cmd == Command.MSETNX) {
+				boolean anyExists = false;
+				for(int i=0; i<a.length; i+=2) anyExists |= lookup(client, a[i]) != null;
+				if(anyExists) { reply.bool(false); break; }
+			}
+			for(int i=0; i<a.length; i+=2) set(client, a[i], a[i+1]);
+			if(cmd == Command.MSET) reply.status("OK"); else reply.bool(true);
+			break;
+		}
+		case INCR:		reply.number(incrBy(client, a[0], 1)); break;
+		case DECR:		reply.number(incrBy(client, a[0], -1)); break;
+		case INCRBY:	reply.number(incrBy(client, a[0], Long.parseLong(a[1]))); break;
+		case DECRBY:	reply.number(incrBy(client, a[0], -Long.parseLong(a[1]))); break;
+		case APPEND: {
+			String value = string(client, a[0]);
+			value = null == value ? a[1] : value + a[1];
+			db.put(a[0], value);
+			reply.number(value.length());
+			break;
+		}
+		case SUBSTR: {
+			String value = string(client, a[0]);
+			if(null == value) { reply.bulk(""); break; }
+			int[] range = range(Integer.parseInt(a[1]), Integer.parseInt(a[2]), value.length());
+			reply.bulk(null == range ? "" : value.substring(range[0], range[1] + 1));
+			break;
+		}
+		
+		/* ------------------------------- lists --------- */
+		
+		case RPUSH:
+		case LPUSH:
+		case RPUSHX:
+		case LPUSHX: {
+			boolean mustExist = cmd == Command.RPUSHX || cmd == Command.LPUSHX;
+			LinkedList<String> list = list(client, a[0], !mustExist);
+			if(null == list) { reply.number(0); break; }
+			if(cmd == Command.RPUSH || cmd == Command.RPUSHX) list.addLast(a[1]); else list.addFirst(a[1]);
+			reply.number(list.size());
+			break;
+		}
+		case LINSERT: {
+			LinkedList<String> list = list(client, a[0], false);
+			if(null == list) { reply.number(0); break; }
+			boolean before = "BEFORE".equalsIgnoreCase(a[1]);
+			if(!before && !"AFTER".equalsIgnoreCase(a[1])) { reply.error(ERR_SYNTAX); break; }
+			int index = list.indexOf(a[2]);
+			if(index < 0) { reply.number(-1); break; }
+			list.add(before ? index : index + 1, a[3]);
+			reply.number(list.size());
+			break;
+		}
+		case LLEN: {
+			List<String> list = list(client, a[0], false);
+			reply.number(null == list ? 0 : list.size());
+			break;
+		}
+		case LRANGE: {
+			List<String> list = list(client, a[0], false);
+			int[] range = null == list ? null : range(Integer.parseInt(a[1]), Integer.parseInt(a[2]), list.size());
+			reply.multiBulk(null == range ? Collections.<String>emptyList() : list.subList(range[0], range[1] + 1));
+			break;
+		}
+		case LTRIM: {
+			LinkedList<String> list = list(client, a[0], false);
+			if(null != list) {
+				int[] range = range(Integer.parseInt(a[1]), Integer.parseInt(a[2]), list.size());
+				List<String> kept = null == range ? new ArrayList<String>() : new ArrayList<String>(list.subList(range[0], range[1] + 1));
+				list.clear();
+				list.addAll(kept);
+				removeIfEmpty(client, a[0], list);
+			}
+			reply.status("OK");
+			break;
+		}
+		case LINDEX: {
+			List<String> list = list(client, a[0], false);
+			int index = null == list ? -1 : index(Integer.parseInt(a[1]), list.size());
+			reply.bulk(index < 0 ? null : list.get(index));
+			break;
+		}
+		case LSET: {
+			List<String> list = list(client, a[0], false);
+			if(null == list) { reply.error(ERR_NO_SUCH_KEY); break; }
+			int index = index(Integer.parseInt(a[1]), list.size());
+			if(index < 0) { reply.error("ERR index out of range"); break; }
+			list.set(index, a[2]);
+			reply.status("OK");
+			break;
+		}
+		case LREM: {
+			LinkedList<String> list = list(client, a[0], false);
+			if(null == list) { reply.number(0); break; }
+			int count = Integer.parseInt(a[1]);
+			int removed = 0;
+			ListIterator<String> iter = count >= 0 ? list.listIterator() : list.listIterator(list.size());
+			while(count >= 0 ? iter.hasNext() : iter.hasPrevious()){
+				String v = count >= 0 ? iter.next() : iter.previous();
+				if(v.equals(a[2])) {
+					iter.remove();
+					if(++removed == Math.abs(count)) break;
+				}
+			}
+			removeIfEmpty(client, a[0], list);
+			reply.number(removed);
+			break;
+		}
+		case LPOP:
+		case RPOP: {
+			LinkedList<String> list = list(client, a[0], false);
+			String value = null;
+			if(null != list) {
+				value = cmd == Command.LPOP ? list.removeFirst() : list.removeLast();
+				removeIfEmpty(client, a[0], list);
+			}
+			reply.bulk(value);
+			break;
+		}
+		case RPOPLPUSH: {
+			LinkedList<String> src = list(client, a[0], false);
+			if(null == src) { reply.bulk(null); break; }
+			LinkedList<String> dest = list(client, a[1], true);
+			String value = src.removeLast();
+			dest.addFirst(value);
+			removeIfEmpty(client, a[0], src);
+			reply.bulk(value);
+			break;
+		}
+		case BLPOP:
+		case BRPOP:
+		case BRPOPLPUSH: {
+			int timeout = Integer.parseInt(a[a.length - 1]);
+			if(timeout < 0) { reply.error("ERR timeout is negative"); break; }
+			Blocked pop = cmd == Command.BRPOPLPUSH 
+				? new Blocked(cmd, new String[]{a[0]}, a[1], timeout)
+				: new Blocked(cmd, Arrays.copyOf(a, a.length - 1), null, timeout);
+			if(pop.keys.length == 0) throw new ArrayIndexOutOfBoundsException();
+			String[] popped = pop(client, pop);
+			if(null != popped) { pop.reply(reply, popped); break; }
+			if(client.exec) { pop.reply(reply, null); break; }
+			client.blocked = pop;
+			blocked.add(client);
+			break;
+		}
+		
+		/* ------------------------------- sets --------- */
+		
+		case SADD:		reply.bool(set(client, a[0], true).add(a[1])); break;
+		case SREM: {
+			Set<String> set = set(client, a[0], false);
+			boolean removed = null != set && set.remove(a[1]);
+			removeIfEmpty(client, a[0], set);
+			reply.bool(removed);
+			break;
+		}
+		case SCARD: {
+			Set<String> set = set(client, a[0], false);
+			reply.number(null == set ? 0 : set.size());
+			break;
+		}
+		case SISMEMBER: {
+			Set<String> set = set(client, a[0], false);
+			reply.bool(null != set && set.contains(a[1]));
+			break;
+		}
+		case SMEMBERS: {
+			Set<String> set = set(client, a[0], false);
+			reply.multiBulk(null == set ? Collections.<String>emptySet() : set);
+			break;
+		}
+		case SMOVE: {
+			Set<String> src = set(client, a[0], false);
+			if(null == src || !src.contains(a[2])) { reply.bool(false); break; }
+			Set<String> dest = set(client, a[1], true);
+			src.remove(a[2]);
+			dest.add(a[2]);
+			removeIfEmpty(client, a[0], src);
+			reply.bool(true);
+			break;
+		}
+		case SRANDMEMBER:
+		case SPOP: {
+			Set<String> set = set(client, a[0], false);
+			if(null == set) { reply.bulk(null); break; }
+			int n = random.nextInt(set.size());
+			Iterator<String> iter = set.iterator();
+			while(n-- > 0) iter.next();
+			String member = iter.next();
+			if(cmd == Command.SPOP) {
+				iter.remove();
+				removeIfEmpty(client, a[0], set);
+			}
+			reply.bulk(member);
+			break;
+		}
+		case SINTER:
+		case SUNION:
+		case SDIFF:		reply.multiBulk(setOp(client, cmd, a, 0)); break;
+		case SINTERSTORE:
+		case SUNIONSTORE:
+		case SDIFFSTORE: {
+			Set<String> result = setOp(client, cmd, a, 1);
+			remove(client, a[0]);
+			if(!result.isEmpty()) db.put(a[0], result);
+			reply.number(result.size());
+			break;
+		}
+		
+		/* ------------------------------- sorted sets --------- */
+		
+		case ZADD:		reply.bool(zset(client, a[0], true).add(a[2], parseDouble(a[1]))); break;
+		case ZINCRBY: {
+			ZSet zset = zset(client, a[0], true);
+			Double score = zset.scores.get(a[2]);
+			double updated = (null == score ? 0 : score) + parseDouble(a[1]);
+			zset.add(a[2], updated);
+			reply.bulk(format(updated));
+			break;
+		}
+		case ZREM: {
+			ZSet zset = zset(client, a[0], false);
+			boolean removed = null != zset && zset.remove(a[1]);
+			removeIfEmpty(client, a[0], zset);
+			reply.bool(removed);
+			break;
+		}
+		case ZCARD: {
+			ZSet zset = zset(client, a[0], false);
+			reply.number(null == zset ? 0 : zset.scores.size());
+			break;
+		}
+		case ZSCORE: {
+			ZSet zset = zset(client, a[0], false);
+			Double score = null == zset ? null : zset.scores.get(a[1]);
+			reply.bulk(null == score ? null : format(score));
+			break;
+		}
+		case ZRANK:
+		case ZREVRANK: {
+			ZSet zset = zset(client, a[0], false);
+			int rank = null == zset ? -1 : zset.rank(a[1]);
+			if(rank < 0) { reply.bulk(null); break; }
+			reply.number(cmd == Command.ZRANK ? rank : zset.scores.size() - 1 - rank);
+			break;
+		}
+		case ZRANGE:
+		case ZREVRANGE: {
+			ZSet zset = zset(client, a[0], false);
+			boolean withScores = a.length > 3 && "WITHSCORES".equalsIgnoreCase(a[3]);
+			List<ZEntry> entries = null == zset ? new ArrayList<ZEntry>() : zset.entries();
+			if(cmd == Command.ZREVRANGE) Collections.reverse(entries);
+			int[] range = range(Integer.parseInt(a[1]), Integer.parseInt(a[2]), entries.size());
+			replyEntries(null == range ? Collections.<ZEntry>emptyList() : entries.subList(range[0], range[1] + 1), withScores, reply);
+			break;
+		}
+		case ZRANGEBYSCORE: {
+			ZSet zset = zset(client, a[0], false);
+			boolean withScores = false;
+			int offset = 0, count = -1;
+			for(int i=3; i<a.length; i++){
+				if("WITHSCORES".equalsIgnoreCase(a[i])) withScores = true;
+				else if("LIMIT".equalsIgnoreCase(a[i])) { offset = Integer.parseInt(a[++i]); count = Integer.parseInt(a[++i]); }
+				else { reply.error(ERR_SYNTAX); return; }
+			}
+			List<ZEntry> entries = byScore(zset, a[1], a[2]);
+			if(offset > 0 || count >= 0) {
+				int from = Math.min(offset, entries.size());
+				int to = count < 0 ? entries.size() : Math.min(entries.size(), from + count);
+				entries = entries.subList(from, to);
+			}
+			replyEntries(entries, withScores, reply);
+			break;
+		}
+		case ZCOUNT:	reply.number(byScore(zset(client, a[0], false), a[1], a[2]).size()); break;
+		case ZREMRANGEBYSCORE:
+		case ZREMRANGEBYRANK: {
+			ZSet zset = zset(client, a[0], false);
+			if(null == zset) { reply.number(0); break; }
+			List<ZEntry> entries;
+			if(cmd == Command.ZREMRANGEBYSCORE) {
+				entries = byScore(zset, a[1], a[2]);
+			}
+			else {
+				entries = zset.entries();
+				int[] range = range(Integer.parseInt(a[1]), Integer.parseInt(a[2]), entries.size());
+				entries = null == range ? Collections.<ZEntry>emptyList() : entries.subList(range[0], range[1] + 1);
+			}
+			for(ZEntry e : new ArrayList<ZEntry>(entries)) zset.remove(e.member);
+			removeIfEmpty(client, a[0], zset);
+			reply.number(entries.size());
+			break;
+		}
+		
+		/* ------------------------------- hashes --------- */
+		
+		case HSET:		reply.bool(hash(client, a[0], true).put(a[1], a[2]) == null); break;
+		case HGET: {
+			Map<String, String> hash = hash(client, a[0], false);
+			reply.bulk(null == hash ? null : hash.get(a[1]));
+			break;
+		}
+		case HSETNX: {
+			Map<String, String> hash = hash(client, a[0], true);
+			boolean set = !hash.containsKey(a[1]);
+			if(set) hash.put(a[1], a[2]);
+			reply.bool(set);
+			break;
+		}
+		case HMSET: {
+			if(a.length < 3 || a.length % 2 != 1) throw new ArrayIndexOutOfBoundsException();
+			Map<String, String> hash = hash(client, a[0], true);
+			for(int i=1; i<a.length; i+=2) hash.put(a[i], a[i+1]);
+			reply.status("OK");
+			break;
+		}
+		case HMGET: {
+			if(a.length < 2) throw new ArrayIndexOutOfBoundsException();
+			Map<String, String> hash = hash(client, a[0], false);
+			List<String> values = new ArrayList<String>(a.length - 1);
+			for(int i=1; i<a.length; i++) values.add(null == hash ? null : hash.get(a[i]));
+			reply.multiBulk(values);
+			break;
+		}
+		case HINCRBY: {
+			long delta = Long.parseLong(a[2]);
+			Map<String, String> hash = hash(client, a[0], true);
+			String value = hash.get(a[1]);
+			long n = (null == value ? 0 : Long.parseLong(value)) + delta;
+			hash.put(a[1], Long.toString(n));
+			reply.number(n);
+			break;
+		}
+		case HEXISTS: {
+			Map<String, String> hash = hash(client, a[0], false);
+			reply.bool(null != hash && hash.containsKey(a[1]));
+			break;
+		}
+		case HDEL: {
+			Map<String, String> hash = hash(client, a[0], false);
+			boolean removed = null != hash && hash.remove(a[1]) != null;
+			removeIfEmpty(client, a[0], hash);
+			reply.bool(removed);
+			break;
+		}
+		case HLEN: {
+			Map<String, String> hash = hash(client, a[0], false);
+			reply.number(null == hash ? 0 : hash.size());
+			break;
+		}
+		case HKEYS:
+		case HVALS:
+		case HGETALL: {
+			Map<String, String> hash = hash(client, a[0], false);
+			if(null == hash) { reply.multiBulkCount(0); break; }
+			if(cmd == Command.HKEYS) reply.multiBulk(hash.keySet());
+			else if(cmd == Command.HVALS) reply.multiBulk(hash.values());
+			else {
+				reply.multiBulkCount(hash.size() * 2);
+				for(Map.Entry<String, String> e : hash.entrySet()) reply.bulk(e.getKey()).bulk(e.getValue());
+			}
+			break;
+		}
+		
+		default:
+			reply.error("ERR " + cmd.name() + " not supported by the loopback server");
+		}
+	}
+	
+	/* ------------------------------- sort --------- */
+	
+	private void sort (Client client, String[] a, LoopbackProtocol.Reply reply) {
+		String byPattern = null;
+		List<String> getPatterns = new ArrayList<String>();
+		boolean desc = false, alpha = false;
+		int offset = 0, count = -1;
+		String store = null;
+		for(int i=1; i<a.length; i++){
+			String opt = a[i].toUpperCase();
+			if(opt.equals("BY")) byPattern = a[++i];
+			else if(opt.equals("GET")) getPatterns.add(a[++i]);
+			else if(opt.equals("LIMIT")) { offset = Integer.parseInt(a[++i]); count = Integer.parseInt(a[++i]); }
+			else if(opt.equals("ASC")) desc = false;
+			else if(opt.equals("DESC")) desc = true;
+			else if(opt.equals("ALPHA")) alpha = true;
+			else if(opt.equals("STORE")) store = a[++i];
+			else { reply.error(ERR_SYNTAX); return; }
+		}
+		
+		Object value = lookup(client, a[0]);
+		List<String> elements;
+		if(null == value) elements = new ArrayList<String>();
+		else if(value instanceof List<?> || value instanceof Set<?>) elements = new ArrayList<String>(castCollection(value));
+		else if(value instanceof ZSet) elements = new ArrayList<String>(((ZSet) value).scores.keySet());
+		else throw new WrongTypeException();
+		
+		boolean nosort = null != byPattern && byPattern.indexOf('*') < 0;
+		if(!nosort) {
+			final Map<String, String> weights = new HashMap<String, String>();
+			for(String e : elements) 
+				weights.put(e, null == byPattern ? e : lookupPattern(client, byPattern, e));
+			if(alpha) {
+				Collections.sort(elements, new Comparator<String>() {
+					public int compare (String e1, String e2) {
+						String w1 = weights.get(e1), w2 = weights.get(e2);
+						if(null == w1) return null == w2 ? 0 : -1;
+						return null == w2 ? 1 : w1.compareTo(w2);
+					}
+				});
+			}
+			else {
+				final Map<String, Double> scores = new HashMap<String, Double>();
+				try {
+					for(String e : elements) {
+						String w = weights.get(e);
+						scores.put(e, null == w ? 0 : Double.parseDouble(w));
+					}
+				}
+				catch (NumberFormatException e) {
+					reply.error("ERR One or more scores can't be converted into double");
+					return;
+				}
+				Collections.sort(elements, new Comparator<String>() {
+					public int compare (String e1, String e2) { return scores.get(e1).compareTo(scores.get(e2)); }
+				});
+			}
+			if(desc) Collections.reverse(elements);
+		}
+		if(offset > 0 || count >= 0) {
+			int from = Math.min(Math.max(offset, 0), elements.size());
+			int to = count < 0 ? elements.size() : Math.min(elements.size(), from + count);
+			elements = elements.subList(from, to);
+		}
+		
+		List<String> result = elements;
+		if(!getPatterns.isEmpty()) {
+			result = new ArrayList<String>(elements.size() * getPatterns.size());
+			for(String e : elements)
+				for(String p : getPatterns)
+					result.add(p.equals("#") ? e : lookupPattern(client, p, e));
+		}
+		
+		if(null != store) {
+			remove(client, store);
+			LinkedList<String> list = new LinkedList<String>();
+			for(String v : result) list.add(null == v ? "" : v);
+			if(!list.isEmpty()) db(client).put(store, list);
+			reply.number(list.size());
+		}
+		else {
+			reply.multiBulk(result);
+		}
+	}
+	
+	/** @return the string value of the key obtained by substituting the first '*' in pattern */
+	private String lookupPattern (Client client, String pattern, String element) {
+		int star = pattern.indexOf('*');
+		if(star < 0) return null;
+		String key = pattern.substring(0, star) + element + pattern.substring(star + 1);
+		int arrow = key.indexOf("->");
+		if(arrow > 0) {
+			Object hash = lookup(client, key.substring(0, arrow));
+			return hash instanceof Map<?, ?> ? castHash(hash).get(key.substring(arrow + 2)) : null;
+		}
+		Object value = lookup(client, key);
+		return value instanceof String ? (String) value : null;
+	}
+	
+	/* ------------------------------- key access --------- */
+	
+	private Map<String, Object> db (Client client) { return dbs.get(client.db); }
+	
+	/** @return the (unexpired) value of the key or null */
+	private Object lookup (Client client, String key) {
+		Long expireAt = expires.get(client.db).get(key);
+		if(null != expireAt && expireAt <= System.currentTimeMillis()) 
+			remove(client, key);
+		return db(client).get(key);
+	}
+	
+	private boolean remove (Client client, String key) {
+		expires.get(client.db).remove(key);
+		return db(client).remove(key) != null;
+	}
+	
+	private void expireAll (int index) {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Long>> iter = expires.get(index).entrySet().iterator();
+		while(iter.hasNext()){
+			Map.Entry<String, Long> e = iter.next();
+			if(e.getValue() <= now) {
+				dbs.get(index).remove(e.getKey());
+				iter.remove();
+			}
+		}
+	}
+	
+	private void removeIfEmpty (Client client, String key, Object value) {
+		if(null == value) return;
+		boolean empty = value instanceof Collection<?> ? ((Collection<?>) value).isEmpty() 
+				: value instanceof Map<?, ?> ? ((Map<?, ?>) value).isEmpty() 
+				: value instanceof ZSet && ((ZSet) value).scores.isEmpty();
+		if(empty) remove(client, key);
+	}
+	
+	/** setting a string value clears any expire -- as in Redis */
+	private void set (Client client, String key, String value) {
+		expires.get(client.db).remove(key);
+		db(client).put(key, value);
+	}
+	
+	private String string (Client client, String key) {
+		Object value = lookup(client, key);
+		if(null != value && !(value instanceof String)) throw new WrongTypeException();
+		return (String) value;
+	}
+	
+	private long incrBy (Client client, String key, long delta) {
+		String value = string(client, key);
+		long n = (null == value ? 0 : Long.parseLong(value)) + delta;
+		db(client).put(key, Long.toString(n));
+		return n;
+	}
+	
+	/** 
+	 * Pops for a blocking list pop.
+	 * @return the key and element popped, or null if the lists are empty 
+	 */
+	private String[] pop (Client client, Blocked pop) {
+		if(null != pop.dest) list(client, pop.dest, false);
+		for(String key : pop.keys){
+			LinkedList<String> list = list(client, key, false);
+			if(null == list) continue;
+			String value = pop.cmd == Command.BLPOP ? list.removeFirst() : list.removeLast();
+			removeIfEmpty(client, key, list);
+			if(null != pop.dest) list(client, pop.dest, true).addFirst(value);
+			return new String[]{key, value};
+		}
+		return null;
+	}
+	
+	/** serves the blocked connections, in blocking order, from the lists pushed to */
+	private void serveBlocked () {
+		for(Iterator<Client> iter = blocked.iterator(); iter.hasNext(); ){
+			Client client = iter.next();
+			try {
+				String[] popped = pop(client, client.blocked);
+				if(null == popped) continue;
+				client.blocked.reply(client.pushed(), popped);
+			}
+			catch (WrongTypeException e) {
+				client.pushed().error(ERR_WRONG_TYPE);
+			}
+			client.blocked = null;
+			iter.remove();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private LinkedList<String> list (Client client, String key, boolean create) {
+		Object value = lookup(client, key);
+		if(null == value && create) db(client).put(key, value = new LinkedList<String>());
+		if(null != value && !(value instanceof LinkedList<?>)) throw new WrongTypeException();
+		return (LinkedList<String>) value;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Set<String> set (Client client, String key, boolean create) {
+		Object value = lookup(client, key);
+		if(null == value && create) db(client).put(key, value = new LinkedHashSet<String>());
+		if(null != value && !(value instanceof Set<?>)) throw new WrongTypeException();
+		return (Set<String>) value;
+	}
+	
+	private ZSet zset (Client client, String key, boolean create) {
+		Object value = lookup(client, key);
+		if(null == value && create) db(client).put(key, value = new ZSet());
+		if(null != value && !(value instanceof ZSet)) throw new WrongTypeException();
+		return (ZSet) value;
+	}
+	
+	private Map<String, String> hash (Client client, String key, boolean create) {
+		Object value = lookup(client, key);
+		if(null == value && create) db(client).put(key, value = new LinkedHashMap<String, String>());
+		if(null != value && !(value instanceof Map<?, ?>)) throw new WrongTypeException();
+		return castHash(value);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<String, String> castHash (Object value) { return (Map<String, String>) value; }
+	
+	@SuppressWarnings("unchecked")
+	private static Collection<String> castCollection (Object value) { return (Collection<String>) value; }
+	
+	private Set<String> setOp (Client client, Command cmd, String[] keys, int from) {
+		Set<String> result = null;
+		for(int i=from; i<keys.length; i++){
+			Set<String> set = set(client, keys[i], false);
+			if(null == result) {
+				result = null == set ? new LinkedHashSet<String>() : new LinkedHashSet<String>(set);
+			}
+			else if(cmd == Command.SINTER || cmd == Command.SINTERSTORE) {
+				if(null == set) result.clear(); else result.retainAll(set);
+			}
+			else if(cmd == Command.SUNION || cmd == Command.SUNIONSTORE) {
+				if(null != set) result.addAll(set);
+			}
+			else if(null != set) {
+				result.removeAll(set);
+			}
+		}
+		return null == result ? new LinkedHashSet<String>() : result;
+	}
+	
+	/* ------------------------------- helpers --------- */
+	
+	private static String typeOf (Object value) {
+		if(null == value) return "none";
+		if(value instanceof String) return "string";
+		if(value instanceof List<?>) return "list";
+		if(value instanceof Set<?>) return "set";
+		if(value instanceof ZSet) return "zset";
+		return "hash";
+	}
+	
+	/** @return the resolved inclusive [from, to] range or null if empty */
+	private static int[] range (int from, int to, int size) {
+		if(from < 0) from = Math.max(0, size + from);
+		if(to < 0) to = size + to;
+		if(to >= size) to = size - 1;
+		if(from > to || from >= size) return null;
+		return new int[]{from, to};
+	}
+	
+	/** @return the resolved index or -1 if out of range */
+	private static int index (int index, int size) {
+		if(index < 0) index = size + index;
+		return index < 0 || index >= size ? -1 : index;
+	}
+	
+	private static Pattern glob (String glob) {
+		StringBuilder regex = new StringBuilder();
+		for(int i=0; i<glob.length(); i++){
+			char c = glob.charAt(i);
+			switch (c) {
+			case '*': regex.append(".*"); break;
+			case '?': regex.append('.'); break;
+			case '[': 
+				int end = glob.indexOf(']', i);
+				if(end > i) { regex.append(glob.substring(i, end + 1)); i = end; break; }
+				regex.append("\\[");
+				break;
+			case '\\':
+				if(i + 1 < glob.length()) regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+				break;
+			default: regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+	
+	private static double parseDouble (String s) {
+		if(s.equalsIgnoreCase("+inf") || s.equalsIgnoreCase("inf")) return Double.POSITIVE_INFINITY;
+		if(s.equalsIgnoreCase("-inf")) return Double.NEGATIVE_INFINITY;
+		return Double.parseDouble(s);
+	}
+	
+	/** formats scores as Redis does -- integral values without a fraction */
+	static String format (double d) {
+		if(d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 1e15) 
+			return Long.toString((long) d);
+		return Double.toString(d);
+	}
+	
+	private static List<ZEntry> byScore (ZSet zset, String min, String max) {
+		List<ZEntry> result = new ArrayList<ZEntry>();
+		if(null == zset) return result;
+		boolean minExclusive = min.startsWith("("), maxExclusive = max.startsWith("(");
+		double lo = parseDouble(minExclusive ? min.substring(1) : min);
+		double hi = parseDouble(maxExclusive ? max.substring(1) : max);
+		for(ZEntry e : zset.ordered){
+			if(e.score < lo || (minExclusive && e.score == lo)) continue;
+			if(e.score > hi || (maxExclusive && e.score == hi)) break;
+			result.add(e);
+		}
+		return result;
+	}
+	
+	private static void replyEntries (List<ZEntry> entries, boolean withScores, LoopbackProtocol.Reply reply) {
+		reply.multiBulkCount(withScores ? entries.size() * 2 : entries.size());
+		for(ZEntry e : entries) {
+			reply.bulk(e.member);
+			if(withScores) reply.bulk(format(e.score));
+		}
+	}
+	
+	private String info () {
+		StringBuilder info = new StringBuilder();
+		info.append("redis_version:1.3.8\r\n");
+		info.append("arch_bits:64\r\n");
+		info.append("multiplexing_api:loopback\r\n");
+		info.append("uptime_in_seconds:").append((System.currentTimeMillis() - startTime) / 1000).append("\r\n");
+		info.append("uptime_in_days:0\r\n");
+		info.append("connected_clients:").append(clientCnt).append("\r\n");
+		info.append("connected_slaves:0\r\n");
+		info.append("used_memory:0\r\n");
+		info.append("changes_since_last_save:0\r\n");
+		info.append("bgsave_in_progress:0\r\n");
+		info.append("last_save_time:").append(startTime / 1000).append("\r\n");
+		info.append("total_connections_received:").append(clientCnt).append("\r\n");
+		info.append("total_commands_processed:").append(commandCnt).append("\r\n");
+		info.append("role:master\r\n");
+		for(int i=0; i<DB_COUNT; i++)
+			if(!dbs.get(i).isEmpty()) 
+				info.append("db").append(i).append(":keys=").append(dbs.get(i).size()).append(",expires=").append(expires.get(i).size()).append("\r\n");
+		return info.toString();
+	}
+	
+	private static String str (byte[] bytes) { return new String(bytes, LoopbackProtocol.CHARSET); }
+	
+	/** encodes the (un)subscribe confirmation -- name is null for an unsubscribe of none */
+	private static void replySubscription (Client client, Command cmd, String name, LoopbackProtocol.Reply reply) {
+		reply.multiBulkCount(3).bulk(cmd.code.toLowerCase()).bulk(name).number(client.channels.size() + client.patterns.size());
+	}
+	
+	private static void unregister (Map<String, Set<Client>> registry, String name, Client client) {
+		Set<Client> clients = registry.get(name);
+		if(null == clients) return;
+		clients.remove(client);
+		if(clients.isEmpty()) registry.remove(name);
+	}
+	
+	/**
+	 * Pushes the request to the MONITOR connections, per the Redis 2.6 feed format:
+	 * <code>+secs.micros [db address] "cmd" "arg" ...</code>
+	 */
+	private void feed (Client client, byte[][] argv) {
+		final long micros = System.currentTimeMillis() * 1000;
+		StringBuilder line = new StringBuilder(64)
+			.append(micros / 1000000).append('.').append(String.format("%06d", micros % 1000000))
+			.append(" [").append(client.db).append(' ').append(client.address).append(']');
+		for(byte[] arg : argv) {
+			line.append(" \"");
+			for(byte b : arg) {
+				switch (b) {
+				case '\\': line.append("\\\\"); break;
+				case '"':	line.append("\\\""); break;
+				case '\n':	line.append("\\n"); break;
+				case '\r':	line.append("\\r"); break;
+				case '\t':	line.append("\\t"); break;
+				case 7:		line.append("\\a"); break;
+				case '\b':	line.append("\\b"); break;
+				default:
+					if(b >= 0x20 && b < 0x7f) line.append((char) b);
+					else line.append(String.format("\\x%02x", b & 0xff));
+				}
+			}
+			line.append('"');
+		}
+		for(Client monitor : monitors)
+			monitor.pushed().status(line.toString());
+	}
+	
+	/** @return number of clients the message was pushed to */
+	private int publish (String channel, String message) {
+		int cnt = 0;
+		Set<Client> clients = subscribers.get(channel);
+		if(null != clients) {
+			for(Client client : clients) {
+				client.pushed().multiBulkCount(3).bulk("message").bulk(channel).bulk(message);
+				cnt++;
+			}
+		}
+		for(Map.Entry<String, Set<Client>> e : psubscribers.entrySet()) {
+			if(!glob(e.getKey()).matcher(channel).matches()) continue;
+			for(Client client : e.getValue()) {
+				client.pushed().multiBulkCount(4).bulk("pmessage").bulk(e.getKey()).bulk(channel).bulk(message);
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** Per connection state */
+	public static final class Client {
+		int		db = 0;
+		boolean	closed = false;
+		boolean	registered = false;
+		/** commands queued since MULTI -- null if not in a transaction */
+		List<byte[][]> multi = null;
+		/** a command was rejected since MULTI */
+		boolean	multiFailed = false;
+		/** subscribed channels */
+		final Set<String> channels = new LinkedHashSet<String>();
+		/** subscribed patterns */
+		final Set<String> patterns = new LinkedHashSet<String>();
+		/** remote address of the connection, as host:port */
+		String	address = "?";
+		/** connection is a MONITOR */
+		boolean	monitor = false;
+		/** messages published to the connection since last taken -- null if none */
+		LoopbackProtocol.Reply pushed = null;
+		/** the list pop the connection is blocked on -- null if not blocked */
+		Blocked	blocked = null;
+		/** executing the commands of a transaction -- list pops do not block */
+		boolean	exec = false;
+		
+		void close () { closed = true; }
+		
+		/** @return true if the connection is blocked on a list pop: its requests are not read */
+		public boolean isBlocked () { return null != blocked; }
+		
+		public boolean isClosed () { return closed; }
+		
+		boolean isSubscribed () { return !channels.isEmpty() || !patterns.isEmpty(); }
+		
+		LoopbackProtocol.Reply pushed () {
+			if(null == pushed) pushed = new LoopbackProtocol.Reply();
+			return pushed;
+		}
+		
+		/**
+		 * @return the messages published to the connection since last taken -- null if none
+		 */
+		public LoopbackProtocol.Reply takePushed () {
+			LoopbackProtocol.Reply taken = pushed;
+			pushed = null;
+			return taken;
+		}
+	}
+	
+	/** a blocking list pop */
+	static final class Blocked {
+		final Command	cmd;
+		final String[]	keys;
+		/** BRPOPLPUSH dest -- null for BLPOP and BRPOP */
+		final String	dest;
+		/** msecs -- 0 if the pop does not time out */
+		final long		deadline;
+		
+		Blocked (Command cmd, String[] keys, String dest, int timeout) {
+			this.cmd = cmd;
+			this.keys = keys;
+			this.dest = dest;
+			this.deadline = timeout == 0 ? 0 : System.currentTimeMillis() + timeout * 1000L;
+		}
+		
+		/** @param popped key and element -- null for the timeout's nil reply */
+		void reply (LoopbackProtocol.Reply reply, String[] popped) {
+			if(cmd == Command.BRPOPLPUSH) reply.bulk(null == popped ? null : popped[1]);
+			else if(null == popped) reply.multiBulkCount(-1);
+			else reply.multiBulkCount(2).bulk(popped[0]).bulk(popped[1]);
+		}
+	}
+	
+	/** raised on operations against a key holding the wrong kind of value */
+	@SuppressWarnings("serial")
+	static final class WrongTypeException extends RuntimeException { }
+	
+	/** sorted set entry */
+	static final class ZEntry {
+		final String member;
+		final double score;
+		ZEntry (String member, double score) {
+			this.member = member;
+			this.score = score;
+		}
+	}
+	
+	/** sorted set -- member scores and the score ordered entries */
+	static final class ZSet {
+		final Map<String, Double> scores = new HashMap<String, Double>();
+		final TreeSet<ZEntry> ordered = new TreeSet<ZEntry>(new Comparator<ZEntry>() {
+			public int compare (ZEntry e1, ZEntry e2) {
+				int c = Double.compare(e1.score, e2.score);
+				return c != 0 ? c : e1.member.compareTo(e2.member);
+			}
+		});
+		/** @return true if member was added, false if its score was updated */
+		boolean add (String member, double score) {
+			Double old = scores.put(member, score);
+			if(null != old) ordered.remove(new ZEntry(member, old));
+			ordered.add(new ZEntry(member, score));
+			return null == old;
+		}
+		boolean remove (String member) {
+			Double old = scores.remove(member);
+			if(null == old) return false;
+			ordered.remove(new ZEntry(member, old));
+			return true;
+		}
+		int rank (String member) {
+			Double score = scores.get(member);
+			if(null == score) return -1;
+			return ordered.headSet(new ZEntry(member, score)).size();
+		}
+		List<ZEntry> entries () { return new ArrayList<ZEntry>(ordered); }
+	}
+}
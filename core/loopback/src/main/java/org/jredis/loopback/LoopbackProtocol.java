@@ -0,0 +1,183 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.loopback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * Wire protocol support for the {@link LoopbackServer}: incremental parsing of
+ * (unified protocol) requests and encoding of replies.
+ * <p>
+ * Keys and values are handled as ISO-8859-1 {@link String}s by the dataset, which
+ * maps each byte to exactly one char, so binary data is preserved.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public final class LoopbackProtocol {
+	
+	/** byte preserving charset */
+	public static final Charset CHARSET = Charset.forName("ISO-8859-1");
+	
+	/** marks an incomplete number line */
+	private static final long INCOMPLETE = Long.MIN_VALUE;
+	
+	private LoopbackProtocol () { /* nop */ }
+	
+	// ------------------------------------------------------------------------
+	// Requests
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Parses the next request in the buffer.  If the request is not complete, 
+	 * the buffer position is not changed.
+	 * @param in buffer in read mode
+	 * @return the request's args (including the command name), or null if the 
+	 * buffer does not hold a complete request.
+	 * @throws IOException on protocol errors
+	 */
+	public static byte[][] parseRequest (ByteBuffer in) throws IOException {
+		final int start = in.position();
+		if(!in.hasRemaining()) 
+			return null;
+		if(in.get() != '*') 
+			throw new IOException("expecting multi-bulk request");
+		long argc = readNumber(in);
+		if(argc == INCOMPLETE) {
+			in.position(start);
+			return null;
+		}
+		byte[][] argv = new byte[(int) argc][];
+		for(int i=0; i<argc; i++){
+			if(!in.hasRemaining()){
+				in.position(start);
+				return null;
+			}
+			if(in.get() != '$') 
+				throw new IOException("expecting bulk argument");
+			long len = readNumber(in);
+			if(len == INCOMPLETE || in.remaining() < len + 2){
+				in.position(start);
+				return null;
+			}
+			argv[i] = new byte[(int) len];
+			in.get(argv[i]);
+			in.get(); in.get(); // CRLF
+		}
+		return argv;
+	}
+	
+	private static long readNumber (ByteBuffer in) throws IOException {
+		long n = 0;
+		boolean negative = false;
+		while(in.hasRemaining()){
+			byte b = in.get();
+			if(b == '\r'){
+				if(!in.hasRemaining()) return INCOMPLETE;
+				in.get(); // LF
+				return negative ? -n : n;
+			}
+			else if(b == '-') 
+				negative = true;
+			else if(b >= '0' && b <= '9') 
+				n = n*10 + (b - '0');
+			else 
+				throw new IOException("expecting digit");
+		}
+		return INCOMPLETE;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Reply encoder -- a growable buffer of encoded replies.
+	 */
+	public static final class Reply {
+		private static final byte[] CRLF = {'\r', '\n'};
+		private byte[] buffer = new byte[1024 * 16];
+		private int size = 0;
+		
+		public int size () { return size; }
+		
+		public void reset () { size = 0; }
+		
+		/** @return the encoded replies -- backed by this reply's buffer */
+		public ByteBuffer toByteBuffer () { return ByteBuffer.wrap(buffer, 0, size); }
+		
+		public Reply status (String status) {
+			append((byte) '+').append(status.getBytes(CHARSET)).append(CRLF);
+			return this;
+		}
+		public Reply error (String message) {
+			append((byte) '-').append(message.getBytes(CHARSET)).append(CRLF);
+			return this;
+		}
+		public Reply number (long number) {
+			append((byte) ':').append(Long.toString(number).getBytes(CHARSET)).append(CRLF);
+			return this;
+		}
+		public Reply bool (boolean value) {
+			return number(value ? 1 : 0);
+		}
+		/** @param value bulk value -- null for nil */
+		public Reply bulk (String value) {
+			if(null == value) {
+				append((byte) '$').append("-1".getBytes(CHARSET)).append(CRLF);
+				return this;
+			}
+			byte[] data = value.getBytes(CHARSET);
+			append((byte) '$').append(Integer.toString(data.length).getBytes(CHARSET)).append(CRLF);
+			append(data).append(CRLF);
+			return this;
+		}
+		public Reply multiBulkCount (int count) {
+			append((byte) '*').append(Integer.toString(count).getBytes(CHARSET)).append(CRLF);
+			return this;
+		}
+		/** @param values -- elements may be null */
+		public Reply multiBulk (Collection<String> values) {
+			multiBulkCount(values.size());
+			for(String v : values) bulk(v);
+			return this;
+		}
+		
+		private Reply append (byte b) {
+			ensureCapacity(1);
+			buffer[size++] = b;
+			return this;
+		}
+		private Reply append (byte[] data) {
+			ensureCapacity(data.length);
+			System.arraycopy(data, 0, buffer, size, data.length);
+			size += data.length;
+			return this;
+		}
+		private void ensureCapacity (int n) {
+			if(size + n > buffer.length){
+				byte[] larger = new byte[Math.max(buffer.length * 2, size + n)];
+				System.arraycopy(buffer, 0, larger, 0, size);
+				buffer = larger;
+			}
+		}
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.loopback;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+/**
+ * Embeddable in-process Redis server stub for tests and benchmarks.  A single 
+ * (NIO) selector thread services all connections, parsing requests in the unified
+ * request protocol and executing them against an in-memory {@link LoopbackDataset}.
+ * <p>
+ * The server binds to the loopback address only, and depends on the JRedis API
+ * only, so that tests and benchmarks of any module can embed it.  Usage:
+ * <pre><code>
+ * LoopbackServer server = new LoopbackServer();
+ * JRedis jredis = new JRedisClient(DefaultConnectionSpec.newSpec(server.getAddress(), server.getPort(), 0, null));
+ * ...
+ * server.shutdown();
+ * </code></pre>
+ * The server thread is named with the {@link LoopbackServer#THREAD_NAME_PREFIX} prefix.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public class LoopbackServer {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** server thread is named with this prefix */
+	public static final String THREAD_NAME_PREFIX = "loopback-server";
+	
+	/** initial size of per connection request buffers */
+	static final int REQUEST_BUFFER_SIZE = 1024 * 16;
+	/** max delay of the timeout of a blocking pop */
+	static final long BLOCKED_POLL_MSEC = 50;
+	
+	private final LoopbackDataset		dataset = new LoopbackDataset();
+	private final Selector				selector;
+	private final ServerSocketChannel	serverChannel;
+	private final Thread				thread;
+	private volatile boolean			running = true;
+	
+	/** if true, the server stalls -- guarded by this */
+	private boolean						paused;
+	
+	/** true while the server thread is stalled -- guarded by this */
+	private boolean						stalled;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Binds to an ephemeral port on the loopback address and starts the server.
+	 * @throws IOException
+	 */
+	public LoopbackServer () throws IOException {
+		this(0);
+	}
+	
+	/**
+	 * Binds to the specified port on the loopback address and starts the server.
+	 * @param port listening port -- 0 for an ephemeral port.
+	 * @throws IOException
+	 */
+	public LoopbackServer (int port) throws IOException {
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		
+		thread = new Thread(new Runnable() {
+			public void run () { serve(); }
+		}, THREAD_NAME_PREFIX + "-" + getPort());
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	public InetAddress getAddress () { return serverChannel.socket().getInetAddress(); }
+	
+	public int getPort () { return serverChannel.socket().getLocalPort(); }
+	
+	/** @return the server's dataset */
+	public LoopbackDataset getDataset () { return dataset; }
+	
+	/**
+	 * Stalls the server, as a busy or blocked redis would: requests are neither 
+	 * read nor answered (and connections not accepted) until {@link #resume()}.
+	 * Returns once the server thread has stalled.
+	 */
+	public synchronized void pause () {
+		paused = true;
+		selector.wakeup();
+		while(!stalled && running && thread.isAlive()){
+			try { wait(100); }
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+		}
+	}
+	
+	/**
+	 * Resumes a paused server.
+	 */
+	public synchronized void resume () {
+		paused = false;
+		notifyAll();
+	}
+	
+	/**
+	 * Stops the server and closes all connections.  Requests of a paused server
+	 * are not answered.
+	 */
+	public void shutdown () {
+		running = false;
+		resume();
+		selector.wakeup();
+		try { thread.join(1000); }
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	private void serve () {
+		try {
+			while(running){
+				stall();
+				if(!running) break;
+				selector.select(dataset.hasBlocked() ? BLOCKED_POLL_MSEC : 0);
+				Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+				while(iter.hasNext()){
+					SelectionKey key = iter.next();
+					iter.remove();
+					if(!key.isValid()) 
+						continue;
+					try {
+						if(key.isAcceptable())
+							accept();
+						else if(key.isReadable())
+							((Session) key.attachment()).onReadable(key);
+						else if(key.isWritable())
+							((Session) key.attachment()).onWritable(key);
+					}
+					catch (IOException e) {
+						close(key);
+					}
+				}
+				dataset.expireBlocked(System.currentTimeMillis());
+				flushPushed();
+			}
+		}
+		catch (IOException e) {
+			Logger.getLogger(LoopbackServer.class.getName()).severe("LoopbackServer selector loop: " + e.getMessage());
+		}
+		finally {
+			for(SelectionKey key : selector.keys())
+				close(key);
+			try { selector.close(); } catch (IOException e) { /* nop */ }
+		}
+	}
+	
+	/** blocks the server thread while paused */
+	private synchronized void stall () {
+		if(!paused) return;
+		stalled = true;
+		notifyAll();
+		try {
+			while(paused && running) wait();
+		}
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		finally { stalled = false; }
+	}
+	
+	private void accept () throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if(null == channel) return;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		channel.register(selector, SelectionKey.OP_READ, new Session(channel));
+	}
+	
+	/** 
+	 * writes the messages published to (subscriber) connections, and the replies 
+	 * of served blocking pops, then resumes the unblocked connections 
+	 */
+	private void flushPushed () {
+		for(SelectionKey key : selector.keys()){
+			if(!key.isValid() || !(key.attachment() instanceof Session)) 
+				continue;
+			Session session = (Session) key.attachment();
+			try {
+				if(null != session.client.pushed) 
+					session.flush(key);
+				if(session.parked && !session.client.isBlocked() && null == session.pending && key.isValid())
+					session.execute(key);
+			}
+			catch (IOException e) {
+				close(key);
+			}
+		}
+	}
+	
+	private void close (SelectionKey key) {
+		key.cancel();
+		if(key.attachment() instanceof Session)
+			dataset.disconnect(((Session) key.attachment()).client);
+		try { key.channel().close(); } catch (IOException e) { /* nop */ }
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Per connection state.  Complete requests are executed as soon as they
+	 * have been read and their replies are written in one go, followed by the
+	 * messages published to the connection.  While a reply is pending, the 
+	 * connection is not read.  While the connection is blocked (on a list pop),
+	 * its requests are buffered and are executed once the pop's reply is written.
+	 */
+	private final class Session {
+		final SocketChannel					channel;
+		final LoopbackDataset.Client		client = new LoopbackDataset.Client();
+		final LoopbackProtocol.Reply			reply = new LoopbackProtocol.Reply();
+		ByteBuffer							in = ByteBuffer.allocate(REQUEST_BUFFER_SIZE);
+		ByteBuffer							pending;
+		/** replies of the pending write */
+		LoopbackProtocol.Reply				writing;
+		/** requests are buffered until the client is unblocked */
+		boolean								parked;
+		
+		Session (SocketChannel channel) {
+			this.channel = channel;
+			this.client.address = String.valueOf(channel.socket().getRemoteSocketAddress()).replaceFirst("^.*/", "");
+		}
+		
+		void onReadable (SelectionKey key) throws IOException {
+			if(channel.read(in) == -1) {
+				close(key);
+				return;
+			}
+			execute(key);
+		}
+		
+		/** executes the buffered requests, until the client blocks */
+		void execute (SelectionKey key) throws IOException {
+			in.flip();
+			byte[][] argv;
+			while(!client.isClosed() && !client.isBlocked() && (argv = LoopbackProtocol.parseRequest(in)) != null)
+				dataset.execute(client, argv, reply);
+			parked = client.isBlocked();
+			in.compact();
+			if(!in.hasRemaining()){
+				ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+				in.flip();
+				larger.put(in);
+				in = larger;
+			}
+			
+			if(reply.size() > 0 || null != client.pushed){
+				flush(key);
+			}
+			else if(client.isClosed()){
+				close(key);
+			}
+		}
+		
+		/** writes the replies, then the published messages, unless a write is pending */
+		void flush (SelectionKey key) throws IOException {
+			if(null != pending) return;
+			if(reply.size() > 0) 
+				writing = reply;
+			else if(null != client.pushed) 
+				writing = client.takePushed();
+			else 
+				return;
+			pending = writing.toByteBuffer();
+			onWritable(key);
+		}
+		
+		void onWritable (SelectionKey key) throws IOException {
+			channel.write(pending);
+			if(pending.hasRemaining()){
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+			pending = null;
+			writing.reset();
+			if(client.isClosed()) {
+				close(key);
+				return;
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			flush(key);
+		}
+	}
+}
@@ -0,0 +1,429 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jredis.ClientRuntimeException;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.MultiBulkResponse;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+import org.jredis.ri.alphazero.connection.SyncConnection;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.DefaultCodec;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * Consumer of the blocking list pops (<code>BLPOP</code>, <code>BRPOP</code>, and
+ * <code>BRPOPLPUSH</code>), on a dedicated pool of {@link SyncConnection}s.  A blocked 
+ * pop holds its connection until an element is popped or the pop times out: sent on a
+ * shared connection or a pipeline, it would stall all requests behind it -- hence these 
+ * commands are not accepted by {@link Connection#queueRequest(Command, byte[]...)}.
+ * <p>
+ * Connections are created on demand, up to max connections, and are reused.  A pop 
+ * waits for a connection when all are in use.  The connections are not shared with 
+ * other clients: their heartbeat is disabled, and their read timeout is extended by 
+ * the poll interval.
+ * <p>
+ * Pops are sent as (server side) waits of at most the poll interval, which are 
+ * repeated until the pop's timeout expires, or the consumer is shut down.  Timeouts
+ * are rounded up to seconds (the resolution of the server's timeout), and a timeout 
+ * of 0 waits until an element is popped.
+ * <p>
+ * Elements can also be consumed by workers: each worker holds a connection, and 
+ * pops and handles elements in turn until the consumer is shut down -- see 
+ * {@link #consume(Handler, int, String...)}.
+ * <p>
+ * Keys are Strings.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public class BlockingListConsumer {
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/** A popped element, and the key of its list */
+	public static final class Pop {
+		private final String	key;
+		private final byte[]	value;
+		
+		Pop (String key, byte[] value) {
+			this.key = key;
+			this.value = value;
+		}
+		/** @return key of the list the element was popped from */
+		public String getKey () { return key; }
+		/** @return the popped element */
+		public byte[] getValue () { return value; }
+	}
+
+	/**
+	 * Handles the elements popped by the workers of a consumer.  Handlers are
+	 * called on the worker threads, and must be safe for concurrent use if the 
+	 * consumer has more than one worker.
+	 */
+	public interface Handler {
+		/**
+		 * Exceptions raised by the handler are logged and counted, and do not 
+		 * stop the worker.
+		 * @param pop
+		 */
+		public void onPop (Pop pop);
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** def value: 1 sec */
+	public static final int DEFAULT_POLL_SECONDS = 1;
+
+	private final ConnectionSpec	spec;
+	private final int				pollSeconds;
+	/** connection permits -- max connections */
+	private final Semaphore			permits;
+	/** connections not in use */
+	private final ConcurrentLinkedQueue<SyncConnection> idle = new ConcurrentLinkedQueue<SyncConnection>();
+
+	private volatile boolean		closed = false;
+
+	/** stats */
+	private final AtomicInteger		connections = new AtomicInteger();
+	private final AtomicInteger		workers = new AtomicInteger();
+	private final AtomicLong		pops = new AtomicLong();
+	private final AtomicLong		errors = new AtomicLong();
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Consumes with the default poll interval.
+	 * @param spec
+	 * @param maxConnections
+	 */
+	public BlockingListConsumer (ConnectionSpec spec, int maxConnections) {
+		this (spec, maxConnections, DEFAULT_POLL_SECONDS);
+	}
+
+	/**
+	 * @param spec of the server -- a copy of the spec is used for the connections 
+	 * @param maxConnections max number of concurrent pops (and workers)
+	 * @param pollSeconds max duration of a (server side) wait
+	 */
+	public BlockingListConsumer (ConnectionSpec spec, int maxConnections, int pollSeconds) {
+		this.spec = DefaultConnectionSpec.copy(spec);
+		Assert.isTrue(maxConnections > 0, "maxConnections > 0", ClientRuntimeException.class);
+		Assert.isTrue(pollSeconds > 0, "pollSeconds > 0", ClientRuntimeException.class);
+		this.pollSeconds = pollSeconds;
+		this.permits = new Semaphore(maxConnections, true);
+		
+		this.spec.setHeartbeat(0);
+		final Integer soTimeout = this.spec.getSocketProperty(Connection.Socket.Property.SO_TIMEOUT);
+		if(null != soTimeout && soTimeout > 0)
+			this.spec.setSocketProperty(Connection.Socket.Property.SO_TIMEOUT, soTimeout + pollSeconds * 1000);
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Pops the head element of the first non-empty list of the keys.
+	 * @param timeout max wait -- 0 to wait until an element is popped
+	 * @param unit
+	 * @param keys
+	 * @return the popped element, or null if timed out, or shut down while waiting
+	 * @throws RedisException
+	 * @throws InterruptedException
+	 */
+	public Pop blpop (long timeout, TimeUnit unit, String... keys) throws RedisException, InterruptedException {
+		return pop(Command.BLPOP, timeout, unit, keys);
+	}
+
+	/**
+	 * Pops the tail element of the first non-empty list of the keys.
+	 * @see BlockingListConsumer#blpop(long, TimeUnit, String...)
+	 */
+	public Pop brpop (long timeout, TimeUnit unit, String... keys) throws RedisException, InterruptedException {
+		return pop(Command.BRPOP, timeout, unit, keys);
+	}
+
+	/**
+	 * Pops the tail element of the src list and pushes it to the head of the dest list.
+	 * @param src
+	 * @param dest
+	 * @param timeout max wait -- 0 to wait until an element is popped
+	 * @param unit
+	 * @return the element, or null if timed out, or shut down while waiting
+	 * @throws RedisException
+	 * @throws InterruptedException
+	 */
+	public byte[] brpoplpush (String src, String dest, long timeout, TimeUnit unit) throws RedisException, InterruptedException {
+		Assert.notNull(src, "src", ClientRuntimeException.class);
+		Assert.notNull(dest, "dest", ClientRuntimeException.class);
+		final Pop pop = pop(Command.BRPOPLPUSH, timeout, unit, src, dest);
+		return null == pop ? null : pop.getValue();
+	}
+
+	/**
+	 * Starts the workers, on daemon threads.
+	 * @see BlockingListConsumer#consume(Handler, Executor, int, String...)
+	 */
+	public void consume (Handler handler, int workers, String... keys) {
+		consume(handler, new Executor() {
+			public void execute (Runnable worker) {
+				final Thread thread = new Thread(worker, "blocking-list-consumer");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}, workers, keys);
+	}
+
+	/**
+	 * Submits the workers to the executor.  Each worker pops (<code>BLPOP</code>) the 
+	 * elements of the lists of the keys and passes them to the handler, until the 
+	 * consumer is shut down.  Workers hold a connection for their lifetime: workers
+	 * in excess of max connections wait for one.
+	 * @param handler of the popped elements
+	 * @param executor of the workers
+	 * @param workers number of workers
+	 * @param keys
+	 */
+	public void consume (final Handler handler, Executor executor, int workers, final String... keys) {
+		Assert.notNull(handler, "handler", ClientRuntimeException.class);
+		Assert.notNull(executor, "executor", ClientRuntimeException.class);
+		Assert.isTrue(workers > 0, "workers > 0", ClientRuntimeException.class);
+		checkKeys(keys);
+		if(closed) throw new ClientRuntimeException("consumer is shut down");
+		for(int i=0; i<workers; i++){
+			executor.execute(new Runnable() {
+				public void run () { work(handler, keys); }
+			});
+		}
+	}
+
+	/**
+	 * Stops the workers and the waiting pops, at the end of their current wait (at 
+	 * most the poll interval).  Connections are quit as they are released.
+	 */
+	public void shutdown () {
+		closed = true;
+		SyncConnection conn;
+		while((conn = idle.poll()) != null)
+			discard(conn);
+	}
+
+	/** @return true if the consumer has been shut down */
+	public boolean isShutdown () { return closed; }
+
+	/** @return number of open connections */
+	public int getConnectionCount () { return connections.get(); }
+
+	/** @return number of running workers */
+	public int getWorkerCount () { return workers.get(); }
+
+	/** @return number of popped elements */
+	public long getPopCount () { return pops.get(); }
+
+	/** @return number of failed pops, and of handler errors */
+	public long getErrorCount () { return errors.get(); }
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+
+	/** 
+	 * Pops and handles elements until shut down.  A failed pop backs the worker off for
+	 * a poll interval.  A pop that failed on the client side also closes the worker's 
+	 * connection, and the worker reconnects; an error response (e.g. one of the keys 
+	 * is not a list) leaves it open.
+	 */
+	private void work (Handler handler, String[] keys) {
+		workers.incrementAndGet();
+		boolean acquired = false;
+		SyncConnection conn = null;
+		try {
+			permits.acquire();
+			acquired = true;
+			while(!closed) {
+				Pop pop = null;
+				try {
+					if(null == conn) conn = connect();
+					pop = pop(conn, Command.BLPOP, pollSeconds, keys);
+				}
+				catch (RedisException e) {
+					errors.incrementAndGet();
+					Log.error("BlockingListConsumer worker: " + e.getMessage());
+					TimeUnit.SECONDS.sleep(pollSeconds);
+					continue;
+				}
+				catch (RuntimeException e) {
+					errors.incrementAndGet();
+					Log.error("BlockingListConsumer worker: " + e.getMessage());
+					if(null != conn) discard(conn);
+					conn = null;
+					TimeUnit.SECONDS.sleep(pollSeconds);
+					continue;
+				}
+				if(null == pop) continue;
+				try {
+					handler.onPop(pop);
+				}
+				catch (RuntimeException e) {
+					errors.incrementAndGet();
+					Log.error("BlockingListConsumer handler: " + e.getMessage());
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Log.problem("BlockingListConsumer worker interrupted");
+		}
+		finally {
+			if(null != conn) release(conn);
+			else if(acquired) permits.release();
+			workers.decrementAndGet();
+		}
+	}
+
+	private Pop pop (Command cmd, long timeout, TimeUnit unit, String... keys) throws RedisException, InterruptedException {
+		Assert.isTrue(timeout >= 0, "timeout >= 0", ClientRuntimeException.class);
+		Assert.notNull(unit, "unit", ClientRuntimeException.class);
+		checkKeys(keys);
+		if(closed) throw new ClientRuntimeException("consumer is shut down");
+		
+		final long deadline = timeout == 0 ? 0 : System.nanoTime() + unit.toNanos(timeout);
+		if(deadline == 0) 
+			permits.acquire();
+		else if(!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+			return null;
+		
+		SyncConnection conn = null;
+		try {
+			conn = connect();
+			while(!closed){
+				int wait = pollSeconds;
+				if(deadline != 0) {
+					final long remaining = deadline - System.nanoTime();
+					if(remaining <= 0) return null;
+					wait = (int) Math.min(pollSeconds, (remaining + 999999999L) / 1000000000L);
+				}
+				final Pop pop = pop(conn, cmd, wait, keys);
+				if(null != pop) return pop;
+				if(Thread.interrupted()) throw new InterruptedException();
+			}
+			return null;
+		}
+		catch (RuntimeException e) {
+			errors.incrementAndGet();
+			if(null != conn) {
+				discard(conn);
+				conn = null;
+			}
+			throw e;
+		}
+		finally {
+			if(null != conn) release(conn);
+			else permits.release();
+		}
+	}
+
+	/** a single server side wait */
+	private Pop pop (SyncConnection conn, Command cmd, int wait, String... keys) throws RedisException {
+		final byte[][] args = new byte[keys.length + 1][];
+		for(int i=0; i<keys.length; i++)
+			args[i] = DefaultCodec.encode(keys[i]);
+		args[keys.length] = Convert.toBytes(wait);
+		
+		final Response response = conn.serviceRequest(cmd, args);
+		Pop pop = null;
+		try {
+			if(cmd == Command.BRPOPLPUSH) {
+				final byte[] value = ((BulkResponse) response).getBulkData();
+				if(null != value) pop = new Pop(keys[0], value);
+			}
+			else {
+				final List<byte[]> reply = ((MultiBulkResponse) response).getMultiBulkData();
+				if(null != reply) {
+					if(reply.size() != 2) throw new ProviderException("Expecting a [key, value] reply to " + cmd.code);
+					pop = new Pop(DefaultCodec.toStr(reply.get(0)), reply.get(1));
+				}
+			}
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Unexpected response type for " + cmd.code + " => " + e.getLocalizedMessage(), e);
+		}
+		if(null != pop) pops.incrementAndGet();
+		return pop;
+	}
+
+	/** @return an idle connection, or a new one -- caller holds a permit */
+	private SyncConnection connect () {
+		final SyncConnection conn = idle.poll();
+		if(null != conn) return conn;
+		final SyncConnection created = new SyncConnection(DefaultConnectionSpec.copy(spec));
+		connections.incrementAndGet();
+		return created;
+	}
+
+	/** returns the connection to the pool, and its permit */
+	private void release (SyncConnection conn) {
+		if(closed) discard(conn);
+		else idle.offer(conn);
+		permits.release();
+		if(closed) {
+			/* shutdown may have drained the idle queue before the offer */
+			SyncConnection leftover;
+			while((leftover = idle.poll()) != null)
+				discard(leftover);
+		}
+	}
+
+	/** quits the connection, quietly */
+	private void discard (SyncConnection conn) {
+		connections.decrementAndGet();
+		try {
+			conn.serviceRequest(Command.QUIT);
+		}
+		catch (Exception e) {
+			Log.log("BlockingListConsumer: quit of a connection failed: " + e.getMessage());
+		}
+	}
+
+	private static void checkKeys (String[] keys) {
+		Assert.notNull(keys, "keys", ClientRuntimeException.class);
+		Assert.isTrue(keys.length > 0, "keys.length > 0", ClientRuntimeException.class);
+		for(String key : keys)
+			Assert.notNull(key, "key", ClientRuntimeException.class);
+	}
+}
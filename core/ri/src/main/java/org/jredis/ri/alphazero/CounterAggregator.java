@@ -0,0 +1,504 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jredis.ClientRuntimeException;
+import org.jredis.JRedisFuture;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * Write-behind aggregation of counter increments: the deltas of each key are 
+ * accumulated in a counter and flushed as a single <code>INCRBY</code> per key,
+ * pipelined through a {@link JRedisFuture}.  A counter starts with a single cell,
+ * and is striped over more cells only when its increments contend.  Counters are 
+ * kept across the flushes: the counters of keys that were not incremented since 
+ * the previous flush are evicted.
+ * <p>
+ * A flush is issued every flush interval, when the number of pending keys reaches 
+ * the flush threshold, on {@link #flush()}, and on {@link #shutdown()}.  An increment
+ * is sent at most a flush interval (plus the duration of a flush) after it was added.
+ * Each flush waits for its responses: failed <code>INCRBY</code>s are logged and
+ * counted, and their deltas are not retried, as the server may have applied them.
+ * Deltas that the pipeline rejects (e.g. when not connected) are kept pending for the
+ * next flush, and the flush then throws.
+ * <p>
+ * The number of pending keys -- keys incremented since the previous flush -- is bounded
+ * by max keys.  Increments of new pending keys beyond the bound are handled per the 
+ * {@link Overflow} policy of the aggregator.
+ * <p>
+ * Keys are Strings.  The aggregator does not quit the {@link JRedisFuture} on shutdown.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public class CounterAggregator {
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Policy for the increments of new keys when the aggregator holds max keys.
+	 */
+	public enum Overflow {
+		/** the incrementing thread triggers a flush and waits for it */
+		BLOCK,
+		/** the increment is sent immediately, without aggregation */
+		DIRECT,
+		/** the increment is rejected with a {@link ClientRuntimeException} */
+		FAIL
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** def value: 100 msecs */
+	public static final long DEFAULT_FLUSH_INTERVAL = 100;
+	/** def value: 10000 keys */
+	public static final int DEFAULT_FLUSH_KEYS = 10000;
+	/** def value: 100000 keys */
+	public static final int DEFAULT_MAX_KEYS = 100000;
+
+	private final JRedisFuture		redis;
+	private final long				flushInterval;
+	private final int				flushKeys;
+	private final int				maxKeys;
+	private final Overflow			overflow;
+	/** max cells per counter -- a power of 2 */
+	private final int				stripes;
+
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	/** number of pending keys */
+	private final AtomicInteger		keyCount = new AtomicInteger();
+
+	private final Lock				lock = new ReentrantLock();
+	/** signals the flusher -- guarded by lock */
+	private final Condition			requested = lock.newCondition();
+	/** signals the overflow of BLOCKed increments -- guarded by lock */
+	private final Condition			drained = lock.newCondition();
+	/** guarded by lock */
+	private boolean					flushRequested = false;
+	/** serializes the flushes */
+	private final Lock				flushLock = new ReentrantLock();
+
+	private volatile boolean		closed = false;
+	private final Thread			flusher;
+
+	/** stats -- guarded by flushLock */
+	private long					flushes = 0;
+	private long					sent = 0;
+	private long					errors = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Aggregates with the default flush interval and key limits, and the 
+	 * {@link Overflow#BLOCK} policy.
+	 * @param redis
+	 */
+	public CounterAggregator (JRedisFuture redis) {
+		this (redis, DEFAULT_FLUSH_INTERVAL, TimeUnit.MILLISECONDS, DEFAULT_FLUSH_KEYS, DEFAULT_MAX_KEYS, Overflow.BLOCK);
+	}
+
+	/**
+	 * @param redis the pipeline of the flushes
+	 * @param flushInterval max delay of a flush
+	 * @param unit of the flush interval
+	 * @param flushKeys number of pending keys that triggers a flush
+	 * @param maxKeys max number of pending keys
+	 * @param overflow policy for the new keys beyond max keys
+	 */
+	public CounterAggregator (JRedisFuture redis, long flushInterval, TimeUnit unit, int flushKeys, int maxKeys, Overflow overflow) {
+		this.redis = Assert.notNull(redis, "redis", ClientRuntimeException.class);
+		Assert.isTrue(flushInterval > 0, "flushInterval > 0", ClientRuntimeException.class);
+		Assert.isTrue(flushKeys > 0 && maxKeys >= flushKeys, "0 < flushKeys <= maxKeys", ClientRuntimeException.class);
+		this.flushInterval = unit.toNanos(flushInterval);
+		this.flushKeys = flushKeys;
+		this.maxKeys = maxKeys;
+		this.overflow = Assert.notNull(overflow, "overflow", ClientRuntimeException.class);
+		int n = 1;
+		while(n < Runtime.getRuntime().availableProcessors() && n < 16) n <<= 1;
+		this.stripes = n;
+
+		flusher = new Thread(new Runnable() {
+			public void run () { flushLoop(); }
+		}, "counter-aggregator");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param key
+	 * @see JRedisFuture#incr(Object)
+	 */
+	public void incr (String key) {
+		incrby(key, 1);
+	}
+
+	/**
+	 * @param key
+	 * @see JRedisFuture#decr(Object)
+	 */
+	public void decr (String key) {
+		incrby(key, -1);
+	}
+
+	/**
+	 * @param key
+	 * @param delta
+	 * @see JRedisFuture#decrby(Object, int)
+	 */
+	public void decrby (String key, long delta) {
+		incrby(key, -delta);
+	}
+
+	/**
+	 * Adds the delta to the pending increment of the key.
+	 * @param key
+	 * @param delta
+	 * @throws ClientRuntimeException if the aggregator is shutdown, or per the {@link Overflow#FAIL} policy
+	 * @see JRedisFuture#incrby(Object, int)
+	 */
+	public void incrby (String key, long delta) {
+		Assert.notNull(key, "key", ClientRuntimeException.class);
+		if(closed) throw new ClientRuntimeException("counter aggregator is shutdown");
+		add(key, delta, false);
+		// raced the final flush of shutdown
+		if(closed) flush();
+	}
+
+	/**
+	 * Sends the pending increments, and waits for the responses.
+	 * @throws ClientRuntimeException if the pipeline rejected any of the increments -- 
+	 * their deltas remain pending.
+	 */
+	public void flush () {
+		final Map<String, Long> unsent = new LinkedHashMap<String, Long>();
+		RuntimeException rejection = null;
+		flushLock.lock();
+		try {
+			final List<Future<Long>> futures = new ArrayList<Future<Long>>();
+			for(Map.Entry<String, Counter> entry : counters.entrySet()){
+				final Counter counter = entry.getValue();
+				// cleared before the drain -- see add()
+				if(counter.pending.compareAndSet(true, false)) {
+					keyCount.decrementAndGet();
+				}
+				else {
+					// idle: retire before the drain -- see add()
+					counter.retired = true;
+					counters.remove(entry.getKey(), counter);
+					if(counter.pending.compareAndSet(true, false)) keyCount.decrementAndGet();
+				}
+				long delta = counter.drain();
+				try {
+					while(delta != 0) delta -= send(entry.getKey(), delta, futures);
+				}
+				catch (RuntimeException e) {
+					// keep flushing the other keys
+					rejection = e;
+					unsent.put(entry.getKey(), delta);
+				}
+			}
+			flushes++;
+			sent += futures.size();
+			for(Future<Long> future : futures){
+				try {
+					future.get();
+				}
+				catch (ExecutionException e) {
+					errors++;
+					Log.problem("CounterAggregator INCRBY failed: " + e.getCause());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ClientRuntimeException("Interrupted!", e);
+				}
+			}
+		}
+		finally {
+			// re-added after the iteration of the counters, so it does not revisit them
+			for(Map.Entry<String, Long> entry : unsent.entrySet())
+				add(entry.getKey(), entry.getValue(), true);
+			flushLock.unlock();
+		}
+		lock.lock();
+		try {
+			drained.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+		if(null != rejection)
+			throw new ClientRuntimeException("CounterAggregator kept " + unsent.size() + " keys pending: " + rejection.getLocalizedMessage(), rejection);
+	}
+
+	/**
+	 * Stops the periodic flushes, and flushes the pending increments.  Increments 
+	 * raced by the shutdown are flushed by their (incrementing) thread.
+	 */
+	public void shutdown () {
+		closed = true;
+		lock.lock();
+		try {
+			requested.signal();
+			drained.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+		try {
+			flusher.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/** @return number of pending keys */
+	public int getPendingKeyCount () { return keyCount.get(); }
+
+	/** @return number of counters held -- pending keys, and keys not yet evicted as idle */
+	public int getCounterCount () { return counters.size(); }
+
+	/** @return number of flushes */
+	public long getFlushCount () {
+		flushLock.lock();
+		try { return flushes; } finally { flushLock.unlock(); }
+	}
+
+	/** @return number of <code>INCRBY</code>s sent by the flushes */
+	public long getSentCount () {
+		flushLock.lock();
+		try { return sent; } finally { flushLock.unlock(); }
+	}
+
+	/** @return number of failed <code>INCRBY</code>s of the flushes */
+	public long getErrorCount () {
+		flushLock.lock();
+		try { return errors; } finally { flushLock.unlock(); }
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The delta is added before the counter is marked pending, and a flush clears the
+	 * mark before it drains the counter: a delta added after the drain leaves the counter
+	 * pending for the next flush.
+	 * <p>
+	 * A flush retires (and evicts) the idle counters it drains.  If the delta was added to
+	 * a retired counter, it may have been added after the drain: the incrementing thread 
+	 * takes back whatever is left in the counter and adds it to the (new) counter of the key.
+	 * Taken back deltas (possibly of other threads) are not subject to the overflow policy,
+	 * nor are the deltas re-added by a flush.
+	 */
+	private void add (String key, long delta, boolean takenBack) {
+		while(delta != 0) {
+			Counter counter = counters.get(key);
+			if(!takenBack && (null == counter || !counter.pending.get()) && keyCount.get() >= maxKeys && !admit(key, delta))
+				return;
+			if(null == counter) {
+				final Counter created = new Counter(stripes);
+				counter = counters.putIfAbsent(key, created);
+				if(null == counter) counter = created;
+			}
+			counter.add(delta);
+			if(counter.pending.compareAndSet(false, true)) {
+				// requested after the add, so that the flush does not race it
+				if(keyCount.incrementAndGet() == flushKeys) requestFlush();
+			}
+			if(!counter.retired) return;
+			if(counter.pending.compareAndSet(true, false)) keyCount.decrementAndGet();
+			delta = counter.drain();
+			takenBack = true;
+		}
+	}
+
+	/** @return true if the new key is to be aggregated, per the overflow policy */
+	private boolean admit (String key, long delta) {
+		switch (overflow) {
+		case FAIL:
+			throw new ClientRuntimeException("counter aggregator is full: " + maxKeys + " keys pending");
+		case DIRECT:
+			while(delta != 0) delta -= send(key, delta, null);
+			return false;
+		case BLOCK:
+		default:
+			lock.lock();
+			try {
+				while(keyCount.get() >= maxKeys && !closed){
+					flushRequested = true;
+					requested.signal();
+					drained.await(flushInterval, TimeUnit.NANOSECONDS);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ClientRuntimeException("Interrupted!", e);
+			}
+			finally {
+				lock.unlock();
+			}
+			return true;
+		}
+	}
+
+	/** 
+	 * sends the int range part of the delta in an INCRBY
+	 * @return the sent part of the delta
+	 */
+	private long send (String key, long delta, List<Future<Long>> futures) {
+		final int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, delta));
+		final Future<Long> future = redis.incrby(key, step);
+		if(null != futures) futures.add(future);
+		return step;
+	}
+
+	private void requestFlush () {
+		lock.lock();
+		try {
+			flushRequested = true;
+			requested.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void flushLoop () {
+		while(!closed) {
+			lock.lock();
+			try {
+				if(!flushRequested)
+					requested.await(flushInterval, TimeUnit.NANOSECONDS);
+				flushRequested = false;
+			}
+			catch (InterruptedException e) {
+				Log.problem("CounterAggregator flusher interrupted");
+				return;
+			}
+			finally {
+				lock.unlock();
+			}
+			if(closed) return;
+			try {
+				flush();
+			}
+			catch (RuntimeException e) {
+				Log.problem("CounterAggregator flush failed: " + e.getLocalizedMessage());
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/** 
+	 * The pending delta of a key: a base value, striped over cache line padded cells
+	 * once the increments of the key contend on it.  A failed CAS on a cell doubles 
+	 * the cells, up to max cells.
+	 */
+	private static final class Counter {
+		final AtomicLong		base = new AtomicLong();
+		/** null until the base is contended -- a power of 2 cells */
+		volatile Cell[]			cells;
+		final int				maxCells;
+		/** set by the incrementing threads after the add, cleared by the flush before the drain */
+		final AtomicBoolean		pending = new AtomicBoolean();
+		/** set by the flush, before an evicted counter is drained */
+		volatile boolean		retired = false;
+
+		Counter (int maxCells) {
+			this.maxCells = maxCells;
+		}
+		void add (long delta) {
+			Cell[] cs = cells;
+			if(null == cs) {
+				final long v = base.get();
+				if(base.compareAndSet(v, v + delta)) return;
+				cs = expand(null);
+			}
+			final int hash = (int) Thread.currentThread().getId();
+			for(;;) {
+				final Cell cell = cs[hash & (cs.length - 1)];
+				final long v = cell.get();
+				if(cell.compareAndSet(v, v + delta)) return;
+				cs = expand(cs);
+			}
+		}
+		long drain () {
+			long sum = base.getAndSet(0);
+			final Cell[] cs = cells;
+			if(null != cs) {
+				for(Cell cell : cs)
+					sum += cell.getAndSet(0);
+			}
+			return sum;
+		}
+		/** @return the cells, doubled if they are still those that contended */
+		private Cell[] expand (Cell[] contended) {
+			if(null != contended && contended.length >= maxCells) return contended;
+			synchronized (this) {
+				final Cell[] cs = cells;
+				if(cs != contended) return cs;
+				final int n = null == cs ? Math.min(2, maxCells) : cs.length << 1;
+				final Cell[] expanded = new Cell[n];
+				int i = 0;
+				if(null != cs) 
+					for(; i<cs.length; i++) expanded[i] = cs[i];
+				for(; i<n; i++) expanded[i] = new Cell();
+				cells = expanded;
+				return expanded;
+			}
+		}
+	}
+	
+	/** a cell of a counter, padded to a 64 byte cache line */
+	@SuppressWarnings("unused")
+	private static final class Cell extends AtomicLong {
+		private static final long serialVersionUID = _specification.Version.major;
+		private long p1, p2, p3, p4, p5, p6, p7;
+	}
+}
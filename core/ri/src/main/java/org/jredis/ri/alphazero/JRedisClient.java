@@ -18,6 +18,7 @@ package org.jredis.ri.alphazero;
 
 import java.net.UnknownHostException;
 import org.jredis.ClientRuntimeException;
+import org.jredis.ElementVisitor;
 import org.jredis.JRedis;
 import org.jredis.ProviderException;
 import org.jredis.Redis;
@@ -27,6 +28,7 @@ import org.jredis.connector.ConnectionSpec;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Response;
 import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+import org.jredis.ri.alphazero.connection.SyncConnection;
 import org.jredis.ri.alphazero.support.Assert;
 
 
@@ -151,6 +153,19 @@ public class JRedisClient extends SyncJRedisBase  {
 		return connection.serviceRequest(cmd, args);
 	}
 	
+	/**
+	 * Streams the elements to the visitor, as they are read off the socket.
+	 * @see SyncConnection#serviceRequest(ElementVisitor, Command, byte[]...)
+	 */
+	@Override
+	protected long serviceRequest(ElementVisitor visitor, Command cmd, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException 
+	{
+		if(connection instanceof SyncConnection)
+			return ((SyncConnection) connection).serviceRequest(visitor, cmd, args);
+		return super.serviceRequest(visitor, cmd, args);
+	}
+	
 
 	// TODO: what's the use of this?
 	@Override
@@ -28,7 +28,9 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.jredis.ByteString;
 import org.jredis.ClientRuntimeException;
+import org.jredis.FutureTransaction;
 import org.jredis.JRedisFuture;
 import org.jredis.KeyValueSet;
 import org.jredis.ObjectInfo;
@@ -353,6 +355,10 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
 		return set(key, String.valueOf(value).getBytes());
 	}
 	@Override
+	public <K extends Object> FutureStatus set(K key, ByteString value) {
+		return set(key, value.toByteArray());
+	}
+	@Override
 	public <K extends Object, T extends Serializable> FutureStatus set (K key, T value)
 	{
 		return set(key, DefaultCodec.encode(value));
@@ -497,6 +503,9 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
 	public <K extends Object> Future<Boolean> hset(K key, K field, Number numberValue) {
 		return hset (key, field, String.valueOf(numberValue).getBytes());
 	}
+	public <K extends Object> Future<Boolean> hset(K key, K field, ByteString value) {
+		return hset (key, field, value.toByteArray());
+	}
 	public <K extends Object, T extends Serializable>
 		Future<Boolean> hset(K key, K field, T object) {
 		return hset (key, field, DefaultCodec.encode(object));
@@ -516,6 +525,52 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
 	}
 	
 	
+	public <K extends Object> Future<Boolean> hsetnx(K key, K field, byte[] value) {
+		byte[] keyBytes = null;
+		if((keyBytes = JRedisSupport.getKeyBytes(key)) == null)
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		byte[] entryBytes = null;
+		if((entryBytes = JRedisSupport.getKeyBytes(field)) == null)
+			throw new IllegalArgumentException ("invalid field => ["+field+"]");
+
+		Future<Response> futureResponse = this.queueRequest(Command.HSETNX, keyBytes, entryBytes, value);
+		return new FutureBoolean(futureResponse);
+	}
+	public <K extends Object> Future<Boolean> hsetnx(K key, K field, String stringValue) {
+		return hsetnx (key, field, DefaultCodec.encode(stringValue));
+	}
+	public <K extends Object> Future<Boolean> hsetnx(K key, K field, Number numberValue) {
+		return hsetnx (key, field, String.valueOf(numberValue).getBytes());
+	}
+	public <K extends Object, T extends Serializable>
+		Future<Boolean> hsetnx(K key, K field, T object) {
+		return hsetnx (key, field, DefaultCodec.encode(object));
+	}
+	
+	public <K extends Object> Future<ResponseStatus> hmset(K key, Map<K, byte[]> fieldValueMap) {
+		Future<Response> futureResponse = this.queueRequest(Command.HMSET, JRedisSupport.hashMappings(key, fieldValueMap));
+		return new FutureStatus(futureResponse);
+	}
+	
+	public <K extends Object> Future<List<byte[]>> hmget(K key, K...fields) {
+		Future<Response> futureResponse = this.queueRequest(Command.HMGET, JRedisSupport.hashFields(key, fields));
+		return new FutureByteArrayList(futureResponse);
+	}
+	
+	public <K extends Object> Future<Long> hincrby(K key, K field, long delta) {
+		byte[] keyBytes = null;
+		if((keyBytes = JRedisSupport.getKeyBytes(key)) == null)
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		byte[] entryBytes = null;
+		if((entryBytes = JRedisSupport.getKeyBytes(field)) == null)
+			throw new IllegalArgumentException ("invalid field => ["+field+"]");
+		
+		Future<Response> futureResponse = this.queueRequest(Command.HINCRBY, keyBytes, entryBytes, Convert.toBytes(delta));
+		return new FutureLong(futureResponse);
+	}
+	
 	public <K extends Object> Future<Boolean> hexists(K key, K entry) {
 		byte[] keyBytes = null;
 		if((keyBytes = JRedisSupport.getKeyBytes(key)) == null)
@@ -579,6 +634,14 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
 		Future<Response> futureResponse = this.queueRequest(Command.HGETALL, keyBytes);
 		return new FutureDataDictionary (futureResponse);
 	}
+	public <K extends Object> Future<Map<ByteString, ByteString>> hgetallAsByteStrings(K key) {
+		byte[] keyBytes = null;
+		if((keyBytes = JRedisSupport.getKeyBytes(key)) == null)
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		Future<Response> futureResponse = this.queueRequest(Command.HGETALL, keyBytes);
+		return new FutureByteStringDictionary (futureResponse);
+	}
 	
 	
 	/* ------------------------------- commands returning int value --------- */
@@ -920,6 +983,18 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
 		return new FutureByteArrayList(this.queueRequest(Command.ZRANGEBYSCORE, keybytes, minScoreBytes, maxScoreBytes));
 	}
 	
+	@Override
+	public <K extends Object> Future<List<byte[]>> zrangebyscore(K key, double minScore, double maxScore, long offset, long count) {
+		byte[] keybytes = null;
+		if((keybytes = JRedisSupport.getKeyBytes(key)) == null)
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		byte[] minScoreBytes = Convert.toBytes(minScore);
+		byte[] maxScoreBytes = Convert.toBytes(maxScore);
+
+		return new FutureByteArrayList(this.queueRequest(Command.ZRANGEBYSCORE$OPTS, keybytes, minScoreBytes, maxScoreBytes, Command.Option.LIMIT.bytes, Convert.toBytes(offset), Convert.toBytes(count)));
+	}
+	
 	@Override
 	public <K extends Object> Future<Long> zremrangebyscore(K key, double minScore, double maxScore) {
 		byte[] keybytes = null;
@@ -1413,6 +1488,31 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
 		return new FutureLong(futureResponse);
 	}
 
+	@Override
+	public FutureTransaction transaction () {
+		return new TransactionSupport.Queued(this);
+	}
+	
+	public <K extends Object> Future<Long> publish (K channel, byte[] message) {
+		byte[] channelbytes = null;
+		if((channelbytes = JRedisSupport.getKeyBytes(channel)) == null)
+			throw new IllegalArgumentException ("invalid channel => ["+channel+"]");
+		if(message == null)
+			throw new IllegalArgumentException ("null message");
+		
+		return new FutureLong(this.queueRequest(Command.PUBLISH, channelbytes, message));
+	}
+	public <K extends Object> Future<Long> publish (K channel, String message) {
+		return publish(channel, DefaultCodec.encode(message));
+	}
+	public <K extends Object> Future<Long> publish (K channel, Number message) {
+		return publish(channel, String.valueOf(message).getBytes());
+	}
+	public <K extends Object, T extends Serializable> 
+		Future<Long> publish (K channel, T message) {
+			return publish(channel, DefaultCodec.encode(message));
+	}
+
 	// TODO: integrate using KeyCodec and a CodecManager at client spec and init time.
 	// TODO: (implied) ClientSpec (impls. ConnectionSpec)
 	// this isn't cooked yet -- lets think more about the implications...
@@ -1450,6 +1550,21 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
         	return pendingRequest.get(timeout, unit).getStatus();
         }
 
+	}
+	public static class FutureResultSet extends FutureResultBase implements Future<List<Object>>{
+		private final List<Command> commands;
+		protected FutureResultSet (Future<Response> pendingRequest, List<Command> commands) { 
+			super(pendingRequest); 
+			this.commands = commands;
+		}
+		public List<Object> get () throws InterruptedException, ExecutionException {
+			return TransactionSupport.getResults(commands, pendingRequest.get());
+		}
+		public List<Object> get (long timeout, TimeUnit unit) 
+			throws InterruptedException, ExecutionException, TimeoutException
+		{
+			return TransactionSupport.getResults(commands, pendingRequest.get(timeout, unit));
+		}
 	}
 	public static class FutureBoolean extends FutureResultBase implements Future<Boolean>{
 
@@ -1628,6 +1743,33 @@ public abstract class JRedisFutureSupport implements JRedisFuture {
         }
 	}
 
+	public static class FutureByteStringDictionary extends FutureResultBase implements Future<Map<ByteString, ByteString>>{
+
+        protected FutureByteStringDictionary (Future<Response> pendingRequest) { super(pendingRequest); }
+
+        public Map<ByteString, ByteString> get () throws InterruptedException, ExecutionException {
+        	MultiBulkResponse resp = (MultiBulkResponse) pendingRequest.get();
+        	return convert(resp.getMultiBulkData());
+        }
+
+        public Map<ByteString, ByteString> get (long timeout, TimeUnit unit)
+        	throws InterruptedException, ExecutionException, TimeoutException
+        {
+        	MultiBulkResponse resp = (MultiBulkResponse) pendingRequest.get(timeout, unit);
+        	return convert(resp.getMultiBulkData());
+        }
+        private static final Map<ByteString, ByteString> convert (List<byte[]> bulkdata) {
+        	Map<ByteString, ByteString> map = null;
+        	if(null != bulkdata) {
+        		map = new HashMap<ByteString, ByteString>(bulkdata.size()/2);
+        		for(int i=0; i<bulkdata.size(); i+=2){
+        			map.put(ByteString.wrap(bulkdata.get(i)), ByteString.wrap(bulkdata.get(i+1)));
+        		}
+        	}
+        	return map;
+        }
+	}
+
 	public static class FutureKeyList extends FutureResultBase implements Future<List<byte[]>>{
 
         protected FutureKeyList (Future<Response> pendingRequest) { super(pendingRequest); }
@@ -17,6 +17,7 @@
 package org.jredis.ri.alphazero;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -26,15 +27,19 @@ import java.util.StringTokenizer;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.jredis.ByteString;
 import org.jredis.ClientRuntimeException;
+import org.jredis.ElementVisitor;
 import org.jredis.JRedis;
 import org.jredis.KeyValueSet;
+import org.jredis.NotSupportedException;
 import org.jredis.ObjectInfo;
 import org.jredis.ProviderException;
 import org.jredis.Redis;
 import org.jredis.RedisException;
 import org.jredis.RedisType;
 import org.jredis.Sort;
+import org.jredis.Transaction;
 import org.jredis.ZSetEntry;
 import org.jredis.connector.Connection;
 import org.jredis.protocol.BulkResponse;
@@ -44,7 +49,9 @@ import org.jredis.protocol.Response;
 import org.jredis.protocol.ValueResponse;
 import org.jredis.ri.RI.Release;
 import org.jredis.ri.RI.Version;
+import org.jredis.ri.alphazero.connection.SyncConnection;
 import org.jredis.ri.alphazero.semantics.DefaultKeyCodec;
+import org.jredis.ri.alphazero.support.Assert;
 import org.jredis.ri.alphazero.support.Convert;
 import org.jredis.ri.alphazero.support.DefaultCodec;
 import org.jredis.ri.alphazero.support.SortSupport;
@@ -93,6 +100,39 @@ public abstract class JRedisSupport implements JRedis {
 	 * @throws ProviderException
 	 */
 	protected abstract Response serviceRequest (Command cmd, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException; 
+	
+	/**
+	 * Extension point for the streaming (multi-bulk) requests: elements of the reply
+	 * are passed to the visitor.  This implementation visits the materialized reply 
+	 * of {@link JRedisSupport#serviceRequest(Command, byte[]...)}: extensions should 
+	 * override to visit the elements as they are read (e.g. {@link SyncConnection}).
+	 * 
+	 * @param visitor
+	 * @param cmd
+	 * @param args
+	 * @return number of elements visited
+	 * @throws RedisException
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	protected long serviceRequest (ElementVisitor visitor, Command cmd, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException {
+		List<byte[]> multiBulkData= null;
+		try {
+			MultiBulkResponse multiBulkResponse = (MultiBulkResponse) this.serviceRequest(cmd, args);
+			multiBulkData = multiBulkResponse.getMultiBulkData();
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Expecting a MultiBulkResponse here => " + e.getLocalizedMessage(), e);
+		}
+		long visited = 0;
+		if(null != multiBulkData) {
+			for(byte[] element : multiBulkData){
+				visited++;
+				if(!visitor.visit(null != element ? ByteBuffer.wrap(element) : null)) break;
+			}
+		}
+		return visited;
+	}
 	// ------------------------------------------------------------------------
 	// INTERFACE
 	// ================================================================ Redis
@@ -390,6 +430,10 @@ public abstract class JRedisSupport implements JRedis {
 		set(key, String.valueOf(value).getBytes());
 	}
 	@Override
+	public <K extends Object> void set(K key, ByteString value) throws RedisException {
+		set(key, value.toByteArray());
+	}
+	@Override
 	public <K extends Object, T extends Serializable> void set (K key, T value) throws RedisException
 	{
 		set(key, DefaultCodec.encode(value));
@@ -619,6 +663,9 @@ public abstract class JRedisSupport implements JRedis {
 	public <K extends Object> boolean hset(K key, K field, Number numberValue)  throws RedisException {
 		return hset (key, field, String.valueOf(numberValue).getBytes());
 	}
+	public <K extends Object> boolean hset(K key, K field, ByteString value)  throws RedisException {
+		return hset (key, field, value.toByteArray());
+	}
 	public <K extends Object, T extends Serializable> 
 	boolean hset(K key, K field, T object)  throws RedisException {
 		return hset (key, field, DefaultCodec.encode(object));
@@ -644,6 +691,72 @@ public abstract class JRedisSupport implements JRedis {
 		return bulkData;
 	}
 	
+	public <K extends Object> boolean hsetnx(K hashKey, K hashField, byte[] value)  throws RedisException {
+		byte[] hashKeyBytes = null;
+		if((hashKeyBytes = getKeyBytes(hashKey)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+hashKey+"]");
+
+		byte[] hashFieldBytes = null;
+		if((hashFieldBytes = getKeyBytes(hashField)) == null) 
+			throw new IllegalArgumentException ("invalid field => ["+hashField+"]");
+
+		boolean response = false;
+		try {
+			ValueResponse valResponse = (ValueResponse) this.serviceRequest(Command.HSETNX, hashKeyBytes, hashFieldBytes, value);
+			response = valResponse.getBooleanValue();
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Expecting a ValueResponse here => " + e.getLocalizedMessage(), e);
+		}
+		return response;
+	}
+	public <K extends Object> boolean hsetnx(K key, K field, String stringValue)  throws RedisException {
+		return hsetnx (key, field, DefaultCodec.encode(stringValue));
+	}
+	public <K extends Object> boolean hsetnx(K key, K field, Number numberValue)  throws RedisException {
+		return hsetnx (key, field, String.valueOf(numberValue).getBytes());
+	}
+	public <K extends Object, T extends Serializable> 
+	boolean hsetnx(K key, K field, T object)  throws RedisException {
+		return hsetnx (key, field, DefaultCodec.encode(object));
+	}
+	
+	public <K extends Object> void hmset(K hashKey, Map<K, byte[]> fieldValueMap)  throws RedisException {
+		this.serviceRequest(Command.HMSET, hashMappings(hashKey, fieldValueMap));
+	}
+	
+	public <K extends Object> List<byte[]> hmget(K hashKey, K...hashFields)  throws RedisException {
+		List<byte[]> multiBulkData= null;
+		try {
+			MultiBulkResponse response = (MultiBulkResponse) this.serviceRequest(Command.HMGET, hashFields(hashKey, hashFields));
+			multiBulkData = response.getMultiBulkData();
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Expecting a MultiBulkResponse here => " + e.getLocalizedMessage(), e);
+		}
+		return multiBulkData;
+	}
+	
+	public <K extends Object> long hincrby(K hashKey, K hashField, long delta)  throws RedisException {
+		byte[] hashKeyBytes = null;
+		if((hashKeyBytes = getKeyBytes(hashKey)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+hashKey+"]");
+
+		byte[] hashFieldBytes = null;
+		if((hashFieldBytes = getKeyBytes(hashField)) == null) 
+			throw new IllegalArgumentException ("invalid field => ["+hashField+"]");
+
+		long value = 0;
+		try {
+			ValueResponse valResponse = (ValueResponse) this.serviceRequest(Command.HINCRBY, hashKeyBytes, hashFieldBytes, Convert.toBytes(delta));
+			value = valResponse.getLongValue();
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Expecting a ValueResponse here => " + e.getLocalizedMessage(), e);
+		}
+		return value;
+	}
+	
 	public <K extends Object> boolean hexists(K hashKey, K hashField)  throws RedisException {
 		byte[] hashKeyBytes = null;
 		if((hashKeyBytes = getKeyBytes(hashKey)) == null) 
@@ -759,6 +872,10 @@ public abstract class JRedisSupport implements JRedis {
 		}
 		return resp;
 	}
+	@Override
+	public <K extends Object> Map<ByteString, ByteString> hgetallAsByteStrings(K hashKey)  throws RedisException {
+		return DefaultCodec.toByteStringDictionary(hgetall(hashKey));
+	}
 
 	
 	/* ------------------------------- commands returning int value --------- */
@@ -1166,6 +1283,14 @@ public abstract class JRedisSupport implements JRedis {
 		return multiBulkData;
 	}
 	@Override
+	public <K extends Object> long smembers(K key, ElementVisitor visitor) throws RedisException {
+		byte[] keydata = null;
+		if((keydata = getKeyBytes(key)) == null) 
+			throw new RedisException (Command.SMEMBERS, "ERR Invalid key.");
+
+		return this.serviceRequest(Assert.notNull(visitor, "visitor", ClientRuntimeException.class), Command.SMEMBERS, keydata);
+	}
+	@Override
 	public <K extends Object> List<byte[]> keys() throws RedisException {
 		return this.keys("*");
 	}
@@ -1205,6 +1330,15 @@ public abstract class JRedisSupport implements JRedis {
 		*/
 	}
 
+	@Override
+	public <K extends Object> long keys(K pattern, ElementVisitor visitor) throws RedisException {
+		byte[] keydata = null;
+		if((keydata = getKeyBytes(pattern)) == null) 
+			throw new RedisException (Command.KEYS, "ERR Invalid key.");
+
+		return this.serviceRequest(Assert.notNull(visitor, "visitor", ClientRuntimeException.class), Command.KEYS, keydata);
+	}
+
 	@Override
 	public <K extends Object> List<byte[]> lrange(K key, long from, long to) throws RedisException {
 		byte[] keybytes = null;
@@ -1225,6 +1359,15 @@ public abstract class JRedisSupport implements JRedis {
 		return multiBulkData;
 	}
 
+	@Override
+	public <K extends Object> long lrange(K key, long from, long to, ElementVisitor visitor) throws RedisException {
+		byte[] keybytes = null;
+		if((keybytes = getKeyBytes(key)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		return this.serviceRequest(Assert.notNull(visitor, "visitor", ClientRuntimeException.class), Command.LRANGE, keybytes, Convert.toBytes(from), Convert.toBytes(to));
+	}
+
 	@Override
 	public <K extends Object> byte[] substr(K key, long from, long to) throws RedisException {
 		byte[] keybytes = null;
@@ -1265,6 +1408,26 @@ public abstract class JRedisSupport implements JRedis {
 		return multiBulkData;
 	}
 
+	@Override
+	public <K extends Object> List<byte[]> zrangebyscore (K key, double minScore, double maxScore, long offset, long count) throws RedisException {
+		byte[] keybytes = null;
+		if((keybytes = getKeyBytes(key)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+key+"]");
+
+		byte[] fromBytes = Convert.toBytes(minScore);
+		byte[] toBytes = Convert.toBytes(maxScore);
+
+		List<byte[]> multiBulkData= null;
+		try {
+			MultiBulkResponse MultiBulkResponse = (MultiBulkResponse) this.serviceRequest(Command.ZRANGEBYSCORE$OPTS, keybytes, fromBytes, toBytes, Command.Option.LIMIT.bytes, Convert.toBytes(offset), Convert.toBytes(count));
+			multiBulkData = MultiBulkResponse.getMultiBulkData();
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Expecting a MultiBulkResponse here => " + e.getLocalizedMessage(), e);
+		}
+		return multiBulkData;
+	}
+
 	@Override
 	public <K extends Object> long zremrangebyscore (K key, double minScore, double maxScore) throws RedisException {
 		byte[] keybytes = null;
@@ -2023,28 +2186,60 @@ public abstract class JRedisSupport implements JRedis {
 	// ------------------------------------------------------------------------
 	// Transactional commands
 	// ------------------------------------------------------------------------
+	@Override
+	public Transaction transaction () {
+		return new TransactionSupport.Sync(this);
+	}
 	/**
-	 * one option is to return a subclass of JRedis (e.g. JRedisCommandSequence)
-	 * and have that interface declare discard and multi.  Benefit is being able
-	 * to associate state with the transaction.
+	 * A MULTI left open would capture the requests of other users of the 
+	 * (potentially shared) connection -- see {@link JRedisSupport#transaction()}.
 	 * @throws RedisException
 	 */
 	@Version(major=2, minor=0, release=Release.ALPHA)
 	public <K extends Object> JRedis multi() throws RedisException {
-		throw new ProviderException("NOT IMPLEMENTED");
-//		// works
-//		this.serviceRequest(Command.MULTI);
-//		return this;
+		throw new NotSupportedException("MULTI is not supported -- use transaction()");
 	}
 	/**
 	 * @throws RedisException
 	 */
 	@Version(major=2, minor=0, release=Release.ALPHA)
 	public <K extends Object> JRedis discard () throws RedisException {
-		throw new ProviderException("NOT IMPLEMENTED");
-//		// works
-//		this.serviceRequest(Command.DISCARD);
-//		return this;
+		throw new NotSupportedException("DISCARD is not supported -- use transaction()");
+	}
+	// ------------------------------------------------------------------------
+	// Publish/Subscribe commands
+	// ------------------------------------------------------------------------
+	@Override
+	public <K extends Object> long publish (K channel, byte[] message) throws RedisException {
+		byte[] channelbytes = null;
+		if((channelbytes = getKeyBytes(channel)) == null) 
+			throw new IllegalArgumentException ("invalid channel => ["+channel+"]");
+		if(message == null) 
+			throw new IllegalArgumentException ("null message");
+		
+		long value = Long.MIN_VALUE;
+		try {
+			ValueResponse valResponse = (ValueResponse) this.serviceRequest(Command.PUBLISH, channelbytes, message);
+			value = valResponse.getLongValue();
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Expecting a ValueResponse here => " + e.getLocalizedMessage(), e);
+		}
+		return value;
+	}
+	@Override
+	public <K extends Object> long publish (K channel, String message) throws RedisException {
+		return publish(channel, DefaultCodec.encode(message));
+	}
+	@Override
+	public <K extends Object> long publish (K channel, Number message) throws RedisException {
+		return publish(channel, String.valueOf(message).getBytes());
+	}
+	@Override
+	public <K extends Object, T extends Serializable> 
+	long publish (K channel, T message) throws RedisException
+	{
+		return publish(channel, DefaultCodec.encode(message));
 	}
 	// ------------------------------------------------------------------------
 	// utility
@@ -2060,4 +2255,36 @@ public abstract class JRedisSupport implements JRedis {
 	public static <K extends Object> byte[] getKeyBytes(K key) throws IllegalArgumentException {
 		return DefaultKeyCodec.provider().encode(key);
 	}
+	
+	/**
+	 * @return the args of an <code>HMSET</code>: the hash key, followed by the field value pairs
+	 */
+	static <K extends Object> byte[][] hashMappings(K hashKey, Map<K, byte[]> fieldValueMap) throws IllegalArgumentException {
+		if(null == fieldValueMap || fieldValueMap.isEmpty()) throw new IllegalArgumentException("no fields specified");
+		byte[][] mappings = new byte[fieldValueMap.size()*2 + 1][];
+		if((mappings[0] = getKeyBytes(hashKey)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+hashKey+"]");
+		int i = 1;
+		for (Entry<K, byte[]> e : fieldValueMap.entrySet()){
+			if((mappings[i++] = getKeyBytes(e.getKey())) == null) 
+				throw new IllegalArgumentException ("invalid field => ["+e.getKey()+"]");
+			mappings[i++] = e.getValue();
+		}
+		return mappings;
+	}
+	
+	/**
+	 * @return the args of an <code>HMGET</code>: the hash key, followed by the fields
+	 */
+	static <K extends Object> byte[][] hashFields(K hashKey, K...hashFields) throws IllegalArgumentException {
+		if(null == hashFields || hashFields.length == 0) throw new IllegalArgumentException("no fields specified");
+		byte[][] args = new byte[hashFields.length + 1][];
+		if((args[0] = getKeyBytes(hashKey)) == null) 
+			throw new IllegalArgumentException ("invalid key => ["+hashKey+"]");
+		for(int i=0; i<hashFields.length; i++) {
+			if((args[i+1] = getKeyBytes(hashFields[i])) == null) 
+				throw new IllegalArgumentException ("invalid field => ["+hashFields[i]+"] @ index: " + i);
+		}
+		return args;
+	}
 }
@@ -0,0 +1,210 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.jredis.ClientRuntimeException;
+import org.jredis.connector.Monitor;
+import org.jredis.ri.alphazero.connection.MonitorConnection;
+import org.jredis.ri.alphazero.support.Assert;
+
+/**
+ * Compact binary capture of a {@link Monitor} feed, for replay by {@link MonitorReplay}.
+ * <p>
+ * The capture is the 4 byte magic <code>JRMC</code> and a version byte, followed by
+ * the records.  Each record is:
+ * <pre>
+ * timestamp delta (micros) : zigzag varlong, relative to the previous record
+ * db + 1                   : varint (0 if not known)
+ * arg count                : varint
+ * args                     : varint length + bytes, per arg
+ * </pre>
+ * Client addresses are not captured.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public final class MonitorCapture {
+
+	/** capture file magic */
+	static final byte[] MAGIC = {'J', 'R', 'M', 'C'};
+	/** capture format version */
+	static final int VERSION = 1;
+
+	private MonitorCapture () {}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Writes records to the capture.  As a {@link Monitor.Listener} it can be
+	 * directly set on a {@link MonitorConnection}: since the listener can not raise
+	 * {@link IOException}s, the first error stops the capture and is raised on
+	 * {@link Writer#close()}.
+	 */
+	public static final class Writer implements Monitor.Listener, Closeable {
+		private final OutputStream	out;
+		private long				last = 0;
+		private long				count = 0;
+		private IOException			error;
+
+		/**
+		 * Writes the capture header.
+		 * @param out
+		 * @throws IOException
+		 */
+		public Writer (OutputStream out) throws IOException {
+			this.out = new BufferedOutputStream(Assert.notNull(out, "out", ClientRuntimeException.class), 1024 * 64);
+			this.out.write(MAGIC);
+			this.out.write(VERSION);
+		}
+
+		/**
+		 * @param record
+		 * @throws IOException
+		 */
+		public synchronized void write (Monitor.Record record) throws IOException {
+			final long delta = record.getTimestamp() - last;
+			writeVarLong((delta << 1) ^ (delta >> 63));
+			writeVarLong(record.getDatabase() + 1);
+			final byte[][] args = record.getArgs();
+			writeVarLong(args.length);
+			for(byte[] arg : args){
+				writeVarLong(arg.length);
+				out.write(arg);
+			}
+			last = record.getTimestamp();
+			count++;
+		}
+
+		/* (non-Javadoc)
+		 * @see org.jredis.connector.Monitor.Listener#onCommand(org.jredis.connector.Monitor.Record)
+		 */
+		public synchronized void onCommand (Monitor.Record record) {
+			if(null != error) return;
+			try {
+				write(record);
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+
+		/** @return number of records written */
+		public synchronized long getCount () { return count; }
+
+		/**
+		 * Flushes and closes the capture.
+		 * @throws IOException the first error raised writing the capture
+		 */
+		public synchronized void close () throws IOException {
+			try {
+				out.close();
+			}
+			catch (IOException e) {
+				if(null == error) error = e;
+			}
+			if(null != error) throw error;
+		}
+
+		private void writeVarLong (long v) throws IOException {
+			while((v & ~0x7FL) != 0) {
+				out.write((int) ((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			out.write((int) v);
+		}
+	}
+
+	/**
+	 * Reads the records of a capture.
+	 */
+	public static final class Reader implements Closeable {
+		private final InputStream	in;
+		private long				last = 0;
+
+		/**
+		 * Reads and checks the capture header.
+		 * @param in
+		 * @throws IOException if not a (supported) capture
+		 */
+		public Reader (InputStream in) throws IOException {
+			this.in = new BufferedInputStream(Assert.notNull(in, "in", ClientRuntimeException.class), 1024 * 64);
+			for(byte b : MAGIC)
+				if(this.in.read() != b) throw new IOException("not a monitor capture");
+			final int version = this.in.read();
+			if(version != VERSION) throw new IOException("unsupported monitor capture version: " + version);
+		}
+
+		/**
+		 * @return the next record, or null at the end of the capture
+		 * @throws IOException
+		 */
+		public Monitor.Record next () throws IOException {
+			final int first = in.read();
+			if(first == -1) return null;
+			final long zigzag = readVarLong(first);
+			last += (zigzag >>> 1) ^ -(zigzag & 1);
+			final int db = (int) readVarLong(read()) - 1;
+			final int argc = (int) readVarLong(read());
+			if(argc <= 0) throw new IOException("corrupt monitor capture: arg count " + argc);
+			final byte[][] args = new byte[argc][];
+			for(int i=0; i<argc; i++){
+				final int len = (int) readVarLong(read());
+				if(len < 0) throw new IOException("corrupt monitor capture: arg length " + len);
+				args[i] = new byte[len];
+				for(int off = 0; off < len; ) {
+					final int n = in.read(args[i], off, len - off);
+					if(n == -1) throw new EOFException("truncated monitor capture");
+					off += n;
+				}
+			}
+			return new Monitor.Record(last, db, null, args);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.io.Closeable#close()
+		 */
+		public void close () throws IOException {
+			in.close();
+		}
+
+		private int read () throws IOException {
+			final int b = in.read();
+			if(b == -1) throw new EOFException("truncated monitor capture");
+			return b;
+		}
+
+		private long readVarLong (int b) throws IOException {
+			long v = 0;
+			for(int shift = 0; ; shift += 7) {
+				if(shift > 63) throw new IOException("corrupt monitor capture: varint");
+				v |= (long) (b & 0x7F) << shift;
+				if((b & 0x80) == 0) return v;
+				b = read();
+			}
+		}
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+import org.jredis.ClientRuntimeException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.Monitor;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * Replays a {@link MonitorCapture} through {@link JRedisPipeline}s, at the recorded
+ * pace (speed 1), a multiple of it, or as fast as the pipelines allow (speed 0).
+ * <p>
+ * Records are sent in capture order on a pipeline per recorded database.  Records
+ * of unknown database are sent on the pipeline of the replay spec's database.
+ * Commands that are not (safely) replayable are skipped:
+ * <ul>
+ * <li>commands not defined by {@link Command}</li>
+ * <li>connection state commands: AUTH, SELECT, QUIT, MONITOR, and the (P)SUBSCRIBE family</li>
+ * <li>MULTI/EXEC/DISCARD -- the commands of a transaction are replayed, untransacted</li>
+ * <li>SHUTDOWN and DEBUG</li>
+ * <li>blocking commands (e.g. BLPOP) -- see {@link Command.Flag#BLOCKING}</li>
+ * </ul>
+ * Responses are drained by a collector thread, and error responses are counted.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public class MonitorReplay {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** replayable commands, by (upper case) name */
+	private static final Map<String, Command> commands = new HashMap<String, Command>();
+	/** commands that are never replayed */
+	private static final Set<Command> skipped = EnumSet.of(Command.AUTH, Command.SELECT, Command.MULTI, Command.DISCARD, Command.DEBUG);
+
+	static {
+		for(Command cmd : Command.values()){
+			final String name = new String(cmd.bytes);
+			if(!commands.containsKey(name)) commands.put(name, cmd);
+		}
+	}
+
+	/** marks the end of the replay for the collector */
+	private static final Future<Response> END = new FutureTask<Response>(new Callable<Response>() {
+		public Response call () { return null; }
+	});
+
+	/** replay spec -- address, credentials, and connection settings of the pipelines */
+	private final ConnectionSpec	spec;
+	/** replay speed: 1 is the recorded pace, 0 is as fast as possible */
+	private final double			speed;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param spec of the target server
+	 * @param speed multiple of the recorded pace, or 0 to replay as fast as possible
+	 */
+	public MonitorReplay (ConnectionSpec spec, double speed) {
+		this.spec = Assert.notNull(spec, "spec", ClientRuntimeException.class);
+		Assert.isTrue(speed >= 0, "speed >= 0", ClientRuntimeException.class);
+		this.speed = speed;
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Replays the capture to its end.
+	 * @param capture
+	 * @return the replay result
+	 * @throws IOException reading the capture
+	 * @throws InterruptedException
+	 */
+	public Result replay (MonitorCapture.Reader capture) throws IOException, InterruptedException {
+		final Map<Integer, JRedisPipeline> pipelines = new HashMap<Integer, JRedisPipeline>();
+		final Collector collector = new Collector();
+		final Thread collectorThread = new Thread(collector, "monitor-replay-collector");
+		collectorThread.setDaemon(true);
+		collectorThread.start();
+
+		final Result result = new Result();
+		final long start = System.nanoTime();
+		long first = -1;
+		try {
+			Monitor.Record record;
+			while((record = capture.next()) != null){
+				final Command cmd = resolve(record);
+				if(null == cmd) {
+					result.skipped++;
+					continue;
+				}
+				if(first == -1) first = record.getTimestamp();
+				if(speed > 0) {
+					final long due = start + (long) ((record.getTimestamp() - first) * 1000 / speed);
+					long wait;
+					while((wait = due - System.nanoTime()) > 0)
+						LockSupport.parkNanos(wait);
+					result.maxLagNanos = Math.max(result.maxLagNanos, -wait);
+				}
+				final int db = record.getDatabase() < 0 ? spec.getDatabase() : record.getDatabase();
+				JRedisPipeline pipeline = pipelines.get(db);
+				if(null == pipeline) {
+					pipeline = new JRedisPipeline(specFor(db));
+					pipelines.put(db, pipeline);
+				}
+				final byte[][] args = record.getArgs();
+				collector.queue.put(pipeline.queueRequest(cmd, Arrays.copyOfRange(args, 1, args.length)));
+				result.sent++;
+			}
+		}
+		finally {
+			collector.queue.put(END);
+			collectorThread.join();
+			for(JRedisPipeline pipeline : pipelines.values())
+				pipeline.quit();
+		}
+		result.errors = collector.errors;
+		result.elapsedNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * @param record
+	 * @return the command of the record, or null if it is not replayed
+	 */
+	public static Command resolve (Monitor.Record record) {
+		final Command cmd = commands.get(record.getCommandName());
+		if(null == cmd || skipped.contains(cmd) || cmd.isSet(Command.Flag.BLOCKING)) return null;
+		if(cmd.requestType == Command.RequestType.TRANSACTION || cmd.responseType == Command.ResponseType.VIRTUAL)
+			return null;
+		if(cmd == Command.SORT) {
+			final byte[][] args = record.getArgs();
+			for(int i=1; i<args.length; i++)
+				if(Command.Option.STORE.name().equalsIgnoreCase(new String(args[i])))
+					return Command.SORT$STORE;
+		}
+		return cmd;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+
+	/** @return a copy of the replay spec, for the database */
+	private ConnectionSpec specFor (int db) {
+		return DefaultConnectionSpec.copy(spec).setDatabase(db);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/** drains the responses, in send order */
+	private static final class Collector implements Runnable {
+		final BlockingQueue<Future<Response>> queue = new LinkedBlockingQueue<Future<Response>>();
+		volatile long errors = 0;
+
+		public void run () {
+			try {
+				Future<Response> future;
+				while((future = queue.take()) != END){
+					try {
+						if(future.get().isError()) errors++;
+					}
+					catch (ExecutionException e) {
+						errors++;
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Log.problem("MonitorReplay collector interrupted");
+			}
+		}
+	}
+
+	/** replay counts and timings */
+	public static final class Result {
+		private long	sent;
+		private long	skipped;
+		private long	errors;
+		private long	elapsedNanos;
+		private long	maxLagNanos;
+
+		/** @return number of commands sent */
+		public long getSent () { return sent; }
+		/** @return number of records not replayed -- see {@link MonitorReplay#resolve(Monitor.Record)} */
+		public long getSkipped () { return skipped; }
+		/** @return number of error responses */
+		public long getErrors () { return errors; }
+		/** @return replay duration, including the drain of the responses */
+		public long getElapsedNanos () { return elapsedNanos; }
+		/** @return max delay of a send behind its (scaled) recorded time -- 0 at speed 0 */
+		public long getMaxLagNanos () { return maxLagNanos; }
+
+		@Override
+		public String toString () {
+			return String.format("sent:%d skipped:%d errors:%d elapsed:%d msecs max-lag:%d usecs", sent, skipped, errors, elapsedNanos / 1000000, maxLagNanos / 1000);
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.jredis.ClientRuntimeException;
+import org.jredis.JRedisFuture;
+import org.jredis.ProviderException;
+import org.jredis.ZSetEntry;
+import org.jredis.ri.alphazero.support.Assert;
+
+/**
+ * Iterates over a (large) list or sorted set in pages, fetched with a {@link JRedisFuture}.
+ * The next page is requested as soon as the current page is handed to the iterator, so 
+ * that the round-trip of the request overlaps the consumption of the current page.
+ * <p>
+ * Pages start at the initial page size.  The page size is doubled (up to the max page size)
+ * each time the iterator had to wait for a prefetched page: the consumer is faster than
+ * the round-trip, and larger pages amortize it.
+ * <p>
+ * Pages are fetched by rank (or offset in the score range): members added or removed 
+ * during the iteration may be skipped or iterated twice.  The iterator is not thread-safe.
+ * Errors of the requests are raised by {@link #hasNext()} and {@link #next()} as 
+ * {@link ClientRuntimeException}s.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public abstract class PagedIterator<T> implements Iterator<T> {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** default size of the first page */
+	public static final int DEFAULT_INITIAL_PAGE_SIZE = 100;
+	/** default max size of a page */
+	public static final int DEFAULT_MAX_PAGE_SIZE = 10000;
+
+	/** number of members to iterate, or -1 if bound by the end of the collection */
+	private final long			limit;
+	private int					pageSize = DEFAULT_INITIAL_PAGE_SIZE;
+	private int					maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+
+	/** offset of the next page request */
+	private long				offset = 0;
+	/** the current page */
+	private Iterator<T>			page;
+	/** the prefetched page, if requested */
+	private Future<List<T>>		prefetch;
+	/** number of members requested by the prefetch */
+	private int					prefetchCount;
+	/** set when the last page has been requested */
+	private boolean				done = false;
+	private long				pages = 0;
+	private long				stalls = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param limit number of members to iterate, or -1 to iterate to the end
+	 */
+	protected PagedIterator (long limit) {
+		this.limit = limit;
+	}
+
+	// ------------------------------------------------------------------------
+	// Extension point
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param offset of the page, relative to the start of the iteration
+	 * @param count number of members of the page
+	 * @return the future page 
+	 */
+	protected abstract Future<List<T>> fetch (long offset, int count);
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sets the page sizes.  Must be set before the iteration starts.
+	 * @param initial size of the first page
+	 * @param max size of a page
+	 * @return this iterator
+	 */
+	public PagedIterator<T> setPageSize (int initial, int max) {
+		Assert.isTrue(pages == 0 && null == prefetch, "iteration not started", ClientRuntimeException.class);
+		Assert.isTrue(initial > 0 && max >= initial, "0 < initial <= max", ClientRuntimeException.class);
+		this.pageSize = initial;
+		this.maxPageSize = max;
+		return this;
+	}
+
+	/** @return the size of the next page request */
+	public int getPageSize () { return pageSize; }
+
+	/** @return number of pages fetched */
+	public long getPageCount () { return pages; }
+
+	/** @return number of (prefetched) pages the iterator had to wait for */
+	public long getStallCount () { return stalls; }
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext () {
+		while(null == page || !page.hasNext()) {
+			if(!nextPage()) return false;
+		}
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	public T next () {
+		if(!hasNext()) throw new NoSuchElementException();
+		return page.next();
+	}
+
+	/**
+	 * Not supported.
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove () {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+
+	/** @return true if the next page was fetched -- it may be empty */
+	private boolean nextPage () {
+		if(null == prefetch) {
+			if(!request()) return false;
+		}
+		else if(!prefetch.isDone()) {
+			stalls++;
+			pageSize = Math.min(maxPageSize, pageSize * 2);
+		}
+		final List<T> members = get(prefetch);
+		final int requested = prefetchCount;
+		prefetch = null;
+		pages++;
+		if(null == members || members.size() < requested) done = true;
+		page = null != members ? members.iterator() : null;
+		if(!done) request();
+		return null != page;
+	}
+
+	/** requests the page at the offset, if any */
+	private boolean request () {
+		if(done) return false;
+		int count = pageSize;
+		if(limit >= 0) {
+			final long remaining = limit - offset;
+			if(remaining <= 0) {
+				done = true;
+				return false;
+			}
+			if(remaining <= count) {
+				count = (int) remaining;
+				done = true;
+			}
+		}
+		prefetch = fetch(offset, count);
+		prefetchCount = count;
+		offset += count;
+		return true;
+	}
+
+	private List<T> get (Future<List<T>> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ClientRuntimeException("Interrupted!", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof ProviderException)
+				throw (ProviderException) cause;
+			else if(cause instanceof ClientRuntimeException) 
+				throw (ClientRuntimeException)cause;
+			else throw new ClientRuntimeException("Exception fetching the page: " + cause.getLocalizedMessage(), cause);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Factory methods
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param redis
+	 * @param listkey
+	 * @param from rank of the first member (>= 0)
+	 * @param to rank of the last member, or -1 for the end of the list
+	 * @return iterator over the list members
+	 * @see JRedisFuture#lrange(Object, long, long)
+	 */
+	public static <K extends Object> PagedIterator<byte[]> lrange (final JRedisFuture redis, final K listkey, final long from, long to) {
+		assertArgs(redis, listkey, from, to);
+		return new PagedIterator<byte[]>(limit(from, to)) {
+			@Override
+			protected Future<List<byte[]>> fetch (long offset, int count) {
+				return redis.lrange(listkey, from + offset, from + offset + count - 1);
+			}
+		};
+	}
+
+	/**
+	 * @param redis
+	 * @param setkey
+	 * @param from rank of the first member (>= 0)
+	 * @param to rank of the last member, or -1 for the end of the set
+	 * @return iterator over the sorted set members, in rank order
+	 * @see JRedisFuture#zrange(Object, long, long)
+	 */
+	public static <K extends Object> PagedIterator<byte[]> zrange (final JRedisFuture redis, final K setkey, final long from, long to) {
+		assertArgs(redis, setkey, from, to);
+		return new PagedIterator<byte[]>(limit(from, to)) {
+			@Override
+			protected Future<List<byte[]>> fetch (long offset, int count) {
+				return redis.zrange(setkey, from + offset, from + offset + count - 1);
+			}
+		};
+	}
+
+	/**
+	 * @param redis
+	 * @param setkey
+	 * @param from rank of the first member (>= 0)
+	 * @param to rank of the last member, or -1 for the end of the set
+	 * @return iterator over the sorted set members and their scores, in rank order
+	 * @see JRedisFuture#zrangeSubset(Object, long, long)
+	 */
+	public static <K extends Object> PagedIterator<ZSetEntry> zrangeSubset (final JRedisFuture redis, final K setkey, final long from, long to) {
+		assertArgs(redis, setkey, from, to);
+		return new PagedIterator<ZSetEntry>(limit(from, to)) {
+			@Override
+			protected Future<List<ZSetEntry>> fetch (long offset, int count) {
+				return redis.zrangeSubset(setkey, from + offset, from + offset + count - 1);
+			}
+		};
+	}
+
+	/**
+	 * @param redis
+	 * @param setkey
+	 * @param minScore
+	 * @param maxScore
+	 * @return iterator over the sorted set members of the score range, in rank order
+	 * @see JRedisFuture#zrangebyscore(Object, double, double, long, long)
+	 */
+	public static <K extends Object> PagedIterator<byte[]> zrangebyscore (final JRedisFuture redis, final K setkey, final double minScore, final double maxScore) {
+		assertArgs(redis, setkey, 0, -1);
+		return new PagedIterator<byte[]>(-1) {
+			@Override
+			protected Future<List<byte[]>> fetch (long offset, int count) {
+				return redis.zrangebyscore(setkey, minScore, maxScore, offset, count);
+			}
+		};
+	}
+
+	private static void assertArgs (JRedisFuture redis, Object key, long from, long to) {
+		Assert.notNull(redis, "redis", ClientRuntimeException.class);
+		Assert.notNull(key, "key", ClientRuntimeException.class);
+		Assert.isTrue(from >= 0, "from >= 0", ClientRuntimeException.class);
+		Assert.isTrue(to == -1 || to >= from, "to == -1 || to >= from", ClientRuntimeException.class);
+	}
+
+	private static long limit (long from, long to) {
+		return to == -1 ? -1 : to - from + 1;
+	}
+}
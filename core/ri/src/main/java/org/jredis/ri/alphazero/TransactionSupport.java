@@ -0,0 +1,211 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import org.jredis.FutureTransaction;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.Transaction;
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.MultiBulkResponse;
+import org.jredis.protocol.Response;
+import org.jredis.protocol.ResultSetResponse;
+import org.jredis.protocol.ValueResponse;
+import org.jredis.protocol.Command.RequestType;
+import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.DefaultCodec;
+
+/**
+ * Support for the {@link Transaction} and {@link FutureTransaction} builders: accumulates 
+ * the queued commands as the args of a {@link RequestType#TRANSACTION} {@link Command#EXEC}
+ * request, and maps the {@link ResultSetResponse} of the request to the typed results of
+ * the commands.
+ *
+ * @since   alpha.0
+ * 
+ */
+public abstract class TransactionSupport {
+	
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** the queued commands */
+	private final List<Command> commands = new ArrayList<Command>();
+	
+	/** the request args -- per {@link RequestType#TRANSACTION} */
+	private final List<byte[]> requestArgs = new ArrayList<byte[]>();
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/** @return number of queued commands */
+	public final int size () { return commands.size(); }
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param cmd
+	 * @param args
+	 * @throws IllegalArgumentException if the command can not be queued, or on null args.
+	 */
+	protected final void add (Command cmd, Object... args) throws IllegalArgumentException {
+		if(null == cmd) 
+			throw new IllegalArgumentException ("null command");
+		switch (cmd.responseType) {
+			case VIRTUAL:
+			case RESULT_SET:
+				throw new IllegalArgumentException (cmd.code + " can not be queued in a transaction");
+			default:
+				if(cmd == Command.MULTI || cmd == Command.DISCARD)
+					throw new IllegalArgumentException (cmd.code + " can not be queued in a transaction");
+		}
+		byte[][] argBytes = new byte[args.length][];
+		for(int i=0; i<args.length; i++)
+			argBytes[i] = toBytes(args[i], i);
+		
+		requestArgs.add(cmd.bytes);
+		requestArgs.add(Convert.toBytes(argBytes.length));
+		for(byte[] arg : argBytes)
+			requestArgs.add(arg);
+		commands.add(cmd);
+	}
+	
+	/** @return the args of the {@link Command#EXEC} request */
+	protected final byte[][] getRequestArgs () {
+		return requestArgs.toArray(new byte[requestArgs.size()][]);
+	}
+	
+	/** @return the queued commands, as of now */
+	protected final List<Command> getCommands () {
+		return Collections.unmodifiableList(new ArrayList<Command>(commands));
+	}
+	
+	private static byte[] toBytes (Object arg, int idx) throws IllegalArgumentException {
+		if(null == arg)
+			throw new IllegalArgumentException ("null arg {" + idx + "}");
+		if(arg instanceof byte[])
+			return (byte[]) arg;
+		if(arg instanceof String)
+			return DefaultCodec.encode((String) arg);
+		if(arg instanceof Number)
+			return String.valueOf(arg).getBytes();
+		if(arg instanceof Serializable)
+			return DefaultCodec.encode((Serializable) arg);
+		throw new IllegalArgumentException ("arg {" + idx + "} is not Serializable: " + arg.getClass().getName());
+	}
+	
+	/**
+	 * Maps the responses of the transaction to the typed results of its commands.
+	 * @param commands the commands of the transaction
+	 * @param response response of the transaction
+	 * @return the results, or null if the transaction was not executed
+	 * @see Transaction
+	 */
+	static final List<Object> getResults (List<Command> commands, Response response) throws ProviderException {
+		List<Response> responses = null;
+		try {
+			responses = ((ResultSetResponse) response).getResults();
+		}
+		catch (ClassCastException e){
+			throw new ProviderException("Expecting a ResultSetResponse here => " + e.getLocalizedMessage(), e);
+		}
+		if(null == responses) 
+			return null;
+		if(responses.size() != commands.size())
+			throw new ProviderException(String.format("Bug? %d responses for %d commands", responses.size(), commands.size()));
+		
+		List<Object> results = new ArrayList<Object>(responses.size());
+		for(int i=0; i<responses.size(); i++){
+			final Command cmd = commands.get(i);
+			final Response r = responses.get(i);
+			if(r.getStatus().isError()){
+				results.add(new RedisException(cmd, r.getStatus().message()));
+				continue;
+			}
+			try {
+				switch (cmd.responseType) {
+					case STATUS:
+					case QUEUED:
+						results.add(r.getStatus()); break;
+					case STRING:
+						results.add(((ValueResponse) r).getStringValue()); break;
+					case BOOLEAN:
+						results.add(((ValueResponse) r).getLongValue() == 1); break;
+					case NUMBER:
+						results.add(((ValueResponse) r).getLongValue()); break;
+					case BULK:
+						results.add(((BulkResponse) r).getBulkData()); break;
+					case MULTI_BULK:
+						results.add(((MultiBulkResponse) r).getMultiBulkData()); break;
+					default:
+						throw new ProviderException("Bug? " + cmd.code + " can not be queued in a transaction");
+				}
+			}
+			catch (ClassCastException e){
+				throw new ProviderException(String.format("Unexpected %s response to %s", r.getType(), cmd.code), e);
+			}
+			catch (IllegalStateException e){
+				throw new ProviderException(String.format("Unexpected %s response to %s", r.getType(), cmd.code), e);
+			}
+		}
+		return results;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** {@link Transaction} of a {@link JRedisSupport} client */
+	static final class Sync extends TransactionSupport implements Transaction {
+		private final JRedisSupport client;
+		Sync (JRedisSupport client) { this.client = client; }
+		
+		public Transaction queue (Command cmd, Object... args) throws IllegalArgumentException {
+			add(cmd, args);
+			return this;
+		}
+		public List<Object> exec () throws RedisException {
+			final List<Command> commands = getCommands();
+			return getResults(commands, client.serviceRequest(Command.EXEC, getRequestArgs()));
+		}
+	}
+	
+	/** {@link FutureTransaction} of a {@link JRedisFutureSupport} client */
+	static final class Queued extends TransactionSupport implements FutureTransaction {
+		private final JRedisFutureSupport client;
+		Queued (JRedisFutureSupport client) { this.client = client; }
+		
+		public FutureTransaction queue (Command cmd, Object... args) throws IllegalArgumentException {
+			add(cmd, args);
+			return this;
+		}
+		public Future<List<Object>> exec () {
+			final List<Command> commands = getCommands();
+			return new JRedisFutureSupport.FutureResultSet(client.queueRequest(Command.EXEC, getRequestArgs()), commands);
+		}
+	}
+}
@@ -25,12 +25,14 @@ import java.util.concurrent.LinkedBlockingQueue;
 import org.jredis.ClientRuntimeException;
 import org.jredis.ProviderException;
 import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionReset;
 import org.jredis.connector.ConnectionSpec;
 import org.jredis.connector.NotConnectedException;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.connection.ConnectionTracer.Phase;
 import org.jredis.ri.alphazero.protocol.ConcurrentSyncProtocol;
 import org.jredis.ri.alphazero.protocol.VirtualResponse;
 import org.jredis.ri.alphazero.support.Assert;
@@ -126,10 +128,10 @@ public class AsyncConnection extends ConnectionBase implements Connection {
 	}
 	
 	/* (non-Javadoc)
-     * @see org.jredis.ri.alphazero.connection.ConnectionBase#queueRequest(org.jredis.protocol.Command, byte[][])
+     * @see org.jredis.ri.alphazero.connection.ConnectionBase#doQueueRequest(org.jredis.protocol.Command, byte[][])
      */
     @Override
-    public Future<Response> queueRequest (Command cmd, byte[]... args)
+    protected Future<Response> doQueueRequest (Command cmd, byte[]... args)
     	throws ClientRuntimeException, ProviderException 
     {
 		if(!isConnected()) 
@@ -152,9 +154,9 @@ public class AsyncConnection extends ConnectionBase implements Connection {
     	 * <p>
     	 * TODO: not entirely clear what is the best way to handle exceptions.
     	 * <p>
-    	 * TODO: socket Reconnect in the context of pipelining is non-trivial, and maybe
-    	 * not even practically possible.  (e.g. request n is sent but pipe breaks on
-    	 * some m (m!=n) response.  non trivial.
+    	 * On connection errors, {@link Connection.Flag#RELIABLE} connections reconnect 
+    	 * and resend the request if it is {@link Command#isIdempotent() idempotent}; 
+    	 * otherwise the request is failed with {@link ConnectionReset}.
     	 */
 
         public void run () {
@@ -167,32 +169,24 @@ public class AsyncConnection extends ConnectionBase implements Connection {
 				try {
 	                pending = _pendingQueue.take();
 					try {
-						Request request = Assert.notNull(protocol.createRequest (pending.cmd, pending.args), "request object from handler", ProviderException.class);
-						request.write(getOutputStream());
-						
-						pending.response = protocol.createResponse(pending.cmd);
-						pending.response.read(getInputStream());
-						
-						pending.completion.signal();
-						if(pending.response.getStatus().isError()) {
-							Log.error ("(Asynch) Error response for " + pending.cmd.code + " => " + pending.response.getStatus().message());
-						}
-
+						process(pending, protocol);
 					}
 					catch (ProviderException bug){
 						Log.error ("ProviderException: " + bug.getLocalizedMessage());
 						bug.printStackTrace();
-						pending.setCRE(bug);
+						failRequest(pending, bug);
 					}
 					catch (ClientRuntimeException cre) {
 						Log.error ("ClientRuntimeException: " + cre.getLocalizedMessage());
-						cre.printStackTrace();
-						pending.setCRE(cre);
+						if(spec.getConnectionFlag(Flag.RELIABLE) && pending.cmd != Command.QUIT)
+							onConnectionReset(cre, pending, protocol);
+						else 
+							failRequest(pending, cre);
 					}
 					catch (RuntimeException e){
 						Log.error("Unexpected RuntimeException ", e);
 						e.printStackTrace();
-						pending.setCRE(new ProviderException("Unexpected runtime exception in response handler"));
+						failRequest(pending, new ProviderException("Unexpected runtime exception in response handler"));
 						pending.setResponse(null);
 						break;
 					}
@@ -211,5 +205,63 @@ public class AsyncConnection extends ConnectionBase implements Connection {
         	}
 			Log.log("AsyncConnection processor thread <%s> stopped.", Thread.currentThread().getName());
         }
+        
+        /**
+         * Writes the request and reads its response.
+         */
+        private void process (PendingRequest pending, Protocol protocol) {
+        	// cancelled before sent
+        	if(pending.isCancelled()) return;
+        	
+			final ConnectionTracer tracer = getTracer();
+			long mark = null != tracer ? trace(tracer, Phase.QUEUE_WAIT, pending.cmd, pending.issued) : 0;
+			Request request = Assert.notNull(protocol.createRequest (pending.cmd, pending.args), "request object from handler", ProviderException.class);
+			if(null != tracer) mark = trace(tracer, Phase.ENCODE, pending.cmd, mark);
+			final long sent = bytesSent();
+			request.write(getOutputStream());
+			pending.bytesSent = bytesSent() - sent;
+			if(null != tracer) mark = trace(tracer, Phase.FLUSH, pending.cmd, mark);
+			
+			Response response = protocol.createResponse(pending.cmd);
+			final long received = bytesReceived();
+			response.read(getInputStream());
+			if(null != tracer) trace(tracer, Phase.DECODE, pending.cmd, mark);
+			markActivity();
+			
+			// cancelled while in flight
+			if(!pending.claim(PendingRequest.COMPLETED)) return;
+			if(null != metrics)
+				metrics.record(pending.cmd, System.nanoTime() - pending.issued, pending.bytesSent, bytesReceived() - received, response.getStatus().isError());
+			
+			pending.setResponse(response);
+			if(response.getStatus().isError()) {
+				Log.error ("(Asynch) Error response for " + pending.cmd.code + " => " + response.getStatus().message());
+			}
+        }
+        
+        /**
+         * Reconnects and resends the pending request if it is idempotent.
+         */
+        private void onConnectionReset (ClientRuntimeException cre, PendingRequest pending, Protocol protocol) {
+        	Log.problem("AsyncConnection <%s> connection reset: %s -- reconnecting", AsyncConnection.this, cre.getMessage());
+        	try {
+        		reconnect();
+        	}
+        	catch (ClientRuntimeException e) {
+        		failRequest(pending, e);
+        		return;
+        	}
+        	
+        	if(!pending.cmd.isIdempotent()) {
+        		failRequest(pending, new ConnectionReset(String.format("%s request may or may not have been processed by the server", pending.cmd.code)));
+        		return;
+        	}
+        	try {
+        		process(pending, protocol);
+        	}
+        	catch (ClientRuntimeException e) {
+        		failRequest(pending, e);
+        	}
+        }
     }
 }
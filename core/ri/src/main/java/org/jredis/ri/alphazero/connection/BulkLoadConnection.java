@@ -0,0 +1,630 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Semaphore;
+import org.jredis.ClientRuntimeException;
+import org.jredis.ProviderException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.NotConnectedException;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * Mass import connection: commands are encoded directly into a large write buffer,
+ * and the replies are parsed and counted as they stream in, by a reader thread,
+ * without per request objects (e.g. {@link PendingRequest}, <code>Response</code>).
+ * Error replies are reported to the {@link ErrorListener} with the index of the
+ * command in the input.
+ * <p>
+ * The number of commands in flight is bounded by {@link Connection.Property#MAX_PENDING_REQUESTS}
+ * (or {@link BulkLoadConnection#DEFAULT_WINDOW} if not specified): the loader blocks,
+ * having flushed its buffer, until the server has caught up.
+ * <p>
+ * The end of the input is marked with a PING, so that the loader knows the server
+ * has processed the last command.  Load failures (e.g. connection faults) close the
+ * connection: all commands prior to {@link BulkLoadException#getReplyCount()} have been
+ * processed by the server, and the load can be resumed from that index on a new
+ * connection.
+ * <p>
+ * Heartbeats are not used as they would interleave with the commands.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public class BulkLoadConnection extends ConnectionBase {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** default max number of commands in flight */
+	public static final int		DEFAULT_WINDOW = 1024 * 64;
+	/** size of the write buffer */
+	public static final int		WRITE_BUFFER_SIZE = 1024 * 256;
+	/** size of the read buffer */
+	public static final int		READ_BUFFER_SIZE = 1024 * 64;
+
+	private static final byte[]	CRLF = {'\r', '\n'};
+
+	private final byte[]		wbuf = new byte[WRITE_BUFFER_SIZE];
+	private int					wpos = 0;
+	private long				bytesWritten = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructors
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Connects, if not connected per {@link Connection.Flag#CONNECT_IMMEDIATELY}.
+	 * @param connectionSpec
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	public BulkLoadConnection (ConnectionSpec connectionSpec) throws ClientRuntimeException, ProviderException {
+		super(connectionSpec.setModality(Modality.Asynchronous));
+		if(!isConnected())
+			connect();
+	}
+
+	// ------------------------------------------------------------------------
+	// Extension
+	// ------------------------------------------------------------------------
+
+	/**
+	 * No heartbeat: a PING would interleave with the commands of a load.
+	 * @see org.jredis.ri.alphazero.connection.ConnectionBase#initializeComponents()
+	 */
+	@Override
+	protected void initializeComponents () { }
+
+	/**
+	 * The reader does its own buffering, and must not block for more than is available.
+	 */
+	@Override
+	protected InputStream newInputStream (InputStream socketInputStream) {
+		return socketInputStream;
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see org.jredis.connector.Connection#getModality()
+	 */
+	public final Modality getModality() {
+		return Connection.Modality.Asynchronous;
+	}
+
+	/**
+	 * @param commands the commands to load -- each the command name followed by its args
+	 * @return the load result
+	 * @throws BulkLoadException if the load fails
+	 * @see BulkLoadConnection#load(Iterator, ErrorListener)
+	 */
+	public Result load (Iterator<byte[][]> commands) throws BulkLoadException {
+		return load(commands, null);
+	}
+
+	/**
+	 * Loads the commands, and awaits the server's reply to the last command.
+	 * @param commands the commands to load -- each the command name followed by its args
+	 * @param listener notified of error replies -- on the reader thread.  May be null.
+	 * @return the load result
+	 * @throws BulkLoadException if the load fails.  The connection is closed.
+	 */
+	public synchronized Result load (Iterator<byte[][]> commands, ErrorListener listener) throws BulkLoadException {
+		Assert.notNull(commands, "commands", ClientRuntimeException.class);
+		if(!isConnected())
+			throw new NotConnectedException("Not connected!");
+
+		final long start = System.nanoTime();
+		final ReplyReader reader = new ReplyReader(getInputStream(), newWindow(), listener);
+		final Thread readerThread = new Thread(reader, "bulkload-reader");
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		final OutputStream out = getOutputStream();
+		bytesWritten = 0;
+		long index = 0;
+		try {
+			while(commands.hasNext()) {
+				final byte[][] argv = commands.next();
+				if(null == argv || argv.length == 0)
+					throw new IllegalArgumentException("command at index " + index + " is empty");
+				if(!reader.window.tryAcquire()) {
+					flush(out);
+					reader.window.acquire();
+				}
+				if(null != reader.failure) break;
+				write(out, argv);
+				index++;
+			}
+			if(null == reader.failure) {
+				// the reply to the PING marks the end of the load
+				reader.total = index + 1;
+				write(out, new byte[][]{ Command.PING.bytes });
+				flush(out);
+			}
+			readerThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw fail(reader, readerThread, e);
+		}
+		catch (IOException e) {
+			throw fail(reader, readerThread, e);
+		}
+		catch (RuntimeException e) {
+			throw fail(reader, readerThread, e);
+		}
+		if(null != reader.failure)
+			throw fail(reader, readerThread, reader.failure);
+
+		return new Result(index, reader.errors, bytesWritten, System.nanoTime() - start);
+	}
+
+	/**
+	 * Loads the commands of the stream -- see {@link BulkLoadConnection#readCommands(InputStream)}.
+	 * @param in
+	 * @param listener notified of error replies -- on the reader thread.  May be null.
+	 * @return the load result
+	 * @throws BulkLoadException if the load fails.  The connection is closed.
+	 */
+	public Result load (InputStream in, ErrorListener listener) throws BulkLoadException {
+		return load(readCommands(in), listener);
+	}
+
+	/**
+	 * Sends QUIT and closes the connection.
+	 */
+	public synchronized void quit () {
+		if(!isConnected()) return;
+		try {
+			final OutputStream out = getOutputStream();
+			write(out, new byte[][]{ Command.QUIT.bytes });
+			flush(out);
+		}
+		catch (IOException e) {
+			Log.error("BulkLoadConnection <%s> on QUIT: %s", this, e.getMessage());
+		}
+		finally {
+			disconnect();
+			shutdown();
+		}
+	}
+
+	/**
+	 * Reads commands, a line at a time, per the <code>redis-cli</code> inline
+	 * syntax: args are separated by spaces, and may be quoted with double quotes
+	 * (with <code>\" \\ \n \r \t \xHH</code> escapes) or single quotes (no escapes).
+	 * Empty lines and lines beginning with '#' are skipped.  A malformed line
+	 * raises an {@link IllegalArgumentException} with its line number.
+	 * @param in
+	 * @return iterator of the commands of the stream
+	 */
+	public static Iterator<byte[][]> readCommands (InputStream in) {
+		return new CommandReader(in);
+	}
+
+	/**
+	 * Parses a line of commands per the <code>redis-cli</code> inline syntax.
+	 * @param line
+	 * @param off
+	 * @param len
+	 * @return the command name and args -- empty for an empty line
+	 * @throws IllegalArgumentException if the line is malformed
+	 */
+	public static byte[][] parseCommand (byte[] line, int off, int len) throws IllegalArgumentException {
+		final int end = off + len;
+		final List<byte[]> args = new ArrayList<byte[]>();
+		final ByteArrayOutputStream arg = new ByteArrayOutputStream(32);
+		int i = off;
+		while(true) {
+			while(i < end && (line[i] == ' ' || line[i] == '\t')) i++;
+			if(i >= end) break;
+			arg.reset();
+			final byte quote = line[i];
+			if(quote == '"' || quote == '\'') {
+				i++;
+				while(true) {
+					if(i >= end)
+						throw new IllegalArgumentException("unterminated quoted arg");
+					final byte b = line[i++];
+					if(b == quote) break;
+					if(b != '\\' || quote == '\'') {
+						arg.write(b);
+						continue;
+					}
+					if(i >= end)
+						throw new IllegalArgumentException("unterminated escape");
+					final byte e = line[i++];
+					switch (e) {
+					case 'n': arg.write('\n'); break;
+					case 'r': arg.write('\r'); break;
+					case 't': arg.write('\t'); break;
+					case 'x':
+						if(i + 2 > end)
+							throw new IllegalArgumentException("unterminated hex escape");
+						arg.write((hex(line[i]) << 4) | hex(line[i+1]));
+						i += 2;
+						break;
+					default: arg.write(e); break;
+					}
+				}
+				if(i < end && line[i] != ' ' && line[i] != '\t')
+					throw new IllegalArgumentException("closing quote must be followed by a space");
+			}
+			else {
+				while(i < end && line[i] != ' ' && line[i] != '\t')
+					arg.write(line[i++]);
+			}
+			args.add(arg.toByteArray());
+		}
+		return args.toArray(new byte[args.size()][]);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+
+	private Semaphore newWindow () {
+		final Number window = (Number) spec.getConnectionProperty(Property.MAX_PENDING_REQUESTS);
+		return new Semaphore(null != window && window.intValue() > 0 ? window.intValue() : DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Closes the connection, and stops the reader.
+	 * @return the load exception, with the number of commands processed by the server
+	 */
+	private BulkLoadException fail (ReplyReader reader, Thread readerThread, Throwable cause) {
+		Log.problem("BulkLoadConnection <%s> load failed after %d replies: %s", this, reader.replies, cause);
+		reader.aborted = true;
+		abortSocket();
+		try {
+			readerThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(isConnected()) disconnect();
+		if(cause instanceof BulkLoadException) return (BulkLoadException) cause;
+		return new BulkLoadException("Bulk load failed after " + reader.replies + " replies: " + cause.getMessage(), cause, reader.replies);
+	}
+
+	/** encodes the command in the write buffer */
+	private void write (OutputStream out, byte[][] argv) throws IOException {
+		ensure(out, 24);
+		wbuf[wpos++] = '*';
+		writeNumber(argv.length);
+		for(int i=0; i<argv.length; i++) {
+			final byte[] arg = Assert.notNull(argv[i], i, IllegalArgumentException.class);
+			ensure(out, 24);
+			wbuf[wpos++] = '$';
+			writeNumber(arg.length);
+			if(arg.length > wbuf.length - wpos) {
+				flush(out);
+				if(arg.length > wbuf.length) {
+					out.write(arg);
+					bytesWritten += arg.length;
+				}
+				else {
+					System.arraycopy(arg, 0, wbuf, wpos, arg.length);
+					wpos += arg.length;
+				}
+			}
+			else {
+				System.arraycopy(arg, 0, wbuf, wpos, arg.length);
+				wpos += arg.length;
+			}
+			ensure(out, 2);
+			wbuf[wpos++] = '\r';
+			wbuf[wpos++] = '\n';
+		}
+	}
+
+	/** writes the number, and CRLF -- ensured space for 22 bytes */
+	private void writeNumber (int n) {
+		if(n == 0) {
+			wbuf[wpos++] = '0';
+		}
+		else {
+			final int from = wpos;
+			for(; n > 0; n /= 10)
+				wbuf[wpos++] = (byte) ('0' + n % 10);
+			for(int lo = from, hi = wpos - 1; lo < hi; lo++, hi--) {
+				final byte b = wbuf[lo]; wbuf[lo] = wbuf[hi]; wbuf[hi] = b;
+			}
+		}
+		wbuf[wpos++] = CRLF[0];
+		wbuf[wpos++] = CRLF[1];
+	}
+
+	private void ensure (OutputStream out, int n) throws IOException {
+		if(wpos + n > wbuf.length) flush(out);
+	}
+
+	private void flush (OutputStream out) throws IOException {
+		if(wpos == 0) return;
+		out.write(wbuf, 0, wpos);
+		out.flush();
+		bytesWritten += wpos;
+		wpos = 0;
+	}
+
+	private static int hex (byte b) {
+		if(b >= '0' && b <= '9') return b - '0';
+		if(b >= 'a' && b <= 'f') return b - 'a' + 10;
+		if(b >= 'A' && b <= 'F') return b - 'A' + 10;
+		throw new IllegalArgumentException("invalid hex digit: " + (char) b);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Callback for error replies.
+	 */
+	public interface ErrorListener {
+		/**
+		 * @param index of the command in the load input
+		 * @param message the error reply
+		 */
+		public void onError (long index, String message);
+	}
+
+	/**
+	 * Counts of a completed load.
+	 */
+	public static final class Result {
+		private final long count;
+		private final long errors;
+		private final long bytes;
+		private final long elapsedNanos;
+
+		Result (long count, long errors, long bytes, long elapsedNanos) {
+			this.count = count;
+			this.errors = errors;
+			this.bytes = bytes;
+			this.elapsedNanos = elapsedNanos;
+		}
+		/** @return number of commands loaded */
+		public long getCount () { return count; }
+		/** @return number of error replies */
+		public long getErrorCount () { return errors; }
+		/** @return number of bytes sent */
+		public long getBytesSent () { return bytes; }
+		/** @return load duration */
+		public long getElapsedNanos () { return elapsedNanos; }
+
+		@Override
+		public String toString () {
+			return String.format("commands:%d errors:%d bytes:%d elapsed:%d msecs", count, errors, bytes, elapsedNanos / 1000000);
+		}
+	}
+
+	/**
+	 * Parses the replies, as they stream in, counting the replies and reporting
+	 * the errors.  Replies are skipped, not materialized.
+	 */
+	private static final class ReplyReader implements Runnable {
+		final InputStream		in;
+		final Semaphore			window;
+		final ErrorListener		listener;
+		final byte[]			buf = new byte[READ_BUFFER_SIZE];
+		final StringBuilder		line = new StringBuilder();
+		int						pos = 0;
+		int						lim = 0;
+		/** number of replies expected -- set at the end of the input */
+		volatile long			total = Long.MAX_VALUE;
+		volatile long			replies = 0;
+		volatile long			errors = 0;
+		volatile Throwable		failure;
+		volatile boolean		aborted = false;
+
+		ReplyReader (InputStream in, Semaphore window, ErrorListener listener) {
+			this.in = in;
+			this.window = window;
+			this.listener = listener;
+		}
+
+		public void run () {
+			try {
+				while(replies < total) {
+					readReply(true);
+					replies++;
+					window.release();
+				}
+			}
+			catch (Throwable t) {
+				if(!aborted) failure = t;
+				// unblock the loader
+				window.release(Integer.MAX_VALUE / 2);
+			}
+		}
+
+		private void readReply (boolean top) throws IOException {
+			final int type = read();
+			switch (type) {
+			case '+':
+			case ':':
+				skipLine();
+				break;
+			case '-':
+				errors++;
+				readLine();
+				if(top && null != listener) {
+					try {
+						listener.onError(replies, line.toString());
+					}
+					catch (RuntimeException e) {
+						Log.error("BulkLoadConnection error listener raised exception: %s", e);
+					}
+				}
+				break;
+			case '$': {
+				final long len = readNumber();
+				for(long n = len < 0 ? 0 : len + 2; n > 0; ) {
+					if(pos == lim) fill();
+					final int skip = (int) Math.min(n, lim - pos);
+					pos += skip;
+					n -= skip;
+				}
+				break;
+			}
+			case '*': {
+				final long cnt = readNumber();
+				for(long i=0; i<cnt; i++)
+					readReply(false);
+				break;
+			}
+			default:
+				throw new ProviderException("Unexpected reply type: " + (char) type);
+			}
+		}
+
+		private long readNumber () throws IOException {
+			readLine();
+			try {
+				return Long.parseLong(line.toString());
+			}
+			catch (NumberFormatException e) {
+				throw new ProviderException("Expecting a number, got: " + line);
+			}
+		}
+
+		private void readLine () throws IOException {
+			line.setLength(0);
+			int c;
+			while((c = read()) != '\r')
+				line.append((char) c);
+			if(read() != '\n')
+				throw new ProviderException("Expecting LF");
+		}
+
+		private void skipLine () throws IOException {
+			while(read() != '\r');
+			if(read() != '\n')
+				throw new ProviderException("Expecting LF");
+		}
+
+		private int read () throws IOException {
+			if(pos == lim) fill();
+			return buf[pos++] & 0xFF;
+		}
+
+		/**
+		 * A read timeout is not an error: the server may be catching up.
+		 */
+		private void fill () throws IOException {
+			while(true) {
+				try {
+					final int n = in.read(buf, 0, buf.length);
+					if(n == -1)
+						throw new UnexpectedEOFException("Unexpected EOF on bulk load connection");
+					pos = 0;
+					lim = n;
+					return;
+				}
+				catch (SocketTimeoutException e) {
+					if(aborted) throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads commands, a line at a time -- see {@link BulkLoadConnection#readCommands(InputStream)}.
+	 */
+	private static final class CommandReader implements Iterator<byte[][]> {
+		private final InputStream			in;
+		private final ByteArrayOutputStream	line = new ByteArrayOutputStream(256);
+		private byte[][]					next;
+		private long						lineNo = 0;
+		private boolean						eof = false;
+
+		CommandReader (InputStream in) {
+			this.in = new BufferedInputStream(Assert.notNull(in, "in", ClientRuntimeException.class), READ_BUFFER_SIZE);
+		}
+
+		public boolean hasNext () {
+			while(null == next && !eof) {
+				final byte[] bytes;
+				try {
+					bytes = readLine();
+				}
+				catch (IOException e) {
+					throw new ClientRuntimeException("Reading commands at line " + (lineNo + 1), e);
+				}
+				if(null == bytes) {
+					eof = true;
+					break;
+				}
+				lineNo++;
+				if(bytes.length == 0 || bytes[0] == '#') continue;
+				try {
+					next = parseCommand(bytes, 0, bytes.length);
+				}
+				catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("line " + lineNo + ": " + e.getMessage());
+				}
+				if(next.length == 0) next = null;
+			}
+			return null != next;
+		}
+
+		public byte[][] next () {
+			if(!hasNext()) throw new NoSuchElementException();
+			final byte[][] command = next;
+			next = null;
+			return command;
+		}
+
+		public void remove () {
+			throw new UnsupportedOperationException();
+		}
+
+		/** @return the line, less the (CR)LF, or null at EOF */
+		private byte[] readLine () throws IOException {
+			line.reset();
+			int c;
+			while((c = in.read()) != -1 && c != '\n')
+				line.write(c);
+			if(c == -1 && line.size() == 0) return null;
+			final byte[] bytes = line.toByteArray();
+			if(bytes.length > 0 && bytes[bytes.length - 1] == '\r')
+				return Arrays.copyOf(bytes, bytes.length - 1);
+			return bytes;
+		}
+	}
+}
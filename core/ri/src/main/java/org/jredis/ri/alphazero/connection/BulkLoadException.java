@@ -0,0 +1,48 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.jredis.ri.alphazero.connection;
+
+import org.jredis.ClientRuntimeException;
+import org.jredis.ri.alphazero._specification;
+
+/**
+ * Raised by {@link BulkLoadConnection} on load failures (e.g. connection faults).
+ * The commands prior to {@link BulkLoadException#getReplyCount()} have been 
+ * processed by the server, and the load may be resumed from that index.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public class BulkLoadException extends ClientRuntimeException {
+	/**  */
+	private static final long serialVersionUID = _specification.Version.major;
+	
+	private final long replyCnt;
+	
+	/**
+	 * @param msg
+	 * @param cause
+	 * @param replyCnt number of commands processed by the server
+	 */
+	public BulkLoadException (String msg, Throwable cause, long replyCnt) {
+		super(msg, cause);
+		this.replyCnt = replyCnt;
+	}
+	
+	/** @return number of commands processed by the server -- the load may be resumed from this index */
+	public long getReplyCount () { return replyCnt; }
+}
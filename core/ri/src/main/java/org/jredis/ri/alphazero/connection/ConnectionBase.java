@@ -26,25 +26,34 @@ import static org.jredis.ri.alphazero.support.Assert.notNull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import org.jredis.ClientRuntimeException;
 import org.jredis.NotSupportedException;
 import org.jredis.ProviderException;
 import org.jredis.RedisException;
 import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionMetrics;
 import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.RequestInterceptor;
 import org.jredis.connector.Connection.Event.Type;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Protocol;
+import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
 import org.jredis.ri.alphazero.protocol.DefaultProtocolFactory;
 import org.jredis.ri.alphazero.support.Assert;
 import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.CountingOutputStream;
 import org.jredis.ri.alphazero.support.FastBufferedInputStream;
+import org.jredis.ri.alphazero.support.LatencyEWMA;
 import org.jredis.ri.alphazero.support.Log;
 
 /**
@@ -87,12 +96,41 @@ public abstract class ConnectionBase implements Connection{
 	/** Connector Listeners */
 	final private Set<Connection.Listener> listeners = new HashSet<Connection.Listener>();
 
-//	/** Keep-alive heartbeat daemon thread  */
-//	private HeartbeatJinn			heartbeat;
+	/** Keep-alive heartbeat -- null if heartbeat is not enabled */
+	private HeartbeatService.Heartbeat	heartbeat;
+	
+	/** {@link System#nanoTime()} of last response read on this connection */
+	private volatile long		lastActivity = System.nanoTime();
 
 	/** address of the socket connection */
 	private final InetSocketAddress  	socketAddress;
 	
+	/** request metrics -- null if {@link Connection.Flag#METRICS} is not set */
+	final protected RequestMetrics	metrics;
+	
+	/** request interceptors, in order of addition -- guarded by this */
+	final private List<RequestInterceptor> interceptors = new ArrayList<RequestInterceptor>();
+	
+	/** (immutable) interceptor chain -- null if there are no interceptors */
+	private volatile RequestInterceptor.Invoker interceptorChain;
+	
+	/** (immutable) snapshot of the interceptors of the chain -- null if there are no interceptors */
+	private volatile RequestInterceptor[] chainedInterceptors;
+	
+	/** the process wide tracer -- null (disabled) by default */
+	private static volatile ConnectionTracer tracer;
+	
+	/** name of the registered metrics MBean -- null if not registered */
+	private ObjectName			metricsMBeanName;
+	
+	/** true while in {@link ConnectionBase#reconnect()} -- failed connect attempts are not faults */
+	private volatile boolean	reconnecting = false;
+	
+	/** initial delay between reconnect attempts */
+	protected static final long RECONNECT_BACKOFF_MIN_MSECS = 10;
+	/** reconnect delay doubles on each failed attempt up to this limit */
+	protected static final long RECONNECT_BACKOFF_MAX_MSECS = 2000;
+	
 	// ------------------------------------------------------------------------
 	// Constructors
 	// ------------------------------------------------------------------------
@@ -111,6 +149,7 @@ public abstract class ConnectionBase implements Connection{
 		try {
 			this.spec = notNull(spec, "ConnectionSpec init parameter", ClientRuntimeException.class);
 			socketAddress = new InetSocketAddress(spec.getAddress(), spec.getPort());
+			metrics = spec.getConnectionFlag(Flag.METRICS) ? new RequestMetrics(spec.getModality()) : null;
 			initializeComponents();
 		}
 		catch (IllegalArgumentException e) { 
@@ -139,8 +178,61 @@ public abstract class ConnectionBase implements Connection{
 		return this.spec;
 	}
 	
+	/**
+	 * Services the request through the interceptor chain, if any.  
+	 * @see ConnectionBase#doServiceRequest(Command, byte[]...)
+	 */
 	@Override
-	public Response serviceRequest(Command cmd, byte[]... args)
+	public final Response serviceRequest(Command cmd, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException 
+	{
+		final RequestInterceptor.Invoker chain = interceptorChain;
+		if(null == chain)
+			return doServiceRequest(cmd, args);
+		return chain.serviceRequest(cmd, args);
+	}
+
+	/**
+	 * Queues the request through the interceptor chain, if any.  {@link Command.Flag#BLOCKING}
+	 * commands are not queued, as they would stall all requests queued behind them.
+	 * @see ConnectionBase#doQueueRequest(Command, byte[]...)
+	 */
+	@Override
+	public final Future<Response> queueRequest(Command cmd, byte[]... args) 
+		throws ClientRuntimeException, ProviderException 
+	{
+		if(cmd.isSet(Command.Flag.BLOCKING))
+			throw new NotSupportedException (cmd.code + " is a blocking command and can not be queued -- see BlockingListConsumer");
+		final RequestInterceptor.Invoker chain = interceptorChain;
+		if(null == chain)
+			return doQueueRequest(cmd, args);
+		return chain.queueRequest(cmd, args);
+	}
+	
+	/**
+	 * Services the request through the interceptor chain, if any, ending with the
+	 * given invoker instead of {@link ConnectionBase#doServiceRequest(Command, byte[]...)}.
+	 * Extensions use this to run requests that carry additional state -- e.g. a 
+	 * streaming visitor -- past the interceptors of the connection.
+	 * @param invoker the end of the chain
+	 * @param cmd
+	 * @param args
+	 * @return the response
+	 */
+	protected final Response serviceRequest(RequestInterceptor.Invoker invoker, Command cmd, byte[]... args)
+			throws RedisException, ClientRuntimeException, ProviderException 
+	{
+		final RequestInterceptor[] links = chainedInterceptors;
+		if(null == links)
+			return invoker.serviceRequest(cmd, args);
+		return newInterceptorChain(links, invoker).serviceRequest(cmd, args);
+	}
+	
+	/**
+	 * Extension point for synchronous request processing.
+	 * @see Connection#serviceRequest(Command, byte[]...)
+	 */
+	protected Response doServiceRequest(Command cmd, byte[]... args)
 			throws RedisException, ClientRuntimeException, ProviderException 
 	{
 		throw new NotSupportedException (
@@ -148,8 +240,11 @@ public abstract class ConnectionBase implements Connection{
 				"byte[]...) is not supported.");
 	}
 
-	@Override
-	public Future<Response> queueRequest(Command cmd, byte[]... args) 
+	/**
+	 * Extension point for asynchronous request processing.
+	 * @see Connection#queueRequest(Command, byte[]...)
+	 */
+	protected Future<Response> doQueueRequest(Command cmd, byte[]... args) 
 		throws ClientRuntimeException, ProviderException 
 	{
 		throw new NotSupportedException (
@@ -157,6 +252,62 @@ public abstract class ConnectionBase implements Connection{
 				"Object , Command, byte[]...) is not supported.");
 	}
 	
+	// ------------------------------------------------------------------------
+	// Interceptor management
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Adds the interceptor to the end of the chain: the first interceptor added
+	 * is the first to see the request.  Interceptors are not applied to the 
+	 * connection's own AUTH, SELECT and heartbeat requests. 
+	 * @param interceptor
+	 * @return true if added, false if already in the chain
+	 */
+	final public synchronized boolean addInterceptor (RequestInterceptor interceptor) {
+		Assert.notNull(interceptor, "interceptor", ClientRuntimeException.class);
+		if(interceptors.contains(interceptor)) return false;
+		interceptors.add(interceptor);
+		buildInterceptorChain();
+		return true;
+	}
+	
+	/**
+	 * @param interceptor
+	 * @return true if removed, false if not in the chain
+	 */
+	final public synchronized boolean removeInterceptor (RequestInterceptor interceptor) {
+		if(!interceptors.remove(interceptor)) return false;
+		buildInterceptorChain();
+		return true;
+	}
+	
+	/** sets the chain (and its snapshot) for the current interceptors -- null if none */
+	private final void buildInterceptorChain () {
+		if(interceptors.isEmpty()) {
+			interceptorChain = null;
+			chainedInterceptors = null;
+			return;
+		}
+		final RequestInterceptor[] links = interceptors.toArray(new RequestInterceptor[interceptors.size()]);
+		interceptorChain = newInterceptorChain(links, new RequestInterceptor.Invoker() {
+			public Response serviceRequest (Command cmd, byte[]... args) throws RedisException {
+				return doServiceRequest(cmd, args);
+			}
+			public Future<Response> queueRequest (Command cmd, byte[]... args) {
+				return doQueueRequest(cmd, args);
+			}
+		});
+		chainedInterceptors = links;
+	}
+	
+	/** @return the chain of the interceptors, ending with invoker */
+	private static final RequestInterceptor.Invoker newInterceptorChain (RequestInterceptor[] links, RequestInterceptor.Invoker invoker) {
+		RequestInterceptor.Invoker chain = invoker;
+		for(int i=links.length-1; i>=0; i--)
+			chain = new InterceptorLink(links[i], chain);
+		return chain;
+	}
+	
 	// ------------------------------------------------------------------------
 	// Event management
 
@@ -196,10 +347,8 @@ public abstract class ConnectionBase implements Connection{
      */
     protected void initializeComponents () {
 //		setProtocolHandler (Assert.notNull (newProtocolHandler(), "the delegate protocol handler", ClientRuntimeException.class));
-		if(spec.getConnectionFlag(Connection.Flag.RELIABLE)){
-			Log.log("WARNING: heartbeat is disabled.");
-//	    	heartbeat = new HeartbeatJinn(this, this.spec.getHeartbeat(), " [" + this + "] heartbeat");
-//	    	heartbeat.start();
+		if(spec.getConnectionFlag(Connection.Flag.RELIABLE) && spec.getHeartbeat() > 0){
+			heartbeat = HeartbeatService.getInstance().register(this, spec.getHeartbeat());
 		}
     }
 
@@ -225,6 +374,7 @@ public abstract class ConnectionBase implements Connection{
     }
     protected void notifyShuttingDown () {
     	notifyListeners(new Event(this, Type.SHUTDOWN));
+    	unregisterMetricsMBean();
     }
     /**
      * Extension point:  child classes may override to return specific {@link Protocol} implementations per their requirements.
@@ -270,31 +420,160 @@ public abstract class ConnectionBase implements Connection{
 	/** @return connected status*/
 	protected final boolean isConnected () { return isConnected; }
 	
+	/** 
+	 * Extensions must call this method on reading responses.  Connections with
+	 * recent activity are not PINGed by the {@link HeartbeatService}. 
+	 */
+	protected final void markActivity () { lastActivity = System.nanoTime(); }
+	
+	/** @return {@link System#nanoTime()} of last response read on this connection */
+	final long getLastActivity () { return lastActivity; }
+	
+	/** @return request metrics, or null if {@link Connection.Flag#METRICS} is not set */
+	public final ConnectionMetrics getMetrics () {
+		return metrics;
+	}
+	
+	/**
+	 * Registers the connection's {@link ConnectionMetricsMXBean} with the platform 
+	 * MBean server, as <code>org.jredis:type=Connection,modality=..,address=..,id=..</code>.
+	 * The MBean is unregistered when the connection shuts down.
+	 * @return the MBean name
+	 * @throws ClientRuntimeException if metrics are not collected or registration failed
+	 */
+	public final synchronized ObjectName registerMetricsMBean () {
+		Assert.notNull(metrics, "metrics (METRICS flag is not set)", ClientRuntimeException.class);
+		if(null == metricsMBeanName) {
+			try {
+				ObjectName name = new ObjectName(String.format("org.jredis:type=Connection,modality=%s,address=%s,id=%x", 
+						spec.getModality().name(), ObjectName.quote(socketAddress.toString()), System.identityHashCode(this)));
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+				metricsMBeanName = name;
+			}
+			catch (JMException e) {
+				throw new ClientRuntimeException("failed to register metrics MBean", e);
+			}
+		}
+		return metricsMBeanName;
+	}
+	
+	private final synchronized void unregisterMetricsMBean () {
+		if(null == metricsMBeanName) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsMBeanName);
+		}
+		catch (JMException e) {
+			Log.error("failed to unregister metrics MBean %s: %s", metricsMBeanName, e.getMessage());
+		}
+		metricsMBeanName = null;
+	}
+	
+	/** @return bytes written on the current socket connection -- 0 if metrics are not collected */
+	protected final long bytesSent () {
+		final OutputStream out = outstream;
+		return out instanceof CountingOutputStream ? ((CountingOutputStream) out).getCount() : 0;
+	}
+	
+	/** @return bytes read (by the reader) on the current socket connection */
+	protected final long bytesReceived () {
+		final InputStream in = instream;
+		return in instanceof FastBufferedInputStream ? ((FastBufferedInputStream) in).getConsumedCount() : 0;
+	}
 	
 	/**
-	 * Attempt reconnect.  Must be in a (previously) connected state when called.
-	 * @throws IllegalStateException if not (logically) connected.
+	 * Fails the pending request, unless already completed (e.g. timed out or 
+	 * cancelled), and records its failure in the metrics.
+	 * @param pending
+	 * @param cre the cause
+	 */
+	final void failRequest (PendingRequest pending, ClientRuntimeException cre) {
+		if(null != pending.window) 
+			pending.window.release(pending);
+		if(!pending.claim(PendingRequest.COMPLETED)) 
+			return;
+		if(null != metrics)
+			metrics.record(pending.cmd, System.nanoTime() - pending.issued, pending.bytesSent, 0, true);
+		pending.setCRE(cre);
+	}
+	
+	/**
+	 * Installs the process wide tracer of connection and request phases.
+	 * @param connectionTracer the tracer -- null disables tracing
+	 */
+	public static final void setTracer (ConnectionTracer connectionTracer) {
+		tracer = connectionTracer;
+	}
+	
+	/** @return the installed tracer -- null if tracing is disabled */
+	public static final ConnectionTracer getTracer () {
+		return tracer;
+	}
+	
+	/**
+	 * Reports the phase of the request to the tracer.
+	 * @param tracer
+	 * @param phase
+	 * @param cmd
+	 * @param start {@link System#nanoTime()} at start of phase
+	 * @return end of the phase, in {@link System#nanoTime()} 
+	 */
+	final long trace (ConnectionTracer tracer, ConnectionTracer.Phase phase, Command cmd, long start) {
+		final long end = System.nanoTime();
+		tracer.onPhase(phase, cmd, socketAddress, start, end - start);
+		return end;
+	}
+	
+	/** @return heartbeat PING round trip times, or null if heartbeat is not enabled */
+	public final LatencyEWMA getHeartbeatLatency () {
+		return null != heartbeat ? heartbeat.getLatency() : null;
+	}
+	
+	
+	/**
+	 * Attempt reconnect, with exponential backoff between failed attempts (from
+	 * {@link ConnectionBase#RECONNECT_BACKOFF_MIN_MSECS} to {@link ConnectionBase#RECONNECT_BACKOFF_MAX_MSECS}).
+	 * Failed attempts are not signalled as faults.  If the connection can not be
+	 * re-established after {@link ConnectionSpec#getReconnectCnt()} attempts, the 
+	 * connection is faulted.
+	 * @throws ClientRuntimeException if reconnect retry limit is exceeded
 	 */
 	protected final void reconnect () {
 		Log.log("RedisConnection - reconnecting");
 		int attempts = 0;
+		long backoff = RECONNECT_BACKOFF_MIN_MSECS;
 
-		while(true){
-			try {
-				disconnect();
-				connect ();
-				break;
-			}
-			catch (RuntimeException e){
-				Log.error("while attempting reconnect: " + e.getMessage());
-				if(++attempts == spec.getReconnectCnt()) {
-					Log.problem("Retry limit exceeded attempting reconnect.");
-					
-					String faultmsg = String.format("Reconnect retry limit exceeded.  Failed to reconnect to the server after %d reconnect attempts", attempts);
-					onConnectionFault(faultmsg, true);
+		reconnecting = true;
+		try {
+			while(true){
+				try {
+					if(isConnected()) disconnect();
+					connect ();
+					break;
+				}
+				catch (RuntimeException e){
+					Log.error("while attempting reconnect: " + e.getMessage());
+					if(++attempts >= spec.getReconnectCnt()) {
+						Log.problem("Retry limit exceeded attempting reconnect.");
+						
+						String faultmsg = String.format("Reconnect retry limit exceeded.  Failed to reconnect to the server after %d reconnect attempts", attempts);
+						reconnecting = false;
+						onConnectionFault(faultmsg, true);
+					}
+					try {
+						Thread.sleep(backoff);
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						reconnecting = false;
+						onConnectionFault("Interrupted while attempting reconnect", true);
+					}
+					backoff = Math.min(backoff * 2, RECONNECT_BACKOFF_MAX_MSECS);
 				}
 			}
 		}
+		finally {
+			reconnecting = false;
+		}
 	}
 
 	/**
@@ -316,6 +595,9 @@ public abstract class ConnectionBase implements Connection{
 	protected final void connect () throws IllegalStateException, ClientRuntimeException {
 		// we're not connected
 		Assert.isTrue (!isConnected(), IllegalStateException.class);
+		
+		final ConnectionTracer tracer = getTracer();
+		final long start = null != tracer ? System.nanoTime() : 0;
 
 		// create new socket and connect
 		//
@@ -324,6 +606,8 @@ public abstract class ConnectionBase implements Connection{
 		} 
 		catch (IOException e) {
 			String faultmsg = String.format("Socket connect failed [cause: %s] -- make sure the server is running at %s:%d", e, spec.getAddress().getHostName(), spec.getPort());
+			if(reconnecting) 
+				throw new ClientRuntimeException(faultmsg, e);
 			onConnectionFault(faultmsg, true);
 //			throw new ClientRuntimeException(
 //				"Socket connect failed -- make sure the server is running at " + spec.getAddress().getHostName(), e);
@@ -348,6 +632,8 @@ public abstract class ConnectionBase implements Connection{
         	// which is user error
         	throw new IllegalArgumentException("Failed to connect -- check credentials and/or database settings for the connection spec", e);
         }
+		if(null != tracer) 
+			trace(tracer, ConnectionTracer.Phase.CONNECT, null, start);
 		
 		Log.debug ("CONNECTED | conn: %s", toString());
 		notifyConnected();
@@ -429,6 +715,21 @@ public abstract class ConnectionBase implements Connection{
 		}
 	}
 	
+	/**
+	 * Closes the socket without change of connection state, so that threads blocked
+	 * on socket io fail and effect the connection's fault handling (e.g. reconnect).
+	 */
+	final void abortSocket () {
+		final java.net.Socket s = socket;
+		if(null == s) return;
+		try {
+			s.close();
+		}
+		catch (IOException e) {
+			Log.error("[IO] on abortSocket -- " + e.getLocalizedMessage());
+		}
+	}
+	
 	/**
 	 * @throws IllegalStateException if socket is null
 	 * @throws IOException thrown by socket instance stream accessors
@@ -437,6 +738,8 @@ public abstract class ConnectionBase implements Connection{
 		instream = newInputStream (Assert.notNull(socket.getInputStream(), "socket input stream", IllegalArgumentException.class));
 		Assert.notNull(instream, "input stream provided by extended class", IllegalArgumentException.class);
 		outstream = newOutputStream (Assert.notNull(socket.getOutputStream(), "socket output stream", IllegalArgumentException.class));
+		if(null != metrics) 
+			outstream = new CountingOutputStream(outstream);
 	}
 	
 	/**
@@ -448,8 +751,14 @@ public abstract class ConnectionBase implements Connection{
     protected final void initializeOnConnect () throws ProviderException, ClientRuntimeException, RedisException{
     	switch (spec.getModality()){
 			case Asynchronous:
+			case PubSub:
 				initializeAsyncConnection();
 				break;
+			case Monitor:
+				// the +OK reply is left for the feed reader
+				initializeAsyncConnection();
+				serviceRequestOnConnect(Command.MONITOR);
+				break;
 			case Synchronous:
 				initializeSyncConnection();
 				break;
@@ -465,10 +774,10 @@ public abstract class ConnectionBase implements Connection{
      */
     protected final void initializeSyncConnection () throws ProviderException, ClientRuntimeException, RedisException{
 		if(null!=spec.getCredentials()) {
-			this.serviceRequest(Command.AUTH, spec.getCredentials());
+			doServiceRequest(Command.AUTH, spec.getCredentials());
 		}
 		if(spec.getDatabase() != 0) {
-			this.serviceRequest(Command.SELECT, Convert.toBytes(spec.getDatabase()));
+			doServiceRequest(Command.SELECT, Convert.toBytes(spec.getDatabase()));
 		}
     }
     /**
@@ -477,30 +786,32 @@ public abstract class ConnectionBase implements Connection{
      * @throws RedisException
      */
     protected final void initializeAsyncConnection () throws ProviderException, ClientRuntimeException, RedisException{
-    	try {
-    		if(null!=spec.getCredentials()) {
-    			this.queueRequest(Command.AUTH, spec.getCredentials()).get();
-    		}
-    		if(spec.getDatabase() != 0) {
-    			this.queueRequest(Command.SELECT, Convert.toBytes(spec.getDatabase())).get();
-    		}
-        }
-        catch (InterruptedException e) {
-	        e.printStackTrace();
-	        throw new ClientRuntimeException("Interrupted while initializing asynchronous connection", e);
-        }
-        catch (ExecutionException e) {
-	        e.printStackTrace();
-	        if(e.getCause() != null){
-	        	if(e.getCause() instanceof RedisException)
-	        		throw (RedisException) e.getCause();
-	        	else if(e.getCause() instanceof ProviderException)
-	        		throw (ProviderException) e.getCause();
-	        	else if(e.getCause() instanceof ClientRuntimeException)
-	        		throw (ClientRuntimeException) e.getCause();
-	        }
-	        throw new ProviderException("Exception while initializing asynchronous connection", e);
-        }
+		if(null!=spec.getCredentials()) {
+			serviceRequestOnConnect(Command.AUTH, spec.getCredentials());
+		}
+		if(spec.getDatabase() != 0) {
+			serviceRequestOnConnect(Command.SELECT, Convert.toBytes(spec.getDatabase()));
+		}
+    }
+    
+    /**
+     * Services the request directly on the socket streams.  Asynchronous connections
+     * use this to initialize the connection on (re)connect as the (re)connect may
+     * be effected by the very thread that processes their responses.  It is the 
+     * responsibility of the caller to insure no other requests are in flight.
+     * @throws ProviderException
+     * @throws ClientRuntimeException
+     * @throws RedisException
+     */
+    private final Response serviceRequestOnConnect (Command cmd, byte[]...args) throws ProviderException, ClientRuntimeException, RedisException{
+		Protocol protocol = getProtocolHandler();
+		Request request = Assert.notNull(protocol.createRequest (cmd, args), "request object from handler", ProviderException.class);
+		request.write(getOutputStream());
+		Response response = Assert.notNull(protocol.createResponse(cmd), "response object from handler", ProviderException.class);
+		response.read(getInputStream());
+		if(response.isError())
+			throw new RedisException(cmd, response.getStatus().message());
+		return response;
     }
 	
     @SuppressWarnings("boxing")
@@ -537,4 +848,24 @@ public abstract class ConnectionBase implements Connection{
 	final protected InputStream getInputStream() {
 		return instream;
 	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** A link of the interceptor chain, binding an interceptor to the remainder of the chain. */
+	private static final class InterceptorLink implements RequestInterceptor.Invoker {
+		private final RequestInterceptor interceptor;
+		private final RequestInterceptor.Invoker next;
+		InterceptorLink (RequestInterceptor interceptor, RequestInterceptor.Invoker next) {
+			this.interceptor = interceptor;
+			this.next = next;
+		}
+		public Response serviceRequest (Command cmd, byte[]... args) throws RedisException {
+			return interceptor.serviceRequest(next, cmd, args);
+		}
+		public Future<Response> queueRequest (Command cmd, byte[]... args) {
+			return interceptor.queueRequest(next, cmd, args);
+		}
+	}
 }
@@ -0,0 +1,30 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import org.jredis.connector.ConnectionMetrics;
+
+/**
+ * JMX management interface of {@link ConnectionMetrics}.  Per command metrics 
+ * are exposed as composite data.
+ *
+ * @since   alpha.0
+ * @see ConnectionBase#registerMetricsMBean()
+ */
+public interface ConnectionMetricsMXBean extends ConnectionMetrics {
+	/* nop */
+}
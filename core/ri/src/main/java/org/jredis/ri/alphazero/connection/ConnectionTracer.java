@@ -0,0 +1,64 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.net.InetSocketAddress;
+import org.jredis.protocol.Command;
+
+/**
+ * Receives the timed phases of connection establishment and request processing
+ * of the connections, for diagnosis of latency: where the time of a slow request
+ * went.  Tracing is process wide and disabled by default -- see 
+ * {@link ConnectionBase#setTracer(ConnectionTracer)}.  With no tracer installed
+ * the connections do not take the phase timestamps.
+ * <p>
+ * The tracer is called on the thread that effected the phase -- request callers,
+ * pipeline response handlers, async request processors -- and must be thread-safe
+ * and cheap.
+ *
+ * @since   alpha.0
+ * 
+ */
+public interface ConnectionTracer {
+	
+	/** The traced phases */
+	public enum Phase {
+		/** socket connect and connection initialization (AUTH, SELECT) */
+		CONNECT,
+		/** pipelines: wait for space in the in-flight window */
+		WINDOW_WAIT,
+		/** wait on the connection's request lock */
+		LOCK_WAIT,
+		/** request encoding */
+		ENCODE,
+		/** request write and socket flush */
+		FLUSH,
+		/** pipelined and async requests: queued for the response handler / request processor */
+		QUEUE_WAIT,
+		/** response read -- includes the wait for the server's response */
+		DECODE
+	}
+	
+	/**
+	 * @param phase
+	 * @param cmd the command of the request -- null for {@link Phase#CONNECT}
+	 * @param address the server address of the connection
+	 * @param start {@link System#nanoTime()} at start of phase
+	 * @param duration phase duration in nanoseconds
+	 */
+	public void onPhase (Phase phase, Command cmd, InetSocketAddress address, long start, long duration);
+}
@@ -42,9 +42,10 @@ public class DefaultConnectionFactory implements Connection.Factory {
     	Connection conn = null;
     	switch (spec.getModality()){
 			case Monitor:
-				throw new ProviderException("NOT IMPLEMENTED!");
+				throw new NotSupportedException("Monitor connections require a listener: use MonitorConnection");
 			case PubSub:
-				throw new ProviderException("NOT IMPLEMENTED!");
+				conn = new PubSubConnection(spec);
+				break;
 			case Asynchronous:
 				conn = newAsyncConnection(spec);
 				break;
@@ -79,11 +79,25 @@ final public class DefaultConnectionSpec extends ConnectionSpec.RefImpl {
 	private static final boolean DEFAULT_CF_CONNECT_IMMEDIATELY = true;
 	/** def value: <code>true</code> */
 	private static final boolean DEFAULT_CF_STATEFUL = false;
+	/** def value: <code>true</code> */
+	private static final boolean DEFAULT_CF_METRICS = true;
 	
 	/** def value: <code>Modality.Synchronous</code> */
 	private static final Modality DEFAULT_CP_CONN_MODALITY = Modality.Synchronous;
 	/** def value: <code>3</code> */
 	private static final int DEFAULT_CP_MAX_CONNECT_ATTEMPT = 3;
+	/** def value: <code>0</code> (no limit) */
+	private static final int DEFAULT_CP_MAX_PENDING_REQUESTS = 0;
+	/** def value: <code>0</code> (no limit) */
+	private static final long DEFAULT_CP_MAX_PENDING_BYTES = 0;
+	/** def value: <code>Overflow.BLOCK</code> */
+	private static final Connection.Overflow DEFAULT_CP_PENDING_OVERFLOW = Connection.Overflow.BLOCK;
+	/** def value: <code>0</code> (none) */
+	private static final long DEFAULT_CP_REQUEST_TIMEOUT = 0;
+	/** def value: <code>16</code> */
+	private static final int DEFAULT_CP_MAX_TIMED_OUT_REQUESTS = 16;
+	/** def value: <code>128</code> */
+	private static final int DEFAULT_CP_MESSAGE_BATCH_SIZE = 128;
 	
 	// ------------------------------------------------------------------------
 	// Constructors
@@ -156,11 +170,18 @@ final public class DefaultConnectionSpec extends ConnectionSpec.RefImpl {
     	setConnectionFlag(PIPELINE, DEFAULT_CF_PIPELINE);
     	setConnectionFlag(CONNECT_IMMEDIATELY, DEFAULT_CF_CONNECT_IMMEDIATELY);
     	setConnectionFlag(Flag.STATEFUL, DEFAULT_CF_STATEFUL);
+    	setConnectionFlag(Flag.METRICS, DEFAULT_CF_METRICS);
     	
     	setConnectionProperty(Connection.Property.MODALITY, DEFAULT_CP_CONN_MODALITY);
     	setConnectionProperty(Connection.Property.MAX_CONNECT_ATTEMPT, DEFAULT_CP_MAX_CONNECT_ATTEMPT);
     	setConnectionProperty(Connection.Property.PROTOCOL_FACTORY, new DefaultProtocolFactory());
     	setConnectionProperty(Connection.Property.CONNECTION_FACTORY, new DefaultConnectionFactory());
+    	setConnectionProperty(Connection.Property.MAX_PENDING_REQUESTS, DEFAULT_CP_MAX_PENDING_REQUESTS);
+    	setConnectionProperty(Connection.Property.MAX_PENDING_BYTES, DEFAULT_CP_MAX_PENDING_BYTES);
+    	setConnectionProperty(Connection.Property.PENDING_OVERFLOW, DEFAULT_CP_PENDING_OVERFLOW);
+    	setConnectionProperty(Connection.Property.REQUEST_TIMEOUT, DEFAULT_CP_REQUEST_TIMEOUT);
+    	setConnectionProperty(Connection.Property.MAX_TIMED_OUT_REQUESTS, DEFAULT_CP_MAX_TIMED_OUT_REQUESTS);
+    	setConnectionProperty(Connection.Property.MESSAGE_BATCH_SIZE, DEFAULT_CP_MESSAGE_BATCH_SIZE);
     	
     	setHeartbeat(DEFAULT_HEARTBEAT_SEC);
     }
@@ -177,6 +198,30 @@ final public class DefaultConnectionSpec extends ConnectionSpec.RefImpl {
 		return newSpec (DEFAULT_REDIS_HOST_NAME, DEFAULT_REDIS_PORT, DEFAULT_REDIS_DB, DEFAULT_REDIS_PASSWORD);
 	}
 
+	/**
+	 * Returns a default spec with the properties, flags, and heartbeat of the spec.  
+	 * Connections mutate their spec (e.g. its modality), so a spec shared by 
+	 * connections of differing settings is copied per connection.
+	 * @param spec
+	 * @return the copy
+	 * @throws ClientRuntimeException
+	 */
+	public static final ConnectionSpec copy (ConnectionSpec spec) 
+		throws ClientRuntimeException 
+	{
+		Assert.notNull(spec, "spec", ClientRuntimeException.class);
+		final ConnectionSpec copy = new DefaultConnectionSpec();
+		for(Connection.Property prop : Connection.Property.values())
+			if(null != spec.getConnectionProperty(prop)) copy.setConnectionProperty(prop, spec.getConnectionProperty(prop));
+		for(Connection.Flag flag : Connection.Flag.values())
+			if(copy.getConnectionFlag(flag) != spec.getConnectionFlag(flag)) copy.setConnectionFlag(flag, spec.getConnectionFlag(flag));
+		for(Connection.Socket.Flag flag : Connection.Socket.Flag.values())
+			copy.setSocketFlag(flag, spec.getSocketFlag(flag));
+		for(Connection.Socket.Property prop : Connection.Socket.Property.values())
+			if(null != spec.getSocketProperty(prop)) copy.setSocketProperty(prop, spec.getSocketProperty(prop));
+		return copy.setHeartbeat(spec.getHeartbeat());
+	}
+
 	/**
 	 * Returns an instance of the {@link ConnectionSpec} used by this {@link Connection}
 	 * as default spec, for the provided params.
@@ -0,0 +1,274 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jredis.ClientRuntimeException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.Connection.Event;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.support.LatencyEWMA;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * JVM wide heartbeat service, PINGing registered connections per their 
+ * {@link ConnectionSpec#getHeartbeat()} heartbeat interval.  A single (daemon)
+ * scheduler thread services all connections.  PINGs are issued from a shared
+ * (daemon) worker pool of {@link HeartbeatService#WORKER_THREADS} threads.  Workers 
+ * only wait for the PONG of synchronous connections: PINGs of pipelined (and PubSub)
+ * connections are completed by their response handlers.
+ * <p>
+ * A connection that has seen traffic within its heartbeat period is not PINGed,
+ * nor is a connection whose previous PING is outstanding.
+ * Round trip times of heartbeat PINGs are recorded in the {@link Heartbeat#getLatency()}
+ * metric of the connection's {@link Heartbeat}.
+ * <p>
+ * {@link Heartbeat}s are {@link Connection.Listener}s and are cancelled on 
+ * {@link Event.Type#SHUTDOWN}.  The service only holds weak references to the
+ * connections, and heartbeats of unreachable connections are cancelled.
+ * 
+ * @since   alpha.0
+ * 
+ */
+public final class HeartbeatService {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	/** size of the worker pool */
+	static final int WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	
+	/** the singleton */
+	private static final HeartbeatService instance = new HeartbeatService();
+	
+	/** triggers the heartbeats */
+	private final ScheduledExecutorService	scheduler;
+	
+	/** PINGs the connections */
+	private final ExecutorService			workers;
+	
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	private HeartbeatService () {
+		scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jredis-heartbeat-scheduler"));
+		workers = Executors.newFixedThreadPool(WORKER_THREADS, new DaemonThreadFactory("jredis-heartbeat"));
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	/** @return the JVM wide heartbeat service */
+	public static HeartbeatService getInstance () { return instance; }
+	
+	/**
+	 * Registers the connection for heartbeats.  The connection is not PINGed 
+	 * until it has connected. 
+	 * @param conn
+	 * @param periodInSecs a reasonable value is 1.
+	 * @return the connection's {@link Heartbeat}
+	 */
+	public Heartbeat register (ConnectionBase conn, int periodInSecs) {
+		if(periodInSecs <= 0) throw new IllegalArgumentException("heartbeat period must be positive: " + periodInSecs);
+		Heartbeat heartbeat = new Heartbeat(conn, periodInSecs);
+		heartbeat.schedule = scheduler.scheduleWithFixedDelay(heartbeat, periodInSecs, periodInSecs, TimeUnit.SECONDS);
+		conn.addListener(heartbeat);
+		return heartbeat;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	/**
+	 * Heartbeat of a registered connection.
+	 *
+	 * @since   alpha.0
+	 * 
+	 */
+	public final class Heartbeat implements Runnable, Connection.Listener {
+		/**  */
+		private final WeakReference<ConnectionBase> connRef;
+		/**  */
+		private final long periodNanos;
+		/** PING round trip times */
+		private final LatencyEWMA latency = new LatencyEWMA();
+		/** set while a PING is in progress */
+		private final AtomicBoolean inFlight = new AtomicBoolean(false);
+		/** {@link System#nanoTime()} when the PING in progress was dispatched */
+		private volatile long issued;
+		/** {@link System#nanoTime()} when the PING in progress was sent */
+		private volatile long sent;
+		/** set once an outstanding PING has been reported */
+		private volatile boolean overdue;
+		/**  */
+		private volatile ScheduledFuture<?> schedule;
+		/**  */
+		private final Runnable pinger = new Runnable() {
+			public void run () { ping(); }
+		};
+		/** completes pipelined PINGs */
+		private final PendingRequest.CompletionListener pong = new PendingRequest.CompletionListener() {
+			public void onCompletion (PendingRequest request) {
+				try {
+					onPong(request.get());
+				}
+				catch (Exception e) {
+					onPingError(e);
+				}
+				finally {
+					inFlight.set(false);
+				}
+			}
+		};
+		
+		private Heartbeat (ConnectionBase conn, int periodInSecs) {
+			this.connRef = new WeakReference<ConnectionBase>(conn);
+			this.periodNanos = TimeUnit.SECONDS.toNanos(periodInSecs);
+		}
+		
+		/** @return round trip time of heartbeat PINGs */
+		public LatencyEWMA getLatency () { return latency; }
+		
+		/** Stops the heartbeat */
+		public void cancel () {
+			ScheduledFuture<?> s = schedule;
+			if(null != s) s.cancel(false);
+			ConnectionBase conn = connRef.get();
+			if(null != conn) conn.removeListener(this);
+		}
+		
+		/**
+		 * Scheduler tick: skips disconnected and recently active connections, and 
+		 * connections with an outstanding PING. 
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run () {
+			ConnectionBase conn = connRef.get();
+			if(null == conn) { 
+				schedule.cancel(false); 
+				return; 
+			}
+			if(!conn.isConnected()) return;
+			if(System.nanoTime() - conn.getLastActivity() < periodNanos) return;
+			if(!inFlight.compareAndSet(false, true)) {
+				final long outstanding = System.nanoTime() - issued;
+				if(outstanding > periodNanos && !overdue) {
+					overdue = true;
+					Log.problem("Heartbeat PING for <%s> outstanding for %d msecs", conn, TimeUnit.NANOSECONDS.toMillis(outstanding));
+				}
+				return;
+			}
+			overdue = false;
+			issued = System.nanoTime();
+			workers.execute(pinger);
+		}
+		
+		/**
+		 * Sends the PING.  Synchronous connections are PINGed in place, while pipelined 
+		 * PINGs are completed on their response.
+		 */
+		private void ping () {
+			boolean pending = false;
+			try {
+				ConnectionBase conn = connRef.get();
+				if(null == conn || !conn.isConnected()) return;
+				
+				sent = System.nanoTime();
+				switch (conn.getSpec().getModality()){
+				case Asynchronous:
+				case PubSub:
+					Future<Response> future = conn.doQueueRequest(Command.PING);
+					if(future instanceof PendingRequest) {
+						pending = true;
+						((PendingRequest) future).setCompletionListener(pong);
+					}
+					else {
+						onPong(future.get(periodNanos, TimeUnit.NANOSECONDS));
+					}
+					break;
+				case Synchronous:
+					onPong(conn.doServiceRequest(Command.PING));
+					break;
+				case Monitor:
+					// read only feed: faults are detected by its reader
+					return;
+				}
+			}
+			catch (Exception e) {
+				onPingError(e);
+			}
+			finally {
+				if(!pending) inFlight.set(false);
+			}
+		}
+		
+		private void onPong (Response response) {
+			latency.update(System.nanoTime() - sent);
+			if(response.isError()){
+				String errmsg = String.format("Error response on PING: %s", response.getStatus().toString());
+				Log.error(errmsg);
+				throw new ClientRuntimeException(errmsg);  // NOTE: can't be sure this is a protocol BUG .. so CRE instead
+			}
+			Log.debug ("<%s> is alive", connRef.get());
+		}
+		
+		private void onPingError (Exception e) {
+			// connection may have disconnected since the check.  if not, 
+			// assume reconnect is in progress -- log it and try again on next beat.
+			ConnectionBase conn = connRef.get();
+			if(null != conn && conn.isConnected())
+				Log.problem("Heartbeat for <%s> encountered exception on PING: %s", conn, e.getMessage());
+		}
+		
+		/**
+		 * @see org.jredis.connector.Connection.Listener#onEvent(org.jredis.connector.Connection.Event)
+		 */
+		public void onEvent (Event event) {
+			if(event.getType() == Event.Type.SHUTDOWN)
+				cancel();
+		}
+	}
+	
+	/**
+	 * Names and daemonizes the service threads.
+	 */
+	static final class DaemonThreadFactory implements ThreadFactory {
+		/**  */
+		private final String name;
+		/**  */
+		private final AtomicInteger cnt = new AtomicInteger();
+		
+		DaemonThreadFactory (String name) { this.name = name; }
+		
+		public Thread newThread (Runnable r) {
+			Thread t = new Thread(r, name + "-" + cnt.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
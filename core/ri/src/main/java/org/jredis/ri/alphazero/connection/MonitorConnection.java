@@ -0,0 +1,389 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jredis.ClientRuntimeException;
+import org.jredis.ProviderException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.Monitor;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Request;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * {@link Connection.Modality#Monitor} connection.  <code>MONITOR</code> is sent on
+ * (re)connect, and a dedicated (daemon) reader thread parses the feed, a line at a
+ * time, into {@link Monitor.Record}s that are passed to the {@link Monitor.Listener}
+ * on the reader thread.  Listeners should therefore be quick (e.g. write to a
+ * buffered stream, or hand off) as the server buffers the feed of a slow monitor.
+ * <p>
+ * Feed lines are parsed per the Redis 2.6 format:
+ * <pre>
+ * +1339518083.107412 [0 127.0.0.1:60866] "set" "foo" "b\x00r"
+ * </pre>
+ * The <code>[db client]</code> section is optional, and the <code>(db n)</code>
+ * section of earlier servers is also accepted.  Lines that do not begin with a
+ * timestamp (e.g. the <code>+OK</code> reply to MONITOR) are skipped, as are
+ * malformed lines (which are logged).
+ * <p>
+ * {@link Connection.Flag#RELIABLE} connections reconnect on faults.  Commands
+ * processed while disconnected are not recorded.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public class MonitorConnection extends ConnectionBase implements Monitor {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** receives the records */
+	private final Monitor.Listener		listener;
+
+	/** set on {@link MonitorConnection#quit()} */
+	private volatile boolean			quitting = false;
+
+	/** number of records passed to the listener */
+	private volatile long				recordCnt = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructors
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Connects, if not connected per {@link Connection.Flag#CONNECT_IMMEDIATELY},
+	 * and starts the reader.
+	 * @param connectionSpec
+	 * @param listener receives the records
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	public MonitorConnection (ConnectionSpec connectionSpec, Monitor.Listener listener)
+		throws ClientRuntimeException, ProviderException
+	{
+		super(connectionSpec.setModality(Modality.Monitor));
+		this.listener = Assert.notNull(listener, "listener", ClientRuntimeException.class);
+
+		if(!isConnected())
+			connect();
+
+		Thread reader = new Thread(new Reader(), "monitor-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	// ------------------------------------------------------------------------
+	// Extension
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The reader parses the feed byte by byte: use a buffered stream that does
+	 * not block for more than is available.
+	 */
+	@SuppressWarnings("boxing")
+	@Override
+	protected InputStream newInputStream (InputStream socketInputStream) {
+		return new BufferedInputStream(socketInputStream, spec.getSocketProperty(Connection.Socket.Property.SO_RCVBUF));
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// =============================================================== Monitor
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see org.jredis.connector.Connection#getModality()
+	 */
+	public final Modality getModality() {
+		return Connection.Modality.Monitor;
+	}
+
+	/**
+	 * Sends QUIT.  The reader stops once the server has closed the connection.
+	 * @see org.jredis.connector.Monitor#quit()
+	 */
+	public synchronized void quit () {
+		quitting = true;
+		if(!isConnected()) return;
+		try {
+			Request request = Assert.notNull(getProtocolHandler().createRequest(Command.QUIT), "request object from handler", ProviderException.class);
+			request.write(getOutputStream());
+		}
+		catch (ClientRuntimeException e) {
+			abortSocket();
+		}
+	}
+
+	/** @return number of records passed to the listener */
+	public long getRecordCount () {
+		return recordCnt;
+	}
+
+	/**
+	 * Parses a line of the MONITOR feed.
+	 * @param line
+	 * @param off offset of the line, after the '+' of the status reply
+	 * @param len length of the line, less the CRLF
+	 * @return the record, or null if the line is not a command record
+	 * @throws IllegalArgumentException if the line is malformed
+	 */
+	public static Monitor.Record parse (byte[] line, int off, int len) throws IllegalArgumentException {
+		final int end = off + len;
+		int i = off;
+
+		// timestamp: seconds.micros
+		long secs = 0;
+		while(i < end && isDigit(line[i]))
+			secs = secs * 10 + (line[i++] - '0');
+		if(i == off)
+			return null;
+		long micros = 0;
+		int digits = 0;
+		if(i < end && line[i] == '.') {
+			for(i++; i < end && isDigit(line[i]); i++)
+				if(digits++ < 6) micros = micros * 10 + (line[i] - '0');
+		}
+		for(; digits < 6; digits++)
+			micros *= 10;
+
+		// optional [db client] or (db n)
+		int db = -1;
+		String client = null;
+		i = skipSpaces(line, i, end);
+		if(i < end && (line[i] == '[' || line[i] == '(')) {
+			final byte close = line[i] == '[' ? (byte) ']' : (byte) ')';
+			final int closeAt = indexOf(line, close, i, end);
+			if(closeAt < 0)
+				throw new IllegalArgumentException("unterminated db section");
+			String section = new String(line, i + 1, closeAt - i - 1).trim();
+			if(close == ')') {
+				if(!section.startsWith("db"))
+					throw new IllegalArgumentException("unexpected section: " + section);
+				section = section.substring(2).trim();
+			}
+			final int sp = section.indexOf(' ');
+			try {
+				db = Integer.parseInt(sp < 0 ? section : section.substring(0, sp));
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid db: " + section);
+			}
+			if(sp > 0)
+				client = section.substring(sp + 1);
+			i = closeAt + 1;
+		}
+
+		// the quoted command and args
+		final List<byte[]> args = new ArrayList<byte[]>();
+		final ByteArrayOutputStream arg = new ByteArrayOutputStream(32);
+		while((i = skipSpaces(line, i, end)) < end) {
+			if(line[i++] != '"')
+				throw new IllegalArgumentException("expecting quoted arg at " + (i - 1 - off));
+			arg.reset();
+			while(true) {
+				if(i >= end)
+					throw new IllegalArgumentException("unterminated quoted arg");
+				final byte b = line[i++];
+				if(b == '"') break;
+				if(b != '\\') {
+					arg.write(b);
+					continue;
+				}
+				if(i >= end)
+					throw new IllegalArgumentException("unterminated escape");
+				final byte e = line[i++];
+				switch (e) {
+				case 'n': arg.write('\n'); break;
+				case 'r': arg.write('\r'); break;
+				case 't': arg.write('\t'); break;
+				case 'a': arg.write(7); break;
+				case 'b': arg.write('\b'); break;
+				case 'x':
+					if(i + 2 > end)
+						throw new IllegalArgumentException("unterminated hex escape");
+					arg.write((hex(line[i]) << 4) | hex(line[i+1]));
+					i += 2;
+					break;
+				default: arg.write(e); break;
+				}
+			}
+			args.add(arg.toByteArray());
+		}
+		if(args.isEmpty())
+			return null;
+		return new Monitor.Record(secs * 1000000 + micros, db, client, args.toArray(new byte[args.size()][]));
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+
+	private static boolean isDigit (byte b) { return b >= '0' && b <= '9'; }
+
+	private static int skipSpaces (byte[] line, int i, int end) {
+		while(i < end && line[i] == ' ') i++;
+		return i;
+	}
+
+	private static int indexOf (byte[] line, byte b, int from, int end) {
+		for(int i=from; i<end; i++) if(line[i] == b) return i;
+		return -1;
+	}
+
+	private static int hex (byte b) {
+		if(b >= '0' && b <= '9') return b - '0';
+		if(b >= 'a' && b <= 'f') return b - 'a' + 10;
+		if(b >= 'A' && b <= 'F') return b - 'A' + 10;
+		throw new IllegalArgumentException("invalid hex digit: " + (char) b);
+	}
+
+	/**
+	 * Reads a status or error line of the feed.  A read timeout before the line
+	 * is not an error: the feed is idle while the server is.
+	 */
+	private void readLine (InputStream in, LineBuffer line) throws IOException {
+		final int type;
+		try {
+			type = in.read();
+		}
+		catch (SocketTimeoutException idle) {
+			return;
+		}
+		if(type == -1)
+			throw new UnexpectedEOFException("Unexpected EOF on monitor connection");
+		markActivity();
+
+		line.reset();
+		int c;
+		while((c = read(in)) != '\r')
+			line.write(c);
+		if(read(in) != '\n')
+			throw new ProviderException("Expecting LF on monitor connection");
+
+		switch (type) {
+		case '+':
+			onLine(line);
+			break;
+		case '-':
+			Log.error("MonitorConnection <%s> error reply: %s", this, line.toString());
+			break;
+		default:
+			throw new ProviderException("Unexpected reply type on monitor connection: " + (char) type);
+		}
+	}
+
+	private void onLine (LineBuffer line) {
+		final Monitor.Record record;
+		try {
+			record = parse(line.buffer(), 0, line.size());
+		}
+		catch (IllegalArgumentException e) {
+			Log.error("MonitorConnection <%s> skipped malformed line (%s): %s", this, e.getMessage(), line.toString());
+			return;
+		}
+		if(null == record) return;
+		recordCnt++;
+		try {
+			listener.onCommand(record);
+		}
+		catch (RuntimeException e) {
+			Log.error("MonitorConnection <%s> listener raised exception: %s", this, e);
+		}
+	}
+
+	private static int read (InputStream in) throws IOException {
+		final int c = in.read();
+		if(c == -1)
+			throw new UnexpectedEOFException("Unexpected EOF on monitor connection");
+		return c;
+	}
+
+	/**
+	 * Reconnects {@link Connection.Flag#RELIABLE} connections (which resends
+	 * MONITOR); otherwise faults the connection.
+	 * @return true if reconnected
+	 */
+	private synchronized boolean onFault (ClientRuntimeException cre) {
+		Log.problem("MonitorConnection <%s> connection fault: %s", this, cre.getMessage());
+		if(!spec.getConnectionFlag(Flag.RELIABLE)){
+			if(isConnected()) disconnect();
+			onConnectionFault(cre.getMessage(), false);
+			return false;
+		}
+		try {
+			reconnect();
+		}
+		catch (ClientRuntimeException e) {
+			return false;
+		}
+		return true;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/** line buffer, exposing its buffer to the parser */
+	private static final class LineBuffer extends ByteArrayOutputStream {
+		LineBuffer () { super(256); }
+		byte[] buffer () { return buf; }
+	}
+
+	/**
+	 * Reads the feed until the connection is closed on {@link MonitorConnection#quit()},
+	 * or faulted.
+	 */
+	private final class Reader implements Runnable {
+		public void run () {
+			Log.log("MonitorConnection reader thread <%s> started.", Thread.currentThread().getName());
+			final LineBuffer line = new LineBuffer();
+			try {
+				while(!quitting) {
+					try {
+						readLine(getInputStream(), line);
+					}
+					catch (IOException e) {
+						if(quitting || !onFault(new ClientRuntimeException("IOException on monitor connection", e))) break;
+					}
+					catch (ClientRuntimeException e) {
+						if(quitting || !onFault(e)) break;
+					}
+				}
+			}
+			finally {
+				if(quitting) {
+					synchronized (MonitorConnection.this) {
+						if(isConnected()) disconnect();
+					}
+					shutdown();
+				}
+				Log.log("MonitorConnection reader thread <%s> stopped.", Thread.currentThread().getName());
+			}
+		}
+	}
+}
@@ -16,23 +16,30 @@
 
 package org.jredis.ri.alphazero.connection;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import org.jredis.ClientRuntimeException;
 import org.jredis.ProviderException;
 import org.jredis.RedisException;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.support.HashedWheelTimer;
 import org.jredis.ri.alphazero.support.Signal;
 
 /**
  * An implementation of {@link Future} for parameteric <code>T</code> type {@link Response}
  * used for processing of pipelined responses from the server.
  * <p>
- * Note that this implementation does NOT support canceling of {@link Request}s.
+ * Requests are completed once, by the first of: response, failure, deadline 
+ * expiry and {@link PendingRequest#cancel(boolean)} -- see {@link PendingRequest#claim(int)}.
+ * Cancelling (or expiry of) a {@link Request} that has been sent does not retract it: 
+ * its response is read and discarded.
  * 
  * @author  Joubin Houshyar (alphazero@sensesay.net)
  * @version alpha.0, Sep 7, 2009
@@ -61,6 +68,42 @@ public final class PendingRequest implements Future<Response> {
 	private ClientRuntimeException cre = null;
 	
 	final byte[][] args;
+	
+	/** {@link System#nanoTime()} when the request was issued */
+	final long issued = System.nanoTime();
+	
+	/** size of the request -- set by connections collecting metrics */
+	long bytesSent;
+	
+	/** {@link System#nanoTime()} when queued for the response handler -- set by traced pipelines */
+	long queued;
+	
+	/** the in-flight window holding space for the request -- null if none -- cleared by {@link PendingRequest#WINDOW} */
+	volatile PendingWindow window;
+	static final AtomicReferenceFieldUpdater<PendingRequest, PendingWindow> WINDOW = AtomicReferenceFieldUpdater.newUpdater(PendingRequest.class, PendingWindow.class, "window");
+	
+	/** args size held in the window */
+	long windowBytes;
+	
+	/** deadline of the request -- null if none */
+	HashedWheelTimer.Timeout deadline;
+	
+	static final int PENDING = 0;
+	static final int COMPLETED = 1;
+	static final int TIMED_OUT = 2;
+	static final int CANCELLED = 3;
+	
+	/** completion state -- updated by {@link PendingRequest#STATE} */
+	volatile int state = PENDING;
+	private static final AtomicIntegerFieldUpdater<PendingRequest> STATE = AtomicIntegerFieldUpdater.newUpdater(PendingRequest.class, "state");
+	
+	/** marks a request whose listener, if any, has been notified */
+	private static final CompletionListener NOTIFIED = new CompletionListener() {
+		public void onCompletion (PendingRequest request) { }
+	};
+	/** completion listener -- updated by {@link PendingRequest#LISTENER} */
+	private volatile CompletionListener listener;
+	private static final AtomicReferenceFieldUpdater<PendingRequest, CompletionListener> LISTENER = AtomicReferenceFieldUpdater.newUpdater(PendingRequest.class, CompletionListener.class, "listener");
 	// ------------------------------------------------------------------------
 	// constructor(s)
 	// ------------------------------------------------------------------------
@@ -80,6 +123,29 @@ public final class PendingRequest implements Future<Response> {
 	final Command getCommand () {
 		return cmd;
 	}
+	
+	/**
+	 * Claims the completion of the request.  Only one claim succeeds, and only
+	 * the successful claimant may then complete the request.  Cancels the deadline,
+	 * if any, unless claimed by its expiry. 
+	 * @param outcome one of {@link PendingRequest#COMPLETED}, {@link PendingRequest#TIMED_OUT}, {@link PendingRequest#CANCELLED}
+	 * @return true if claimed
+	 */
+	final boolean claim (int outcome) {
+		if(!STATE.compareAndSet(this, PENDING, outcome)) return false;
+		if(null != deadline && outcome != TIMED_OUT) deadline.cancel();
+		return true;
+	}
+	
+	/** @return true if completed (or claimed for completion) */
+	final boolean isClaimed () {
+		return state != PENDING;
+	}
+	
+	/** @return true if completed by expiry of its deadline */
+	final boolean isTimedOut () {
+		return state == TIMED_OUT;
+	}
 
 	/**
 	 * Signals completion without error.
@@ -91,7 +157,14 @@ public final class PendingRequest implements Future<Response> {
 	 */
 	final void setResponse(Response response){
 		this.response = response;
+		signalCompletion();
+	}
+	
+	/** signals the completion and notifies the listener, if any */
+	private final void signalCompletion () {
 		this.completion.signal();
+		final CompletionListener l = LISTENER.getAndSet(this, NOTIFIED);
+		if(null != l) l.onCompletion(this);
 	}
 
 	/**
@@ -113,6 +186,9 @@ public final class PendingRequest implements Future<Response> {
 	 */
 	private final void checkStatus () throws ExecutionException 
 	{
+		if(state == CANCELLED)
+			throw new CancellationException(cmd.name() + " request was cancelled");
+		
 		// check for runtime or provider exceptions
 		if(excepted) {
 			if(cre != null) {
@@ -130,6 +206,33 @@ public final class PendingRequest implements Future<Response> {
 			throw new ExecutionException("Redis Exception on ["+cmd.name()+"] " + response.getStatus().message(), new RedisException(cmd, response.getStatus().message()));
 	}
 
+	// ------------------------------------------------------------------------
+	// Completion notification
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Notified once, on completion of the request by response, failure, deadline 
+	 * expiry or cancellation.  Listeners are called on the completing thread -- 
+	 * typically the response handler of the connection -- and must not block.
+	 */
+	public interface CompletionListener {
+		/** @param request the completed request -- its get() methods do not block */
+		public void onCompletion (PendingRequest request);
+	}
+	
+	/**
+	 * Sets the completion listener of the request.  If the request has already
+	 * completed, the listener is notified immediately, on the calling thread.
+	 * @param listener
+	 * @throws IllegalStateException if the pending request already has a listener
+	 */
+	public void setCompletionListener (CompletionListener listener) {
+		if(null == listener) throw new IllegalArgumentException("listener is null");
+		if(LISTENER.compareAndSet(this, null, listener)) return;
+		if(this.listener != NOTIFIED) throw new IllegalStateException("request already has a completion listener");
+		listener.onCompletion(this);
+	}
+	
 	// ------------------------------------------------------------------------
 	// Interface: Future<Response>
 	// ------------------------------------------------------------------------
@@ -156,19 +259,22 @@ public final class PendingRequest implements Future<Response> {
 	}
 
 	/**  
-	 * Pipeline does not support canceling of requests -- will always return false.
+	 * Completes the request as cancelled.  Requests that have been sent are not 
+	 * retracted, and their response is discarded.
+	 * @param mayInterruptIfRunning ignored
+	 * @return false if the request has already completed
 	 * @see java.util.concurrent.Future#cancel(boolean) 
 	 */
 	@Override
-	public boolean cancel (boolean mayInterruptIfRunning) { return false; }
+	public boolean cancel (boolean mayInterruptIfRunning) { 
+		if(!claim(CANCELLED)) return false;
+		signalCompletion();
+		return true;
+	}
 
-	/**  
-	 * Pipeline does not support canceling of requests -- will always return false.
-	 * @see PendingRequest#cancel(boolean)
-	 * @see java.util.concurrent.Future#isCancelled()
-	 */
+	/* (non-Javadoc) @see java.util.concurrent.Future#isCancelled() */
 	@Override
-	public boolean isCancelled () { return false; }
+	public boolean isCancelled () { return state == CANCELLED; }
 
 
 	/* (non-Javadoc) @see java.util.concurrent.Future#isDone() */
@@ -0,0 +1,209 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jredis.ClientRuntimeException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.PipelineSaturatedException;
+import org.jredis.connector.Connection.Overflow;
+import org.jredis.connector.Connection.Property;
+
+/**
+ * The in-flight window of a pipeline: tracks the number and (args) size of the
+ * requests awaiting response and, if limits are specified, bounds them per the 
+ * {@link Connection.Overflow} policy.
+ * <p>
+ * Requests acquire their space before they are queued, and release it when their
+ * response is read or the request is failed.  A request larger than the byte
+ * limit is admitted into an empty window.
+ * <p>
+ * An unbounded window (the default) only counts its requests and bytes: it does 
+ * not take the lock.
+ *
+ * @since   alpha.0
+ * 
+ */
+final class PendingWindow {
+	
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** max requests in flight -- 0 for no limit */
+	private final int 			maxRequests;
+	
+	/** max bytes in flight -- 0 for no limit */
+	private final long			maxBytes;
+	
+	private final Overflow		overflow;
+	
+	private final boolean		bounded;
+	
+	private final Lock			lock = new ReentrantLock();
+	
+	private final Condition		available = lock.newCondition();
+	
+	/** requests in flight -- updated under lock if bounded */
+	private final AtomicInteger	requests = new AtomicInteger();
+	
+	/** bytes in flight -- updated under lock if bounded */
+	private final AtomicLong	bytes = new AtomicLong();
+	
+	/** true from the time the window fills until it drains below limits -- guarded by lock */
+	private boolean			saturated;
+	
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param maxRequests 0 for no limit
+	 * @param maxBytes 0 for no limit
+	 * @param overflow
+	 */
+	PendingWindow (int maxRequests, long maxBytes, Overflow overflow) {
+		this.maxRequests = maxRequests;
+		this.maxBytes = maxBytes;
+		this.overflow = null != overflow ? overflow : Overflow.BLOCK;
+		this.bounded = maxRequests > 0 || maxBytes > 0;
+	}
+	
+	/**
+	 * @param spec
+	 * @return the window specified by the {@link Property#MAX_PENDING_REQUESTS}, 
+	 * {@link Property#MAX_PENDING_BYTES} and {@link Property#PENDING_OVERFLOW} properties
+	 */
+	static PendingWindow newWindow (ConnectionSpec spec) {
+		Number maxRequests = (Number) spec.getConnectionProperty(Property.MAX_PENDING_REQUESTS);
+		Number maxBytes = (Number) spec.getConnectionProperty(Property.MAX_PENDING_BYTES);
+		return new PendingWindow(
+				null != maxRequests ? maxRequests.intValue() : 0, 
+				null != maxBytes ? maxBytes.longValue() : 0, 
+				(Overflow) spec.getConnectionProperty(Property.PENDING_OVERFLOW));
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Acquires the space of the request, blocking or failing per the overflow policy
+	 * if the window is full.
+	 * @param pending
+	 * @return true if this acquisition filled the window
+	 * @throws PipelineSaturatedException if the window is full and the policy is {@link Overflow#FAIL}
+	 * @throws ClientRuntimeException if interrupted while blocked
+	 */
+	boolean acquire (PendingRequest pending) throws PipelineSaturatedException, ClientRuntimeException {
+		final long size = sizeOf(pending.args);
+		if(!bounded) {
+			requests.incrementAndGet();
+			bytes.addAndGet(size);
+			pending.windowBytes = size;
+			pending.window = this;
+			return false;
+		}
+		lock.lock();
+		try {
+			while(!admits(size)){
+				if(overflow == Overflow.FAIL)
+					throw new PipelineSaturatedException(String.format("%d requests (%d bytes) in flight", requests.get(), bytes.get()));
+				try {
+					available.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ClientRuntimeException("interrupted while waiting for pipeline in-flight window", e);
+				}
+			}
+			requests.incrementAndGet();
+			bytes.addAndGet(size);
+			pending.windowBytes = size;
+			pending.window = this;
+			if(saturated || !isFull()) return false;
+			return saturated = true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Releases the space of the request, if it holds any.  Idempotent.
+	 * @param pending
+	 */
+	void release (PendingRequest pending) {
+		if(!bounded) {
+			if(!PendingRequest.WINDOW.compareAndSet(pending, this, null)) return;
+			requests.decrementAndGet();
+			bytes.addAndGet(-pending.windowBytes);
+			return;
+		}
+		lock.lock();
+		try {
+			if(!PendingRequest.WINDOW.compareAndSet(pending, this, null)) return;
+			requests.decrementAndGet();
+			bytes.addAndGet(-pending.windowBytes);
+			saturated = saturated && isFull();
+			available.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/** @return number of requests in flight */
+	int getRequests () {
+		return requests.get();
+	}
+	
+	/** @return total args size of requests in flight */
+	long getBytes () {
+		return bytes.get();
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	/** guarded by lock */
+	private boolean admits (long size) {
+		final int n = requests.get();
+		return (maxRequests == 0 || n < maxRequests) && 
+			   (maxBytes == 0 || n == 0 || bytes.get() + size <= maxBytes);
+	}
+	
+	/** guarded by lock */
+	private boolean isFull () {
+		return (maxRequests > 0 && requests.get() >= maxRequests) || 
+			   (maxBytes > 0 && bytes.get() >= maxBytes);
+	}
+	
+	private static long sizeOf (byte[][] args) {
+		if(null == args) return 0;
+		long size = 0;
+		for(byte[] arg : args)
+			if(null != arg) size += arg.length;
+		return size;
+	}
+}
@@ -17,28 +17,37 @@
 package org.jredis.ri.alphazero.connection;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.jredis.ClientRuntimeException;
 import org.jredis.ProviderException;
 import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionReset;
 import org.jredis.connector.ConnectionSpec;
 import org.jredis.connector.NotConnectedException;
+import org.jredis.connector.RequestTimeoutException;
+import org.jredis.connector.Connection.Property;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.connection.ConnectionTracer.Phase;
 import org.jredis.ri.alphazero.protocol.ConcurrentSyncProtocol;
 import org.jredis.ri.alphazero.protocol.VirtualResponse;
 import org.jredis.ri.alphazero.support.Assert;
 import org.jredis.ri.alphazero.support.FastBufferedInputStream;
+import org.jredis.ri.alphazero.support.HashedWheelTimer;
 import org.jredis.ri.alphazero.support.Log;
 
 /**
@@ -70,6 +79,21 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 
 	/**  */
 	BlockingQueue<PendingRequest>	pendingResponseQueue;
+	
+	/** bounds the requests in pendingResponseQueue per spec */
+	private PendingWindow			window;
+	
+	/** request deadline, msecs -- 0 for none */
+	private long					requestTimeout;
+	
+	/** number of timed out requests awaiting response at which the connection is reset -- 0 for no limit */
+	private int						maxTimedOut;
+	
+	/** timed out requests awaiting response */
+	private AtomicInteger			timedOut;
+	
+	/** expires the deadlines of this pipeline's requests */
+	private HashedWheelTimer.Task	deadlineTask;
 
 	/** synchronization object used to serialize request queuing  */
 	private Object					serviceLock = new Object();
@@ -80,6 +104,12 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 	 */
 	private boolean					pendingQuit = false;
 	
+	/** 
+	 * true while the response handler reconnects the pipeline.  Set and cleared under 
+	 * the service lock -- requests queued meanwhile are rejected with {@link NotConnectedException}
+	 */
+	private volatile boolean		resetting = false;
+	
 	/** used by the Pipeline to indicate its state.  Set to true on connect and false on Quit/Close */
 	private AtomicBoolean			isActive;
 	
@@ -106,8 +136,8 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 	@Override
     protected void initializeComponents () {
     	
+    	// note: RELIABLE is per spec -- see onResponseHandlerReset
     	spec.setConnectionFlag(Flag.PIPELINE, true);
-    	spec.setConnectionFlag(Flag.RELIABLE, true);
     	spec.setConnectionFlag(Flag.SHARED, true);
     	
     	super.initializeComponents();
@@ -117,6 +147,20 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
     	connectionEstablished = new CountDownLatch(1);
     	
     	pendingResponseQueue = new LinkedBlockingQueue<PendingRequest>();
+    	window = PendingWindow.newWindow(spec);
+    	if(null != metrics) 
+    		metrics.setPendingWindow(window);
+    	
+    	Number timeout = (Number) spec.getConnectionProperty(Property.REQUEST_TIMEOUT);
+    	Number maxTimedOutRequests = (Number) spec.getConnectionProperty(Property.MAX_TIMED_OUT_REQUESTS);
+    	requestTimeout = null != timeout ? timeout.longValue() : 0;
+    	maxTimedOut = null != maxTimedOutRequests ? maxTimedOutRequests.intValue() : 0;
+    	timedOut = new AtomicInteger();
+    	deadlineTask = new HashedWheelTimer.Task() {
+			public void onTimeout (HashedWheelTimer.Timeout timeout) {
+				onRequestTimeout((PendingRequest) timeout.getAttachment());
+			}
+		};
     	respHandler = new ResponseHandler();
     	respHandlerThread = new Thread(respHandler, "response-handler");
     	respHandlerThread.start();
@@ -182,29 +226,65 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
      * Other item of note is that once a QUIT request has been queued, no further
      * requests are accepted and a ClientRuntimeException is thrown.
      * 
-     * @see org.jredis.ri.alphazero.connection.ConnectionBase#queueRequest(org.jredis.protocol.Command, byte[][])
+     * @see org.jredis.ri.alphazero.connection.ConnectionBase#doQueueRequest(org.jredis.protocol.Command, byte[][])
      */
     @Override
-    public final Future<Response> queueRequest (Command cmd, byte[]... args) 
+    protected final Future<Response> doQueueRequest (Command cmd, byte[]... args) 
     	throws ClientRuntimeException, ProviderException 
     {
-		if(!isConnected()) 
-			throw new NotConnectedException ("Not connected!");
-		
+		final ConnectionTracer tracer = getTracer();
+		long mark = null != tracer ? System.nanoTime() : 0;
 		Protocol		protocol = Assert.notNull(getProtocolHandler(), "thread protocol handler", ProviderException.class);
 		Request 		request = Assert.notNull(protocol.createRequest (cmd, args), "request object from handler", ProviderException.class);
+		if(null != tracer) mark = trace(tracer, Phase.ENCODE, cmd, mark);
 //		PendingRequest 	pendingResponse = new PendingRequest(request, cmd);
-		PendingRequest 	pendingResponse = new PendingRequest(cmd);
+		PendingRequest 	pendingResponse = new PendingRequest(cmd, args);
 		
 		if(pendingQuit) 
 			throw new ClientRuntimeException("Pipeline shutting down: Quit in progess; no further requests are accepted.");
 		
+		// note: space in the window is acquired before the service lock, as
+		// the response handler needs the lock to release space on reconnect 
+		if(cmd != Command.QUIT) {
+			if(window.acquire(pendingResponse))
+				notifyListeners(new Event(this, Event.Type.SATURATED, Integer.valueOf(window.getRequests())));
+			if(null != tracer) mark = trace(tracer, Phase.WINDOW_WAIT, cmd, mark);
+			if(requestTimeout > 0)
+				pendingResponse.deadline = Deadlines.timer.schedule(deadlineTask, pendingResponse, requestTimeout, TimeUnit.MILLISECONDS);
+		}
+		try {
+			queueOnStreams(pendingResponse, request, tracer, mark);
+		}
+		catch (RuntimeException e) {
+			window.release(pendingResponse);
+			if(null != pendingResponse.deadline) 
+				pendingResponse.deadline.cancel();
+			throw e;
+		}
+		return pendingResponse;
+    }
+    
+    /**
+     * Writes the request and queues it for the response handler, under the service lock.
+     */
+    private final void queueOnStreams (PendingRequest pendingResponse, Request request, ConnectionTracer tracer, long mark) {
+    	final Command cmd = pendingResponse.cmd;
+		// note: connection state is checked under the service lock, as the
+		// response handler sets the resetting flag under the lock
 		synchronized (serviceLock) {
+			if(null != tracer) mark = trace(tracer, Phase.LOCK_WAIT, cmd, mark);
+			if(resetting)
+				throw new NotConnectedException ("Pipeline is reconnecting");
+			if(!isConnected()) 
+				throw new NotConnectedException ("Not connected!");
 			
 			if(cmd != Command.QUIT) {
 //				System.out.format("out is %s\n", getOutputStream().getClass().getName());	// TODO: REMOVE -- testing
 //				System.out.format("req is %s\n", request.getClass().getName());				// TODO: REMOVE -- testing
+				final long sent = bytesSent();
 				request.write(getOutputStream());
+				pendingResponse.bytesSent = bytesSent() - sent;
+				if(null != tracer) pendingResponse.queued = trace(tracer, Phase.FLUSH, cmd, mark);
 			}
 			else {
 				pendingQuit = true;
@@ -213,9 +293,29 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 				
 			pendingResponseQueue.add(pendingResponse);
 		}
-		return pendingResponse;
     }
 
+    /**
+     * Called by the deadline timer on expiry of the request's deadline.  Fails the 
+     * request with {@link RequestTimeoutException}, unless already completed. The 
+     * request remains in flight and its response, if any, is discarded.  If the 
+     * timed out requests awaiting response reach {@link Property#MAX_TIMED_OUT_REQUESTS},
+     * the socket is aborted, and the response handler resets the connection.
+     * @param pending
+     */
+    private void onRequestTimeout (PendingRequest pending) {
+    	if(!pending.claim(PendingRequest.TIMED_OUT)) return;
+    	if(null != metrics)
+    		metrics.record(pending.cmd, System.nanoTime() - pending.issued, pending.bytesSent, 0, true);
+    	pending.setCRE(new RequestTimeoutException(String.format("%s request timed out after %d msecs", pending.cmd.code, requestTimeout)));
+    	
+    	final int stuck = timedOut.incrementAndGet();
+    	if(stuck == maxTimedOut) {
+    		Log.problem("Pipeline <%s> has %d timed out requests awaiting response -- resetting connection", this, stuck);
+    		abortSocket();
+    	}
+    }
+    
     void onResponseHandlerError (ClientRuntimeException cre, PendingRequest request) {
     	Log.error("Pipeline response handler encountered an error: " + cre.getMessage());
     	
@@ -223,7 +323,7 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
     	onConnectionFault(cre.getMessage(), false);
     	
     	// set execution error for future object
-    	request.setCRE(cre);
+    	failRequest(request, cre);
     	
 		// BEST:
 		// 1 - block the request phase
@@ -238,15 +338,99 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 		while(true){
 			try {
 				pending = pendingResponseQueue.remove();
-				pending.setCRE(cre);
+				failRequest(pending, cre);
 				Log.error("set pending %s response to error with CRE", pending.cmd);
 			}
 			catch (NoSuchElementException empty){ break; }
 		}
+    }
+    /**
+     * Called by the response handler on connection errors if the connection is 
+     * {@link Connection.Flag#RELIABLE}.  Reconnects (per {@link ConnectionBase#reconnect()})
+     * and resends all unanswered {@link Command#isIdempotent() idempotent} requests
+     * in their original order.  Unanswered requests that are not idempotent are 
+     * failed with {@link ConnectionReset}, as it is not known whether the server 
+     * has processed them.
+     * <p>
+     * Note that idempotent writes (e.g. SET, LSET) are resent.  Pipelines 
+     * that must not resend writes should not set the RELIABLE flag: their unanswered 
+     * requests are then failed on connection errors.
+     * <p>
+     * Requests queued while reconnecting are rejected with {@link NotConnectedException}.
+     * The reconnect (and its backoff) is not effected under the service lock.
+     * 
+     * @param cre the cause
+     * @param request the request that was being processed
+     * @param protocol the response handler's protocol handler
+     * @return true if reconnected and response handling can resume.  If false,
+     * reconnect failed and all unanswered requests have been failed. 
+     */
+    boolean onResponseHandlerReset (ClientRuntimeException cre, PendingRequest request, Protocol protocol) {
+    	Log.problem("Pipeline <%s> connection reset: %s -- reconnecting", this, cre.getMessage());
+    	
+    	final List<PendingRequest> unanswered;
+    	synchronized (serviceLock) {
+    		resetting = true;
+    		unanswered = new ArrayList<PendingRequest>(pendingResponseQueue.size() + 1);
+    		unanswered.add(request);
+    		pendingResponseQueue.drainTo(unanswered);
+    	}
+    	
+    	try {
+    		reconnect();
+    	}
+    	catch (ClientRuntimeException e) {
+    		resetting = false;
+    		for(PendingRequest pending : unanswered)
+    			failRequest(pending, e);
+    		return false;
+    	}
+    	
+    	synchronized (serviceLock) {
+    		int replayed = 0;
+    		ClientRuntimeException replayFault = null;
+    		for(PendingRequest pending : unanswered) {
+    			if(pending.isClaimed() && pending.cmd != Command.QUIT) {
+    				// timed out or cancelled -- not resent
+    				window.release(pending);
+    				if(pending.isTimedOut()) timedOut.decrementAndGet();
+    			}
+    			else if(null != replayFault) {
+    				failRequest(pending, replayFault);
+    			}
+    			else if(pending.cmd == Command.QUIT){
+    				pendingResponseQueue.add(pending);
+    			}
+    			else if(pending.cmd.isIdempotent()){
+    				try {
+    					protocol.createRequest(pending.cmd, pending.args).write(getOutputStream());
+    					pendingResponseQueue.add(pending);
+    					replayed++;
+    				}
+    				catch (ClientRuntimeException e){
+    					replayFault = e;
+    					failRequest(pending, e);
+    				}
+    			}
+    			else {
+    				failRequest(pending, new ConnectionReset(String.format("%s request may or may not have been processed by the server", pending.cmd.code)));
+    			}
+    		}
+    		resetting = false;
+    		Log.log("Pipeline <%s> reconnected -- resent %d of %d unanswered requests", this, replayed, unanswered.size());
+    		return true;
+    	}
     }
 	// ------------------------------------------------------------------------
 	// Inner Class
 	// ------------------------------------------------------------------------
+    /**
+     * Holds the deadline timer shared by all pipelines -- created on first use.
+     * Deadlines expire on the first 10 msec tick after they pass.
+     */
+    private static final class Deadlines {
+    	static final HashedWheelTimer timer = new HashedWheelTimer("request-deadlines", 10, TimeUnit.MILLISECONDS, 1024);
+    }
     /**
      * Provides the response processing logic as a {@link Runnable}.
      * <p>
@@ -291,11 +475,8 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
     	 * <p>
     	 * TODO: not entirely clear what is the best way to handle exceptions.
     	 * <p>
-    	 * TODO: socket Reconnect in the context of pipelining is non-trivial, and maybe
-    	 * not even practically possible.  (e.g. request n is sent but pipe breaks on
-    	 * some m (m!=n) response.  non trivial.  Perhaps its best to assume broken connection
-    	 * means faulted server, specially given the fact that a pipeline has a heartbeat
-    	 * so the issue can not be timeout.
+    	 * On connection errors, {@link Connection.Flag#RELIABLE} pipelines reconnect and
+    	 * resend the unanswered idempotent requests -- see {@link PipelineConnectionBase#onResponseHandlerReset(ClientRuntimeException, PendingRequest, Protocol)}.
     	 */
         @Override
         public void run () {
@@ -311,10 +492,24 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 				try {
 	                pending = pendingResponseQueue.take();
 					try {
+						final ConnectionTracer tracer = getTracer();
+						long mark = 0;
+						if(null != tracer)
+							mark = 0 != pending.queued ? trace(tracer, Phase.QUEUE_WAIT, pending.cmd, pending.queued) : System.nanoTime();
 						response = protocol.createResponse(pending.cmd);
+						final long received = bytesReceived();
 						response.read(getInputStream());
-						pending.response = response;
-						pending.completion.signal();
+						if(null != tracer) trace(tracer, Phase.DECODE, pending.cmd, mark);
+						markActivity();
+						window.release(pending);
+						if(pending.claim(PendingRequest.COMPLETED)) {
+							if(null != metrics)
+								metrics.record(pending.cmd, System.nanoTime() - pending.issued, pending.bytesSent, bytesReceived() - received, response.getStatus().isError());
+							pending.setResponse(response);
+						}
+						else if(pending.isTimedOut()) {
+							timedOut.decrementAndGet();
+						}
 						if(response.getStatus().isError()) {
 							Log.error ("(Asynch) Error response for " + pending.cmd.code + " => " + response.getStatus().message());
 						}
@@ -335,7 +530,13 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 					}
 					catch (ClientRuntimeException cre) {
 						Log.problem ("ClientRuntimeException: " + cre.getMessage());
-						onResponseHandlerError(cre, pending);
+						if(spec.getConnectionFlag(Flag.RELIABLE) && !pendingQuit) {
+							if(onResponseHandlerReset(cre, pending, protocol))
+								continue;
+						}
+						else {
+							onResponseHandlerError(cre, pending);
+						}
 						break;
 					}
 					catch (RuntimeException e){
@@ -412,6 +613,7 @@ public abstract class PipelineConnectionBase extends ConnectionBase {
 					//
 //					break;
 				case CONNECTING:
+				case SATURATED:
 					// no op
 					break;
 				case FAULTED:
@@ -0,0 +1,675 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jredis.ClientRuntimeException;
+import org.jredis.NotSupportedException;
+import org.jredis.ProviderException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.NotConnectedException;
+import org.jredis.connector.Subscriber;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Request;
+import org.jredis.protocol.Response;
+import org.jredis.protocol.ResponseStatus;
+import org.jredis.ri.alphazero.protocol.VirtualResponse;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.DefaultCodec;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * {@link Connection.Modality#PubSub} connection.  A dedicated (daemon) reader
+ * thread parses the messages pushed by the server and queues them on their
+ * subscription.  Subscriptions are drained by the dispatch {@link Executor}, one
+ * task per subscription at a time, so that the messages of a subscription are
+ * delivered in order while distinct subscriptions are dispatched concurrently
+ * by multi-threaded executors.  Each dispatch task delivers at most
+ * {@link Connection.Property#MESSAGE_BATCH_SIZE} messages before yielding the
+ * executor to other subscriptions.
+ * <p>
+ * Unless an executor is specified, the connection dispatches on its own (daemon)
+ * thread, which is stopped on {@link PubSubConnection#quit()}.  Messages are
+ * queued without bound: listeners that can not keep up with their channel should
+ * hand off the messages, or use a {@link Subscriber.BatchListener}.
+ * <p>
+ * Heartbeat PINGs are answered with a <code>pong</code> message by servers that
+ * accept PING on subscriber connections; the error reply of servers that do not
+ * fails the heartbeat.
+ *
+ * @since   alpha.0
+ *
+ */
+
+public class PubSubConnection extends ConnectionBase implements Subscriber {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/** channel subscriptions, by channel */
+	private final ConcurrentMap<String, Subscription>	channels = new ConcurrentHashMap<String, Subscription>();
+
+	/** pattern subscriptions, by pattern */
+	private final ConcurrentMap<String, Subscription>	patterns = new ConcurrentHashMap<String, Subscription>();
+
+	/** heartbeat PINGs awaiting their PONG, in order sent */
+	private final Queue<PendingRequest>	pings = new ConcurrentLinkedQueue<PendingRequest>();
+
+	/** serializes requests, and requests and reconnects */
+	private final Object 				writeLock = new Object();
+
+	/** dispatches the messages to the listeners */
+	private final Executor				executor;
+
+	/** the connection's own dispatcher -- null if the executor was specified */
+	private final ExecutorService		dispatcher;
+
+	/** maximum number of messages delivered per dispatch task */
+	private final int					batchSize;
+
+	/** set on {@link PubSubConnection#quit()} */
+	private volatile boolean			quitting = false;
+
+	/** channel and pattern subscriptions, per last (un)subscribe confirmation */
+	private volatile int				subscriptionCnt = 0;
+
+	// ------------------------------------------------------------------------
+	// Constructors
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Subscriber dispatching messages on its own thread.
+	 * @param connectionSpec
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	public PubSubConnection (ConnectionSpec connectionSpec)
+		throws ClientRuntimeException, ProviderException
+	{
+		this(connectionSpec, null);
+	}
+
+	/**
+	 * @param connectionSpec
+	 * @param executor dispatches the messages to the listeners -- null for the
+	 * connection's own (single) dispatch thread.
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	public PubSubConnection (ConnectionSpec connectionSpec, Executor executor)
+		throws ClientRuntimeException, ProviderException
+	{
+		super(connectionSpec.setModality(Modality.PubSub));
+
+		Number size = (Number) spec.getConnectionProperty(Property.MESSAGE_BATCH_SIZE);
+		batchSize = null != size && size.intValue() > 0 ? size.intValue() : 1;
+		if(null == executor) {
+			dispatcher = Executors.newSingleThreadExecutor(new HeartbeatService.DaemonThreadFactory("jredis-pubsub-dispatcher"));
+			this.executor = dispatcher;
+		}
+		else {
+			dispatcher = null;
+			this.executor = executor;
+		}
+
+		if(!isConnected())
+			connect();
+
+		Thread reader = new Thread(new Reader(), "pubsub-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	// ------------------------------------------------------------------------
+	// Extension
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The reader does its own buffering, and must not block for more than is available.
+	 */
+	@Override
+	protected InputStream newInputStream (InputStream socketInputStream) {
+		return socketInputStream;
+	}
+
+	// ------------------------------------------------------------------------
+	// Interface
+	// ============================================================ Subscriber
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see org.jredis.connector.Connection#getModality()
+	 */
+	public final Modality getModality() {
+		return Connection.Modality.PubSub;
+	}
+
+	/* (non-Javadoc) @see org.jredis.connector.Subscriber#subscribe(org.jredis.connector.Subscriber.Listener, java.lang.String[]) */
+	public void subscribe (Subscriber.Listener listener, String... channelNames) {
+		request(Command.SUBSCRIBE, register(channels, listener, channelNames));
+	}
+
+	/* (non-Javadoc) @see org.jredis.connector.Subscriber#psubscribe(org.jredis.connector.Subscriber.Listener, java.lang.String[]) */
+	public void psubscribe (Subscriber.Listener listener, String... patternNames) {
+		request(Command.PSUBSCRIBE, register(patterns, listener, patternNames));
+	}
+
+	/* (non-Javadoc) @see org.jredis.connector.Subscriber#unsubscribe(java.lang.String[]) */
+	public void unsubscribe (String... channelNames) {
+		request(Command.UNSUBSCRIBE, unregister(channels, channelNames));
+	}
+
+	/* (non-Javadoc) @see org.jredis.connector.Subscriber#punsubscribe(java.lang.String[]) */
+	public void punsubscribe (String... patternNames) {
+		request(Command.PUNSUBSCRIBE, unregister(patterns, patternNames));
+	}
+
+	/* (non-Javadoc) @see org.jredis.connector.Subscriber#getSubscriptionCount() */
+	public int getSubscriptionCount () {
+		return subscriptionCnt;
+	}
+
+	/**
+	 * Sends QUIT.  The reader stops once the server has closed the connection.
+	 * @see org.jredis.connector.Subscriber#quit()
+	 */
+	public void quit () {
+		quitting = true;
+		synchronized (writeLock) {
+			if(!isConnected()) return;
+			try {
+				write(Command.QUIT);
+			}
+			catch (ClientRuntimeException e) {
+				abortSocket();
+			}
+		}
+	}
+
+	/**
+	 * Subscriber connections only support heartbeat PINGs.
+	 * @see org.jredis.ri.alphazero.connection.ConnectionBase#doQueueRequest(org.jredis.protocol.Command, byte[][])
+	 */
+	@Override
+	protected Future<Response> doQueueRequest (Command cmd, byte[]... args)
+		throws ClientRuntimeException, ProviderException
+	{
+		if(cmd != Command.PING)
+			throw new NotSupportedException(cmd.code + " is not supported by subscriber connections");
+
+		PendingRequest pending = new PendingRequest(cmd);
+		synchronized (writeLock) {
+			if(!isConnected())
+				throw new NotConnectedException ("Not connected!");
+			pings.add(pending);
+			try {
+				write(cmd);
+			}
+			catch (ClientRuntimeException e) {
+				pings.remove(pending);
+				abortSocket();
+				throw e;
+			}
+		}
+		return pending;
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Registers (or updates) the subscriptions.
+	 * @return the encoded names
+	 */
+	private byte[][] register (ConcurrentMap<String, Subscription> subscriptions, Subscriber.Listener listener, String... names) {
+		Assert.notNull(listener, "listener", ClientRuntimeException.class);
+		Assert.isTrue(null != names && names.length > 0, "channels or patterns specified", ClientRuntimeException.class);
+		byte[][] args = new byte[names.length][];
+		for(int i=0; i<names.length; i++){
+			String name = Assert.notNull(names[i], i, ClientRuntimeException.class);
+			Subscription subscription = subscriptions.putIfAbsent(name, new Subscription(name, listener));
+			if(null != subscription)
+				subscription.listener = listener;
+			args[i] = DefaultCodec.encode(name);
+		}
+		return args;
+	}
+
+	/**
+	 * Cancels the subscriptions.
+	 * @param names -- none for all
+	 * @return the encoded names
+	 */
+	private byte[][] unregister (ConcurrentMap<String, Subscription> subscriptions, String... names) {
+		if(null == names || names.length == 0) {
+			for(Subscription subscription : subscriptions.values())
+				subscription.cancel();
+			subscriptions.clear();
+			return new byte[0][];
+		}
+		byte[][] args = new byte[names.length][];
+		for(int i=0; i<names.length; i++){
+			String name = Assert.notNull(names[i], i, ClientRuntimeException.class);
+			Subscription subscription = subscriptions.remove(name);
+			if(null != subscription)
+				subscription.cancel();
+			args[i] = DefaultCodec.encode(name);
+		}
+		return args;
+	}
+
+	/**
+	 * Sends the request.  The (un)subscribe confirmations are read by the reader.
+	 * On connection errors, subscriptions of {@link Connection.Flag#RELIABLE}
+	 * connections are restored on reconnect; otherwise the error is raised.
+	 */
+	private void request (Command cmd, byte[]... args) {
+		synchronized (writeLock) {
+			if(!isConnected())
+				throw new NotConnectedException ("Not connected!");
+			try {
+				write(cmd, args);
+			}
+			catch (ClientRuntimeException e) {
+				abortSocket();
+				if(!spec.getConnectionFlag(Flag.RELIABLE))
+					throw e;
+				Log.problem("PubSubConnection <%s> %s failed: %s -- will resubscribe on reconnect", this, cmd.code, e.getMessage());
+			}
+		}
+	}
+
+	/** writes the request -- caller holds the write lock */
+	private void write (Command cmd, byte[]... args) {
+		Request request = Assert.notNull(getProtocolHandler().createRequest(cmd, args), "request object from handler", ProviderException.class);
+		request.write(getOutputStream());
+	}
+
+	/** resubscribes the channels and patterns -- caller holds the write lock */
+	private void resubscribe () {
+		if(!channels.isEmpty())
+			write(Command.SUBSCRIBE, encode(channels.keySet()));
+		if(!patterns.isEmpty())
+			write(Command.PSUBSCRIBE, encode(patterns.keySet()));
+	}
+
+	private static byte[][] encode (Iterable<String> names) {
+		List<byte[]> args = new ArrayList<byte[]>();
+		for(String name : names) args.add(DefaultCodec.encode(name));
+		return args.toArray(new byte[args.size()][]);
+	}
+
+	/**
+	 * Reconnects {@link Connection.Flag#RELIABLE} connections and restores their
+	 * subscriptions; otherwise faults the connection.
+	 * @return true if reconnected
+	 */
+	private boolean onFault (ClientRuntimeException cre) {
+		Log.problem("PubSubConnection <%s> connection fault: %s", this, cre.getMessage());
+		failPings(cre);
+		if(!spec.getConnectionFlag(Flag.RELIABLE)){
+			if(isConnected()) disconnect();
+			onConnectionFault(cre.getMessage(), false);
+			return false;
+		}
+		synchronized (writeLock) {
+			try {
+				reconnect();
+			}
+			catch (ClientRuntimeException e) {
+				return false;
+			}
+			try {
+				resubscribe();
+			}
+			catch (ClientRuntimeException e) {
+				Log.problem("PubSubConnection <%s> resubscribe failed: %s", this, e.getMessage());
+				abortSocket();
+			}
+		}
+		return true;
+	}
+
+	private void failPings (ClientRuntimeException cre) {
+		PendingRequest pending;
+		while((pending = pings.poll()) != null)
+			failRequest(pending, cre);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner ops: reader
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Dispatches the message to its subscription, if any, and records the
+	 * (un)subscribe confirmations.
+	 */
+	private void onPush (byte[][] push) {
+		if(push.length < 2 || null == push[0])
+			throw new ProviderException("Unexpected push on subscriber connection");
+		final String kind = DefaultCodec.toStr(push[0]);
+		if(kind.equals("message") && push.length == 3) {
+			final String channel = DefaultCodec.toStr(push[1]);
+			final Subscription subscription = channels.get(channel);
+			if(null != subscription)
+				subscription.deliver(new Publication(channel, null, push[2]));
+		}
+		else if(kind.equals("pmessage") && push.length == 4) {
+			final String pattern = DefaultCodec.toStr(push[1]);
+			final Subscription subscription = patterns.get(pattern);
+			if(null != subscription)
+				subscription.deliver(new Publication(DefaultCodec.toStr(push[2]), pattern, push[3]));
+		}
+		else if(kind.endsWith("subscribe") && push.length == 3) {
+			subscriptionCnt = (int) DefaultCodec.toLong(push[2]).longValue();
+		}
+		else if(kind.equals("pong")) {
+			onPong();
+		}
+		else {
+			Log.error("PubSubConnection <%s> unexpected push: %s", this, kind);
+		}
+	}
+
+	private void onPong () {
+		PendingRequest pending = pings.poll();
+		if(null == pending || !pending.claim(PendingRequest.COMPLETED)) return;
+		pending.setResponse(new VirtualResponse(ResponseStatus.STATUS_OK));
+	}
+
+	private void onError (String message) {
+		PendingRequest pending = pings.poll();
+		if(null != pending)
+			failRequest(pending, new ClientRuntimeException(message));
+		else
+			Log.error("PubSubConnection <%s> error reply: %s", this, message);
+	}
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Reads the replies until the connection is closed on {@link PubSubConnection#quit()},
+	 * or faulted.  The replies are parsed from the reader's buffer, filled with bulk 
+	 * reads of the socket stream.
+	 */
+	private final class Reader implements Runnable {
+		final byte[]		buf;
+		int					pos = 0;
+		int					lim = 0;
+		/** the stream buffered -- replaced on reconnect */
+		InputStream			in;
+		
+		@SuppressWarnings("boxing")
+		Reader () {
+			buf = new byte[spec.getSocketProperty(Connection.Socket.Property.SO_RCVBUF)];
+		}
+		
+		public void run () {
+			Log.log("PubSubConnection reader thread <%s> started.", Thread.currentThread().getName());
+			try {
+				while(!quitting) {
+					try {
+						final InputStream stream = getInputStream();
+						if(stream != in) {
+							// reconnected: the buffered bytes are those of the faulted stream
+							in = stream;
+							pos = lim = 0;
+						}
+						readReply();
+					}
+					catch (IOException e) {
+						if(quitting || !onFault(new ClientRuntimeException("IOException on subscriber connection", e))) break;
+					}
+					catch (ClientRuntimeException e) {
+						if(quitting || !onFault(e)) break;
+					}
+				}
+			}
+			finally {
+				failPings(new ClientRuntimeException("Subscriber connection closed"));
+				if(quitting) {
+					synchronized (writeLock) {
+						if(isConnected()) disconnect();
+					}
+					shutdown();
+				}
+				if(null != dispatcher)
+					dispatcher.shutdown();
+				Log.log("PubSubConnection reader thread <%s> stopped.", Thread.currentThread().getName());
+			}
+		}
+		
+		/**
+		 * Reads a reply: a (push) multi-bulk of bulk and integer elements, or a status
+		 * or error line.  A read timeout before the reply is not an error: subscriber
+		 * connections are idle between messages.
+		 */
+		private void readReply () throws IOException {
+			if(pos == lim) {
+				try {
+					fill();
+				}
+				catch (SocketTimeoutException idle) {
+					return;
+				}
+			}
+			final int type = buf[pos++] & 0xFF;
+			markActivity();
+
+			switch (type) {
+			case '*': {
+				final byte[][] push = new byte[Math.max((int) readNumber(), 0)][];
+				for(int i=0; i<push.length; i++)
+					push[i] = readElement();
+				onPush(push);
+				break;
+			}
+			case '+':
+				if(DefaultCodec.toStr(readLine()).equalsIgnoreCase("PONG"))
+					onPong();
+				break;
+			case '-':
+				onError(DefaultCodec.toStr(readLine()));
+				break;
+			default:
+				throw new ProviderException("Unexpected reply type on subscriber connection: " + (char) type);
+			}
+		}
+
+		/** @return a bulk or integer element -- null for nil bulk */
+		private byte[] readElement () throws IOException {
+			final int type = read();
+			switch (type) {
+			case '$': {
+				final int len = (int) readNumber();
+				if(len < 0) return null;
+				final byte[] data = new byte[len];
+				int off = Math.min(len, lim - pos);
+				System.arraycopy(buf, pos, data, 0, off);
+				pos += off;
+				// the rest of a large bulk is read past the buffer
+				while(off < len) {
+					int c = in.read(data, off, len - off);
+					if(c == -1) throw new UnexpectedEOFException("Unexpected EOF reading bulk data on subscriber connection");
+					off += c;
+				}
+				if(read() != '\r' || read() != '\n')
+					throw new ProviderException("Expecting CRLF after bulk data on subscriber connection");
+				return data;
+			}
+			case ':':
+				return readLine();
+			default:
+				throw new ProviderException("Unexpected element type on subscriber connection: " + (char) type);
+			}
+		}
+
+		/** @return the line, less its CRLF */
+		private byte[] readLine () throws IOException {
+			byte[] line = null;
+			while(true) {
+				if(pos == lim) fill();
+				int end = pos;
+				while(end < lim && buf[end] != '\r') end++;
+				line = append(line, end);
+				if(end < lim) break;
+			}
+			pos++;
+			if(read() != '\n')
+				throw new ProviderException("Expecting LF on subscriber connection");
+			return line;
+		}
+		
+		/** @return the line, with the buffered bytes up to end appended -- consumed */
+		private byte[] append (byte[] line, int end) {
+			final int n = end - pos;
+			final byte[] appended;
+			if(null == line) {
+				appended = new byte[n];
+				System.arraycopy(buf, pos, appended, 0, n);
+			}
+			else {
+				appended = new byte[line.length + n];
+				System.arraycopy(line, 0, appended, 0, line.length);
+				System.arraycopy(buf, pos, appended, line.length, n);
+			}
+			pos = end;
+			return appended;
+		}
+
+		private long readNumber () throws IOException {
+			long number = 0;
+			int c = read();
+			final boolean negative = c == '-';
+			if(negative) c = read();
+			while(c != '\r'){
+				if(c < '0' || c > '9')
+					throw new ProviderException("Unexpected character in number on subscriber connection: " + (char) c);
+				number = number * 10 + (c - '0');
+				c = read();
+			}
+			if(read() != '\n')
+				throw new ProviderException("Expecting LF on subscriber connection");
+			return negative ? -number : number;
+		}
+
+		private int read () throws IOException {
+			if(pos == lim) fill();
+			return buf[pos++] & 0xFF;
+		}
+		
+		private void fill () throws IOException {
+			final int n = in.read(buf, 0, buf.length);
+			if(n == -1)
+				throw new UnexpectedEOFException("Unexpected EOF on subscriber connection");
+			pos = 0;
+			lim = n;
+		}
+	}
+
+	/**
+	 * A channel or pattern subscription: its queue of messages is drained by at
+	 * most one dispatch task at a time.
+	 */
+	private final class Subscription implements Runnable {
+		final String name;
+		volatile Subscriber.Listener listener;
+		/** set on unsubscribe -- queued messages are discarded */
+		volatile boolean cancelled = false;
+		final Queue<Publication> queue = new ConcurrentLinkedQueue<Publication>();
+		/** true while a dispatch task is scheduled or running */
+		final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		Subscription (String name, Subscriber.Listener listener) {
+			this.name = name;
+			this.listener = listener;
+		}
+
+		void deliver (Publication message) {
+			queue.add(message);
+			schedule();
+		}
+
+		void cancel () {
+			cancelled = true;
+			queue.clear();
+		}
+
+		private void schedule () {
+			if(!scheduled.compareAndSet(false, true)) return;
+			try {
+				executor.execute(this);
+			}
+			catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				Log.error("PubSubConnection <%s> dispatch of <%s> rejected: %s", PubSubConnection.this, name, e.getMessage());
+			}
+		}
+
+		/**
+		 * Delivers up to a batch of messages, and reschedules if there are more.
+		 */
+		public void run () {
+			try {
+				final Subscriber.Listener l = listener;
+				if(cancelled) {
+					queue.clear();
+				}
+				else if(l instanceof Subscriber.BatchListener) {
+					final List<Publication> batch = new ArrayList<Publication>(Math.min(batchSize, 64));
+					Publication message;
+					while(batch.size() < batchSize && (message = queue.poll()) != null)
+						batch.add(message);
+					if(!batch.isEmpty())
+						((Subscriber.BatchListener) l).onMessages(batch);
+				}
+				else {
+					Publication message;
+					for(int i=0; i<batchSize && (message = queue.poll()) != null; i++)
+						l.onMessage(message);
+				}
+			}
+			catch (RuntimeException e) {
+				Log.error("PubSubConnection <%s> listener of <%s> raised exception: %s", PubSubConnection.this, name, e);
+			}
+			finally {
+				scheduled.set(false);
+				if(!queue.isEmpty())
+					schedule();
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jredis.connector.Connection.Modality;
+import org.jredis.connector.ConnectionMetrics;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.support.LatencyHistogram;
+
+/**
+ * Collects the {@link ConnectionMetrics} of a connection.  
+ * <p>
+ * Recording is on the request path and does not allocate once a command's cells
+ * exist.  Counters and latency histograms are kept in per {@link Command} cells, 
+ * striped by recording thread to avoid contention between threads sharing the 
+ * connection, and are aggregated on read.  Cells and their histograms are created 
+ * on first use, so only the commands (and stripes) in use take up space.
+ * <p>
+ * Latencies are tracked with a relative error of less than 2%, up to 
+ * {@link RequestMetrics#HIGHEST_TRACKABLE_NANOS}.
+ *
+ * @since   alpha.0
+ * 
+ */
+public class RequestMetrics implements ConnectionMetricsMXBean {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** number of cell stripes -- a power of 2 */
+	static final int STRIPES = 4;
+	
+	/** latency histogram precision */
+	static final int PRECISION_BITS = 6;
+	
+	/** latencies above this are counted as this value (the max latency is exact) */
+	public static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+	
+	private static final Command[] commands = Command.values();
+	
+	private final Modality					modality;
+	private final AtomicReferenceArray<Cell>	cells = new AtomicReferenceArray<Cell>(STRIPES * commands.length);
+	
+	/** in-flight window of the measured pipeline -- null for other connections */
+	private volatile PendingWindow			window;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param modality of the measured connection
+	 */
+	public RequestMetrics (Modality modality) {
+		this.modality = modality;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Records the outcome of a request.
+	 * @param cmd
+	 * @param latencyNanos from request issue to response (or failure)
+	 * @param bytesSent request size
+	 * @param bytesReceived response size
+	 * @param error true for error responses and failed requests
+	 */
+	public void record (Command cmd, long latencyNanos, long bytesSent, long bytesReceived, boolean error) {
+		cell(cmd).record(latencyNanos, bytesSent, bytesReceived, error);
+	}
+	
+	/**
+	 * @param window the in-flight window of the measured pipeline
+	 */
+	void setPendingWindow (PendingWindow window) {
+		this.window = window;
+	}
+	
+	/* (non-Javadoc) @see org.jredis.connector.ConnectionMetrics#getModality() */
+	public Modality getModality () { return modality; }
+	
+	/* (non-Javadoc) @see org.jredis.connector.ConnectionMetrics#getTotals() */
+	public CommandMetrics getTotals () {
+		Snapshot totals = new Snapshot(null);
+		for(int i=0; i<cells.length(); i++){
+			Cell cell = cells.get(i);
+			if(null != cell) cell.addTo(totals);
+		}
+		return totals;
+	}
+	
+	/* (non-Javadoc) @see org.jredis.connector.ConnectionMetrics#getCommandMetrics() */
+	public List<CommandMetrics> getCommandMetrics () {
+		List<CommandMetrics> list = new ArrayList<CommandMetrics>();
+		for(Command cmd : commands){
+			Snapshot snapshot = snapshot(cmd);
+			if(snapshot.requests > 0) list.add(snapshot);
+		}
+		return list;
+	}
+	
+	/* (non-Javadoc) @see org.jredis.connector.ConnectionMetrics#metricsFor(org.jredis.protocol.Command) */
+	public CommandMetrics metricsFor (Command cmd) {
+		return snapshot(cmd);
+	}
+	
+	/* (non-Javadoc) @see org.jredis.connector.ConnectionMetrics#reset() */
+	public void reset () {
+		for(int i=0; i<cells.length(); i++){
+			Cell cell = cells.get(i);
+			if(null != cell) cell.reset();
+		}
+	}
+	
+	/* (non-Javadoc) @see org.jredis.connector.ConnectionMetrics#getPendingRequests() */
+	public long getPendingRequests () {
+		final PendingWindow w = window;
+		return null != w ? w.getRequests() : 0;
+	}
+	
+	/* (non-Javadoc) @see org.jredis.connector.ConnectionMetrics#getPendingBytes() */
+	public long getPendingBytes () {
+		final PendingWindow w = window;
+		return null != w ? w.getBytes() : 0;
+	}
+	
+	@Override
+	public String toString () {
+		CommandMetrics totals = getTotals();
+		return String.format("%s requests:%d errors:%d p50:%d p99:%d max:%d (nanos)", modality.name(), 
+				totals.getRequestCount(), totals.getErrorCount(), totals.getLatencyP50(), totals.getLatencyP99(), totals.getMaxLatency());
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	private Cell cell (Command cmd) {
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		int index = stripe * commands.length + cmd.ordinal();
+		Cell cell = cells.get(index);
+		if(null == cell){
+			cells.compareAndSet(index, null, new Cell());
+			cell = cells.get(index);
+		}
+		return cell;
+	}
+	
+	private Snapshot snapshot (Command cmd) {
+		Snapshot snapshot = new Snapshot(cmd);
+		for(int stripe=0; stripe<STRIPES; stripe++){
+			Cell cell = cells.get(stripe * commands.length + cmd.ordinal());
+			if(null != cell) cell.addTo(snapshot);
+		}
+		return snapshot;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** A command's counters for a stripe.  Uncontended in the common case. */
+	static final class Cell {
+		private long requests;
+		private long errors;
+		private long bytesSent;
+		private long bytesReceived;
+		private long latencySum;
+		private LatencyHistogram latencies;
+		
+		synchronized void record (long latencyNanos, long sent, long received, boolean error) {
+			if(null == latencies) 
+				latencies = new LatencyHistogram(PRECISION_BITS, HIGHEST_TRACKABLE_NANOS);
+			long latency = Math.max(0, latencyNanos);
+			latencies.recordValue(latency);
+			latencySum += latency;
+			requests++;
+			if(error) errors++;
+			if(sent > 0) bytesSent += sent;
+			if(received > 0) bytesReceived += received;
+		}
+		
+		synchronized void addTo (Snapshot snapshot) {
+			if(null == latencies) return;
+			snapshot.requests += requests;
+			snapshot.errors += errors;
+			snapshot.bytesSent += bytesSent;
+			snapshot.bytesReceived += bytesReceived;
+			snapshot.latencySum += latencySum;
+			snapshot.latencies.add(latencies);
+		}
+		
+		synchronized void reset () {
+			requests = errors = bytesSent = bytesReceived = latencySum = 0;
+			if(null != latencies) latencies.reset();
+		}
+	}
+	
+	/** Aggregated (and detached) metrics of a command, or of all commands. */
+	static final class Snapshot implements CommandMetrics {
+		private final Command command;
+		private final LatencyHistogram latencies = new LatencyHistogram(PRECISION_BITS, HIGHEST_TRACKABLE_NANOS);
+		private long requests;
+		private long errors;
+		private long bytesSent;
+		private long bytesReceived;
+		private long latencySum;
+		
+		Snapshot (Command command) { this.command = command; }
+		
+		public Command getCommand () { return command; }
+		public long getRequestCount () { return requests; }
+		public long getErrorCount () { return errors; }
+		public long getBytesSent () { return bytesSent; }
+		public long getBytesReceived () { return bytesReceived; }
+		public long getMeanLatency () { return requests == 0 ? 0 : latencySum / requests; }
+		public long getMaxLatency () { return latencies.getMaxValue(); }
+		public long getLatencyP50 () { return latencies.getValueAtPercentile(50); }
+		public long getLatencyP99 () { return latencies.getValueAtPercentile(99); }
+		public long getLatencyP999 () { return latencies.getValueAtPercentile(99.9); }
+		public long latencyAtPercentile (double percentile) { return latencies.getValueAtPercentile(percentile); }
+		
+		@Override
+		public String toString () {
+			return String.format("%s requests:%d errors:%d sent:%d received:%d p50:%d p99:%d p99.9:%d max:%d (nanos)", 
+					null == command ? "ALL" : command.code, requests, errors, bytesSent, bytesReceived, 
+					getLatencyP50(), getLatencyP99(), getLatencyP999(), getMaxLatency());
+		}
+	}
+}
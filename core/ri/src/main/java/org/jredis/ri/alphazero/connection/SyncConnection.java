@@ -16,20 +16,28 @@
 
 package org.jredis.ri.alphazero.connection;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.jredis.ClientRuntimeException;
+import org.jredis.ElementVisitor;
 import org.jredis.ProviderException;
 import org.jredis.RedisException;
 import org.jredis.connector.Connection;
 import org.jredis.connector.ConnectionReset;
 import org.jredis.connector.ConnectionSpec;
 import org.jredis.connector.NotConnectedException;
+import org.jredis.connector.RequestInterceptor;
 import org.jredis.protocol.Command;
+import org.jredis.protocol.MultiBulkResponse;
 import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
 import org.jredis.protocol.ResponseStatus;
+import org.jredis.ri.alphazero.connection.ConnectionTracer.Phase;
+import org.jredis.ri.alphazero.protocol.SyncProtocol;
 import org.jredis.ri.alphazero.support.Assert;
 import org.jredis.ri.alphazero.support.Log;
 
@@ -100,10 +108,95 @@ public class SyncConnection extends ConnectionBase implements Connection {
 	}
 
 	/* (non-Javadoc)
-	 * @see org.jredis.ri.alphazero.connection.ConnectionBase#serviceRequest(org.jredis.protocol.Command, byte[][])
+	 * @see org.jredis.ri.alphazero.connection.ConnectionBase#doServiceRequest(org.jredis.protocol.Command, byte[][])
 	 */
 	@Override
-	public Response serviceRequest (Command cmd, byte[]... args) 
+	protected Response doServiceRequest (Command cmd, byte[]... args) 
+		throws RedisException
+	{
+		return serviceRequestLocked(null, cmd, args);
+	}
+	
+	/**
+	 * Services a multi-bulk request, handing each element of the response to the visitor
+	 * as it is read off the socket -- the elements are not collected.  If the visitor 
+	 * stops the visit, the remaining elements are drained and the connection remains 
+	 * usable.  The request is serviced through the {@link RequestInterceptor}s of the connection.
+	 * 
+	 * @param visitor
+	 * @param cmd a {@link Command.ResponseType#MULTI_BULK} command
+	 * @param args
+	 * @return the number of elements visited
+	 * @throws RedisException
+	 * @see org.jredis.ri.alphazero.protocol.SyncProtocol.SyncMultiBulkResponse#setVisitor(ElementVisitor)
+	 */
+	public long serviceRequest (ElementVisitor visitor, Command cmd, byte[]... args) 
+		throws RedisException
+	{
+		Assert.notNull(visitor, "visitor", ClientRuntimeException.class);
+		Assert.isTrue(cmd.responseType == Command.ResponseType.MULTI_BULK, "multi-bulk command", ClientRuntimeException.class);
+		final Response response = serviceRequest(new VisitingInvoker(visitor), cmd, args);
+		if(response instanceof SyncProtocol.SyncMultiBulkResponse) {
+			final SyncProtocol.SyncMultiBulkResponse streamed = (SyncProtocol.SyncMultiBulkResponse) response;
+			if(null != streamed.getVisitorError()) throw streamed.getVisitorError();
+			return streamed.getVisitedCount();
+		}
+		// not streamed by the protocol handler: visit the collected elements
+		final List<byte[]> elements = ((MultiBulkResponse) response).getMultiBulkData();
+		long visited = 0;
+		if(null != elements) {
+			for(byte[] element : elements) {
+				visited++;
+				if(!visitor.visit(null != element ? ByteBuffer.wrap(element) : null)) break;
+			}
+		}
+		return visited;
+	}
+	
+	private final Response serviceRequestLocked (ElementVisitor visitor, Command cmd, byte[]... args) 
+		throws RedisException
+	{
+		// reliable connections are shared with the heartbeat
+		if(null == lock) 
+			return serviceRequestMeasured(visitor, cmd, args);
+		
+		final ConnectionTracer tracer = getTracer();
+		if(null == tracer)
+			lock.lock();
+		else {
+			final long start = System.nanoTime();
+			lock.lock();
+			trace(tracer, Phase.LOCK_WAIT, cmd, start);
+		}
+		try {
+			return serviceRequestMeasured(visitor, cmd, args);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	private final Response serviceRequestMeasured (ElementVisitor visitor, Command cmd, byte[]... args) 
+		throws RedisException
+	{
+		if(null == metrics)
+			return serviceRequestOnStreams(visitor, cmd, args);
+		
+		final long issued = System.nanoTime();
+		final long sent = bytesSent();
+		final long received = bytesReceived();
+		boolean error = true;
+		try {
+			Response response = serviceRequestOnStreams(visitor, cmd, args);
+			error = false;
+			return response;
+		}
+		finally {
+			metrics.record(cmd, System.nanoTime() - issued, bytesSent() - sent, bytesReceived() - received, error);
+		}
+	}
+	
+	private final Response serviceRequestOnStreams (ElementVisitor visitor, Command cmd, byte[]... args) 
 		throws RedisException
 	{
 		if(!isConnected()) throw new NotConnectedException ("Not connected!");
@@ -112,18 +205,26 @@ public class SyncConnection extends ConnectionBase implements Connection {
 		Response		response = null;
 		ResponseStatus  status = null;
 		Protocol		protocol = Assert.notNull(getProtocolHandler(), "thread protocol handler", ProviderException.class);
+		final ConnectionTracer tracer = getTracer();
+		long mark = null != tracer ? System.nanoTime() : 0;
 
 		try {
 			// 1 - Request
 			//				Log.log("RedisConnection - requesting ..." + cmd.code);
 			
 			request = Assert.notNull(protocol.createRequest (cmd, args), "request object from handler", ProviderException.class);
+			if(null != tracer) mark = trace(tracer, Phase.ENCODE, cmd, mark);
 			request.write(super.getOutputStream());
+			if(null != tracer) mark = trace(tracer, Phase.FLUSH, cmd, mark);
 
 			// 2 - response
 			//				Log.log("RedisConnection - read response ..." + cmd.code);
 			response = Assert.notNull(protocol.createResponse(cmd), "response object from handler", ProviderException.class);
+			if(null != visitor && response instanceof SyncProtocol.SyncMultiBulkResponse)
+				((SyncProtocol.SyncMultiBulkResponse) response).setVisitor(visitor);
 			response.read(super.getInputStream());
+			if(null != tracer) trace(tracer, Phase.DECODE, cmd, mark);
+			markActivity();
 
 			//				break;
 		}
@@ -162,13 +263,22 @@ public class SyncConnection extends ConnectionBase implements Connection {
 
 		return response;
 	}
-	@SuppressWarnings("unused")
-    private Lock acquireLock() {
-		lock.lock();
-		return lock;
-	}
-	@SuppressWarnings("unused")
-    private void releaseLock() {
-		lock.unlock();
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** The end of the interceptor chain of the streamed requests, carrying the visitor. */
+	private final class VisitingInvoker implements RequestInterceptor.Invoker {
+		private final ElementVisitor visitor;
+		VisitingInvoker (ElementVisitor visitor) {
+			this.visitor = visitor;
+		}
+		public Response serviceRequest (Command cmd, byte[]... args) throws RedisException {
+			return serviceRequestLocked(visitor, cmd, args);
+		}
+		public Future<Response> queueRequest (Command cmd, byte[]... args) {
+			return doQueueRequest(cmd, args);
+		}
 	}
 }
@@ -57,16 +57,16 @@ public class SyncPipelineConnection extends PipelineConnectionBase {
     // ------------------------------------------------------------------------
     
 	/* (non-Javadoc)
-     * @see org.jredis.ri.alphazero.connection.ConnectionBase#serviceRequest(org.jredis.protocol.Command, byte[][])
+     * @see org.jredis.ri.alphazero.connection.ConnectionBase#doServiceRequest(org.jredis.protocol.Command, byte[][])
      */
     @Override
-    public Response serviceRequest (Command cmd, byte[]... args)
+    protected Response doServiceRequest (Command cmd, byte[]... args)
             throws RedisException, ClientRuntimeException, ProviderException 
     {
 
     	// queue the request
     	//
-    	Future<Response> pendingResponse = queueRequest(cmd, args);
+    	Future<Response> pendingResponse = doQueueRequest(cmd, args);
     	
     	// wait for response
     	//
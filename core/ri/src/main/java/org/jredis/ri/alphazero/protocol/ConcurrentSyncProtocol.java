@@ -20,8 +20,17 @@ import org.jredis.protocol.Command;
 import org.jredis.protocol.Response;
 
 /**
- * This basically extends {@link SyncProtocol} so that the response buffers
+ * This basically extends {@link SyncProtocol} so that the response objects
  * are not shared, so that it can be used in multi-threaded environments. 
+ * <p>
+ * Responses are handed off to other threads (via {@link java.util.concurrent.Future}s)
+ * and may be held indefinitely, so they can not be cached as in {@link SyncProtocol}.
+ * The line buffer used for reading the response control lines, however, is only
+ * referenced while the response is being read, and an instance of this class is 
+ * only ever used by a single reader thread (e.g. the pipeline response handler), 
+ * so all responses created by an instance share a single line buffer which is
+ * released by the response once its values have been extracted.
+ *  
  * @author  Joubin (alphazero@sensesay.net)
  * @version alpha.0, Apr 23, 2009
  * @since   alpha.0
@@ -33,6 +42,12 @@ public class ConcurrentSyncProtocol extends SyncProtocol {
 	// Properties
 	// ------------------------------------------------------------------------
 	
+	/** 
+	 * Line buffer shared by all responses of this protocol handler.  Replaced
+	 * with the larger buffer if a response had to grow it.
+	 */
+	private byte[] lineBuffer = new byte[PREFERRED_LINE_BUFFER_SIZE];
+	
 	// ------------------------------------------------------------------------
 	// Super Extensions
 	// ------------------------------------------------------------------------
@@ -49,31 +64,47 @@ public class ConcurrentSyncProtocol extends SyncProtocol {
 
 	@Override
 	protected Response createStatusResponse(Command cmd) {
-		return new SyncLineResponse (new byte[PREFERRED_LINE_BUFFER_SIZE], cmd, ValueType.STATUS);
+		return new SyncLineResponse (lineBuffer, cmd, ValueType.STATUS);
 	}
 	
 	@Override
 	protected Response createBooleanResponse(Command cmd) {
-		return new SyncLineResponse (new byte[PREFERRED_LINE_BUFFER_SIZE], cmd, ValueType.BOOLEAN);
+		return new SyncLineResponse (lineBuffer, cmd, ValueType.BOOLEAN);
 	}
 	@Override
 	protected Response createStringResponse(Command cmd) {
-		return new SyncLineResponse (new byte[PREFERRED_LINE_BUFFER_SIZE], cmd, ValueType.STRING);
+		return new SyncLineResponse (lineBuffer, cmd, ValueType.STRING);
 	}
 	
 	@Override
 	protected Response createNumberResponse(Command cmd /*, boolean isBigNum*/) {
 		ValueType flavor = ValueType.NUMBER64;
-		return new SyncLineResponse (new byte[PREFERRED_LINE_BUFFER_SIZE], cmd, flavor);
+		return new SyncLineResponse (lineBuffer, cmd, flavor);
 	}
 	
 	@Override
 	protected Response createBulkResponse(Command cmd) {
-		return new SyncBulkResponse (new byte[PREFERRED_LINE_BUFFER_SIZE], cmd);
+		return new SyncBulkResponse (lineBuffer, cmd);
 	}
 	
 	@Override
 	protected Response createMultiBulkResponse(Command cmd) {
-		return new SyncMultiBulkResponse (new byte[PREFERRED_LINE_BUFFER_SIZE], cmd);
+		return new SyncMultiBulkResponse (lineBuffer, cmd);
+	}
+	
+	@Override
+	protected Response createResultSetResponse(Command cmd) {
+		return new SyncResultSetResponse (lineBuffer, cmd);
+	}
+
+	/**
+	 * Releases the response's reference to the shared line buffer, keeping
+	 * the buffer if the response had to grow it.
+	 */
+	@Override
+	protected void onResponseRead (SyncResponseBase response) {
+		if(response.buffer.length > lineBuffer.length)
+			lineBuffer = response.buffer;
+		response.buffer = null;
 	}
 }
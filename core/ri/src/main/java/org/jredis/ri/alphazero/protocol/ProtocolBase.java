@@ -27,6 +27,7 @@ import org.jredis.NotSupportedException;
 import org.jredis.ProviderException;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Protocol;
+import org.jredis.protocol.Command.RequestType;
 import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
 import org.jredis.protocol.ResponseStatus;
@@ -84,6 +85,11 @@ public abstract class ProtocolBase implements Protocol {
 		ByteArrayOutputStream buffer = createRequestBufffer (cmd);
 
 		try {
+			if(cmd.requestType == RequestType.TRANSACTION) {
+				writeTransaction(buffer, args);
+				return createRequest(buffer);
+			}
+			
 			byte[] cmdLenBytes = Convert.toBytes(cmd.bytes.length);
 			byte[] lineCntBytes = Convert.toBytes(args.length+1);
 
@@ -104,19 +110,10 @@ public abstract class ProtocolBase implements Protocol {
 			// TODO: check w/ antirez if in fact nulls are now generally accepted
 			// that is the only diff here.
 			case BULK_SET:
-				String errmsg = "Only MSET, MSETNX, LINSERT bulk commands are supported";
-				Assert.isTrue(cmd == Command.MSET || cmd == Command.MSETNX || cmd == Command.LINSERT, errmsg, NotSupportedException.class);
+				String errmsg = "Only MSET, MSETNX, LINSERT, HMSET, HMGET bulk commands are supported";
+				Assert.isTrue(cmd == Command.MSET || cmd == Command.MSETNX || cmd == Command.LINSERT || cmd == Command.HMSET || cmd == Command.HMGET, errmsg, NotSupportedException.class);
 
-				// THIS IS CLEARLY BROKEN ... SO MUCH FOR COMPREHSIVE TESTS ...
-				buffer.write(COUNT_BYTE);
-				buffer.write(lineCntBytes);
-				buffer.write(CRLF);
-				buffer.write(SIZE_BYTE);
-				buffer.write(cmdLenBytes);
-				buffer.write(CRLF);
-				buffer.write(cmd.bytes);
-				buffer.write(CRLF);
-				
+				// (null) values are sent as empty bulk args
 				for(int s=0; s<args.length; s++){
 					buffer.write(SIZE_BYTE);
 					if (args[s] != null) {
@@ -180,9 +177,11 @@ public abstract class ProtocolBase implements Protocol {
 			response = new VirtualResponse(ResponseStatus.STATUS_CIAO);
 			break;
 		case QUEUED:
+			response = createStatusResponse (cmd);
+			break;
 		case RESULT_SET:
-			throw new NotSupportedException(String.format("ResponseType %s not yet supported", cmd.requestType.name()));
-		
+			response = createResultSetResponse (cmd);
+			break;
 		}
 
 		return response;
@@ -190,6 +189,50 @@ public abstract class ProtocolBase implements Protocol {
 	}
 
 
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Writes the <code>MULTI</code>, the commands of the transaction, and the <code>EXEC</code>
+	 * to the buffer.
+	 * @param buffer
+	 * @param args the commands per {@link RequestType#TRANSACTION}
+	 * @throws IOException
+	 */
+	private static void writeTransaction (ByteArrayOutputStream buffer, byte[]... args) throws IOException {
+		writeCommand(buffer, Command.MULTI.bytes, args, 0, 0);
+		int i = 0;
+		while(i < args.length) {
+			Assert.isTrue(i+1 < args.length, "transaction arg count", ProviderException.class);
+			final byte[] code = Assert.notNull(args[i], i, ProviderException.class);
+			final int argc = Convert.toInt(Assert.notNull(args[i+1], i+1, ProviderException.class));
+			Assert.isTrue(argc >= 0 && i + 2 + argc <= args.length, "transaction command args", ProviderException.class);
+			writeCommand(buffer, code, args, i+2, argc);
+			i += 2 + argc;
+		}
+		writeCommand(buffer, Command.EXEC.bytes, args, 0, 0);
+	}
+	
+	/** writes the command and <code>argc</code> args starting at <code>args[from]</code> */
+	private static void writeCommand (ByteArrayOutputStream buffer, byte[] code, byte[][] args, int from, int argc) throws IOException {
+		buffer.write(COUNT_BYTE);
+		buffer.write(Convert.toBytes(argc+1));
+		buffer.write(CRLF);
+		buffer.write(SIZE_BYTE);
+		buffer.write(Convert.toBytes(code.length));
+		buffer.write(CRLF);
+		buffer.write(code);
+		buffer.write(CRLF);
+		for(int i=from; i<from+argc; i++){
+			buffer.write(SIZE_BYTE);
+			buffer.write(Convert.toBytes(Assert.notNull(args[i], i, ProviderException.class).length));
+			buffer.write(CRLF);
+			buffer.write(args[i]);
+			buffer.write(CRLF);
+		}
+	}
+	
 	// ------------------------------------------------------------------------
 	// Extension Points
 	// ------------------------------------------------------------------------
@@ -202,6 +245,7 @@ public abstract class ProtocolBase implements Protocol {
 	protected abstract Response createBooleanResponse(Command cmd) ;
 	protected abstract Response createStringResponse(Command cmd) ;
 	protected abstract Response createStatusResponse(Command cmd);
+	protected abstract Response createResultSetResponse(Command cmd);
 
 	
 	// ========================================================================
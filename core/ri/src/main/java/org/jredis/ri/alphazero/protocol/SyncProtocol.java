@@ -20,10 +20,13 @@ package org.jredis.ri.alphazero.protocol;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import org.jredis.ClientRuntimeException;
+import org.jredis.ElementVisitor;
 import org.jredis.ProviderException;
 import org.jredis.connector.ConnectionReset;
 import org.jredis.protocol.BulkResponse;
@@ -33,9 +36,11 @@ import org.jredis.protocol.Protocol;
 import org.jredis.protocol.Request;
 import org.jredis.protocol.Response;
 import org.jredis.protocol.ResponseStatus;
+import org.jredis.protocol.ResultSetResponse;
 import org.jredis.protocol.StatusResponse;
 import org.jredis.protocol.ValueResponse;
 import org.jredis.ri.alphazero.connection.UnexpectedEOFException;
+import org.jredis.ri.alphazero.support.Assert;
 import org.jredis.ri.alphazero.support.Convert;
 import org.jredis.ri.alphazero.support.Log;
 
@@ -170,6 +175,26 @@ public class SyncProtocol extends ProtocolBase {
 		return cache_syncMultiBulkResponse;
 	}
 	
+	/** 
+	 * Transactions are not expected to be hot: the response is not cached.
+	 * @see org.jredis.ri.alphazero.protocol.ProtocolBase#createResultSetResponse(org.jredis.protocol.Command) 
+	 */
+	@Override
+	protected Response createResultSetResponse(Command cmd) {
+		return new SyncResultSetResponse(sharedResponseBuffer, cmd);
+	}
+	
+		/**
+	 * Invoked by the {@link SyncResponseBase} responses of this protocol once 
+	 * they have completely read and parsed their data.  All values have been 
+	 * extracted at this point and the line buffer is no longer referenced by
+	 * the response accessors.
+	 * <p>
+	 * This (cached response) implementation does nothing.
+	 * @param response
+	 */
+	protected void onResponseRead (SyncResponseBase response) { }
+	
 	// ------------------------------------------------------------------------
 	// Inner Type
 	// ========================================================================
@@ -344,6 +369,7 @@ public class SyncProtocol extends ProtocolBase {
 					break;
 				}
 			}
+			onResponseRead(this);
 		}
 	}	
 	// ------------------------------------------------------------------------
@@ -502,6 +528,7 @@ public class SyncProtocol extends ProtocolBase {
 				}
 			}
 			didRead = true;
+			onResponseRead(this);
 			return;
 		}
 	}
@@ -513,6 +540,12 @@ public class SyncProtocol extends ProtocolBase {
 
 		/**  */
 		List<byte[]>   datalist;
+		/** if set, the elements are handed to the visitor as they are read, and not collected */
+		ElementVisitor visitor;
+		/** number of elements visited */
+		long           visited;
+		/** raised by the visitor */
+		RuntimeException visitorError;
 		
 		/**
 		 * @param cmd
@@ -528,14 +561,51 @@ public class SyncProtocol extends ProtocolBase {
 		protected void reset (Command cmd){
 			super.reset(cmd, Type.Bulk);
 			this.datalist = null;
+			this.visitor = null;
+			this.visited = 0;
+			this.visitorError = null;
 		}
 
+		/**
+		 * Streams the elements of the response to the visitor, as they are read off 
+		 * the input stream.  The elements are not collected: {@link #getMultiBulkData()} 
+		 * of a visited response is null.  Must be set before the response is read.
+		 * @param visitor
+		 */
+		public void setVisitor (ElementVisitor visitor) {
+			Assert.isTrue(!didRead, "response not read", ProviderException.class);
+			this.visitor = visitor;
+		}
+		
+		/**
+		 * @return the number of elements visited
+		 */
+		public long getVisitedCount () {
+			assertResponseRead();
+			return visited;
+		}
+		
+		/**
+		 * @return the exception raised by the visitor, if any
+		 */
+		public RuntimeException getVisitorError () {
+			assertResponseRead();
+			return visitorError;
+		}
+		
 		@Override
 		public List<byte[]> getMultiBulkData() throws ClientRuntimeException, ProviderException {
 			assertResponseRead();
 			return datalist;
 		}
 
+		/**
+		 * If a visitor is set, the elements are read into a single buffer that grows 
+		 * to the size of the largest element, and are visited in turn.  Once the visitor 
+		 * stops the visit (or raises an exception), the remaining elements are drained 
+		 * from the stream, so that the connection remains in sync with its responses.  
+		 * A visitor's exception is not raised by the read -- see {@link #getVisitorError()}.
+		 */
 		@Override
 		public void read(InputStream in) throws ClientRuntimeException, ProviderException {
 			if(didRead) return;
@@ -544,16 +614,36 @@ public class SyncProtocol extends ProtocolBase {
 			int count = super.readControlLine (in, true, COUNT_BYTE);
 			
 			if(!status.isError() && count >= 0){
-				datalist = new ArrayList<byte[]>(count);
+				if(null == visitor) datalist = new ArrayList<byte[]>(count);
 				try {
 					int size = -1;
+					byte[] element = null;
+					boolean visiting = true;
 					for(int i=0;i<count; i++){
 						size = readControlLine(in, false, SIZE_BYTE);
 
-						if(size >= 0)
-							datalist.add (super.readBulkData(in, size));
-						else
-							datalist.add(null);
+						if(null == visitor) {
+							if(size >= 0)
+								datalist.add (super.readBulkData(in, size));
+							else
+								datalist.add(null);
+							continue;
+						}
+						ByteBuffer buffer = null;
+						if(size >= 0) {
+							if(null == element || element.length < size) element = new byte[size];
+							readBulkData(in, element, size);
+							buffer = ByteBuffer.wrap(element, 0, size);
+						}
+						if(!visiting) continue;
+						try {
+							visited++;
+							visiting = visitor.visit(buffer);
+						}
+						catch (RuntimeException e) {
+							visitorError = e;
+							visiting = false;
+						}
 					}
 				}
 				catch (IllegalArgumentException bug){ 
@@ -567,7 +657,143 @@ public class SyncProtocol extends ProtocolBase {
 				}
 			}
 			didRead = true;
+			onResponseRead(this);
 			return;
 		}
+		
+		/** reads length bytes of bulk data, and its CRLF, into data */
+		private void readBulkData (InputStream in, byte[] data, int length) throws IOException {
+			int readcnt = -1;
+			int offset = 0;
+			while(offset < length){
+				if((readcnt = in.read (data, offset, length-offset)) ==-1 ) throw new ClientRuntimeException("IO - read returned -1 -- problem");
+				offset += readcnt;
+			}
+			for(int i=0; i<CRLF_LEN; i++){
+				if (in.read() == -1){
+					throw new RuntimeException ("read got EOF (-1) while consuming the " +(i+1)+ "-th byte of CRLF bytes!");
+				}
+			}
+		}
+	}
+	// ------------------------------------------------------------------------
+	// Inner Type
+	// ============================================================ Response(s)
+	// ------------------------------------------------------------------------
+	/**
+	 * Response of a {@link org.jredis.protocol.Command.RequestType#TRANSACTION} request: 
+	 * reads the replies to the <code>MULTI</code>, to the queueing of each command, and 
+	 * the (nested) reply of the <code>EXEC</code>.  Replies are parsed per their type
+	 * marker, as the commands of the transaction are not known to the response.
+	 * <p>
+	 * The replies to the queued commands are <code>+QUEUED</code>, or errors for commands 
+	 * rejected by the server.  The transaction's replies end with the <code>EXEC</code>'s 
+	 * multi-bulk reply, or its <code>-EXECABORT</code> error (Redis 2.6.5 and later abort the 
+	 * transaction if any command was rejected).
+	 * 
+	 * @author  Joubin Houshyar (alphazero@sensesay.net)
+	 * @version alpha.0, Apr 18, 2010
+	 * @since   alpha.0
+	 */
+	public class SyncResultSetResponse extends SyncMultiLineResponseBase implements ResultSetResponse {
+		/**  */
+		private static final String EXECABORT = "EXECABORT";
+		
+		/**  */
+		List<Response> results;
+		
+		public SyncResultSetResponse(byte[] buff, Command cmd) {
+			super (buff, cmd, Type.ResultSet);
+		}
+		
+		@Override
+		public List<Response> getResults() throws ClientRuntimeException, ProviderException {
+			assertResponseRead();
+			return results;
+		}
+		
+		/**
+		 * Note that if the <code>MULTI</code> fails, the commands of the transaction are 
+		 * executed individually and the number of replies can not be determined: the
+		 * response raises a {@link ClientRuntimeException} as the connection's response 
+		 * stream is no longer in sync with its requests.
+		 */
+		@Override
+		public void read(InputStream in) throws ClientRuntimeException, ProviderException {
+			if(didRead) return;
+			
+			final PushbackInputStream pin = new PushbackInputStream(in, 1);
+			Response multi = readReply(pin);
+			if(multi.getStatus().isError())
+				throw new ClientRuntimeException ("MULTI failed -- response stream is out of sync: " + multi.getStatus().message());
+			
+			List<Response> queued = new ArrayList<Response>();
+			while(peek(pin) != COUNT_BYTE){
+				Response reply = readReply(pin);
+				if(reply.getStatus().isError() && reply.getStatus().message().startsWith(EXECABORT)){
+					status = reply.getStatus();
+					isError = true;
+					didRead = true;
+					onResponseRead(this);
+					return;
+				}
+				queued.add(reply);
+			}
+			
+			int count = readControlLine(pin, false, COUNT_BYTE);
+			status = ResponseStatus.STATUS_OK;
+			if(count >= 0) {
+				results = new ArrayList<Response>(queued.size());
+				for(Response reply : queued){
+					if(reply.getStatus().isError())
+						results.add(reply);
+					else if(count-- > 0)
+						results.add(readReply(pin));
+					else
+						throw new ProviderException ("Bug?  EXEC replies fewer than the queued commands");
+				}
+				if(count != 0)
+					throw new ProviderException ("Bug?  EXEC replies more than the queued commands");
+			}
+			didRead = true;
+			onResponseRead(this);
+		}
+		
+		/** @return the next byte of the stream, which is not consumed */
+		private int peek (PushbackInputStream in) {
+			try {
+				int b = in.read();
+				if(b == -1) throw new ClientRuntimeException ("in.read returned -1");
+				in.unread(b);
+				return b;
+			}
+			catch (IOException e) {
+				throw new ClientRuntimeException ("IOEx while reading reply for command " + cmd.code, e);
+			}
+		}
+		
+		/** reads the next reply as the response for its type marker */
+		private Response readReply (PushbackInputStream in) {
+			SyncResponseBase reply = null;
+			switch (peek(in)) {
+			case OK_BYTE:
+			case ERR_BYTE:
+				reply = new SyncLineResponse(buffer, cmd, ValueType.STRING);
+				break;
+			case NUM_BYTE:
+				reply = new SyncLineResponse(buffer, cmd, ValueType.NUMBER64);
+				break;
+			case SIZE_BYTE:
+				reply = new SyncBulkResponse(buffer, cmd);
+				break;
+			case COUNT_BYTE:
+				reply = new SyncMultiBulkResponse(buffer, cmd);
+				break;
+			default:
+				throw new ProviderException ("Bug?  Unexpected reply type for " + cmd.code);
+			}
+			reply.read(in);
+			return reply;
+		}
 	}
 }
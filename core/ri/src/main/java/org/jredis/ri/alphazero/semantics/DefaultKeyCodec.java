@@ -21,6 +21,7 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.jredis.ByteString;
 import org.jredis.NotSupportedException;
 import org.jredis.ri.alphazero.JRedisSupport;
 import org.jredis.ri.alphazero.support.DefaultCodec;
@@ -66,8 +67,13 @@ public class DefaultKeyCodec<K extends Object> implements KeyCodec<K> {
 			if(bkey.length == 0) throw new IllegalArgumentException("key is zerolewn");
 			return bkey;
 		}
+		else if (key instanceof ByteString){
+			ByteString skey = (ByteString) key ;
+			if(skey.isEmpty()) throw new IllegalArgumentException("key is zerolewn");
+			return skey.toByteArray();
+		}
 		else {
-			String msg = String.format("only String and byte[] keys are supported", key.getClass().getCanonicalName());
+			String msg = String.format("only String, byte[] and ByteString keys are supported", key.getClass().getCanonicalName());
 			throw new IllegalArgumentException(msg);
 		}
 	}
@@ -101,6 +107,6 @@ public class DefaultKeyCodec<K extends Object> implements KeyCodec<K> {
 	static byte[] ba = new byte[0];
 	static Class<?> BAClass = ba.getClass();
 	public boolean supports (Class<?> type) { 
-		return type == String.class || type.equals(BAClass); 
+		return type == String.class || type.equals(BAClass) || type == ByteString.class; 
 	}
 }
@@ -0,0 +1,77 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.semantics;
+
+import org.jredis.ClientRuntimeException;
+import org.jredis.Codec;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.semantics.SemanticJRedis;
+
+/**
+ * Synchronous {@link SemanticJRedis} using a {@link Connection.Modality#Synchronous}
+ * {@link Connection} for command processing.
+ * <p>
+ * Usage example:
+ * <pre><code>
+ * Connection conn = new SyncConnection(spec);
+ * SemanticJRedis&lt;String&gt; strings = new SemanticJRedisClient&lt;String&gt;(conn, String.class, new DefaultStringCodec());
+ * strings.rpush("names", "joe");
+ * List&lt;String&gt; names = strings.lrange("names", 0, -1);
+ * </code></pre>
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public class SemanticJRedisClient<T> extends SemanticJRedisSupport<T> {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** synchronous connection */
+	private final Connection	connection;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param connection a synchronous connection 
+	 * @param type the value type
+	 * @param codec the value codec
+	 */
+	public SemanticJRedisClient (Connection connection, Class<T> type, Codec<T> codec) {
+		super(type, codec);
+		this.connection = Assert.notNull(connection, "connection", ClientRuntimeException.class);
+	}
+	
+	// ------------------------------------------------------------------------
+	// Super overrides
+	// ------------------------------------------------------------------------
+	
+	/* (non-Javadoc) @see org.jredis.ri.alphazero.semantics.SemanticJRedisSupport#serviceRequest(org.jredis.protocol.Command, byte[][]) */
+	@Override
+	protected Response serviceRequest (Command cmd, byte[]... args) throws RedisException, ClientRuntimeException, ProviderException {
+		return connection.serviceRequest(cmd, args);
+	}
+}
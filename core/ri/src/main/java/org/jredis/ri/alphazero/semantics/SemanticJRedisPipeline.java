@@ -0,0 +1,121 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.semantics;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jredis.ClientRuntimeException;
+import org.jredis.Codec;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.semantics.SemanticJRedis;
+
+/**
+ * {@link SemanticJRedis} using an {@link Connection.Modality#Asynchronous} {@link Connection} 
+ * (e.g. a pipeline) for command processing.  Requests are queued on the connection 
+ * and the caller awaits the response {@link java.util.concurrent.Future}, optionally 
+ * with a timeout.
+ * <p>
+ * As with {@link org.jredis.ri.alphazero.JRedisPipeline#sync()}, this is <b>not</b> a
+ * mechanism for concurrent use by multiple threads.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public class SemanticJRedisPipeline<T> extends SemanticJRedisSupport<T> {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** asynchronous connection */
+	private final Connection	connection;
+	
+	/** response timeout -- zero for no timeout */
+	private final long			timeout;
+	
+	/** unit of timeout */
+	private final TimeUnit		unit;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param connection an asynchronous connection
+	 * @param type the value type
+	 * @param codec the value codec
+	 */
+	public SemanticJRedisPipeline (Connection connection, Class<T> type, Codec<T> codec) {
+		this(connection, type, codec, 0, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * @param connection an asynchronous connection
+	 * @param type the value type
+	 * @param codec the value codec
+	 * @param timeout max wait for responses -- zero for no timeout
+	 * @param unit unit of timeout
+	 */
+	public SemanticJRedisPipeline (Connection connection, Class<T> type, Codec<T> codec, long timeout, TimeUnit unit) {
+		super(type, codec);
+		this.connection = Assert.notNull(connection, "connection", ClientRuntimeException.class);
+		this.unit = Assert.notNull(unit, "timeout unit", ClientRuntimeException.class);
+		if(timeout < 0) throw new IllegalArgumentException("timeout is negative");
+		this.timeout = timeout;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Super overrides
+	// ------------------------------------------------------------------------
+	
+	/* (non-Javadoc) @see org.jredis.ri.alphazero.semantics.SemanticJRedisSupport#serviceRequest(org.jredis.protocol.Command, byte[][]) */
+	@Override
+	protected Response serviceRequest (Command cmd, byte[]... args) throws RedisException, ClientRuntimeException, ProviderException {
+		Response response = null;
+		try {
+			if(timeout > 0)
+				response = connection.queueRequest(cmd, args).get(timeout, unit);
+			else
+				response = connection.queueRequest(cmd, args).get();
+		}
+		catch (InterruptedException e) {
+			throw new ClientRuntimeException("Interrupted!", e);
+		}
+		catch (TimeoutException e) {
+			throw new ClientRuntimeException("timedout waiting for response");
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RedisException)
+				throw (RedisException) cause;
+			else if(cause instanceof ProviderException)
+				throw (ProviderException) cause;
+			else if(cause instanceof ClientRuntimeException) 
+				throw (ClientRuntimeException)cause;
+			else throw new ClientRuntimeException("Exception in pipeline exec of requested command", cause);
+		}
+		return response;
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.semantics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.jredis.ClientRuntimeException;
+import org.jredis.Codec;
+import org.jredis.JRedis;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.RedisType;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.MultiBulkResponse;
+import org.jredis.protocol.Response;
+import org.jredis.protocol.ValueResponse;
+import org.jredis.ri.alphazero.JRedisSupport;
+import org.jredis.ri.alphazero.support.Assert;
+import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.SortSupport;
+import org.jredis.semantics.BasicCodecManager;
+import org.jredis.semantics.CodecManager;
+import org.jredis.semantics.SemanticJRedis;
+import org.jredis.semantics.SemanticSort;
+
+/**
+ * Support for {@link SemanticJRedis} implementations.  The value {@link Codec} 
+ * is bound once, on construction, and used for all values of type <code>T</code>.
+ * <p>
+ * Multi-bulk responses (e.g. {@link SemanticJRedis#lrange(String, int, int)}) are
+ * decoded in a single pass and <b>in place</b>: the list of the response is handed 
+ * to the caller as the <code>List&lt;T&gt;</code>, with each element replaced by its
+ * decoded value, so that no intermediate list is allocated.  This is safe since each
+ * multi-bulk response read by the RI protocol handlers creates its own list, and
+ * the response itself is not exposed beyond this class.
+ * <p>
+ * Methods that do not involve values of type <code>T</code> are delegated to a
+ * {@link JRedis} view, using the same {@link #serviceRequest(Command, byte[]...)}
+ * extension point, which is also the {@link JRedis} returned by the chained methods 
+ * (e.g. {@link SemanticJRedis#ping()}).
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public abstract class SemanticJRedisSupport<T> implements SemanticJRedis<T> {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** the bound value codec */
+	protected final Codec<T>	codec;
+	
+	/** codec registry -- the bound codec is registered on construction */
+	private final CodecManager	codecManager = new BasicCodecManager();
+	
+	/** keys returned by Redis are decoded using this codec */
+	private static final Codec<String>	keyDecoder = new DefaultStringCodec();
+	
+	/** JRedis view for non-semantic commands, using the same extension point */
+	protected final JRedis		jredis = new JRedisSupport() {
+		@Override
+        protected Response serviceRequest (Command cmd, byte[]... args) throws RedisException, ClientRuntimeException, ProviderException {
+	        return SemanticJRedisSupport.this.serviceRequest(cmd, args);
+        }
+	};
+	
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param type the value type
+	 * @param codec the value codec -- must support type.
+	 * @throws ClientRuntimeException if the codec is null or does not support type
+	 */
+	protected SemanticJRedisSupport (Class<T> type, Codec<T> codec) {
+		Assert.notNull(type, "value type", ClientRuntimeException.class);
+		this.codec = Assert.notNull(codec, "value codec", ClientRuntimeException.class);
+		if(!codecManager.register(codec, type))
+			throw new ClientRuntimeException("codec does not support type " + type.getName());
+	}
+	
+	// ------------------------------------------------------------------------
+	// Extension point(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Mimics {@link JRedisSupport}'s eponymous extension point.
+	 * 
+	 * @param cmd
+	 * @param args
+	 * @return
+	 * @throws RedisException
+	 * @throws ClientRuntimeException
+	 * @throws ProviderException
+	 */
+	protected abstract Response serviceRequest (Command cmd, byte[]...args) throws RedisException, ClientRuntimeException, ProviderException;
+	
+	// ------------------------------------------------------------------------
+	// Interface: CodecManager
+	// ------------------------------------------------------------------------
+	
+	/* (non-Javadoc) @see org.jredis.semantics.CodecManager#getCodec(java.lang.Class) */
+	@Override
+	public <C> Codec<C> getCodec (Class<C> type) {
+		return codecManager.getCodec(type);
+	}
+	
+	/* (non-Javadoc) @see org.jredis.semantics.CodecManager#register(org.jredis.Codec, java.lang.Class) */
+	@Override
+	public <C> boolean register (Codec<C> code, Class<C> type) {
+		return codecManager.register(code, type);
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface: SemanticJRedis
+	// ------------------------------------------------------------------------
+	
+	@Override
+	public JRedis auth (String authorization) throws RedisException {
+		this.serviceRequest(Command.AUTH, JRedisSupport.getKeyBytes(authorization));
+		return jredis;
+	}
+	@Override
+	public JRedis ping () throws RedisException { return jredis.ping(); }
+	@Override
+	public void quit () { jredis.quit(); }
+	
+	/* ------------------------------- strings --------- */
+	
+	@Override
+	public void set (String key, T value) throws RedisException { 
+		jredis.set(key, encode(value)); 
+	}
+	@Override
+	public boolean setnx (String key, T value) throws RedisException { 
+		return jredis.setnx(key, encode(value)); 
+	}
+	@Override
+	public T get (String key) throws RedisException {
+		return decode(jredis.get(key));
+	}
+	@Override
+	public List<T> mget (String key, String... moreKeys) throws RedisException {
+		String[] keys = new String[moreKeys.length + 1];
+		keys[0] = key;
+		System.arraycopy(moreKeys, 0, keys, 1, moreKeys.length);
+		return decode(jredis.mget(keys), codec);
+	}
+	@Override
+	public long incr (String key) throws RedisException { return jredis.incr(key); }
+	@Override
+	public long incrby (String key, int delta) throws RedisException { return jredis.incrby(key, delta); }
+	@Override
+	public long decr (String key) throws RedisException { return jredis.decr(key); }
+	@Override
+	public long decrby (String key, int delta) throws RedisException { return jredis.decrby(key, delta); }
+	@Override
+	public boolean exists (String key) throws RedisException { return jredis.exists(key); }
+	@Override
+	public boolean del (String key) throws RedisException { return jredis.del(key) == 1; }
+	@Override
+	public RedisType type (String key) throws RedisException { return jredis.type(key); }
+	
+	/* ------------------------------- key space --------- */
+	
+	@Override
+	public List<String> keys () throws RedisException { return decode(jredis.keys(), keyDecoder); }
+	@Override
+	public List<String> keys (String pattern) throws RedisException { return decode(jredis.keys(pattern), keyDecoder); }
+	@Override
+	public String randomkey () throws RedisException {
+		byte[] key = jredis.randomkey();
+		return key != null ? keyDecoder.decode(key) : null;
+	}
+	@Override
+	public String rename (String oldkey, String newkey) throws RedisException { 
+		jredis.rename(oldkey, newkey);
+		return newkey;
+	}
+	@Override
+	public boolean renamenx (String oldkey, String brandnewkey) throws RedisException { return jredis.renamenx(oldkey, brandnewkey); }
+	@Override
+	public long dbsize () throws RedisException { return jredis.dbsize(); }
+	@Override
+	public boolean expire (String key, int ttlseconds) throws RedisException { return jredis.expire(key, ttlseconds); }
+	
+	/* ------------------------------- lists --------- */
+	
+	@Override
+	public void rpush (String listkey, T value) throws RedisException { jredis.rpush(listkey, encode(value)); }
+	@Override
+	public void lpush (String listkey, T value) throws RedisException { jredis.lpush(listkey, encode(value)); }
+	@Override
+	public void lset (String key, int index, T value) throws RedisException { jredis.lset(key, index, encode(value)); }
+	@Override
+	public long lrem (String listKey, T value, int count) throws RedisException { return jredis.lrem(listKey, encode(value), count); }
+	@Override
+	public long llen (String listkey) throws RedisException { return jredis.llen(listkey); }
+	@Override
+	public List<T> lrange (String listkey, int from, int to) throws RedisException { 
+		return decode(jredis.lrange(listkey, from, to), codec); 
+	}
+	@Override
+	public void ltrim (String listkey, int keepFrom, int keepTo) throws RedisException { jredis.ltrim(listkey, keepFrom, keepTo); }
+	@Override
+	public T lindex (String listkey, int index) throws RedisException { return decode(jredis.lindex(listkey, index)); }
+	@Override
+	public T lpop (String listKey) throws RedisException { return decode(jredis.lpop(listKey)); }
+	@Override
+	public T rpop (String listKey) throws RedisException { return decode(jredis.rpop(listKey)); }
+	
+	/* ------------------------------- sets --------- */
+	
+	@Override
+	public boolean sadd (String setkey, T member) throws RedisException { return jredis.sadd(setkey, encode(member)); }
+	@Override
+	public boolean srem (String setKey, T member) throws RedisException { return jredis.srem(setKey, encode(member)); }
+	@Override
+	public boolean sismember (String setKey, T member) throws RedisException { return jredis.sismember(setKey, encode(member)); }
+	@Override
+	public long scard (String setKey) throws RedisException { return jredis.scard(setKey); }
+	@Override
+	public List<T> sinter (String set1, String... sets) throws RedisException { 
+		return decode(jredis.sinter(set1, sets), codec); 
+	}
+	@Override
+	public void sinterstore (String destSetKey, String... sets) throws RedisException { jredis.sinterstore(destSetKey, sets); }
+	@Override
+	public List<T> smembers (String setkey) throws RedisException { 
+		return decode(jredis.smembers(setkey), codec); 
+	}
+	
+	/* ------------------------------- databases --------- */
+	
+	@Override
+	public JRedis select (int index) throws RedisException {
+		this.serviceRequest(Command.SELECT, Convert.toBytes(index));
+		return jredis;
+	}
+	@Override
+	public JRedis flushdb () throws RedisException { return jredis.flushdb(); }
+	@Override
+	public JRedis flushall () throws RedisException { return jredis.flushall(); }
+	@Override
+	public boolean move (String key, int dbIndex) throws RedisException { return jredis.move(key, dbIndex); }
+	
+	/* ------------------------------- sort --------- */
+	
+	@Override
+	public SemanticSort<T> sort (String key) {
+		return new SemanticSortSupport(JRedisSupport.getKeyBytes(key));
+	}
+	
+	/* ------------------------------- persistence & server --------- */
+	
+	@Override
+	public void save () throws RedisException { jredis.save(); }
+	@Override
+	public void bgsave () throws RedisException { jredis.bgsave(); }
+	@Override
+	public long lastsave () throws RedisException { return jredis.lastsave(); }
+	@Override
+	public void shutdown () throws RedisException { this.serviceRequest(Command.SHUTDOWN); }
+	@Override
+	public Map<String, String> info () throws RedisException { return jredis.info(); }
+	
+	// ------------------------------------------------------------------------
+	// codec helpers
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param value
+	 * @return the encoded value
+	 * @throws IllegalArgumentException if value is null
+	 */
+	protected final byte[] encode (T value) {
+		if(null == value) throw new IllegalArgumentException("value is null");
+		return codec.encode(value);
+	}
+	
+	/**
+	 * @param data bulk data -- may be null
+	 * @return the decoded value, or null if data is null
+	 */
+	protected final T decode (byte[] data) {
+		return null != data ? codec.decode(data) : null;
+	}
+	
+	/**
+	 * Decodes the multi-bulk response data in place -- each (non-null) element of 
+	 * the list is replaced with its decoded value and the same list is returned. 
+	 * @param <E>
+	 * @param data the multi-bulk data of a response.  This list must be exclusively 
+	 * owned by the caller; it is no longer a valid <code>List&lt;byte[]&gt;</code> after this call.
+	 * @param decoder
+	 * @return the decoded list, or null if data is null.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static final <E> List<E> decode (List<byte[]> data, Codec<E> decoder) {
+		if(null == data) return null;
+		final ListIterator<Object> iter = ((List<Object>) (List<?>) data).listIterator();
+		while(iter.hasNext()){
+			Object bytes = iter.next();
+			if(null != bytes) 
+				iter.set(decoder.decode((byte[]) bytes));
+		}
+		return (List<E>) (List<?>) data;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * {@link SemanticSort} using this client's extension point.  Sort results 
+	 * (e.g. GET patterns) are not necessarily values of type <code>T</code> and are
+	 * returned as is.
+	 */
+	private final class SemanticSortSupport extends SortSupport implements SemanticSort<T> {
+		SemanticSortSupport (byte[] keybytes) {
+			super(keybytes);
+		}
+		@Override 
+		protected List<byte[]> execSort (byte[]... fullSortCmd) throws IllegalStateException, RedisException {
+			try {
+				MultiBulkResponse multiBulkResponse = (MultiBulkResponse) serviceRequest(Command.SORT, fullSortCmd);
+				return multiBulkResponse.getMultiBulkData();
+			}
+			catch (ClassCastException e){
+				throw new ProviderException("Expecting a MultiBulkResponse here => " + e.getLocalizedMessage(), e);
+			}
+		}
+		@Override 
+		protected List<byte[]> execSortStore (byte[]... fullSortCmd) throws IllegalStateException, RedisException {
+			try {
+				ValueResponse valueResp = (ValueResponse) serviceRequest(Command.SORT$STORE, fullSortCmd);
+				List<byte[]> result = new ArrayList<byte[]>(1);
+				result.add(Convert.toBytes(valueResp.getLongValue()));
+				return result;
+			}
+			catch (ClassCastException e){
+				throw new ProviderException("Expecting a ValueResponse here => " + e.getLocalizedMessage(), e);
+			}
+		}
+		@Override
+        protected Future<List<byte[]>> execAsyncSort (byte[]... fullSortCmd) {
+			throw new IllegalStateException("SemanticJRedis does not support asynchronous sort.");
+        }
+		@Override
+        protected Future<List<byte[]>> execAsyncSortStore (byte[]... fullSortCmd) {
+			throw new IllegalStateException("SemanticJRedis does not support asynchronous sort.");
+        }
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.support;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written to the underlying {@link OutputStream}.  The count is
+ * not synchronized and is expected to be read by the writing thread (or under 
+ * the writers' lock).
+ *
+ * @since   alpha.0
+ * 
+ */
+public final class CountingOutputStream extends OutputStream {
+	
+	/** underlying output stream */
+	final
+	private OutputStream out;
+	
+	/** bytes written */
+	private long count;
+	
+	/**
+	 * @param out the output sink
+	 */
+	public CountingOutputStream (OutputStream out) {
+		this.out = Assert.notNull(out, "output stream", IllegalArgumentException.class);
+	}
+	
+	/** @return the number of bytes written */
+	public long getCount () { return count; }
+	
+	/* (non-Javadoc) @see java.io.OutputStream#write(int) */
+	@Override
+	public void write (int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+	
+	/* (non-Javadoc) @see java.io.OutputStream#write(byte[], int, int) */
+	@Override
+	public void write (byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+	
+	/* (non-Javadoc) @see java.io.OutputStream#flush() */
+	@Override
+	public void flush () throws IOException { out.flush(); }
+	
+	/* (non-Javadoc) @see java.io.OutputStream#close() */
+	@Override
+	public void close () throws IOException { out.close(); }
+}
@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.jredis.ByteString;
 import org.jredis.JRedis;
 import org.jredis.semantics.KeyCodec;
 
@@ -98,6 +99,31 @@ public class DefaultCodec {
 				dict.put(toStr(bkey), binaryMap.get(bkey)); 
 		return dict;
 	}
+	/**
+	 * Wraps (without copying) the byte arrays, e.g. of a {@link JRedis#lrange(Object, long, long)}
+	 * result, as {@link ByteString}s, so that they can be compared and hashed by content.
+	 * @param bytearray
+	 * @return list of {@link ByteString}, or null if bytearray is null.
+	 */
+	public static final List<ByteString> toByteStrings (List<byte[]> bytearray) {
+		if(null == bytearray) return null;
+		List<ByteString> list = new ArrayList<ByteString>(bytearray.size());
+		for(byte[] b : bytearray) 
+			list.add(null != b ? ByteString.wrap(b) : null);
+		return list;
+	}
+	/**
+	 * @param binaryMap
+	 * @return binaryMap with (wrapped, not copied) {@link ByteString} keys and values, or null if binaryMap is null.
+	 */
+	public static final Map<ByteString, ByteString> toByteStringDictionary (Map<byte[], byte[]> binaryMap) {
+		if(null == binaryMap) return null;
+		Map<ByteString, ByteString> dict = new HashMap<ByteString, ByteString>(binaryMap.size());
+		for(Map.Entry<byte[], byte[]> e : binaryMap.entrySet()) 
+			if(null != e.getKey()) 
+				dict.put(ByteString.wrap(e.getKey()), null != e.getValue() ? ByteString.wrap(e.getValue()) : null); 
+		return dict;
+	}
 	/**
 	 * @param bytes
 	 * @return new {@link String#String(byte[])} or null if bytes is null. 
@@ -35,6 +35,9 @@ public final class FastBufferedInputStream extends java.io.InputStream {
 	/** underying input stream */
 	final
 	private InputStream in;
+	
+	/** bytes consumed by the reader */
+	private long consumed = 0;
 
 	// ------------------------------------------------------------------------
 	// Constructor
@@ -135,9 +138,16 @@ public final class FastBufferedInputStream extends java.io.InputStream {
 		}
 
 		offset += len;
+		consumed += len;
 		return len;
 	}
 	
+	/**
+	 * @return the number of bytes consumed by the reader (not the number read from
+	 * the underlying stream).  Not synchronized -- expected to be called by the reader.
+	 */
+	public long getConsumedCount () { return consumed; }
+	
 	/** 
 	 * @return the length of data available without making call
 	 * to the underlying stream.
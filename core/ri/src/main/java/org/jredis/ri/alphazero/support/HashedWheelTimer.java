@@ -0,0 +1,287 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.support;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A hashed timing wheel for large numbers of short lived timeouts, such as
+ * request deadlines, which are mostly cancelled before they expire.
+ * <p>
+ * Timeouts are hashed into the buckets of a wheel by their deadline tick, and a 
+ * single (daemon) worker thread expires the timeouts of the current bucket each 
+ * tick.  Scheduling and cancellation are O(1) and lock-free; the worker moves new 
+ * timeouts into the wheel and unlinks cancelled timeouts.  Timeouts expire on the
+ * first tick after their deadline, so the expiry precision is the tick duration.
+ * <p>
+ * Expiry tasks are run on the worker thread and must not block.
+ *
+ * @since   alpha.0
+ * 
+ */
+public class HashedWheelTimer {
+	
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** max new timeouts moved into the wheel per tick, so cancellations and expiry are not starved */
+	static final int MAX_TRANSFERS_PER_TICK = 100000;
+	
+	private final String			name;
+	private final long				tickNanos;
+	private final Bucket[]			wheel;
+	private final int				mask;
+	
+	private final Queue<Timeout>	scheduled = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout>	cancelled = new ConcurrentLinkedQueue<Timeout>();
+	
+	/** worker thread -- started on first schedule -- guarded by this */
+	private Thread					worker;
+	private volatile boolean		stopped;
+	
+	/** wheel epoch, set by the worker */
+	private long					startNanos;
+	
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * @param name of the worker thread
+	 * @param tickDuration
+	 * @param unit of tickDuration
+	 * @param ticksPerWheel rounded up to a power of 2
+	 * @throws IllegalArgumentException
+	 */
+	public HashedWheelTimer (String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if(tickDuration <= 0) throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+		if(ticksPerWheel <= 0 || ticksPerWheel > 1<<30) throw new IllegalArgumentException("ticksPerWheel must be in (0, 2^30]: " + ticksPerWheel);
+		int size = 1;
+		while(size < ticksPerWheel) size <<= 1;
+		
+		this.name = Assert.notNull(name, "name", IllegalArgumentException.class);
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheel = new Bucket[size];
+		for(int i=0; i<size; i++) wheel[i] = new Bucket();
+		this.mask = size - 1;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Schedules the expiry of the task.
+	 * @param task run on expiry -- unless the timeout is cancelled first
+	 * @param attachment (optional) object of the task, see {@link Timeout#getAttachment()}
+	 * @param delay
+	 * @param unit
+	 * @return the timeout
+	 * @throws IllegalStateException if the timer has been stopped
+	 */
+	public Timeout schedule (Task task, Object attachment, long delay, TimeUnit unit) {
+		Assert.notNull(task, "task", IllegalArgumentException.class);
+		if(stopped) throw new IllegalStateException(name + " timer is stopped");
+		start();
+		Timeout timeout = new Timeout(task, attachment, System.nanoTime() + unit.toNanos(delay));
+		scheduled.add(timeout);
+		return timeout;
+	}
+	
+	/**
+	 * Stops the worker.  Timeouts that have not expired will not expire.
+	 */
+	public void stop () {
+		final Thread t;
+		synchronized (this) {
+			stopped = true;
+			t = worker;
+		}
+		if(null == t || t == Thread.currentThread()) return;
+		t.interrupt();
+		try { t.join(); }
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	private synchronized void start () {
+		if(null != worker) return;
+		startNanos = System.nanoTime();
+		worker = new Thread(new Runnable() {
+			public void run () { work(); }
+		}, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	private void work () {
+		long tick = 0;
+		while(!stopped){
+			final long deadline = startNanos + (tick + 1) * tickNanos;
+			long sleepNanos;
+			while((sleepNanos = deadline - System.nanoTime()) > 0) {
+				try { 
+					Thread.sleep(TimeUnit.NANOSECONDS.toMillis(sleepNanos + 999999)); 
+				}
+				catch (InterruptedException e) {
+					if(stopped) return;
+				}
+			}
+			unlinkCancelled();
+			transferScheduled(tick);
+			expire(wheel[(int) (tick & mask)]);
+			tick++;
+		}
+	}
+	
+	private void transferScheduled (long tick) {
+		for(int i=0; i<MAX_TRANSFERS_PER_TICK; i++){
+			Timeout timeout = scheduled.poll();
+			if(null == timeout) return;
+			if(timeout.state != Timeout.PENDING) continue;
+			
+			long deadlineTick = (timeout.deadline - startNanos) / tickNanos;
+			timeout.rounds = (deadlineTick - tick) / wheel.length;
+			wheel[(int) (Math.max(deadlineTick, tick) & mask)].add(timeout);
+		}
+	}
+	
+	private void unlinkCancelled () {
+		Timeout timeout;
+		while(null != (timeout = cancelled.poll())) {
+			if(null != timeout.bucket) timeout.bucket.remove(timeout);
+		}
+	}
+	
+	private void expire (Bucket bucket) {
+		Timeout timeout = bucket.head;
+		while(null != timeout) {
+			Timeout next = timeout.next;
+			if(timeout.rounds <= 0) {
+				bucket.remove(timeout);
+				timeout.expire();
+			}
+			else {
+				timeout.rounds--;
+			}
+			timeout = next;
+		}
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** Run on expiry of its {@link Timeout} */
+	public interface Task {
+		/**
+		 * Called on the timer's worker thread.
+		 * @param timeout the expired timeout
+		 */
+		public void onTimeout (Timeout timeout);
+	}
+	
+	/**
+	 * A scheduled timeout -- also its node in the wheel.
+	 */
+	public final class Timeout {
+		static final int PENDING = 0;
+		static final int CANCELLED = 1;
+		static final int EXPIRED = 2;
+		
+		private final Task			task;
+		private final Object		attachment;
+		private final long			deadline;
+		/** updated by {@link HashedWheelTimer#STATE} */
+		volatile int				state = PENDING;
+		
+		/* wheel state -- accessed by the worker only */
+		long		rounds;
+		Bucket		bucket;
+		Timeout		prev;
+		Timeout		next;
+		
+		Timeout (Task task, Object attachment, long deadline) {
+			this.task = task;
+			this.attachment = attachment;
+			this.deadline = deadline;
+		}
+		
+		/** @return the attachment specified on schedule */
+		public Object getAttachment () { return attachment; }
+		
+		/** @return true if cancelled before expiry */
+		public boolean isCancelled () { return state == CANCELLED; }
+		
+		/** @return true if expired */
+		public boolean isExpired () { return state == EXPIRED; }
+		
+		/**
+		 * Cancels the timeout.
+		 * @return true if cancelled, false if already expired or cancelled
+		 */
+		public boolean cancel () {
+			if(!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+			cancelled.add(this);
+			return true;
+		}
+		
+		private void expire () {
+			if(!STATE.compareAndSet(this, PENDING, EXPIRED)) return;
+			try {
+				task.onTimeout(this);
+			}
+			catch (RuntimeException e) {
+				Log.error("%s timer task raised %s", name, e);
+			}
+		}
+	}
+	
+	private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+	
+	/** doubly linked list of the timeouts of a tick -- accessed by the worker only */
+	private static final class Bucket {
+		Timeout head;
+		Timeout tail;
+		
+		void add (Timeout timeout) {
+			timeout.bucket = this;
+			timeout.prev = tail;
+			timeout.next = null;
+			if(null == tail) head = timeout;
+			else tail.next = timeout;
+			tail = timeout;
+		}
+		
+		void remove (Timeout timeout) {
+			if(null == timeout.prev) head = timeout.next;
+			else timeout.prev.next = timeout.next;
+			if(null == timeout.next) tail = timeout.prev;
+			else timeout.next.prev = timeout.prev;
+			timeout.bucket = null;
+			timeout.prev = null;
+			timeout.next = null;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exponentially weighted moving average of observed request latencies (in
+ * nanoseconds).  Updates are lock-free and safe for concurrent use.
+ * <p>
+ * A score that has not been sampled yet reads as 0, so that new (or reset)
+ * nodes are preferred until they have been observed.
+ *
+ * @since   alpha.0
+ * 
+ */
+public class LatencyEWMA {
+	/** Default smoothing factor -- weight of the latest sample */
+	public static final double DEFAULT_ALPHA = 0.2;
+	
+	/**  */
+	final private double alpha;
+	/** {@link Double} bits of the current average */
+	final private AtomicLong avgbits = new AtomicLong(Double.doubleToLongBits(0));
+	/**  */
+	final private AtomicLong samples = new AtomicLong();
+	
+	public LatencyEWMA () {
+		this(DEFAULT_ALPHA);
+	}
+	
+	/**
+	 * @param alpha smoothing factor in (0, 1]
+	 * @throws IllegalArgumentException
+	 */
+	public LatencyEWMA (double alpha) {
+		if(alpha <= 0 || alpha > 1) throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+		this.alpha = alpha;
+	}
+	
+	/**
+	 * @param nanos observed latency
+	 */
+	public void update (long nanos) {
+		final boolean first = samples.getAndIncrement() == 0;
+		for(;;){
+			long bits = avgbits.get();
+			double avg = Double.longBitsToDouble(bits);
+			double next = first ? nanos : avg + alpha * (nanos - avg);
+			if(avgbits.compareAndSet(bits, Double.doubleToLongBits(next)))
+				return;
+		}
+	}
+	
+	/** @return the current average in nanoseconds */
+	public double getAverage () {
+		return Double.longBitsToDouble(avgbits.get());
+	}
+	
+	/** @return number of samples observed */
+	public long getSampleCount () {
+		return samples.get();
+	}
+	
+	@Override
+	public String toString () {
+		return String.format("%.1f usecs (%d samples)", getAverage()/1000, getSampleCount());
+	}
+}
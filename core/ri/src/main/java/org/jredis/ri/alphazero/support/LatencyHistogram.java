@@ -0,0 +1,196 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.support;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A log-linear latency histogram, in the manner of HdrHistogram.  Values (nanos)
+ * are recorded in buckets of exponentially increasing magnitude, each split into 
+ * a fixed number of linear sub-buckets, so the relative error of any reported 
+ * value is bounded by <code>1/2<sup>precisionBits-1</sup></code> regardless of 
+ * magnitude, and recording is a constant time array increment.
+ * <p>
+ * Values above the highest trackable value are counted in the top bucket (the 
+ * max value is always exact).
+ * <p>
+ * The histogram itself does nothing to correct for coordinated omission: that is
+ * the recorder's job.  The open-loop benchmarks record latencies measured from 
+ * the <i>intended</i> send time of each request, which accounts for queueing 
+ * delays that a closed-loop (send-when-ready) harness would silently omit.
+ * <p>
+ * Not thread-safe.  Use one histogram per recording thread and {@link #add(LatencyHistogram)}
+ * them when reporting.
+ *
+ * @since   alpha.0
+ * 
+ */
+public class LatencyHistogram {
+	
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** default precision -- 128 sub-buckets per magnitude, i.e. < 1% relative error */
+	public static final int DEFAULT_PRECISION_BITS = 7;
+	
+	private final int		precisionBits;
+	private final int		subBucketCount;
+	private final int		subBucketHalfCount;
+	private final long		highestTrackableValue;
+	private final long[]	counts;
+	
+	private long totalCount;
+	private long minValue = Long.MAX_VALUE;
+	private long maxValue;
+	private long sum;
+	
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	public LatencyHistogram () {
+		this(DEFAULT_PRECISION_BITS);
+	}
+	
+	/**
+	 * @param precisionBits log2 of the number of sub-buckets per magnitude -- [2, 16]
+	 */
+	public LatencyHistogram (int precisionBits) {
+		this(precisionBits, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * @param precisionBits log2 of the number of sub-buckets per magnitude -- [2, 16]
+	 * @param highestTrackableValue bounds the size of the histogram
+	 */
+	public LatencyHistogram (int precisionBits, long highestTrackableValue) {
+		if(precisionBits < 2 || precisionBits > 16)
+			throw new IllegalArgumentException("precisionBits must be in [2, 16]: " + precisionBits);
+		if(highestTrackableValue < 1)
+			throw new IllegalArgumentException("highestTrackableValue must be positive: " + highestTrackableValue);
+		this.precisionBits = precisionBits;
+		this.subBucketCount = 1 << precisionBits;
+		this.subBucketHalfCount = subBucketCount >> 1;
+		this.highestTrackableValue = highestTrackableValue;
+		this.counts = new long[indexOf(highestTrackableValue) + 1];
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Records a value.
+	 * @param value non-negative value (typically nanos)
+	 */
+	public void recordValue (long value) {
+		if(value < 0)
+			throw new IllegalArgumentException("negative value: " + value);
+		counts[indexOf(Math.min(value, highestTrackableValue))]++;
+		totalCount++;
+		sum += value;
+		if(value < minValue) minValue = value;
+		if(value > maxValue) maxValue = value;
+	}
+	
+	/**
+	 * Adds the recorded values of the other histogram to this histogram.
+	 * @param other histogram of the same precision and range
+	 */
+	public void add (LatencyHistogram other) {
+		if(other.precisionBits != precisionBits || other.counts.length != counts.length)
+			throw new IllegalArgumentException("histogram precision or range mismatch");
+		for(int i=0; i<counts.length; i++)
+			counts[i] += other.counts[i];
+		totalCount += other.totalCount;
+		sum += other.sum;
+		if(other.minValue < minValue) minValue = other.minValue;
+		if(other.maxValue > maxValue) maxValue = other.maxValue;
+	}
+	
+	/** Clears all recorded values. */
+	public void reset () {
+		for(int i=0; i<counts.length; i++)
+			counts[i] = 0;
+		totalCount = 0;
+		sum = 0;
+		minValue = Long.MAX_VALUE;
+		maxValue = 0;
+	}
+	
+	public long getTotalCount () { return totalCount; }
+	
+	/** @return the max recorded value -- exact */
+	public long getMaxValue () { return maxValue; }
+	
+	/** @return the min recorded value -- exact -- or 0 if none recorded */
+	public long getMinValue () { return totalCount == 0 ? 0 : minValue; }
+	
+	/** @return the mean of the recorded values -- exact -- or 0 if none recorded */
+	public double getMean () { return totalCount == 0 ? 0 : (double) sum / totalCount; }
+	
+	/**
+	 * @param percentile in [0, 100]
+	 * @return the (highest equivalent) value at or below which the given percentile 
+	 * of recorded values fall, or 0 if none recorded.
+	 */
+	public long getValueAtPercentile (double percentile) {
+		if(totalCount == 0) return 0;
+		double p = Math.min(Math.max(percentile, 0), 100);
+		long countAtPercentile = Math.max(1, (long) Math.ceil(p / 100 * totalCount));
+		long cumulative = 0;
+		for(int i=0; i<counts.length; i++){
+			cumulative += counts[i];
+			if(cumulative >= countAtPercentile)
+				return Math.min(highestEquivalentValue(i), maxValue);
+		}
+		return maxValue;
+	}
+	
+	/**
+	 * @param percentile
+	 * @param unit
+	 * @return {@link #getValueAtPercentile(double)} of the (nanos) values in the given unit
+	 */
+	public double getValueAtPercentile (double percentile, TimeUnit unit) {
+		return (double) getValueAtPercentile(percentile) / TimeUnit.NANOSECONDS.convert(1, unit);
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Values below {@link #subBucketCount} map linearly; above, the magnitude 
+	 * (exponent) selects a bucket of {@link #subBucketHalfCount} sub-buckets.
+	 */
+	private int indexOf (long value) {
+		if(value < subBucketCount) return (int) value;
+		int exponent = (63 - Long.numberOfLeadingZeros(value)) - (precisionBits - 1);
+		int subBucket = (int) (value >>> exponent);
+		return subBucketCount + (exponent - 1) * subBucketHalfCount + (subBucket - subBucketHalfCount);
+	}
+	
+	private long highestEquivalentValue (int index) {
+		if(index < subBucketCount) return index;
+		int exponent = (index - subBucketCount) / subBucketHalfCount + 1;
+		long subBucket = (index - subBucketCount) % subBucketHalfCount + subBucketHalfCount;
+		long highest = (subBucket << exponent) + (1L << exponent) - 1;
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.jredis.NotSupportedException;
+import org.jredis.RedisException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.DefaultCodec;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link BlockingListConsumer} against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class BlockingListConsumerTest {
+	
+	private LoopbackServer server;
+	private ConnectionSpec spec;
+	private JRedisPipeline pipeline;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+		spec = server.newConnectionSpec();
+		pipeline = new JRedisPipeline(spec);
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != pipeline) pipeline.quit();
+		if(null != server) server.shutdown();
+	}
+	
+	@BeforeMethod
+	public void flushdb () throws InterruptedException, ExecutionException {
+		pipeline.flushdb().get();
+	}
+	
+	@Test
+	public void testPops () throws RedisException, InterruptedException, ExecutionException {
+		Log.log("Testing blocking pops of non-empty lists ...");
+		final BlockingListConsumer consumer = new BlockingListConsumer(spec, 2);
+		try {
+			pipeline.rpush("list:a", "a1");
+			pipeline.rpush("list:a", "a2");
+			pipeline.rpush("list:b", "b1").get();
+			
+			BlockingListConsumer.Pop pop = consumer.blpop(1, TimeUnit.SECONDS, "list:empty", "list:a", "list:b");
+			assertEquals(pop.getKey(), "list:a");
+			assertEquals(DefaultCodec.toStr(pop.getValue()), "a1");
+			pop = consumer.brpop(1, TimeUnit.SECONDS, "list:a");
+			assertEquals(DefaultCodec.toStr(pop.getValue()), "a2");
+			pop = consumer.blpop(1, TimeUnit.SECONDS, "list:a", "list:b");
+			assertEquals(pop.getKey(), "list:b");
+			
+			pipeline.rpush("list:src", "s1").get();
+			assertEquals(DefaultCodec.toStr(consumer.brpoplpush("list:src", "list:dest", 1, TimeUnit.SECONDS)), "s1");
+			assertEquals(pipeline.llen("list:src").get().longValue(), 0);
+			assertEquals(DefaultCodec.toStr(pipeline.lindex("list:dest", 0).get()), "s1");
+			
+			assertEquals(consumer.getPopCount(), 4);
+			assertEquals(consumer.getConnectionCount(), 1);
+		}
+		finally {
+			consumer.shutdown();
+		}
+		assertEquals(consumer.getConnectionCount(), 0);
+	}
+	
+	@Test
+	public void testTimeouts () throws RedisException, InterruptedException {
+		Log.log("Testing timeouts of blocking pops of empty lists ...");
+		final BlockingListConsumer consumer = new BlockingListConsumer(spec, 1);
+		try {
+			long start = System.nanoTime();
+			assertNull(consumer.blpop(1, TimeUnit.SECONDS, "list:empty"));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+			
+			/* timeouts are rounded up to secs */
+			start = System.nanoTime();
+			assertNull(consumer.brpoplpush("list:empty", "list:dest", 10, TimeUnit.MILLISECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(10));
+			assertEquals(consumer.getPopCount(), 0);
+		}
+		finally {
+			consumer.shutdown();
+		}
+	}
+	
+	@Test
+	public void testPopServedByPush () throws InterruptedException, ExecutionException {
+		Log.log("Testing a blocked pop served by a later push ...");
+		final BlockingListConsumer consumer = new BlockingListConsumer(spec, 1);
+		final BlockingListConsumer.Pop[] popped = new BlockingListConsumer.Pop[1];
+		final CountDownLatch done = new CountDownLatch(1);
+		new Thread(new Runnable() {
+			public void run () {
+				try {
+					popped[0] = consumer.brpop(0, TimeUnit.SECONDS, "list:late");
+				}
+				catch (Exception e) {
+					Log.error("brpop: " + e.getMessage());
+				}
+				finally {
+					done.countDown();
+				}
+			}
+		}).start();
+		try {
+			Thread.sleep(200);
+			assertEquals(done.getCount(), 1);
+			/* the pipeline is not stalled by the blocked pop */
+			pipeline.rpush("list:late", "late").get();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(popped[0].getKey(), "list:late");
+			assertEquals(DefaultCodec.toStr(popped[0].getValue()), "late");
+		}
+		finally {
+			consumer.shutdown();
+		}
+	}
+	
+	@Test
+	public void testWorkers () throws InterruptedException, ExecutionException {
+		Log.log("Testing the workers of a consumer ...");
+		final int workers = 4, elements = 200;
+		final BlockingListConsumer consumer = new BlockingListConsumer(spec, workers);
+		final Set<String> handled = Collections.synchronizedSet(new HashSet<String>());
+		final CountDownLatch done = new CountDownLatch(elements);
+		consumer.consume(new BlockingListConsumer.Handler() {
+			public void onPop (BlockingListConsumer.Pop pop) {
+				if(handled.add(DefaultCodec.toStr(pop.getValue()))) done.countDown();
+			}
+		}, workers, "jobs:high", "jobs:low");
+		
+		for(int i=0; i<elements; i++)
+			pipeline.rpush(i % 2 == 0 ? "jobs:high" : "jobs:low", "job:" + i);
+		pipeline.llen("jobs:low").get();
+		
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(handled.size(), elements);
+		assertEquals(consumer.getPopCount(), elements);
+		assertEquals(consumer.getErrorCount(), 0);
+		assertEquals(consumer.getWorkerCount(), workers);
+		
+		consumer.shutdown();
+		for(int i=0; i<30 && consumer.getWorkerCount() > 0; i++)
+			Thread.sleep(100);
+		assertEquals(consumer.getWorkerCount(), 0);
+		assertEquals(consumer.getConnectionCount(), 0);
+	}
+	
+	@Test
+	public void testWorkerErrorBackoff () throws InterruptedException, ExecutionException {
+		Log.log("Testing the backoff of a worker on error responses ...");
+		final BlockingListConsumer consumer = new BlockingListConsumer(spec, 1, 1);
+		pipeline.set("jobs:string", "not a list").get();
+		consumer.consume(new BlockingListConsumer.Handler() {
+			public void onPop (BlockingListConsumer.Pop pop) { }
+		}, 1, "jobs:string");
+		try {
+			Thread.sleep(1500);
+			/* one error per poll interval -- not a spin */
+			assertTrue(consumer.getErrorCount() >= 1);
+			assertTrue(consumer.getErrorCount() <= 2, "errors: " + consumer.getErrorCount());
+			assertEquals(consumer.getConnectionCount(), 1);
+		}
+		finally {
+			consumer.shutdown();
+		}
+	}
+	
+	@Test
+	public void testBlockingCommandsAreNotQueued () {
+		Log.log("Testing blocking commands are rejected by pipelines ...");
+		try {
+			pipeline.queueRequest(Command.BLPOP, "list".getBytes(), "0".getBytes());
+			fail("queued a blocking command");
+		}
+		catch (NotSupportedException expected) { }
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jredis.ClientRuntimeException;
+import org.jredis.JRedisFuture;
+import org.jredis.connector.NotConnectedException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link CounterAggregator} against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class CounterAggregatorTest {
+	
+	private LoopbackServer server;
+	private JRedisPipeline pipeline;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+		pipeline = new JRedisPipeline(server.newConnectionSpec());
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != pipeline) pipeline.quit();
+		if(null != server) server.shutdown();
+	}
+	
+	@BeforeMethod
+	public void flushdb () throws InterruptedException, ExecutionException {
+		pipeline.flushdb().get();
+	}
+	
+	private long value (String key) throws InterruptedException, ExecutionException {
+		byte[] value = pipeline.get(key).get();
+		return null == value ? 0 : Convert.toLong(value);
+	}
+	
+	@Test
+	public void testConcurrentIncrements () throws InterruptedException, ExecutionException {
+		Log.log("Testing aggregated increments of concurrent threads ...");
+		final int threads = 8, keys = 50, increments = 20000;
+		final CounterAggregator aggregator = new CounterAggregator(pipeline, 5, TimeUnit.MILLISECONDS, 20, 1000, CounterAggregator.Overflow.BLOCK);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for(int t=0; t<threads; t++) {
+			final int id = t;
+			new Thread(new Runnable() {
+				public void run () {
+					try {
+						for(int i=0; i<increments; i++) {
+							aggregator.incr("counter:" + (i % keys));
+							if(i % 10 == 0) aggregator.incrby("counter:total", id + 1);
+						}
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		aggregator.shutdown();
+		
+		for(int k=0; k<keys; k++)
+			assertEquals(value("counter:" + k), threads * increments / keys);
+		assertEquals(value("counter:total"), (increments / 10) * (threads * (threads + 1) / 2));
+		assertEquals(aggregator.getErrorCount(), 0);
+		assertEquals(aggregator.getPendingKeyCount(), 0);
+		Log.log("aggregated %d increments in %d INCRBYs and %d flushes", threads * increments * 11 / 10, aggregator.getSentCount(), aggregator.getFlushCount());
+		assertTrue(aggregator.getSentCount() < threads * increments);
+	}
+	
+	@Test
+	public void testFlushInterval () throws InterruptedException, ExecutionException {
+		Log.log("Testing flush interval ...");
+		CounterAggregator aggregator = new CounterAggregator(pipeline, 20, TimeUnit.MILLISECONDS, 1000, 1000, CounterAggregator.Overflow.BLOCK);
+		try {
+			aggregator.incrby("counter", 40);
+			aggregator.decrby("counter", 2);
+			aggregator.decr("counter");
+			long deadline = System.currentTimeMillis() + 5000;
+			while(value("counter") != 37 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(value("counter"), 37);
+			assertEquals(aggregator.getSentCount(), 1);
+		}
+		finally {
+			aggregator.shutdown();
+		}
+	}
+	
+	@Test
+	public void testIdleEviction () throws InterruptedException, ExecutionException {
+		Log.log("Testing eviction of idle counters ...");
+		CounterAggregator aggregator = new CounterAggregator(pipeline, 1, TimeUnit.HOURS, 100, 100, CounterAggregator.Overflow.FAIL);
+		try {
+			aggregator.incr("hot");
+			aggregator.incr("cold");
+			aggregator.flush();
+			assertEquals(aggregator.getPendingKeyCount(), 0);
+			assertEquals(aggregator.getCounterCount(), 2);
+			
+			// the counter of the hot key is kept, that of the idle key is evicted
+			aggregator.incrby("hot", 2);
+			aggregator.flush();
+			assertEquals(aggregator.getCounterCount(), 1);
+			aggregator.flush();
+			assertEquals(aggregator.getCounterCount(), 0);
+			assertEquals(value("hot"), 3);
+			assertEquals(value("cold"), 1);
+			assertEquals(aggregator.getSentCount(), 3);
+		}
+		finally {
+			aggregator.shutdown();
+		}
+	}
+	
+	/** 
+	 * Pauses the server and stalls the flusher of the aggregator (of 2 flush keys) on the
+	 * responses of a flush, so that the pending keys are not flushed until the server resumes.  
+	 */
+	private void stallFlusher (CounterAggregator aggregator) throws InterruptedException {
+		server.pause();
+		aggregator.incr("stall:1");
+		aggregator.incr("stall:2");
+		while(aggregator.getPendingKeyCount() > 0)
+			Thread.sleep(1);
+	}
+	
+	@Test
+	public void testOverflow () throws InterruptedException, ExecutionException {
+		Log.log("Testing overflow policies ...");
+		CounterAggregator aggregator = new CounterAggregator(pipeline, 1, TimeUnit.HOURS, 2, 2, CounterAggregator.Overflow.FAIL);
+		try {
+			stallFlusher(aggregator);
+			aggregator.incr("a");
+			aggregator.incr("b");
+			aggregator.incr("a");
+			try {
+				aggregator.incr("c");
+				fail("overflow expected");
+			}
+			catch (ClientRuntimeException expected) { }
+			server.resume();
+			aggregator.flush();
+			assertEquals(value("a"), 2);
+			aggregator.incr("c");
+			assertEquals(aggregator.getPendingKeyCount(), 1);
+		}
+		finally {
+			server.resume();
+			aggregator.shutdown();
+		}
+		assertEquals(value("c"), 1);
+		
+		aggregator = new CounterAggregator(pipeline, 1, TimeUnit.HOURS, 2, 2, CounterAggregator.Overflow.DIRECT);
+		try {
+			stallFlusher(aggregator);
+			aggregator.incr("x");
+			aggregator.incr("y");
+			aggregator.incrby("z", 5);
+			assertEquals(aggregator.getPendingKeyCount(), 2);
+			server.resume();
+			assertEquals(value("z"), 5);
+		}
+		finally {
+			server.resume();
+			aggregator.shutdown();
+		}
+		assertEquals(value("x"), 1);
+		
+		aggregator = new CounterAggregator(pipeline, 1, TimeUnit.HOURS, 2, 2, CounterAggregator.Overflow.BLOCK);
+		try {
+			aggregator.incr("p");
+			aggregator.incr("q");
+			aggregator.incr("r");
+			// the blocked increment flushed the pending keys -- r may be flushed by a later flush
+			assertEquals(value("p"), 1);
+			assertTrue(aggregator.getPendingKeyCount() <= 1);
+		}
+		finally {
+			aggregator.shutdown();
+		}
+		assertEquals(value("r"), 1);
+	}
+	
+	/** @return the pipeline, with the next <code>rejections</code> INCRBYs rejected as not connected */
+	private JRedisFuture rejecting (final AtomicInteger rejections) {
+		return (JRedisFuture) Proxy.newProxyInstance(JRedisFuture.class.getClassLoader(), new Class<?>[]{JRedisFuture.class}, new InvocationHandler() {
+			public Object invoke (Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("incrby") && rejections.getAndDecrement() > 0)
+					throw new NotConnectedException("rejected");
+				try {
+					return method.invoke(pipeline, args);
+				}
+				catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void testRejectedIncrements () throws InterruptedException, ExecutionException {
+		Log.log("Testing increments rejected by the pipeline ...");
+		final AtomicInteger rejections = new AtomicInteger();
+		CounterAggregator aggregator = new CounterAggregator(rejecting(rejections), 1, TimeUnit.HOURS, 100, 100, CounterAggregator.Overflow.FAIL);
+		try {
+			aggregator.incrby("a", 3);
+			aggregator.incrby("b", 4);
+			rejections.set(1);
+			try {
+				aggregator.flush();
+				fail("rejected increment expected");
+			}
+			catch (ClientRuntimeException expected) { }
+			// the other key was still sent
+			assertEquals(aggregator.getPendingKeyCount(), 1);
+			assertTrue((value("a") == 3) != (value("b") == 4));
+			aggregator.incr("a");
+			aggregator.incr("b");
+			
+			rejections.set(Integer.MAX_VALUE);
+			try {
+				aggregator.shutdown();
+				fail("rejected increment expected");
+			}
+			catch (ClientRuntimeException expected) { }
+			assertEquals(aggregator.getPendingKeyCount(), 2);
+			rejections.set(0);
+			aggregator.flush();
+		}
+		finally {
+			rejections.set(0);
+			aggregator.shutdown();
+		}
+		assertEquals(value("a"), 4);
+		assertEquals(value("b"), 5);
+		assertEquals(aggregator.getErrorCount(), 0);
+	}
+	
+	@Test
+	public void testShutdown () {
+		Log.log("Testing increments after shutdown ...");
+		CounterAggregator aggregator = new CounterAggregator(pipeline);
+		aggregator.shutdown();
+		try {
+			aggregator.incr("counter");
+			fail("shutdown aggregator accepted an increment");
+		}
+		catch (ClientRuntimeException expected) { }
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jredis.ElementVisitor;
+import org.jredis.JRedis;
+import org.jredis.RedisException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.connection.SyncConnection;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the streaming (visited) multi-bulk requests of {@link JRedis} against 
+ * the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class ElementVisitorTest {
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	/** collects the visited elements, and stops after limit elements */
+	static class Collector implements ElementVisitor {
+		final List<String> elements = new ArrayList<String>();
+		final int limit;
+		Collector (int limit) { this.limit = limit; }
+		public boolean visit (ByteBuffer element) {
+			if(null == element) 
+				elements.add(null);
+			else {
+				byte[] data = new byte[element.remaining()];
+				element.get(data);
+				elements.add(new String(data));
+			}
+			return elements.size() < limit;
+		}
+	}
+	
+	@Test
+	public void testVisitedRequests () throws RedisException {
+		Log.log("Testing visited KEYS, SMEMBERS, and LRANGE ...");
+		JRedis jredis = new JRedisClient(server.newConnectionSpec());
+		try {
+			jredis.flushdb();
+			for(int i=0; i<100; i++) {
+				jredis.rpush("list", "item-" + i);
+				jredis.sadd("set", "member-" + i);
+			}
+			
+			Collector visitor = new Collector(Integer.MAX_VALUE);
+			assertEquals(jredis.lrange("list", 0, -1, visitor), 100);
+			for(int i=0; i<100; i++)
+				assertEquals(visitor.elements.get(i), "item-" + i);
+			
+			visitor = new Collector(Integer.MAX_VALUE);
+			assertEquals(jredis.smembers("set", visitor), 100);
+			Collections.sort(visitor.elements);
+			assertEquals(visitor.elements.size(), 100);
+			assertTrue(visitor.elements.contains("member-42"));
+			
+			visitor = new Collector(Integer.MAX_VALUE);
+			assertEquals(jredis.keys("*", visitor), 2);
+			Collections.sort(visitor.elements);
+			assertEquals(visitor.elements.get(0), "list");
+			assertEquals(visitor.elements.get(1), "set");
+			
+			visitor = new Collector(Integer.MAX_VALUE);
+			assertEquals(jredis.lrange("no-such-list", 0, -1, visitor), 0);
+			assertTrue(visitor.elements.isEmpty());
+		}
+		finally {
+			jredis.quit();
+		}
+	}
+	
+	@Test
+	public void testStopAndDrain () throws RedisException {
+		Log.log("Testing early stop of a visit ...");
+		JRedis jredis = new JRedisClient(server.newConnectionSpec());
+		try {
+			jredis.flushdb();
+			for(int i=0; i<50; i++) jredis.rpush("list", "item-" + i);
+			
+			Collector visitor = new Collector(10);
+			assertEquals(jredis.lrange("list", 0, -1, visitor), 10);
+			assertEquals(visitor.elements.size(), 10);
+			assertEquals(visitor.elements.get(9), "item-9");
+			
+			// the rest of the reply was drained
+			assertEquals(jredis.llen("list"), 50);
+			assertEquals(jredis.lrange("list", 49, 49).size(), 1);
+		}
+		finally {
+			jredis.quit();
+		}
+	}
+	
+	@Test
+	public void testVisitorException () throws RedisException {
+		Log.log("Testing visitor exception ...");
+		JRedis jredis = new JRedisClient(server.newConnectionSpec());
+		try {
+			jredis.flushdb();
+			for(int i=0; i<20; i++) jredis.rpush("list", "item-" + i);
+			
+			final IllegalStateException error = new IllegalStateException("visitor failed");
+			try {
+				jredis.lrange("list", 0, -1, new ElementVisitor() {
+					int count = 0;
+					public boolean visit (ByteBuffer element) {
+						if(++count == 5) throw error;
+						return true;
+					}
+				});
+				fail("visitor exception expected");
+			}
+			catch (IllegalStateException e) {
+				assertSame(e, error);
+			}
+			assertEquals(jredis.llen("list"), 20);
+		}
+		finally {
+			jredis.quit();
+		}
+	}
+	
+	@Test
+	public void testNilElements () throws RedisException {
+		Log.log("Testing visit of nil elements ...");
+		SyncConnection connection = new SyncConnection(server.newConnectionSpec());
+		try {
+			connection.serviceRequest(Command.FLUSHDB);
+			connection.serviceRequest(Command.SET, "a".getBytes(), "1".getBytes());
+			Collector visitor = new Collector(Integer.MAX_VALUE);
+			assertEquals(connection.serviceRequest(visitor, Command.MGET, "a".getBytes(), "b".getBytes(), "a".getBytes()), 3);
+			assertEquals(visitor.elements.get(0), "1");
+			assertNull(visitor.elements.get(1));
+			assertEquals(visitor.elements.get(2), "1");
+		}
+		finally {
+			connection.serviceRequest(Command.QUIT);
+		}
+	}
+	
+	@Test
+	public void testMaterializedVisit () throws RedisException {
+		Log.log("Testing visit of materialized replies ...");
+		JRedisPipeline pipeline = new JRedisPipeline(server.newConnectionSpec());
+		try {
+			JRedis jredis = pipeline.sync();
+			jredis.flushdb();
+			for(int i=0; i<10; i++) jredis.rpush("list", "item-" + i);
+			Collector visitor = new Collector(3);
+			assertEquals(jredis.lrange("list", 0, -1, visitor), 3);
+			assertEquals(visitor.elements.get(2), "item-2");
+		}
+		finally {
+			pipeline.quit();
+		}
+	}
+}
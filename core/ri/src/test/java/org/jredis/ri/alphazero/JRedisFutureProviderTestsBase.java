@@ -25,6 +25,7 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -1681,6 +1682,44 @@ public abstract class JRedisFutureProviderTestsBase extends JRedisTestSuiteBase<
 	}
 
 
+	@Test
+	public void testHmsetHmget() throws InterruptedException {
+		cmd = Command.HMSET.code + " | " + Command.HMGET + " | " + Command.HINCRBY + " | " + Command.HSETNX;
+		Log.log("TEST: %s command", cmd);
+		try {
+			provider.flushdb();
+			Map<String, byte[]> fields = new HashMap<String, byte[]>();
+			for(int i=1; i<5; i++)
+				fields.put(keys.get(i), dataList.get(i));
+			Future<ResponseStatus> hmsetResp = provider.hmset(keys.get(0), fields);
+			Future<List<byte[]>> hmgetResp = provider.hmget(keys.get(0), keys.get(3), keys.get(5), keys.get(1));
+			Future<Long> hincrbyResp1 = provider.hincrby(keys.get(0), keys.get(5), 10);
+			Future<Long> hincrbyResp2 = provider.hincrby(keys.get(0), keys.get(5), -3);
+			Future<Boolean> hsetnxResp1 = provider.hsetnx(keys.get(0), keys.get(6), stringList.get(0));
+			Future<Boolean> hsetnxResp2 = provider.hsetnx(keys.get(0), keys.get(6), stringList.get(1));
+			Future<Long> hlenResp = provider.hlen(keys.get(0));
+			
+			try {
+				assertFalse(hmsetResp.get().isError(), "hmset status");
+				List<byte[]> values = hmgetResp.get();
+				assertEquals( values.size(), 3, "hmget values count");
+				assertEquals( values.get(0), dataList.get(3), "hmget of field set by hmset");
+				assertNull( values.get(1), "hmget of non-existent field");
+				assertEquals( values.get(2), dataList.get(1), "hmget of field set by hmset");
+				assertEquals( hincrbyResp1.get().longValue(), 10, "hincrby of non-existent field");
+				assertEquals( hincrbyResp2.get().longValue(), 7, "hincrby of field");
+				assertTrue (hsetnxResp1.get(), "hsetnx of non-existent field");
+				assertFalse (hsetnxResp2.get(), "hsetnx of existing field");
+				assertEquals( hlenResp.get().longValue(), 6, "hlen");
+			}
+			catch(ExecutionException e){
+				Throwable cause = e.getCause();
+				fail(cmd + " ERROR => " + cause.getLocalizedMessage(), e); 
+			}
+		} 
+		catch (ClientRuntimeException e) { fail(cmd + " ERROR => " + e.getLocalizedMessage(), e); }
+	}
+
 	@Test
 	public void testHgetall() throws InterruptedException {
 		cmd = Command.HSET.code + " | " + Command.HGETALL;
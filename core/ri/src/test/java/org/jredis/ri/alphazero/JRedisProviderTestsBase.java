@@ -28,6 +28,7 @@ import static org.testng.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.jredis.JRedis;
@@ -602,6 +603,38 @@ public abstract class JRedisProviderTestsBase extends JRedisTestSuiteBase<JRedis
 		catch (RedisException e) { fail(cmd + " ERROR => " + e.getLocalizedMessage(), e); }
 	}
 
+	/**
+	 * Test method for {@link org.jredis.ri.alphazero.JRedisSupport#hmset(Object, java.util.Map)}.
+	 */
+	@Test
+	public void testHmsetHmgetHincrbyHsetnx() {
+		cmd = Command.HMSET.code + " | " + Command.HMGET + " | " + Command.HINCRBY + " | " + Command.HSETNX;
+		Log.log("TEST: %s command", cmd);
+		try {
+			provider.flushdb();
+			
+			Map<String, byte[]> fields = new HashMap<String, byte[]>();
+			for(int i=1; i<5; i++)
+				fields.put(keys.get(i), dataList.get(i));
+			provider.hmset(keys.get(0), fields);
+			assertEquals( provider.hlen(keys.get(0)), 4, "hlen after hmset");
+			
+			List<byte[]> values = provider.hmget(keys.get(0), keys.get(3), keys.get(5), keys.get(1));
+			assertEquals( values.size(), 3, "hmget values count");
+			assertEquals( values.get(0), dataList.get(3), "hmget of field set by hmset");
+			assertNull( values.get(1), "hmget of non-existent field");
+			assertEquals( values.get(2), dataList.get(1), "hmget of field set by hmset");
+			
+			assertEquals( provider.hincrby(keys.get(0), keys.get(5), 10), 10, "hincrby of non-existent field");
+			assertEquals( provider.hincrby(keys.get(0), keys.get(5), -3), 7, "hincrby of field");
+			
+			assertTrue( provider.hsetnx(keys.get(0), keys.get(6), stringList.get(0)), "hsetnx of non-existent field");
+			assertTrue( !provider.hsetnx(keys.get(0), keys.get(6), stringList.get(1)), "hsetnx of existing field");
+			assertEquals( DefaultCodec.toStr(provider.hget(keys.get(0), keys.get(6))), stringList.get(0), "hsetnx should not overwrite");
+		} 
+		catch (RedisException e) { fail(cmd + " ERROR => " + e.getLocalizedMessage(), e); }
+	}
+
 	
 	/**
 	 * Test method for {@link org.jredis.ri.alphazero.JRedisSupport#hkeys(java.lang.String, java.io.Serializable)}.
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.jredis.JRedis;
+import org.jredis.RedisException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.Monitor.Record;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.connection.MonitorConnection;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link MonitorCapture} format, and the {@link MonitorReplay} of a capture
+ * of the feed of a {@link LoopbackServer} to a second {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class MonitorCaptureTest {
+	
+	private static final long WAIT_MSECS = 10000;
+	
+	private LoopbackServer source;
+	private LoopbackServer target;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		source = new LoopbackServer();
+		target = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != source) source.shutdown();
+		if(null != target) target.shutdown();
+	}
+	
+	private static Record record (long timestamp, int db, String...args) {
+		byte[][] argv = new byte[args.length][];
+		for(int i=0; i<args.length; i++) argv[i] = args[i].getBytes();
+		return new Record(timestamp, db, "127.0.0.1:6379", argv);
+	}
+	
+	private static byte[] capture (Record...records) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MonitorCapture.Writer writer = new MonitorCapture.Writer(out);
+		for(Record record : records) writer.write(record);
+		assertEquals(writer.getCount(), records.length);
+		writer.close();
+		return out.toByteArray();
+	}
+	
+	@Test
+	public void testCaptureFormat () throws IOException {
+		Log.log("Testing MonitorCapture write and read ...");
+		Record[] records = {
+			record(1339518083107412L, 0, "SET", "key", "value"),
+			record(1339518083107400L, -1, "PING"),
+			record(1339518090000000L, 15, "SET", "empty", ""),
+			new Record(1339518090000001L, 3, null, new byte[][]{ "SET".getBytes(), new byte[300], {0, (byte) 0xff} }),
+		};
+		byte[] data = capture(records);
+		
+		MonitorCapture.Reader reader = new MonitorCapture.Reader(new ByteArrayInputStream(data));
+		for(Record expected : records){
+			Record read = reader.next();
+			assertNotNull(read);
+			assertEquals(read.getTimestamp(), expected.getTimestamp());
+			assertEquals(read.getDatabase(), expected.getDatabase());
+			assertNull(read.getClient(), "client is not captured");
+			assertEquals(read.getArgs().length, expected.getArgs().length);
+			for(int i=0; i<read.getArgs().length; i++)
+				assertEquals(read.getArgs()[i], expected.getArgs()[i]);
+		}
+		assertNull(reader.next(), "end of capture");
+		
+		try {
+			MonitorCapture.Reader truncated = new MonitorCapture.Reader(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 1)));
+			while(truncated.next() != null);
+			fail("expecting EOFException for truncated capture");
+		}
+		catch (EOFException expected) { }
+		try {
+			new MonitorCapture.Reader(new ByteArrayInputStream("not a capture".getBytes()));
+			fail("expecting IOException for bad magic");
+		}
+		catch (IOException expected) { }
+	}
+	
+	@Test
+	public void testResolve () {
+		Log.log("Testing MonitorReplay command resolution ...");
+		assertEquals(MonitorReplay.resolve(record(0, 0, "set", "k", "v")), Command.SET);
+		assertEquals(MonitorReplay.resolve(record(0, 0, "ZRANGE", "z", "0", "-1")), Command.ZRANGE);
+		assertEquals(MonitorReplay.resolve(record(0, 0, "sort", "l", "store", "d")), Command.SORT$STORE);
+		assertEquals(MonitorReplay.resolve(record(0, 0, "sort", "l", "ALPHA")), Command.SORT);
+		for(String skipped : new String[]{"AUTH", "SELECT", "MULTI", "EXEC", "DISCARD", "QUIT", "MONITOR", "SUBSCRIBE", "SHUTDOWN", "DEBUG", "NOSUCHCOMMAND"})
+			assertNull(MonitorReplay.resolve(record(0, 0, skipped, "x")), skipped);
+	}
+	
+	@Test
+	public void testCaptureAndReplay () throws IOException, RedisException, InterruptedException {
+		Log.log("Testing MonitorCapture of a live feed, and its MonitorReplay ...");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MonitorCapture.Writer writer = new MonitorCapture.Writer(out);
+		MonitorConnection monitor = new MonitorConnection(source.newConnectionSpec(), writer);
+		JRedis client = new JRedisClient(source.newConnectionSpec());
+		JRedis client3 = new JRedisClient(source.newConnectionSpec().setDatabase(3));
+		final int cnt = 100;
+		try {
+			long deadline = System.currentTimeMillis() + WAIT_MSECS;
+			while(writer.getCount() == 0 && System.currentTimeMillis() < deadline){
+				client.ping();
+				Thread.sleep(10);
+			}
+			assertTrue(writer.getCount() > 0, "monitor feed started");
+			// the feed may have started with a record of another connection (e.g. its SELECT)
+			final long started = writer.getCount();
+			for(int i=0; i<cnt; i++){
+				client.set("replay:" + i, "value-" + i);
+				client3.incr("replay:counter");
+			}
+			client.echo("done");
+			deadline = System.currentTimeMillis() + WAIT_MSECS;
+			while(writer.getCount() < started + cnt * 2 + 1 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+		}
+		finally {
+			client.quit();
+			client3.quit();
+			monitor.quit();
+		}
+		writer.close();
+		
+		MonitorReplay.Result result = new MonitorReplay(target.newConnectionSpec(), 0).replay(new MonitorCapture.Reader(new ByteArrayInputStream(out.toByteArray())));
+		Log.log("replay: %s", result);
+		assertTrue(result.getSent() >= cnt * 2 + 1);
+		assertEquals(result.getErrors(), 0);
+		
+		JRedis verifier = new JRedisClient(target.newConnectionSpec());
+		JRedis verifier3 = new JRedisClient(target.newConnectionSpec().setDatabase(3));
+		try {
+			for(int i=0; i<cnt; i++)
+				assertEquals(new String(verifier.get("replay:" + i)), "value-" + i);
+			assertEquals(Long.parseLong(new String(verifier3.get("replay:counter"))), cnt, "replayed on the recorded db");
+			assertFalse(verifier.exists("replay:counter"));
+		}
+		finally {
+			verifier.quit();
+			verifier3.quit();
+		}
+	}
+	
+	@Test
+	public void testPacedReplay () throws IOException, InterruptedException {
+		Log.log("Testing MonitorReplay pacing ...");
+		final long t0 = 1339518083000000L;
+		byte[] data = capture(
+			record(t0, 0, "SET", "paced:a", "1"),
+			record(t0 + 200000, 0, "SET", "paced:b", "2"),
+			record(t0 + 400000, 0, "SET", "paced:c", "3"));
+		
+		MonitorReplay.Result result = new MonitorReplay(target.newConnectionSpec(), 1).replay(new MonitorCapture.Reader(new ByteArrayInputStream(data)));
+		assertEquals(result.getSent(), 3);
+		assertTrue(result.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(400), "recorded pace");
+		
+		result = new MonitorReplay(target.newConnectionSpec(), 4).replay(new MonitorCapture.Reader(new ByteArrayInputStream(data)));
+		assertTrue(result.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(100), "accelerated pace");
+		assertTrue(result.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(400), "accelerated pace");
+	}
+}
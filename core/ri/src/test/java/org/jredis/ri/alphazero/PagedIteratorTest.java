@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import org.jredis.ClientRuntimeException;
+import org.jredis.JRedisFuture;
+import org.jredis.ZSetEntry;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link PagedIterator}s of a {@link JRedisPipeline} against the 
+ * {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class PagedIteratorTest {
+	
+	private static final int SIZE = 1000;
+	
+	private LoopbackServer server;
+	private JRedisPipeline pipeline;
+	
+	@BeforeClass
+	public void setup () throws IOException, InterruptedException, ExecutionException {
+		server = new LoopbackServer();
+		pipeline = new JRedisPipeline(server.newConnectionSpec());
+		pipeline.flushdb().get();
+		for(int i=0; i<SIZE; i++) {
+			pipeline.rpush("list", "item-" + i);
+			pipeline.zadd("zset", i, "member-" + i);
+		}
+		pipeline.set("string", "value").get();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != pipeline) pipeline.quit();
+		if(null != server) server.shutdown();
+	}
+	
+	@Test
+	public void testLrange () {
+		Log.log("Testing paged LRANGE ...");
+		PagedIterator<byte[]> iter = PagedIterator.lrange(pipeline, "list", 0, -1).setPageSize(10, 200);
+		int i = 0;
+		while(iter.hasNext())
+			assertEquals(new String(iter.next()), "item-" + i++);
+		assertEquals(i, SIZE);
+		assertFalse(iter.hasNext());
+		assertTrue(iter.getPageSize() <= 200);
+		assertTrue(iter.getPageCount() < SIZE / 10 + 1 || iter.getStallCount() == 0);
+		
+		iter = PagedIterator.lrange(pipeline, "list", 995, 2000);
+		i = 995;
+		while(iter.hasNext())
+			assertEquals(new String(iter.next()), "item-" + i++);
+		assertEquals(i, SIZE);
+		
+		assertFalse(PagedIterator.lrange(pipeline, "no-such-list", 0, -1).hasNext());
+	}
+	
+	@Test
+	public void testBoundedRange () {
+		Log.log("Testing paged ZRANGE of a rank range ...");
+		PagedIterator<byte[]> iter = PagedIterator.zrange(pipeline, "zset", 100, 349).setPageSize(7, 7);
+		int i = 100;
+		while(iter.hasNext())
+			assertEquals(new String(iter.next()), "member-" + i++);
+		assertEquals(i, 350);
+		// 250 members in pages of 7 
+		assertEquals(iter.getPageCount(), 36);
+	}
+	
+	@Test
+	public void testExactPages () {
+		Log.log("Testing paged ZRANGE with pages aligned to the set size ...");
+		PagedIterator<byte[]> iter = PagedIterator.zrange(pipeline, "zset", 0, -1).setPageSize(100, 100);
+		int n = 0;
+		while(iter.hasNext()) { iter.next(); n++; }
+		assertEquals(n, SIZE);
+		// the last (empty) page marks the end
+		assertEquals(iter.getPageCount(), 11);
+	}
+	
+	@Test
+	public void testZrangeSubset () {
+		Log.log("Testing paged ZRANGE WITHSCORES ...");
+		PagedIterator<ZSetEntry> iter = PagedIterator.zrangeSubset(pipeline, "zset", 0, -1).setPageSize(50, 500);
+		int i = 0;
+		while(iter.hasNext()) {
+			ZSetEntry entry = iter.next();
+			assertEquals(new String(entry.getValue()), "member-" + i);
+			assertEquals(entry.getScore(), (double) i);
+			i++;
+		}
+		assertEquals(i, SIZE);
+	}
+	
+	@Test
+	public void testZrangebyscore () {
+		Log.log("Testing paged ZRANGEBYSCORE ...");
+		PagedIterator<byte[]> iter = PagedIterator.zrangebyscore(pipeline, "zset", 250, 749).setPageSize(16, 64);
+		int i = 250;
+		while(iter.hasNext())
+			assertEquals(new String(iter.next()), "member-" + i++);
+		assertEquals(i, 750);
+	}
+	
+	@Test
+	public void testPageErrors () {
+		Log.log("Testing paged iteration errors ...");
+		try {
+			PagedIterator.lrange(pipeline, "string", 0, -1).hasNext();
+			fail("error expected on LRANGE of a string");
+		}
+		catch (ClientRuntimeException expected) { }
+		
+		PagedIterator<byte[]> iter = PagedIterator.lrange(pipeline, "list", 0, -1);
+		iter.next();
+		try {
+			iter.setPageSize(10, 100);
+			fail("page size set after the iteration started");
+		}
+		catch (ClientRuntimeException expected) { }
+	}
+}
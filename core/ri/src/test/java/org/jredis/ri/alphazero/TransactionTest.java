@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.jredis.FutureTransaction;
+import org.jredis.JRedis;
+import org.jredis.RedisException;
+import org.jredis.Transaction;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.ResponseStatus;
+import org.jredis.ri.alphazero.connection.SyncConnection;
+import org.jredis.ri.alphazero.connection.SyncPipelineConnection;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link Transaction} and {@link FutureTransaction} of the sync and 
+ * pipeline clients against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="transaction-tests")
+public class TransactionTest {
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	@Test
+	public void testSyncTransaction () throws RedisException {
+		Log.log("Testing JRedis transaction ...");
+		JRedis jredis = new JRedisClient(server.newConnectionSpec());
+		try {
+			jredis.flushdb();
+			jredis.set("counter", 10);
+			
+			Transaction tx = jredis.transaction()
+				.queue(Command.INCRBY, "counter", 5)
+				.queue(Command.SET, "foo", "bar")
+				.queue(Command.GET, "foo")
+				.queue(Command.EXISTS, "nokey")
+				.queue(Command.RPUSH, "list", "a")
+				.queue(Command.RPUSH, "list", "b")
+				.queue(Command.LRANGE, "list", 0, -1)
+				.queue(Command.TYPE, "list")
+				.queue(Command.LPOP, "foo");
+			assertEquals(tx.size(), 9);
+			
+			List<Object> results = tx.exec();
+			assertEquals(results.size(), 9);
+			assertEquals(results.get(0), Long.valueOf(15));
+			assertEquals(results.get(1), ResponseStatus.STATUS_OK);
+			assertEquals(new String((byte[]) results.get(2)), "bar");
+			assertEquals(results.get(3), Boolean.FALSE);
+			assertEquals(results.get(4), Long.valueOf(1));
+			assertEquals(results.get(5), Long.valueOf(2));
+			@SuppressWarnings("unchecked")
+			List<byte[]> list = (List<byte[]>) results.get(6);
+			assertEquals(list.size(), 2);
+			assertEquals(new String(list.get(1)), "b");
+			assertEquals(results.get(7), "list");
+			// executed commands fail individually
+			assertTrue(results.get(8) instanceof RedisException);
+			
+			assertEquals(jredis.incr("counter"), 16);
+			assertTrue(jredis.transaction().exec().isEmpty());
+		}
+		finally { jredis.quit(); }
+	}
+	
+	@Test
+	public void testAbort () throws RedisException {
+		Log.log("Testing transaction abort ...");
+		Connection conn = new SyncConnection(server.newConnectionSpec());
+		try {
+			conn.serviceRequest(Command.FLUSHDB);
+			try {
+				// a command unknown to the server fails the transaction
+				conn.serviceRequest(Command.EXEC, 
+						"SET".getBytes(), "2".getBytes(), "foo".getBytes(), "bar".getBytes(),
+						"NOSUCHCMD".getBytes(), "0".getBytes());
+				fail("transaction must be aborted");
+			}
+			catch (RedisException e) {
+				assertTrue(e.getMessage().contains("EXECABORT"), e.getMessage());
+			}
+			BulkResponse response = (BulkResponse) conn.serviceRequest(Command.GET, "foo".getBytes());
+			assertNull(response.getBulkData());
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+		
+		JRedis jredis = new JRedisClient(server.newConnectionSpec());
+		try {
+			jredis.transaction().queue(Command.QUIT);
+			fail("QUIT can not be queued in a transaction");
+		}
+		catch (IllegalArgumentException expected) { }
+		try {
+			jredis.transaction().queue(Command.SET, "foo", null);
+			fail("null args can not be queued");
+		}
+		catch (IllegalArgumentException expected) { }
+		finally { jredis.quit(); }
+	}
+	
+	@Test
+	public void testFutureTransaction () throws Exception {
+		Log.log("Testing JRedisFuture transaction ...");
+		JRedisPipeline pipeline = new JRedisPipeline(server.newConnectionSpec());
+		try {
+			pipeline.flushdb();
+			Future<Long> before = pipeline.incr("counter");
+			FutureTransaction tx = pipeline.transaction()
+				.queue(Command.INCR, "counter")
+				.queue(Command.SADD, "set", "a")
+				.queue(Command.SCARD, "set")
+				.queue(Command.INCR, "set");
+			Future<List<Object>> results = tx.exec();
+			Future<Long> after = pipeline.incr("counter");
+			
+			// not affected by queueing after exec
+			tx.queue(Command.PING);
+			
+			assertEquals(before.get().longValue(), 1);
+			List<Object> list = results.get();
+			assertEquals(list.size(), 4);
+			assertEquals(list.get(0), Long.valueOf(2));
+			assertEquals(list.get(1), Boolean.TRUE);
+			assertEquals(list.get(2), Long.valueOf(1));
+			assertTrue(list.get(3) instanceof RedisException);
+			assertEquals(after.get().longValue(), 3);
+			
+			assertTrue(pipeline.transaction().exec().get().isEmpty());
+		}
+		finally { pipeline.quit(); }
+	}
+	
+	@Test
+	public void testFutureTransactionAbort () throws Exception {
+		Log.log("Testing JRedisFuture transaction abort ...");
+		Connection conn = new SyncPipelineConnection(server.newConnectionSpec());
+		try {
+			Future<List<Object>> results = new JRedisFutureSupport.FutureResultSet(conn.queueRequest(Command.EXEC, 
+					"NOSUCHCMD".getBytes(), "0".getBytes()), Arrays.asList(Command.PING));
+			try {
+				results.get();
+				fail("transaction must be aborted");
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof RedisException);
+			}
+			assertFalse(conn.queueRequest(Command.PING).get().isError());
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+}
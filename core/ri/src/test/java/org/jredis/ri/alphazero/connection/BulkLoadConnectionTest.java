@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.jredis.JRedis;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.NotConnectedException;
+import org.jredis.ri.alphazero.JRedisClient;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link BulkLoadConnection} against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class BulkLoadConnectionTest {
+	
+	private LoopbackServer server;
+	private JRedis client;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+		client = new JRedisClient(server.newConnectionSpec());
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != client) client.quit();
+		if(null != server) server.shutdown();
+	}
+	
+	/** generates SETs of key:i to value-i */
+	private static Iterator<byte[][]> sets (final String prefix, final int cnt) {
+		return new Iterator<byte[][]>() {
+			int i = 0;
+			public boolean hasNext () { return i < cnt; }
+			public byte[][] next () {
+				byte[][] argv = { "SET".getBytes(), (prefix + i).getBytes(), ("value-" + i).getBytes() };
+				i++;
+				return argv;
+			}
+			public void remove () { throw new UnsupportedOperationException(); }
+		};
+	}
+	
+	private static byte[][] argv (String...args) {
+		byte[][] argv = new byte[args.length][];
+		for(int i=0; i<args.length; i++) argv[i] = args[i].getBytes();
+		return argv;
+	}
+	
+	@Test
+	public void testLoad () throws RedisException {
+		Log.log("Testing BulkLoadConnection load with a window of in-flight commands ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionProperty(Connection.Property.MAX_PENDING_REQUESTS, 100);
+		BulkLoadConnection loader = new BulkLoadConnection(spec);
+		try {
+			final int cnt = 20000;
+			BulkLoadConnection.Result result = loader.load(sets("bulk:", cnt));
+			Log.log("load: %s", result);
+			assertEquals(result.getCount(), cnt);
+			assertEquals(result.getErrorCount(), 0);
+			assertTrue(result.getBytesSent() > cnt * 30);
+			assertEquals(new String(client.get("bulk:0")), "value-0");
+			assertEquals(new String(client.get("bulk:" + (cnt - 1))), "value-" + (cnt - 1), "last command processed on return");
+			
+			// loads are repeatable on the connection, and values larger than the write buffer are sent as is
+			byte[] large = new byte[BulkLoadConnection.WRITE_BUFFER_SIZE + 100];
+			large[large.length - 1] = 'z';
+			result = loader.load(Collections.singletonList(new byte[][]{ "SET".getBytes(), "bulk:large".getBytes(), large }).iterator());
+			assertEquals(result.getCount(), 1);
+			assertEquals(client.get("bulk:large"), large);
+			
+			result = loader.load(Collections.<byte[][]>emptyList().iterator());
+			assertEquals(result.getCount(), 0);
+		}
+		finally { loader.quit(); }
+	}
+	
+	@Test
+	public void testErrors () throws RedisException {
+		Log.log("Testing BulkLoadConnection error replies ...");
+		BulkLoadConnection loader = new BulkLoadConnection(server.newConnectionSpec());
+		try {
+			List<byte[][]> commands = new ArrayList<byte[][]>();
+			commands.add(argv("SET", "err:str", "abc"));
+			commands.add(argv("INCR", "err:str"));
+			commands.add(argv("RPUSH", "err:list", "a"));
+			commands.add(argv("LRANGE", "err:list", "0", "-1"));
+			commands.add(argv("NOSUCHCOMMAND"));
+			commands.add(argv("GET", "err:str"));
+			commands.add(argv("GET", "err:list"));
+			final List<Long> indices = Collections.synchronizedList(new ArrayList<Long>());
+			BulkLoadConnection.Result result = loader.load(commands.iterator(), new BulkLoadConnection.ErrorListener() {
+				public void onError (long index, String message) {
+					Log.log("error at %d: %s", index, message);
+					indices.add(index);
+				}
+			});
+			assertEquals(result.getCount(), commands.size());
+			assertEquals(result.getErrorCount(), 3);
+			assertEquals(indices.toString(), "[1, 4, 6]", "errors are reported with their input index");
+		}
+		finally { loader.quit(); }
+	}
+	
+	@Test
+	public void testCommandFile () throws RedisException {
+		Log.log("Testing BulkLoadConnection load of a command file ...");
+		String file = 
+			"# comment\r\n" +
+			"SET file:a plain\r\n" +
+			"\n" +
+			"SET file:b \"quoted value\\twith \\\"escapes\\\" \\x41\"\n" +
+			"  set   'file:c'   'single \\n'  \n" +
+			"SADD file:set 'x y'";
+		BulkLoadConnection loader = new BulkLoadConnection(server.newConnectionSpec());
+		try {
+			BulkLoadConnection.Result result = loader.load(new ByteArrayInputStream(file.getBytes()), null);
+			assertEquals(result.getCount(), 4);
+			assertEquals(result.getErrorCount(), 0);
+			assertEquals(new String(client.get("file:a")), "plain");
+			assertEquals(new String(client.get("file:b")), "quoted value\twith \"escapes\" A");
+			assertEquals(new String(client.get("file:c")), "single \\n");
+			assertTrue(client.sismember("file:set", "x y"));
+		}
+		finally { loader.quit(); }
+		
+		for(String malformed : new String[]{ "SET k \"unterminated", "SET k \"v\"x", "SET k \"\\xZZ\"" }){
+			try {
+				Iterator<byte[][]> commands = BulkLoadConnection.readCommands(new ByteArrayInputStream(("PING\n" + malformed).getBytes()));
+				commands.next();
+				commands.hasNext();
+				fail("expecting IllegalArgumentException for " + malformed);
+			}
+			catch (IllegalArgumentException expected) {
+				assertTrue(expected.getMessage().startsWith("line 2:"), expected.getMessage());
+			}
+		}
+	}
+	
+	@Test
+	public void testFailure () throws RedisException {
+		Log.log("Testing BulkLoadConnection load failure ...");
+		BulkLoadConnection loader = new BulkLoadConnection(server.newConnectionSpec());
+		final Iterator<byte[][]> sets = sets("fail:", 10);
+		try {
+			loader.load(new Iterator<byte[][]>() {
+				int i = 0;
+				public boolean hasNext () { return true; }
+				public byte[][] next () {
+					if(i++ == 10) throw new IllegalStateException("input failed");
+					return sets.next();
+				}
+				public void remove () { throw new UnsupportedOperationException(); }
+			});
+			fail("expecting BulkLoadException");
+		}
+		catch (BulkLoadException e) {
+			assertTrue(e.getReplyCount() <= 10);
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		try {
+			loader.load(sets("fail:", 1));
+			fail("expecting NotConnectedException: a failed load closes the connection");
+		}
+		catch (NotConnectedException expected) { }
+		loader.quit();
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Future;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Allocation regression harness.  Drives a {@link SyncConnection} and a pipeline 
+ * ({@link AsyncPipelineConnection}) against the in-process {@link LoopbackStub}
+ * and measures the bytes allocated per request, for each {@link Command}, using
+ * the per-thread allocation counters of {@link com.sun.management.ThreadMXBean}.
+ * All client threads (requester and response handler) are measured.  Stub threads,
+ * and the threads that were live before the test (e.g. those left by other tests 
+ * of the suite), are excluded.
+ * <p>
+ * The measured bytes/request -- the least of {@link #MEASURED_ROUNDS} rounds -- must 
+ * not exceed the budget recorded in <code>allocation-budgets.properties</code> (keys are <code>&lt;modality&gt;.&lt;COMMAND&gt;</code>).
+ * Measurements are logged in the same format so the budgets can be (re)recorded 
+ * when a change <i>reduces</i> allocations.
+ * <p>
+ * The test is skipped if the JVM does not support thread allocation accounting.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+@Test(sequential = true, suiteName="allocation-tests")
+public class ConnectionAllocationTest {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** budgets resource -- relative to this class */
+	static final String BUDGETS_RESOURCE = "allocation-budgets.properties";
+	
+	static final int WARMUP_REQUESTS = 10000;
+	static final int MEASURED_REQUESTS = 5000;
+	/** the least bytes/request of the rounds is measured -- filters one-off allocations (e.g. of the JIT) */
+	static final int MEASURED_ROUNDS = 3;
+	static final int PIPELINE_BATCH = 100;
+	
+	private com.sun.management.ThreadMXBean	threadMXBean;
+	private LoopbackStub					stub;
+	private Properties						budgets;
+	/** ids of the threads live before the test, other than the test thread */
+	private final Set<Long>					excluded = new HashSet<Long>();
+	
+	/** commands measured and their (pre-allocated) args */
+	private final Map<Command, byte[][]>	requests = new LinkedHashMap<Command, byte[][]>();
+	
+	// ------------------------------------------------------------------------
+	// Setup
+	// ------------------------------------------------------------------------
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		java.lang.management.ThreadMXBean mxbean = ManagementFactory.getThreadMXBean();
+		if(!(mxbean instanceof com.sun.management.ThreadMXBean))
+			throw new SkipException("com.sun.management.ThreadMXBean not available");
+		threadMXBean = (com.sun.management.ThreadMXBean) mxbean;
+		if(!threadMXBean.isThreadAllocatedMemorySupported())
+			throw new SkipException("thread allocated memory accounting not supported");
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+		for(long id : threadMXBean.getAllThreadIds())
+			excluded.add(id);
+		excluded.remove(Thread.currentThread().getId());
+		
+		budgets = new Properties();
+		InputStream in = ConnectionAllocationTest.class.getResourceAsStream(BUDGETS_RESOURCE);
+		Assert.assertNotNull(in, "allocation budgets resource " + BUDGETS_RESOURCE);
+		try { budgets.load(in); }
+		finally { in.close(); }
+		
+		byte[] key = "alloc-key".getBytes();
+		byte[] value = "alloc-value".getBytes();
+		requests.put(Command.PING, new byte[0][]);
+		requests.put(Command.SET, new byte[][]{key, value});
+		requests.put(Command.GET, new byte[][]{key});
+		requests.put(Command.INCR, new byte[][]{key});
+		requests.put(Command.EXISTS, new byte[][]{key});
+		requests.put(Command.DEL, new byte[][]{key});
+		requests.put(Command.LPUSH, new byte[][]{key, value});
+		requests.put(Command.LRANGE, new byte[][]{key, Convert.toBytes(0), Convert.toBytes(-1)});
+		requests.put(Command.SADD, new byte[][]{key, value});
+		requests.put(Command.SMEMBERS, new byte[][]{key});
+		requests.put(Command.ZADD, new byte[][]{key, Convert.toBytes(1.0), value});
+		requests.put(Command.HSET, new byte[][]{key, key, value});
+		requests.put(Command.HGET, new byte[][]{key, key});
+		
+		stub = new LoopbackStub();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != stub) stub.shutdown();
+	}
+	
+	// ------------------------------------------------------------------------
+	// The Tests
+	// ------------------------------------------------------------------------
+	
+	@Test
+	public void testSyncConnectionAllocations () throws RedisException {
+		Log.log("TEST: allocations per request -- SyncConnection");
+		final Connection conn = new SyncConnection(stub.newConnectionSpec());
+		try {
+			checkBudgets("sync", new Requester() {
+				public void run (Command cmd, byte[][] args, int n) throws Exception {
+					for(int i=0; i<n; i++)
+						conn.serviceRequest(cmd, args);
+				}
+			});
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testPipelineConnectionAllocations () {
+		Log.log("TEST: allocations per request -- AsyncPipelineConnection");
+		final Connection conn = new AsyncPipelineConnection(stub.newConnectionSpec());
+		final List<Future<Response>> futures = new ArrayList<Future<Response>>(PIPELINE_BATCH);
+		try {
+			checkBudgets("pipeline", new Requester() {
+				public void run (Command cmd, byte[][] args, int n) throws Exception {
+					for(int i=0; i<n; i+=PIPELINE_BATCH){
+						futures.clear();
+						for(int j=0; j<PIPELINE_BATCH; j++)
+							futures.add(conn.queueRequest(cmd, args));
+						for(int j=0; j<PIPELINE_BATCH; j++)
+							futures.get(j).get();
+					}
+				}
+			});
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	/** issues n requests of cmd */
+	interface Requester {
+		void run (Command cmd, byte[][] args, int n) throws Exception;
+	}
+	
+	private void checkBudgets (String modality, Requester requester) {
+		List<String> violations = new ArrayList<String>();
+		for(Map.Entry<Command, byte[][]> e : requests.entrySet()){
+			Command cmd = e.getKey();
+			long perRequest;
+			try {
+				requester.run(cmd, e.getValue(), WARMUP_REQUESTS);
+				perRequest = Long.MAX_VALUE;
+				for(int round=0; round<MEASURED_ROUNDS; round++){
+					long start = allocatedBytes();
+					requester.run(cmd, e.getValue(), MEASURED_REQUESTS);
+					perRequest = Math.min(perRequest, (allocatedBytes() - start) / MEASURED_REQUESTS);
+				}
+			}
+			catch (Exception ex) {
+				Assert.fail(String.format("%s %s request failed", modality, cmd.name()), ex);
+				return;
+			}
+			
+			String key = modality + "." + cmd.name();
+			Log.log("%s=%d", key, perRequest);
+			String budget = budgets.getProperty(key);
+			if(null == budget)
+				violations.add(String.format("%s: no recorded budget (measured %d bytes/request)", key, perRequest));
+			else if(perRequest > Long.parseLong(budget.trim()))
+				violations.add(String.format("%s: %d bytes/request exceeds budget of %s", key, perRequest, budget.trim()));
+		}
+		Assert.assertTrue(violations.isEmpty(), "allocation budget violations: " + violations);
+	}
+	
+	/**
+	 * @return total bytes allocated by all live threads other than the stub's and the excluded 
+	 */
+	private long allocatedBytes () {
+		long[] ids = threadMXBean.getAllThreadIds();
+		ThreadInfo[] infos = threadMXBean.getThreadInfo(ids);
+		long total = 0;
+		for(int i=0; i<ids.length; i++){
+			if(excluded.contains(ids[i]) || null == infos[i] || infos[i].getThreadName().startsWith(LoopbackStub.THREAD_NAME_PREFIX))
+				continue;
+			long bytes = threadMXBean.getThreadAllocatedBytes(ids[i]);
+			if(bytes > 0) total += bytes;
+		}
+		return total;
+	}
+}
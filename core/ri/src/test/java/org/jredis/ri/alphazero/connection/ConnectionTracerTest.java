@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.connection.ConnectionTracer.Phase;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link ConnectionTracer} phases of the sync and pipeline connections,
+ * against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class ConnectionTracerTest {
+	
+	private LoopbackServer server;
+	private Recorder recorder;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	@AfterMethod
+	public void uninstall () {
+		ConnectionBase.setTracer(null);
+	}
+	
+	@Test
+	public void testSyncPhases () throws RedisException {
+		Log.log("Testing SyncConnection traced phases ...");
+		recorder = new Recorder(new InetSocketAddress(server.getAddress(), server.getPort()));
+		ConnectionBase.setTracer(recorder);
+		ConnectionSpec spec = server.newConnectionSpec();
+		ConnectionBase conn = new SyncConnection(spec);
+		try {
+			assertEquals(recorder.trace(), "[CONNECT:null]");
+			recorder.clear();
+			conn.serviceRequest(Command.GET, "foo".getBytes());
+			// only reliable connections lock
+			String lockWait = spec.getConnectionFlag(Connection.Flag.RELIABLE) ? "LOCK_WAIT:GET, " : "";
+			assertEquals(recorder.trace(), "[" + lockWait + "ENCODE:GET, FLUSH:GET, DECODE:GET]");
+			
+			ConnectionBase.setTracer(null);
+			recorder.clear();
+			conn.serviceRequest(Command.GET, "foo".getBytes());
+			assertEquals(recorder.trace(), "[]");
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testReliableSyncPhases () throws RedisException {
+		Log.log("Testing reliable SyncConnection traced phases ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionFlag(Connection.Flag.RELIABLE, true);
+		ConnectionBase conn = new SyncConnection(spec);
+		try {
+			recorder = new Recorder(new InetSocketAddress(server.getAddress(), server.getPort()));
+			ConnectionBase.setTracer(recorder);
+			conn.serviceRequest(Command.PING);
+			assertEquals(recorder.trace(), "[LOCK_WAIT:PING, ENCODE:PING, FLUSH:PING, DECODE:PING]");
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testPipelinePhases () throws Exception {
+		Log.log("Testing SyncPipelineConnection traced phases ...");
+		ConnectionBase conn = new SyncPipelineConnection(server.newConnectionSpec());
+		try {
+			recorder = new Recorder(new InetSocketAddress(server.getAddress(), server.getPort()));
+			ConnectionBase.setTracer(recorder);
+			conn.queueRequest(Command.GET, "foo".getBytes()).get();
+			assertEquals(recorder.trace(), "[ENCODE:GET, WINDOW_WAIT:GET, LOCK_WAIT:GET, FLUSH:GET, QUEUE_WAIT:GET, DECODE:GET]");
+		}
+		// await the QUIT response, so it is not traced by the next test
+		finally { conn.queueRequest(Command.QUIT).get(); }
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** records the phases traced for the address, checking their sequence in time */
+	static class Recorder implements ConnectionTracer {
+		final InetSocketAddress address;
+		final List<String> phases = new ArrayList<String>();
+		long last;
+		Recorder (InetSocketAddress address) {
+			this.address = address;
+		}
+		public synchronized void onPhase (Phase phase, Command cmd, InetSocketAddress address, long start, long duration) {
+			assertEquals(address, this.address);
+			assertTrue(duration >= 0, "duration");
+			if(phase != Phase.QUEUE_WAIT) 
+				assertTrue(start >= last, "phases in sequence");
+			last = start + duration;
+			phases.add(phase.name() + ":" + (null != cmd ? cmd.name() : null));
+		}
+		synchronized String trace () { return phases.toString(); }
+		synchronized void clear () { phases.clear(); }
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.Connection.Flag;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link HeartbeatService} against a {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class HeartbeatServiceTest {
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	/** @return number of live heartbeat worker threads */
+	private static int workerThreads () {
+		int cnt = 0;
+		for(Thread t : Thread.getAllStackTraces().keySet())
+			if(t.getName().startsWith("jredis-heartbeat-") && !t.getName().startsWith("jredis-heartbeat-scheduler")) 
+				cnt++;
+		return cnt;
+	}
+	
+	@Test
+	public void testStalledPipelinesDoNotHoldWorkers () throws Exception {
+		Log.log("Testing heartbeat PINGs of stalled pipelines ...");
+		final int n = HeartbeatService.WORKER_THREADS * 4;
+		List<ConnectionBase> conns = new ArrayList<ConnectionBase>(n);
+		try {
+			for(int i=0; i<n; i++) {
+				ConnectionSpec spec = server.newConnectionSpec();
+				spec.setHeartbeat(1);
+				if(!spec.getConnectionFlag(Flag.RELIABLE)) 
+					spec.setConnectionFlag(Flag.RELIABLE, true);
+				conns.add(new AsyncPipelineConnection(spec));
+			}
+			ConnectionBase conn = conns.get(0);
+			final long limit = System.currentTimeMillis() + 5000;
+			while(conn.getHeartbeatLatency().getSampleCount() == 0 && System.currentTimeMillis() < limit)
+				Thread.sleep(50);
+			assertTrue(conn.getHeartbeatLatency().getSampleCount() > 0, "idle pipeline must be PINGed");
+			
+			server.pause();
+			try {
+				Thread.sleep(2500);
+				final long samples = conn.getHeartbeatLatency().getSampleCount();
+				assertTrue(workerThreads() <= HeartbeatService.WORKER_THREADS, workerThreads() + " heartbeat workers");
+				Thread.sleep(1500);
+				// PING outstanding: the connection is skipped
+				assertEquals(conn.getHeartbeatLatency().getSampleCount(), samples);
+			}
+			finally { server.resume(); }
+		}
+		finally {
+			for(ConnectionBase conn : conns)
+				conn.queueRequest(Command.QUIT);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.support.Log;
+
+/**
+ * Minimal in-process Redis stub bound to the loopback address.  Requests are
+ * parsed (unified request protocol) and answered with a canned reply for the
+ * {@link Command.ResponseType} of the command -- no data is stored.  Replies 
+ * are constant in size, which makes the stub suitable for measuring the
+ * client side cost of commands.
+ * <p>
+ * Stub threads are named with the {@link LoopbackStub#THREAD_NAME_PREFIX} prefix.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public class LoopbackStub {
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+	
+	/** stub threads are named with this prefix */
+	public static final String THREAD_NAME_PREFIX = "loopback-stub";
+	
+	private static final byte[] STATUS_REPLY = "+OK\r\n".getBytes();
+	private static final byte[] NUMBER_REPLY = ":1\r\n".getBytes();
+	private static final byte[] STRING_REPLY = "+string\r\n".getBytes();
+	private static final byte[] BULK_REPLY = "$5\r\nvalue\r\n".getBytes();
+	private static final byte[] MULTI_BULK_REPLY = "*3\r\n$3\r\none\r\n$3\r\ntwo\r\n$5\r\nthree\r\n".getBytes();
+	
+	/** command name to command -- first mapping wins for commands sharing a name (e.g. SORT$STORE) */
+	private static final Map<String, Command> commands = new HashMap<String, Command>();
+	static {
+		for(Command cmd : Command.values()){
+			String name = new String(cmd.bytes);
+			if(!commands.containsKey(name))
+				commands.put(name, cmd);
+		}
+	}
+	
+	private final ServerSocket		serverSocket;
+	private final AtomicInteger		connectionCnt = new AtomicInteger();
+	private volatile boolean		running = true;
+
+	// ------------------------------------------------------------------------
+	// Constructor(s)
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Binds to an ephemeral port on the loopback address and starts accepting connections.
+	 * @throws IOException
+	 */
+	public LoopbackStub () throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Thread acceptor = new Thread(new Runnable() {
+			public void run () { accept(); }
+		}, THREAD_NAME_PREFIX + "-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	// ------------------------------------------------------------------------
+	// Interface
+	// ------------------------------------------------------------------------
+	
+	public InetAddress getAddress () { return serverSocket.getInetAddress(); }
+	
+	public int getPort () { return serverSocket.getLocalPort(); }
+	
+	/**
+	 * @return a new {@link ConnectionSpec} for this stub -- database 0, no credentials,
+	 * and the heartbeat disabled so that only the measured requests are sent.
+	 */
+	public ConnectionSpec newConnectionSpec () {
+		ConnectionSpec spec = DefaultConnectionSpec.newSpec(getAddress(), getPort(), 0, null);
+		spec.setHeartbeat(0);
+		return spec;
+	}
+	
+	public void shutdown () {
+		running = false;
+		try { serverSocket.close(); }
+		catch (IOException e) { Log.problem("LoopbackStub on shutdown: %s", e.getMessage()); }
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner ops
+	// ------------------------------------------------------------------------
+	
+	private void accept () {
+		while(running){
+			try {
+				final Socket socket = serverSocket.accept();
+				Thread handler = new Thread(new Runnable() {
+					public void run () { service(socket); }
+				}, THREAD_NAME_PREFIX + "-" + connectionCnt.incrementAndGet());
+				handler.setDaemon(true);
+				handler.start();
+			}
+			catch (IOException e) {
+				if(running) Log.problem("LoopbackStub accept: %s", e.getMessage());
+			}
+		}
+	}
+	
+	private void service (Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			byte[] name;
+			while(running && (name = readCommandName(in)) != null){
+				Command cmd = commands.get(new String(name));
+				if(null == cmd){
+					out.write(("-ERR unknown command '" + new String(name) + "'\r\n").getBytes());
+				}
+				else {
+					switch (cmd.responseType){
+					case VIRTUAL:
+						socket.close();
+						return;
+					case STATUS:		out.write(STATUS_REPLY); break;
+					case BOOLEAN: 
+					case NUMBER:		out.write(NUMBER_REPLY); break;
+					case STRING:		out.write(STRING_REPLY); break;
+					case BULK:			out.write(BULK_REPLY); break;
+					case MULTI_BULK:	out.write(MULTI_BULK_REPLY); break;
+					default:			out.write(("-ERR not supported '" + cmd.name() + "'\r\n").getBytes());
+					}
+				}
+				// flush only when the pipelined requests have been consumed
+				if(in.available() == 0) 
+					out.flush();
+			}
+		}
+		catch (IOException e) { /* connection closed */ }
+		finally {
+			try { socket.close(); } catch (IOException e) { /* nop */ }
+		}
+	}
+	
+	/**
+	 * Reads a complete request and returns the command name bytes.
+	 * @return command name or null on EOF
+	 */
+	private static byte[] readCommandName (InputStream in) throws IOException {
+		int c = in.read();
+		if(c == -1) return null;
+		if(c != '*') throw new IOException("expecting multi-bulk request -- got " + (char)c);
+		int argc = readNumber(in);
+		byte[] name = null;
+		for(int i=0; i<argc; i++){
+			if(in.read() != '$') throw new IOException("expecting bulk argument");
+			byte[] arg = new byte[readNumber(in)];
+			int off = 0;
+			while(off < arg.length){
+				int n = in.read(arg, off, arg.length - off);
+				if(n == -1) throw new IOException("EOF");
+				off += n;
+			}
+			in.read(); in.read(); // CRLF
+			if(i == 0) name = arg;
+		}
+		return name;
+	}
+	
+	private static int readNumber (InputStream in) throws IOException {
+		int n = 0;
+		int c;
+		while((c = in.read()) != '\r'){
+			if(c == -1) throw new IOException("EOF");
+			n = n*10 + (c - '0');
+		}
+		in.read(); // LF
+		return n;
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.jredis.JRedis;
+import org.jredis.NotSupportedException;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.Monitor;
+import org.jredis.connector.Monitor.Record;
+import org.jredis.ri.alphazero.JRedisClient;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link MonitorConnection} feed parser, and the feed of the commands
+ * of a {@link JRedis} client, against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class MonitorConnectionTest {
+	
+	private static final long WAIT_MSECS = 10000;
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	private static Record parse (String line) {
+		byte[] bytes = line.getBytes();
+		return MonitorConnection.parse(bytes, 0, bytes.length);
+	}
+	
+	@Test
+	public void testParse () {
+		Log.log("Testing MonitorConnection feed parser ...");
+		
+		Record record = parse("1339518083.107412 [3 127.0.0.1:60866] \"set\" \"foo\" \"bar\"");
+		assertEquals(record.getTimestamp(), 1339518083107412L);
+		assertEquals(record.getDatabase(), 3);
+		assertEquals(record.getClient(), "127.0.0.1:60866");
+		assertEquals(record.getCommandName(), "SET");
+		assertEquals(record.getArgs().length, 3);
+		assertEquals(new String(record.getArgs()[2]), "bar");
+		
+		record = parse("1275560880.612339 (db 1) \"lpush\" \"list\" \"\"");
+		assertEquals(record.getTimestamp(), 1275560880612339L);
+		assertEquals(record.getDatabase(), 1);
+		assertNull(record.getClient());
+		assertEquals(record.getArgs()[2].length, 0, "empty arg");
+		
+		record = parse("1275560880.5 \"ping\"");
+		assertEquals(record.getTimestamp(), 1275560880500000L, "micros of a short fraction");
+		assertEquals(record.getDatabase(), -1);
+		assertEquals(record.getCommandName(), "PING");
+		
+		record = parse("1339518083.107412 [0 lua] \"set\" \"a \\\"q\\\" \\\\ \\r\\n\\t\" \"\\x00\\xff\\x7F\"");
+		assertEquals(record.getClient(), "lua");
+		assertEquals(new String(record.getArgs()[1]), "a \"q\" \\ \r\n\t");
+		assertEquals(record.getArgs()[2], new byte[]{0, (byte) 0xff, 0x7f});
+		
+		assertNull(parse("OK"), "not a record");
+		assertNull(parse("1339518083.107412 [0 127.0.0.1:60866]"), "no command");
+		for(String malformed : new String[]{ "1339518083.1 [0 x", "1339518083.1 set", "1339518083.1 \"set", "1339518083.1 \"\\x0\"", "1339518083.1 (0) \"get\"" }){
+			try {
+				parse(malformed);
+				fail("expecting IllegalArgumentException for " + malformed);
+			}
+			catch (IllegalArgumentException expected) { }
+		}
+	}
+	
+	@Test
+	public void testFeed () throws RedisException, InterruptedException {
+		Log.log("Testing MonitorConnection feed ...");
+		Collector collector = new Collector();
+		MonitorConnection monitor = new MonitorConnection(server.newConnectionSpec(), collector);
+		JRedis client = new JRedisClient(server.newConnectionSpec().setDatabase(2));
+		try {
+			assertEquals(monitor.getModality(), Connection.Modality.Monitor);
+			// the feed starts once the server has processed MONITOR
+			long deadline = System.currentTimeMillis() + WAIT_MSECS;
+			while(collector.records.isEmpty() && System.currentTimeMillis() < deadline){
+				client.ping();
+				Thread.sleep(10);
+			}
+			assertFalse(collector.records.isEmpty(), "monitor feed started");
+			
+			final long start = System.currentTimeMillis() * 1000;
+			byte[] value = new byte[]{ 'a', '"', 0, '\n', (byte) 0xfe };
+			client.set("monitored", value);
+			client.get("monitored");
+			
+			Record set = collector.await("SET");
+			assertEquals(set.getArgs().length, 3);
+			assertEquals(new String(set.getArgs()[1]), "monitored");
+			assertEquals(set.getArgs()[2], value, "binary safe args");
+			assertEquals(set.getDatabase(), 2);
+			assertNotNull(set.getClient());
+			assertTrue(set.getTimestamp() >= start - 1000000 && set.getTimestamp() <= start + 1000000 * 10, "server time");
+			
+			Record get = collector.await("GET");
+			assertTrue(get.getTimestamp() >= set.getTimestamp(), "in order processed by the server");
+			assertTrue(monitor.getRecordCount() >= 3);
+		}
+		finally {
+			client.quit();
+			monitor.quit();
+		}
+	}
+	
+	@Test
+	public void testConnectionFactory () {
+		Log.log("Testing Monitor modality connection factory ...");
+		try {
+			new DefaultConnectionFactory().newConnection(server.newConnectionSpec().setModality(Connection.Modality.Monitor));
+			fail("expecting NotSupportedException: monitor connections require a listener");
+		}
+		catch (NotSupportedException expected) { }
+	}
+	
+	/** queues the records of the feed */
+	static final class Collector implements Monitor.Listener {
+		final BlockingQueue<Record> records = new LinkedBlockingQueue<Record>();
+		
+		public void onCommand (Record record) {
+			records.add(record);
+		}
+		
+		/** @return the next record of the command, skipping others */
+		Record await (String command) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + WAIT_MSECS;
+			Record record;
+			while((record = records.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) != null){
+				if(record.getCommandName().equals(command)) return record;
+			}
+			fail("timed out waiting for " + command);
+			return null;
+		}
+	}
+}
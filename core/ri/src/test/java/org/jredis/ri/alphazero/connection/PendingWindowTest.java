@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.PipelineSaturatedException;
+import org.jredis.connector.Connection.Event;
+import org.jredis.connector.Connection.Overflow;
+import org.jredis.connector.Connection.Property;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the in-flight window of pipelines against a stalled {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class PendingWindowTest {
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	@Test
+	public void testUnbounded () throws Exception {
+		Log.log("Testing unbounded pipeline window occupancy ...");
+		ConnectionBase conn = new AsyncPipelineConnection(server.newConnectionSpec());
+		try {
+			List<Future<Response>> futures = new ArrayList<Future<Response>>();
+			server.pause();
+			try {
+				for(int i=0; i<100; i++)
+					futures.add(conn.queueRequest(Command.SET, "key".getBytes(), "value".getBytes()));
+				assertEquals(conn.getMetrics().getPendingRequests(), 100);
+				assertEquals(conn.getMetrics().getPendingBytes(), 100 * 8);
+			}
+			finally { server.resume(); }
+			for(Future<Response> future : futures) future.get();
+			assertEquals(conn.getMetrics().getPendingRequests(), 0);
+			assertEquals(conn.getMetrics().getPendingBytes(), 0);
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testBlock () throws Exception {
+		Log.log("Testing pipeline window with BLOCK overflow ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionProperty(Property.MAX_PENDING_REQUESTS, 4);
+		final ConnectionBase conn = new AsyncPipelineConnection(spec);
+		final AtomicInteger saturated = new AtomicInteger();
+		conn.addListener(new Connection.Listener() {
+			public void onEvent (Event event) {
+				if(event.getType() == Event.Type.SATURATED) saturated.incrementAndGet();
+			}
+		});
+		try {
+			final List<Future<Response>> futures = new ArrayList<Future<Response>>();
+			Thread producer = null;
+			server.pause();
+			try {
+				for(int i=0; i<4; i++)
+					futures.add(conn.queueRequest(Command.PING));
+				assertEquals(saturated.get(), 1);
+				assertEquals(conn.getMetrics().getPendingRequests(), 4);
+				
+				final AtomicReference<Future<Response>> blocked = new AtomicReference<Future<Response>>();
+				producer = new Thread(new Runnable() {
+					public void run () { blocked.set(conn.queueRequest(Command.PING)); }
+				});
+				producer.start();
+				producer.join(200);
+				assertTrue(producer.isAlive(), "producer must block on a full window");
+				assertEquals(conn.getMetrics().getPendingRequests(), 4);
+				
+				server.resume();
+				producer.join(5000);
+				assertFalse(producer.isAlive());
+				futures.add(blocked.get());
+			}
+			finally { server.resume(); }
+			for(Future<Response> future : futures) future.get();
+			assertEquals(conn.getMetrics().getPendingRequests(), 0);
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testFail () throws Exception {
+		Log.log("Testing pipeline window with FAIL overflow ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionProperty(Property.MAX_PENDING_BYTES, 16L);
+		spec.setConnectionProperty(Property.PENDING_OVERFLOW, Overflow.FAIL);
+		ConnectionBase conn = new AsyncPipelineConnection(spec);
+		try {
+			List<Future<Response>> futures = new ArrayList<Future<Response>>();
+			server.pause();
+			try {
+				futures.add(conn.queueRequest(Command.SET, "key".getBytes(), "value".getBytes()));
+				futures.add(conn.queueRequest(Command.SET, "key".getBytes(), "value".getBytes()));
+				try {
+					conn.queueRequest(Command.SET, "key".getBytes(), "value".getBytes());
+					fail("request exceeding the window must be rejected");
+				}
+				catch (PipelineSaturatedException expected) { }
+				assertEquals(conn.getMetrics().getPendingBytes(), 16);
+			}
+			finally { server.resume(); }
+			for(Future<Response> future : futures) future.get();
+			
+			// oversized requests are admitted into an empty window
+			conn.queueRequest(Command.SET, "key".getBytes(), new byte[64]).get();
+			assertEquals(conn.getMetrics().getPendingBytes(), 0);
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.NotConnectedException;
+import org.jredis.connector.Connection.Event;
+import org.jredis.connector.Connection.Flag;
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests pipeline connection resets against a {@link LoopbackServer} that goes away.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class PipelineResetTest {
+	
+	private static ConnectionSpec newSpec (LoopbackServer server, boolean reliable) {
+		ConnectionSpec spec = server.newConnectionSpec();
+		// note: only set if it differs -- the spec flags are toggled
+		if(spec.getConnectionFlag(Flag.RELIABLE) != reliable)
+			spec.setConnectionFlag(Flag.RELIABLE, reliable);
+		return spec;
+	}
+	
+	/** @return latch counted down when the connection disconnects */
+	private static CountDownLatch onDisconnect (Connection conn) {
+		final CountDownLatch disconnected = new CountDownLatch(1);
+		conn.addListener(new Connection.Listener() {
+			public void onEvent (Event event) {
+				if(event.getType() == Event.Type.DISCONNECTED) disconnected.countDown();
+			}
+		});
+		return disconnected;
+	}
+	
+	@Test
+	public void testUnreliableResetFailsUnanswered () throws Exception {
+		Log.log("Testing reset of a pipeline that is not RELIABLE ...");
+		LoopbackServer server = new LoopbackServer();
+		ConnectionBase conn = new AsyncPipelineConnection(newSpec(server, false));
+		try {
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes()).get();
+			server.pause();
+			Future<Response> unanswered = conn.queueRequest(Command.SET, "foo".getBytes(), "baz".getBytes());
+			server.shutdown();
+			try {
+				unanswered.get(5, TimeUnit.SECONDS);
+				fail("unanswered request must fail");
+			}
+			catch (ExecutionException expected) { }
+			try {
+				conn.queueRequest(Command.GET, "foo".getBytes());
+				fail("pipeline must not reconnect");
+			}
+			catch (RuntimeException expected) { }
+		}
+		finally { server.shutdown(); }
+	}
+	
+	@Test
+	public void testReliableResetRejectsRequestsWhileReconnecting () throws Exception {
+		Log.log("Testing requests queued while a RELIABLE pipeline reconnects ...");
+		LoopbackServer server = new LoopbackServer();
+		final int port = server.getPort();
+		ConnectionSpec spec = newSpec(server, true);
+		spec.setReconnectCnt(100);
+		ConnectionBase conn = new AsyncPipelineConnection(spec);
+		CountDownLatch disconnected = onDisconnect(conn);
+		try {
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes()).get();
+			server.pause();
+			Future<Response> replayed = conn.queueRequest(Command.GET, "foo".getBytes());
+			server.shutdown();
+			assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+			
+			// server is down: the reconnect backs off, and requests are rejected meanwhile 
+			final long start = System.nanoTime();
+			try {
+				conn.queueRequest(Command.GET, "foo".getBytes());
+				fail("request must be rejected while reconnecting");
+			}
+			catch (NotConnectedException expected) { }
+			final long msecs = (System.nanoTime() - start) / 1000000;
+			assertTrue(msecs < 100, "rejected after " + msecs + " msecs");
+			
+			Thread.sleep(200);
+			assertFalse(replayed.isDone());
+			server = new LoopbackServer(port);
+			
+			// replayed on the new server -- which does not have foo 
+			assertNull(((BulkResponse) replayed.get(5, TimeUnit.SECONDS)).getBulkData());
+			conn.queueRequest(Command.SET, "foo".getBytes(), "qux".getBytes()).get();
+		}
+		finally { 
+			conn.queueRequest(Command.QUIT);
+			server.shutdown(); 
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jredis.JRedis;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.Subscriber;
+import org.jredis.connector.Subscriber.Publication;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.JRedisClient;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link PubSubConnection} subscriptions and message dispatch, with
+ * messages published by a {@link JRedis} client, against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class PubSubConnectionTest {
+	
+	private static final long WAIT_MSECS = 10000;
+	
+	private LoopbackServer server;
+	private JRedis publisher;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+		publisher = new JRedisClient(server.newConnectionSpec());
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != publisher) publisher.quit();
+		if(null != server) server.shutdown();
+	}
+	
+	@Test
+	public void testSubscribe () throws RedisException {
+		Log.log("Testing PubSubConnection channel subscriptions ...");
+		PubSubConnection subscriber = new PubSubConnection(server.newConnectionSpec());
+		try {
+			Collector collector = new Collector();
+			subscriber.subscribe(collector, "inval:1", "inval:2");
+			awaitSubscriptions(subscriber, 2);
+			
+			final int cnt = 1000;
+			for(int i=0; i<cnt; i++)
+				assertEquals(publisher.publish("inval:" + (i % 2 + 1), "key-" + i), 1);
+			assertEquals(publisher.publish("inval:3", "nobody"), 0);
+			
+			List<Publication> received = collector.await(cnt);
+			assertEquals(received.size(), cnt);
+			int[] next = { 0, 1 };
+			for(Publication message : received){
+				int channel = message.getChannel().equals("inval:1") ? 0 : 1;
+				assertNull(message.getPattern());
+				assertEquals(new String(message.getData()), "key-" + next[channel], "in order of publication on the channel");
+				next[channel] += 2;
+			}
+			assertFalse(collector.concurrent.get(), "delivery is serial");
+			
+			subscriber.unsubscribe("inval:1");
+			awaitSubscriptions(subscriber, 1);
+			assertEquals(publisher.publish("inval:1", "gone"), 0);
+			subscriber.unsubscribe();
+			awaitSubscriptions(subscriber, 0);
+			assertEquals(publisher.publish("inval:2", "gone"), 0);
+		}
+		finally { subscriber.quit(); }
+	}
+	
+	@Test
+	public void testSmallReadBuffer () throws RedisException {
+		Log.log("Testing PubSubConnection replies spanning the read buffer ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setSocketProperty(Connection.Socket.Property.SO_RCVBUF, 16);
+		PubSubConnection subscriber = new PubSubConnection(spec);
+		try {
+			Collector collector = new Collector();
+			subscriber.subscribe(collector, "inval:spanning-a-long-channel-name");
+			awaitSubscriptions(subscriber, 1);
+			
+			StringBuilder large = new StringBuilder();
+			for(int i=0; i<100; i++) large.append("data-").append(i);
+			final String[] messages = { "", "x", "key-12345678901234567890", large.toString() };
+			for(String message : messages)
+				assertEquals(publisher.publish("inval:spanning-a-long-channel-name", message), 1);
+			
+			List<Publication> received = collector.await(messages.length);
+			assertEquals(received.size(), messages.length);
+			for(int i=0; i<messages.length; i++){
+				assertEquals(received.get(i).getChannel(), "inval:spanning-a-long-channel-name");
+				assertEquals(new String(received.get(i).getData()), messages[i]);
+			}
+		}
+		finally { subscriber.quit(); }
+	}
+	
+	@Test
+	public void testPatternBatches () throws RedisException {
+		Log.log("Testing PubSubConnection pattern subscriptions and batch delivery ...");
+		final int batchSize = 16;
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionProperty(Connection.Property.MESSAGE_BATCH_SIZE, batchSize);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		PubSubConnection subscriber = new PubSubConnection(spec, executor);
+		try {
+			BatchCollector[] collectors = { new BatchCollector(), new BatchCollector() };
+			subscriber.psubscribe(collectors[0], "inval:a*");
+			subscriber.psubscribe(collectors[1], "inval:b*");
+			awaitSubscriptions(subscriber, 2);
+			
+			final int cnt = 2000;
+			for(int i=0; i<cnt; i++)
+				assertEquals(publisher.publish((i % 2 == 0 ? "inval:a" : "inval:b") + i % 10, String.valueOf(i)), 1);
+			for(BatchCollector collector : collectors) 
+				collector.gate.countDown();
+			
+			for(int c=0; c<collectors.length; c++){
+				List<Publication> received = collectors[c].await(cnt / 2);
+				assertEquals(received.size(), cnt / 2);
+				for(int i=0; i<received.size(); i++){
+					Publication message = received.get(i);
+					int n = i * 2 + c;
+					assertEquals(message.getPattern(), c == 0 ? "inval:a*" : "inval:b*");
+					assertEquals(message.getChannel(), (c == 0 ? "inval:a" : "inval:b") + n % 10);
+					assertEquals(new String(message.getData()), String.valueOf(n), "in order of publication");
+				}
+				assertFalse(collectors[c].concurrent.get(), "delivery is serial");
+				assertTrue(collectors[c].maxBatch <= batchSize, "batch size " + collectors[c].maxBatch);
+				assertTrue(collectors[c].batches < cnt / 2, "messages are batched");
+			}
+		}
+		finally { 
+			subscriber.quit(); 
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testHeartbeatPing () throws Exception {
+		Log.log("Testing PubSubConnection heartbeat PING ...");
+		PubSubConnection subscriber = new PubSubConnection(server.newConnectionSpec());
+		try {
+			assertFalse(subscriber.doQueueRequest(Command.PING).get().isError());
+			subscriber.subscribe(new Collector(), "inval:ping");
+			awaitSubscriptions(subscriber, 1);
+			assertFalse(subscriber.doQueueRequest(Command.PING).get().isError());
+			try {
+				subscriber.doQueueRequest(Command.GET, "foo".getBytes());
+				fail("subscriber connections only support PING");
+			}
+			catch (org.jredis.NotSupportedException expected) { }
+		}
+		finally { subscriber.quit(); }
+	}
+	
+	@Test
+	public void testConnectionFactory () {
+		Log.log("Testing PubSub connections of the DefaultConnectionFactory ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setModality(Connection.Modality.PubSub);
+		Connection conn = new DefaultConnectionFactory().newConnection(spec);
+		assertTrue(conn instanceof PubSubConnection);
+		((Subscriber) conn).quit();
+	}
+	
+	private static void awaitSubscriptions (Subscriber subscriber, int cnt) {
+		long deadline = System.currentTimeMillis() + WAIT_MSECS;
+		while(subscriber.getSubscriptionCount() != cnt && System.currentTimeMillis() < deadline)
+			Thread.yield();
+		assertEquals(subscriber.getSubscriptionCount(), cnt);
+	}
+	
+	/** collects the messages, and detects concurrent delivery */
+	static class Collector implements Subscriber.Listener {
+		final List<Publication> received = Collections.synchronizedList(new ArrayList<Publication>());
+		final AtomicInteger inflight = new AtomicInteger();
+		final AtomicBoolean concurrent = new AtomicBoolean();
+		
+		public void onMessage (Publication message) {
+			enter();
+			received.add(message);
+			exit();
+		}
+		void enter () { if(inflight.incrementAndGet() > 1) concurrent.set(true); }
+		void exit () { inflight.decrementAndGet(); }
+		
+		List<Publication> await (int cnt) {
+			long deadline = System.currentTimeMillis() + WAIT_MSECS;
+			while(received.size() < cnt && System.currentTimeMillis() < deadline)
+				Thread.yield();
+			return received;
+		}
+	}
+	
+	/** collects the batches -- the first delivery is held until the gate opens */
+	static class BatchCollector extends Collector implements Subscriber.BatchListener {
+		final CountDownLatch gate = new CountDownLatch(1);
+		volatile int maxBatch;
+		volatile int batches;
+		
+		public void onMessages (List<Publication> messages) {
+			try { gate.await(WAIT_MSECS, TimeUnit.MILLISECONDS); }
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			enter();
+			batches++;
+			maxBatch = Math.max(maxBatch, messages.size());
+			received.addAll(messages);
+			Thread.yield();
+			exit();
+		}
+		@Override
+		public void onMessage (Publication message) {
+			fail("batch listeners are delivered batches");
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.RequestTimeoutException;
+import org.jredis.connector.Connection.Event;
+import org.jredis.connector.Connection.Property;
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests request deadlines and cancellation of pipelines against a stalled 
+ * {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class RequestDeadlineTest {
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	private static String value (Future<Response> future) throws Exception {
+		return new String(((BulkResponse) future.get()).getBulkData());
+	}
+	
+	@Test
+	public void testDeadline () throws Exception {
+		Log.log("Testing pipeline request deadline ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionProperty(Property.REQUEST_TIMEOUT, 100L);
+		ConnectionBase conn = new AsyncPipelineConnection(spec);
+		try {
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes()).get();
+			Future<Response> late;
+			server.pause();
+			try {
+				final long start = System.nanoTime();
+				late = conn.queueRequest(Command.GET, "foo".getBytes());
+				try {
+					late.get();
+					fail("request must time out");
+				}
+				catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof RequestTimeoutException);
+				}
+				final long msecs = (System.nanoTime() - start) / 1000000;
+				assertTrue(msecs >= 100 && msecs < 1000, "timed out after " + msecs + " msecs");
+				assertEquals(conn.getMetrics().metricsFor(Command.GET).getErrorCount(), 1);
+			}
+			finally { server.resume(); }
+			
+			// late response is discarded, and the pipeline remains in sync
+			conn.queueRequest(Command.SET, "foo".getBytes(), "baz".getBytes());
+			assertEquals(value(conn.queueRequest(Command.GET, "foo".getBytes())), "baz");
+			assertTrue(late.isDone());
+			assertEquals(conn.getMetrics().metricsFor(Command.GET).getRequestCount(), 2);
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testResetOnTimedOutRequests () throws Exception {
+		Log.log("Testing pipeline reset on timed out requests ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionProperty(Property.REQUEST_TIMEOUT, 50L);
+		spec.setConnectionProperty(Property.MAX_TIMED_OUT_REQUESTS, 3);
+		ConnectionBase conn = new AsyncPipelineConnection(spec);
+		final AtomicInteger connects = new AtomicInteger();
+		conn.addListener(new Connection.Listener() {
+			public void onEvent (Event event) {
+				if(event.getType() == Event.Type.CONNECTED) connects.incrementAndGet();
+			}
+		});
+		try {
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes()).get();
+			server.pause();
+			try {
+				Future<Response> last = null;
+				for(int i=0; i<3; i++)
+					last = conn.queueRequest(Command.GET, "foo".getBytes());
+				try {
+					last.get();
+					fail("request must time out");
+				}
+				catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof RequestTimeoutException);
+				}
+				final long limit = System.currentTimeMillis() + 5000;
+				while(connects.get() == 0 && System.currentTimeMillis() < limit)
+					Thread.sleep(10);
+				assertEquals(connects.get(), 1, "pipeline must reconnect");
+			}
+			finally { server.resume(); }
+			assertEquals(value(conn.queueRequest(Command.GET, "foo".getBytes())), "bar");
+			assertEquals(conn.getMetrics().getPendingRequests(), 0);
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testCancel () throws Exception {
+		Log.log("Testing pipeline request cancel ...");
+		ConnectionBase conn = new AsyncPipelineConnection(server.newConnectionSpec());
+		try {
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes()).get();
+			Future<Response> cancelled;
+			server.pause();
+			try {
+				cancelled = conn.queueRequest(Command.GET, "foo".getBytes());
+				assertTrue(cancelled.cancel(false));
+				assertFalse(cancelled.cancel(false));
+				assertTrue(cancelled.isCancelled());
+				assertTrue(cancelled.isDone());
+				try {
+					cancelled.get();
+					fail("get of a cancelled request must raise CancellationException");
+				}
+				catch (CancellationException expected) { }
+			}
+			finally { server.resume(); }
+			
+			Future<Response> future = conn.queueRequest(Command.GET, "foo".getBytes());
+			assertEquals(value(future), "bar");
+			assertFalse(future.cancel(false));
+			assertFalse(future.isCancelled());
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testCompletionListener () throws Exception {
+		Log.log("Testing pipeline request completion listener ...");
+		ConnectionBase conn = new AsyncPipelineConnection(server.newConnectionSpec());
+		final AtomicInteger notified = new AtomicInteger();
+		final CountDownLatch responded = new CountDownLatch(1);
+		PendingRequest.CompletionListener listener = new PendingRequest.CompletionListener() {
+			public void onCompletion (PendingRequest request) {
+				notified.incrementAndGet();
+				if(request.isDone() && !request.isCancelled()) responded.countDown();
+			}
+		};
+		try {
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes()).get();
+			server.pause();
+			try {
+				PendingRequest cancelled = (PendingRequest) conn.queueRequest(Command.GET, "foo".getBytes());
+				cancelled.setCompletionListener(listener);
+				assertEquals(notified.get(), 0);
+				try {
+					cancelled.setCompletionListener(listener);
+					fail("a pending request has at most one listener");
+				}
+				catch (IllegalStateException expected) { }
+				assertTrue(cancelled.cancel(false));
+				assertEquals(notified.get(), 1);
+				assertFalse(cancelled.cancel(false));
+				assertEquals(notified.get(), 1);
+			}
+			finally { server.resume(); }
+			
+			PendingRequest request = (PendingRequest) conn.queueRequest(Command.GET, "foo".getBytes());
+			request.setCompletionListener(listener);
+			assertTrue(responded.await(5, TimeUnit.SECONDS));
+			assertEquals(notified.get(), 2);
+			
+			// set on a completed request: notified on the calling thread
+			request = (PendingRequest) conn.queueRequest(Command.GET, "foo".getBytes());
+			request.get();
+			request.setCompletionListener(listener);
+			assertEquals(notified.get(), 3);
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import org.jredis.ElementVisitor;
+import org.jredis.RedisException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.connector.RequestInterceptor;
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the {@link RequestInterceptor} chain of the sync and pipeline 
+ * connections, against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class RequestInterceptorTest {
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	@Test
+	public void testSyncChain () throws RedisException {
+		Log.log("Testing SyncConnection interceptor chain ...");
+		ConnectionBase conn = new SyncConnection(server.newConnectionSpec());
+		try {
+			List<String> trace = new ArrayList<String>();
+			RequestInterceptor outer = new Tracer("outer", trace);
+			RequestInterceptor inner = new Tracer("inner", trace);
+			assertTrue(conn.addInterceptor(outer));
+			assertTrue(conn.addInterceptor(inner));
+			assertFalse(conn.addInterceptor(outer));
+			
+			conn.serviceRequest(Command.PING);
+			assertEquals(trace.toString(), "[outer:PING, inner:PING]");
+			
+			assertTrue(conn.removeInterceptor(outer));
+			assertFalse(conn.removeInterceptor(outer));
+			trace.clear();
+			conn.serviceRequest(Command.PING);
+			assertEquals(trace.toString(), "[inner:PING]");
+			
+			assertTrue(conn.removeInterceptor(inner));
+			trace.clear();
+			conn.serviceRequest(Command.PING);
+			assertTrue(trace.isEmpty());
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testKeyPrefix () throws RedisException {
+		Log.log("Testing SyncConnection key rewriting interceptor ...");
+		ConnectionBase conn = new SyncConnection(server.newConnectionSpec());
+		try {
+			RequestInterceptor prefix = new KeyPrefix("ns:");
+			conn.addInterceptor(prefix);
+			conn.serviceRequest(Command.SET, "foo".getBytes(), "bar".getBytes());
+			assertEquals(new String(((BulkResponse) conn.serviceRequest(Command.GET, "foo".getBytes())).getBulkData()), "bar");
+			
+			conn.removeInterceptor(prefix);
+			assertNull(((BulkResponse) conn.serviceRequest(Command.GET, "foo".getBytes())).getBulkData());
+			assertEquals(new String(((BulkResponse) conn.serviceRequest(Command.GET, "ns:foo".getBytes())).getBulkData()), "bar");
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testVisitorChain () throws RedisException {
+		Log.log("Testing SyncConnection interceptor chain of streamed requests ...");
+		SyncConnection conn = new SyncConnection(server.newConnectionSpec());
+		try {
+			List<String> trace = new ArrayList<String>();
+			conn.addInterceptor(new Tracer("tracer", trace));
+			conn.addInterceptor(new KeyPrefix("ns:"));
+			conn.serviceRequest(Command.RPUSH, "list".getBytes(), "a".getBytes());
+			conn.serviceRequest(Command.RPUSH, "list".getBytes(), "b".getBytes());
+			
+			final List<String> visited = new ArrayList<String>();
+			trace.clear();
+			long n = conn.serviceRequest(new ElementVisitor() {
+				public boolean visit (ByteBuffer element) {
+					byte[] bytes = new byte[element.remaining()];
+					element.get(bytes);
+					visited.add(new String(bytes));
+					return true;
+				}
+			}, Command.LRANGE, "list".getBytes(), "0".getBytes(), "-1".getBytes());
+			assertEquals(n, 2);
+			assertEquals(visited.toString(), "[a, b]");
+			assertEquals(trace.toString(), "[tracer:LRANGE]");
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testPipelineChain () throws Exception {
+		Log.log("Testing SyncPipelineConnection interceptor chain ...");
+		ConnectionBase conn = new SyncPipelineConnection(server.newConnectionSpec());
+		try {
+			List<String> trace = new ArrayList<String>();
+			conn.addInterceptor(new Tracer("tracer", trace));
+			conn.addInterceptor(new KeyPrefix("ns:"));
+			
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes());
+			Future<Response> future = conn.queueRequest(Command.GET, "foo".getBytes());
+			assertEquals(new String(((BulkResponse) future.get()).getBulkData()), "bar");
+			assertEquals(trace.toString(), "[tracer:SET, tracer:GET]");
+			
+			// sync requests of the pipeline are intercepted once
+			trace.clear();
+			assertEquals(new String(((BulkResponse) conn.serviceRequest(Command.GET, "foo".getBytes())).getBulkData()), "bar");
+			assertEquals(trace.toString(), "[tracer:GET]");
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/** records the commands it sees */
+	static class Tracer extends RequestInterceptor.Adapter {
+		final String name;
+		final List<String> trace;
+		Tracer (String name, List<String> trace) {
+			this.name = name;
+			this.trace = trace;
+		}
+		@Override
+		public Response serviceRequest (Invoker next, Command cmd, byte[]... args) throws RedisException {
+			trace.add(name + ":" + cmd.name());
+			return next.serviceRequest(cmd, args);
+		}
+		@Override
+		public Future<Response> queueRequest (Invoker next, Command cmd, byte[]... args) {
+			if(cmd != Command.QUIT) trace.add(name + ":" + cmd.name());
+			return next.queueRequest(cmd, args);
+		}
+	}
+	
+	/** prefixes the key (first arg) of keyed commands */
+	static class KeyPrefix extends RequestInterceptor.Adapter {
+		final byte[] prefix;
+		KeyPrefix (String prefix) {
+			this.prefix = prefix.getBytes();
+		}
+		@Override
+		public Response serviceRequest (Invoker next, Command cmd, byte[]... args) throws RedisException {
+			return next.serviceRequest(cmd, prefixed(args));
+		}
+		@Override
+		public Future<Response> queueRequest (Invoker next, Command cmd, byte[]... args) {
+			return next.queueRequest(cmd, prefixed(args));
+		}
+		private byte[][] prefixed (byte[][] args) {
+			if(args.length == 0) return args;
+			byte[][] copy = args.clone();
+			copy[0] = new byte[prefix.length + args[0].length];
+			System.arraycopy(prefix, 0, copy[0], 0, prefix.length);
+			System.arraycopy(args[0], 0, copy[0], prefix.length, args[0].length);
+			return copy;
+		}
+	}
+}
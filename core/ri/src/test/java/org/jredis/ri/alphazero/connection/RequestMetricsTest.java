@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.connection;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.jredis.RedisException;
+import org.jredis.connector.Connection;
+import org.jredis.connector.ConnectionMetrics;
+import org.jredis.connector.ConnectionMetrics.CommandMetrics;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.protocol.Command;
+import org.jredis.ri.alphazero.loopback.LoopbackServer;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the per command {@link ConnectionMetrics} of the sync and pipeline 
+ * connections, against the {@link LoopbackServer}.
+ * 
+ */
+@Test(sequential = true, suiteName="connection-tests")
+public class RequestMetricsTest {
+	
+	/** *2 $3 GET $3 foo */
+	static final int GET_REQUEST_SIZE = 22;
+	/** $3 bar */
+	static final int GET_RESPONSE_SIZE = 9;
+	
+	private LoopbackServer server;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != server) server.shutdown();
+	}
+	
+	@Test
+	public void testSyncMetrics () throws RedisException {
+		Log.log("Testing SyncConnection metrics ...");
+		ConnectionBase conn = new SyncConnection(server.newConnectionSpec());
+		try {
+			conn.serviceRequest(Command.SET, "foo".getBytes(), "bar".getBytes());
+			for(int i=0; i<10; i++)
+				conn.serviceRequest(Command.GET, "foo".getBytes());
+			try {
+				conn.serviceRequest(Command.INCR, "foo".getBytes());
+				fail("INCR of a non-integer value must raise an error");
+			}
+			catch (RedisException expected) { }
+			
+			ConnectionMetrics metrics = conn.getMetrics();
+			assertNotNull(metrics);
+			assertEquals(metrics.getModality(), Connection.Modality.Synchronous);
+			checkGetMetrics(metrics.metricsFor(Command.GET));
+			
+			CommandMetrics incr = metrics.metricsFor(Command.INCR);
+			assertEquals(incr.getRequestCount(), 1);
+			assertEquals(incr.getErrorCount(), 1);
+			
+			assertEquals(metrics.getTotals().getRequestCount(), 12);
+			assertEquals(metrics.getCommandMetrics().size(), 3);
+			assertEquals(metrics.metricsFor(Command.DEL).getRequestCount(), 0);
+			
+			metrics.reset();
+			assertEquals(metrics.getTotals().getRequestCount(), 0);
+			assertEquals(metrics.metricsFor(Command.GET).getMaxLatency(), 0);
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testPipelineMetrics () throws Exception {
+		Log.log("Testing AsyncPipelineConnection metrics ...");
+		ConnectionBase conn = new AsyncPipelineConnection(server.newConnectionSpec());
+		try {
+			conn.queueRequest(Command.SET, "foo".getBytes(), "bar".getBytes()).get();
+			for(int i=0; i<9; i++)
+				conn.queueRequest(Command.GET, "foo".getBytes());
+			conn.queueRequest(Command.GET, "foo".getBytes()).get();
+			
+			ConnectionMetrics metrics = conn.getMetrics();
+			assertEquals(metrics.getModality(), Connection.Modality.Asynchronous);
+			checkGetMetrics(metrics.metricsFor(Command.GET));
+		}
+		finally { conn.queueRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testMetricsDisabled () throws RedisException {
+		Log.log("Testing connection without metrics ...");
+		ConnectionSpec spec = server.newConnectionSpec();
+		spec.setConnectionFlag(Connection.Flag.METRICS, false);
+		ConnectionBase conn = new SyncConnection(spec);
+		try {
+			conn.serviceRequest(Command.PING);
+			assertNull(conn.getMetrics());
+		}
+		finally { conn.serviceRequest(Command.QUIT); }
+	}
+	
+	@Test
+	public void testMetricsMBean () throws Exception {
+		Log.log("Testing connection metrics MBean ...");
+		ConnectionBase conn = new SyncConnection(server.newConnectionSpec());
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = conn.registerMetricsMBean();
+		try {
+			assertTrue(mbeanServer.isRegistered(name));
+			assertEquals(conn.registerMetricsMBean(), name);
+			for(int i=0; i<5; i++)
+				conn.serviceRequest(Command.PING);
+			
+			assertEquals(mbeanServer.getAttribute(name, "Modality"), Connection.Modality.Synchronous.name());
+			CompositeData totals = (CompositeData) mbeanServer.getAttribute(name, "Totals");
+			assertEquals(totals.get("requestCount"), Long.valueOf(5));
+			CompositeData[] commands = (CompositeData[]) mbeanServer.getAttribute(name, "CommandMetrics");
+			assertEquals(commands.length, 1);
+			assertEquals(commands[0].get("command"), Command.PING.name());
+			
+			mbeanServer.invoke(name, "reset", new Object[0], new String[0]);
+			totals = (CompositeData) mbeanServer.getAttribute(name, "Totals");
+			assertEquals(totals.get("requestCount"), Long.valueOf(0));
+		}
+		finally { 
+			conn.shutdown();
+			conn.serviceRequest(Command.QUIT);
+		}
+		assertFalse(mbeanServer.isRegistered(name));
+	}
+	
+	private void checkGetMetrics (CommandMetrics get) {
+		Log.log("%s", get);
+		assertEquals(get.getCommand(), Command.GET);
+		assertEquals(get.getRequestCount(), 10);
+		assertEquals(get.getErrorCount(), 0);
+		assertEquals(get.getBytesSent(), 10 * GET_REQUEST_SIZE);
+		assertEquals(get.getBytesReceived(), 10 * GET_RESPONSE_SIZE);
+		assertTrue(get.getMaxLatency() > 0);
+		assertTrue(get.getLatencyP50() <= get.getLatencyP99());
+		assertTrue(get.getLatencyP99() <= get.getMaxLatency());
+		assertTrue(get.getMeanLatency() <= get.getMaxLatency());
+	}
+}
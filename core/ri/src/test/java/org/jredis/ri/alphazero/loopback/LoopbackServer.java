@@ -0,0 +1,59 @@
+/*
+ *   Copyright 2009 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.ri.alphazero.loopback;
+
+import java.io.IOException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.ri.alphazero.connection.DefaultConnectionSpec;
+
+/**
+ * The {@link org.jredis.loopback.LoopbackServer} of the tests, with {@link ConnectionSpec}s
+ * of the reference implementation.
+ *
+ * @since   alpha.0
+ * 
+ */
+
+public class LoopbackServer extends org.jredis.loopback.LoopbackServer {
+
+	/**
+	 * Binds to an ephemeral port on the loopback address and starts the server.
+	 * @throws IOException
+	 */
+	public LoopbackServer () throws IOException {
+		super();
+	}
+	
+	/**
+	 * Binds to the given port on the loopback address and starts the server.
+	 * @param port
+	 * @throws IOException
+	 */
+	public LoopbackServer (int port) throws IOException {
+		super(port);
+	}
+	
+	/**
+	 * @return a new {@link ConnectionSpec} for this server -- database 0, no credentials,
+	 * and the heartbeat disabled so tests see only the traffic they issue.
+	 */
+	public ConnectionSpec newConnectionSpec () {
+		ConnectionSpec spec = DefaultConnectionSpec.newSpec(getAddress(), getPort(), 0, null);
+		spec.setHeartbeat(0);
+		return spec;
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.loopback;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.jredis.ByteString;
+import org.jredis.JRedis;
+import org.jredis.JRedisFuture;
+import org.jredis.RedisException;
+import org.jredis.connector.ConnectionSpec;
+import org.jredis.ri.alphazero.JRedisClient;
+import org.jredis.ri.alphazero.JRedisPipeline;
+import org.jredis.ri.alphazero.support.Convert;
+import org.jredis.ri.alphazero.support.DefaultCodec;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Exercises the {@link LoopbackServer} through the synchronous and pipelined
+ * clients.
+ * 
+ */
+@Test(sequential = true, suiteName="loopback-tests")
+public class LoopbackServerTest {
+	
+	private LoopbackServer server;
+	private JRedis jredis;
+	
+	@BeforeClass
+	public void setup () throws IOException {
+		server = new LoopbackServer();
+		jredis = new JRedisClient(server.newConnectionSpec());
+	}
+	
+	@AfterClass
+	public void teardown () {
+		if(null != jredis) jredis.quit();
+		if(null != server) server.shutdown();
+	}
+	
+	@Test
+	public void testStrings () throws RedisException {
+		Log.log("Testing LoopbackServer strings ...");
+		jredis.flushdb();
+		jredis.set("foo", "bar");
+		assertEquals(DefaultCodec.toStr(jredis.get("foo")), "bar");
+		assertNull(jredis.get("nokey"));
+		assertTrue(jredis.exists("foo"));
+		assertFalse(jredis.setnx("foo", "baz"));
+		assertEquals(jredis.incr("counter"), 1);
+		assertEquals(jredis.incrby("counter", 10), 11);
+		assertEquals(jredis.decr("counter"), 10);
+		assertEquals(jredis.dbsize(), 2);
+		assertEquals(jredis.del("foo"), 1);
+		assertFalse(jredis.exists("foo"));
+		
+		jredis.set("foo", "bar");
+		try {
+			jredis.incr("foo");
+			fail("incr of a non-integer value must raise an error");
+		}
+		catch (RedisException expected) { Log.log("expected error: %s", expected.getMessage()); }
+		try {
+			jredis.lpush("foo", "bar");
+			fail("lpush against a string value must raise an error");
+		}
+		catch (RedisException expected) { Log.log("expected error: %s", expected.getMessage()); }
+		
+		Map<String, byte[]> mappings = new HashMap<String, byte[]>();
+		mappings.put("k1", DefaultCodec.encode("v1"));
+		mappings.put("k2", DefaultCodec.encode("v2"));
+		jredis.mset(mappings);
+		List<byte[]> values = jredis.mget("k2", "k1");
+		assertEquals(DefaultCodec.toStr(values.get(0)), "v2");
+		assertEquals(DefaultCodec.toStr(values.get(1)), "v1");
+	}
+	
+	@Test
+	public void testLists () throws RedisException {
+		Log.log("Testing LoopbackServer lists ...");
+		jredis.flushdb();
+		for(int i=0; i<5; i++)
+			jredis.rpush("list", i);
+		assertEquals(jredis.llen("list"), 5);
+		List<byte[]> range = jredis.lrange("list", 1, -2);
+		assertEquals(range.size(), 3);
+		assertEquals(DefaultCodec.toStr(range.get(0)), "1");
+		assertEquals(DefaultCodec.toStr(range.get(2)), "3");
+		assertEquals(DefaultCodec.toStr(jredis.lindex("list", -1)), "4");
+		assertEquals(DefaultCodec.toStr(jredis.lpop("list")), "0");
+		assertEquals(DefaultCodec.toStr(jredis.rpop("list")), "4");
+		jredis.ltrim("list", 0, 0);
+		assertEquals(jredis.llen("list"), 1);
+		assertEquals(jredis.type("list"), org.jredis.RedisType.list);
+	}
+	
+	@Test
+	public void testSets () throws RedisException {
+		Log.log("Testing LoopbackServer sets ...");
+		jredis.flushdb();
+		assertTrue(jredis.sadd("s1", "a"));
+		assertTrue(jredis.sadd("s1", "b"));
+		assertFalse(jredis.sadd("s1", "a"));
+		assertTrue(jredis.sadd("s2", "b"));
+		assertEquals(jredis.scard("s1"), 2);
+		assertTrue(jredis.sismember("s1", "b"));
+		List<byte[]> inter = jredis.sinter("s1", "s2");
+		assertEquals(inter.size(), 1);
+		assertEquals(DefaultCodec.toStr(inter.get(0)), "b");
+		assertEquals(jredis.smembers("s1").size(), 2);
+		assertTrue(jredis.srem("s1", "a"));
+		assertEquals(jredis.scard("s1"), 1);
+	}
+	
+	@Test
+	public void testSortedSets () throws RedisException {
+		Log.log("Testing LoopbackServer sorted sets ...");
+		jredis.flushdb();
+		assertTrue(jredis.zadd("z", 3, "c"));
+		assertTrue(jredis.zadd("z", 1, "a"));
+		assertTrue(jredis.zadd("z", 2, "b"));
+		assertEquals(jredis.zcard("z"), 3);
+		assertEquals(jredis.zrank("z", "c"), 2);
+		assertEquals(jredis.zscore("z", "b"), 2.0);
+		List<byte[]> range = jredis.zrange("z", 0, -1);
+		assertEquals(DefaultCodec.toStr(range.get(0)), "a");
+		assertEquals(DefaultCodec.toStr(range.get(2)), "c");
+		assertEquals(jredis.zrangebyscore("z", 1.5, 3).size(), 2);
+		assertEquals(jredis.zincrby("z", 10, "a"), 11.0);
+		assertEquals(DefaultCodec.toStr(jredis.zrevrange("z", 0, 0).get(0)), "a");
+	}
+	
+	@Test
+	public void testHashes () throws RedisException {
+		Log.log("Testing LoopbackServer hashes ...");
+		jredis.flushdb();
+		assertTrue(jredis.hset("h", "f1", "v1"));
+		assertTrue(jredis.hset("h", "f2", "v2"));
+		assertFalse(jredis.hset("h", "f1", "v1'"));
+		assertEquals(DefaultCodec.toStr(jredis.hget("h", "f1")), "v1'");
+		assertEquals(jredis.hlen("h"), 2);
+		assertEquals(jredis.hkeys("h").size(), 2);
+		Map<byte[], byte[]> all = jredis.hgetall("h");
+		assertEquals(all.size(), 2);
+		assertTrue(jredis.hdel("h", "f1"));
+		assertFalse(jredis.hexists("h", "f1"));
+		
+		Map<String, byte[]> fields = new HashMap<String, byte[]>();
+		fields.put("f3", DefaultCodec.encode("v3"));
+		fields.put("f4", DefaultCodec.encode("v4"));
+		jredis.hmset("h", fields);
+		List<byte[]> values = jredis.hmget("h", "f4", "f1", "f2");
+		assertEquals(DefaultCodec.toStr(values.get(0)), "v4");
+		assertNull(values.get(1));
+		assertEquals(DefaultCodec.toStr(values.get(2)), "v2");
+		assertEquals(jredis.hincrby("h", "n", 5), 5);
+		assertEquals(jredis.hincrby("h", "n", -7), -2);
+		assertTrue(jredis.hsetnx("h", "f5", "v5"));
+		assertFalse(jredis.hsetnx("h", "f5", "v5'"));
+		assertEquals(jredis.hlen("h"), 5);
+	}
+	
+	@Test
+	public void testByteStrings () throws Exception {
+		Log.log("Testing LoopbackServer with ByteString keys and values ...");
+		jredis.flushdb();
+		ByteString key = ByteString.valueOf("bs:key:1").slice(0, 6);
+		ByteString value = ByteString.wrap(new byte[]{0, 1, (byte) 0xFF, 13, 10});
+		jredis.set(key, value);
+		assertEquals(ByteString.wrap(jredis.get("bs:key")), value);
+		assertTrue(jredis.hset("bs:h", "f1", value));
+		assertTrue(jredis.hset("bs:h", ByteString.valueOf("f2"), ByteString.valueOf("v2")));
+		Map<ByteString, ByteString> all = jredis.hgetallAsByteStrings("bs:h");
+		assertEquals(all.size(), 2);
+		assertEquals(all.get(ByteString.valueOf("f1")), value);
+		assertEquals(all.get(ByteString.valueOf("f2")), ByteString.valueOf("v2"));
+		assertTrue(jredis.hgetallAsByteStrings("bs:none").isEmpty());
+		
+		JRedisPipeline pipeline = new JRedisPipeline(server.newConnectionSpec());
+		try {
+			JRedisFuture future = pipeline;
+			future.set(ByteString.valueOf("bs:key2"), value).get();
+			assertEquals(ByteString.wrap(future.get("bs:key2").get()), value);
+			future.hset("bs:h", "f3", ByteString.valueOf("v3"));
+			all = future.hgetallAsByteStrings("bs:h").get();
+			assertEquals(all.size(), 3);
+			assertEquals(all.get(ByteString.valueOf("f3")), ByteString.valueOf("v3"));
+		}
+		finally { pipeline.sync().quit(); }
+	}
+	
+	@Test
+	public void testSort () throws RedisException {
+		Log.log("Testing LoopbackServer sort ...");
+		jredis.flushdb();
+		for(int i : new int[]{3, 1, 2}) {
+			jredis.rpush("ids", i);
+			jredis.set("w" + i, 10 - i);
+			jredis.set("o" + i, "object-" + i);
+		}
+		List<byte[]> sorted = jredis.sort("ids").exec();
+		assertEquals(Convert.toInt(sorted.get(0)), 1);
+		sorted = jredis.sort("ids").BY("w*").GET("o*").exec();
+		assertEquals(DefaultCodec.toStr(sorted.get(0)), "object-3");
+		sorted = jredis.sort("ids").DESC().LIMIT(0, 2).exec();
+		assertEquals(sorted.size(), 2);
+		assertEquals(Convert.toInt(sorted.get(0)), 3);
+	}
+	
+	@Test
+	public void testPipeline () throws Exception {
+		Log.log("Testing LoopbackServer with a pipeline ...");
+		JRedisPipeline pipeline = new JRedisPipeline(server.newConnectionSpec());
+		try {
+			JRedisFuture future = pipeline;
+			future.flushdb();
+			Future<Long> last = null;
+			for(int i=0; i<1000; i++)
+				last = future.incr("pipelined-counter");
+			assertEquals(last.get().longValue(), 1000);
+			assertEquals(DefaultCodec.toStr(future.get("pipelined-counter").get()), "1000");
+		}
+		finally { pipeline.sync().quit(); }
+	}
+}
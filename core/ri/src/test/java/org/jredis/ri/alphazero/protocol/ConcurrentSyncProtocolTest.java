@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.jredis.protocol.BulkResponse;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.MultiBulkResponse;
+import org.jredis.protocol.Protocol;
+import org.jredis.protocol.Response;
+import org.jredis.protocol.ResultSetResponse;
+import org.jredis.protocol.ValueResponse;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Responses of {@link ConcurrentSyncProtocol} share a line buffer and must
+ * remain valid after subsequent responses have been read.
+ * 
+ */
+@Test(suiteName="protocol-tests")
+public class ConcurrentSyncProtocolTest {
+	
+	@Test
+	public void testResponsesOutliveSharedLineBuffer() {
+		Log.log("Testing ConcurrentSyncProtocol responses with shared line buffer ...");
+		
+		StringBuilder longError = new StringBuilder("-ERR ");
+		for(int i=0; i<300; i++) longError.append('x');
+		
+		String data = 
+			"+OK\r\n" +
+			":1234567\r\n" +
+			"$5\r\nhello\r\n" +
+			longError + "\r\n" +
+			"*3\r\n$1\r\na\r\n$-1\r\n$2\r\nbc\r\n" +
+			"+string value\r\n" +
+			"$-1\r\n";
+		InputStream in = new ByteArrayInputStream(data.getBytes());
+		
+		Protocol protocol = new ConcurrentSyncProtocol();
+		Response status = read(protocol, Command.SET, in);
+		Response number = read(protocol, Command.INCR, in);
+		Response bulk = read(protocol, Command.GET, in);
+		Response error = read(protocol, Command.GET, in);
+		Response multibulk = read(protocol, Command.MGET, in);
+		Response string = read(protocol, Command.TYPE, in);
+		Response nullbulk = read(protocol, Command.GET, in);
+		
+		assertFalse(status.isError());
+		assertEquals(((ValueResponse)number).getLongValue(), 1234567);
+		assertEquals(new String(((BulkResponse)bulk).getBulkData()), "hello");
+		assertTrue(error.isError());
+		assertEquals(error.getStatus().message(), longError.substring(1));
+		List<byte[]> list = ((MultiBulkResponse)multibulk).getMultiBulkData();
+		assertEquals(list.size(), 3);
+		assertEquals(new String(list.get(0)), "a");
+		assertNull(list.get(1));
+		assertEquals(new String(list.get(2)), "bc");
+		assertEquals(((ValueResponse)string).getStringValue(), "string value");
+		assertNull(((BulkResponse)nullbulk).getBulkData());
+	}
+	
+	@Test
+	public void testResultSetResponse() throws IOException {
+		Log.log("Testing ConcurrentSyncProtocol transaction request and response ...");
+		
+		Protocol protocol = new ConcurrentSyncProtocol();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		protocol.createRequest(Command.EXEC, 
+				"SET".getBytes(), "2".getBytes(), "foo".getBytes(), "bar".getBytes(),
+				"PING".getBytes(), "0".getBytes()).write(out);
+		assertEquals(new String(out.toByteArray()), 
+				"*1\r\n$5\r\nMULTI\r\n" +
+				"*3\r\n$3\r\nSET\r\n$3\r\nfoo\r\n$3\r\nbar\r\n" +
+				"*1\r\n$4\r\nPING\r\n" +
+				"*1\r\n$4\r\nEXEC\r\n");
+		
+		String data = 
+			// pre 2.6.5: rejected commands are not executed
+			"+OK\r\n+QUEUED\r\n-ERR unknown command\r\n+QUEUED\r\n+QUEUED\r\n+QUEUED\r\n" +
+			"*4\r\n:42\r\n$5\r\nhello\r\n*2\r\n$1\r\na\r\n$-1\r\n-ERR wrong kind\r\n" +
+			// aborted
+			"+OK\r\n+QUEUED\r\n-ERR unknown command\r\n-EXECABORT Transaction discarded\r\n" +
+			// empty
+			"+OK\r\n*0\r\n" +
+			"+PONG\r\n";
+		InputStream in = new ByteArrayInputStream(data.getBytes());
+		
+		Response response = read(protocol, Command.EXEC, in);
+		assertFalse(response.isError());
+		List<Response> results = ((ResultSetResponse) response).getResults();
+		assertEquals(results.size(), 5);
+		assertEquals(((ValueResponse)results.get(0)).getLongValue(), 42);
+		assertTrue(results.get(1).isError());
+		assertEquals(results.get(1).getStatus().message(), "ERR unknown command");
+		assertEquals(new String(((BulkResponse)results.get(2)).getBulkData()), "hello");
+		List<byte[]> list = ((MultiBulkResponse)results.get(3)).getMultiBulkData();
+		assertEquals(list.size(), 2);
+		assertNull(list.get(1));
+		assertTrue(results.get(4).isError());
+		
+		Response aborted = read(protocol, Command.EXEC, in);
+		assertTrue(aborted.isError());
+		assertTrue(aborted.getStatus().message().startsWith("EXECABORT"));
+		
+		Response empty = read(protocol, Command.EXEC, in);
+		assertEquals(((ResultSetResponse) empty).getResults().size(), 0);
+		
+		// stream is in sync
+		assertFalse(read(protocol, Command.PING, in).isError());
+		assertEquals(in.read(), -1);
+	}
+	
+	private static Response read (Protocol protocol, Command cmd, InputStream in) {
+		Response response = protocol.createResponse(cmd);
+		response.read(in);
+		return response;
+	}
+}
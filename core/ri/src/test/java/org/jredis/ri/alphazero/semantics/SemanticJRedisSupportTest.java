@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.semantics;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import org.jredis.ClientRuntimeException;
+import org.jredis.ProviderException;
+import org.jredis.RedisException;
+import org.jredis.protocol.Command;
+import org.jredis.protocol.Protocol;
+import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.protocol.ConcurrentSyncProtocol;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the value decoding of {@link SemanticJRedisSupport} against canned
+ * responses.
+ * 
+ */
+@Test(suiteName="semantics-tests")
+public class SemanticJRedisSupportTest {
+	
+	@Test
+	public void testDecoding() throws RedisException {
+		Log.log("Testing SemanticJRedisSupport decoding ...");
+		
+		String data = 
+			"$5\r\nhello\r\n" +
+			"$-1\r\n" +
+			"*3\r\n$1\r\na\r\n$-1\r\n$2\r\nbc\r\n" +
+			"*2\r\n$3\r\nfoo\r\n$3\r\nbar\r\n";
+		
+		SemanticJRedisSupport<String> strings = new CannedSemanticJRedis(data);
+		assertEquals(strings.get("key"), "hello");
+		assertNull(strings.get("nokey"));
+		
+		List<String> list = strings.lrange("list", 0, -1);
+		assertEquals(list.size(), 3);
+		assertEquals(list.get(0), "a");
+		assertNull(list.get(1));
+		assertEquals(list.get(2), "bc");
+		
+		List<String> keys = strings.keys();
+		assertEquals(keys.size(), 2);
+		assertEquals(keys.get(0), "foo");
+		assertEquals(keys.get(1), "bar");
+	}
+	
+	@Test
+	public void testCodecBinding() {
+		Log.log("Testing SemanticJRedisSupport codec binding ...");
+		
+		SemanticJRedisSupport<String> strings = new CannedSemanticJRedis("");
+		assertNotNull(strings.getCodec(String.class));
+		assertNull(strings.getCodec(Long.class));
+		
+		boolean didRaise = false;
+		try {
+			strings.set("key", null);
+		}
+		catch (IllegalArgumentException e) { didRaise = true; }
+		catch (RedisException e) { fail("unexpected", e); }
+		assertTrue(didRaise);
+	}
+	
+	/** reads responses from canned data */
+	static final class CannedSemanticJRedis extends SemanticJRedisSupport<String> {
+		final InputStream in;
+		final Protocol protocol = new ConcurrentSyncProtocol();
+		CannedSemanticJRedis (String data) {
+			super(String.class, new DefaultStringCodec());
+			in = new ByteArrayInputStream(data.getBytes());
+		}
+		@Override
+		protected Response serviceRequest (Command cmd, byte[]... args) throws RedisException, ClientRuntimeException, ProviderException {
+			Response response = protocol.createResponse(cmd);
+			response.read(in);
+			return response;
+		}
+	}
+}
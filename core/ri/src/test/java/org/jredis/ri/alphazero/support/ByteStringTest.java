@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.support;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.jredis.ByteString;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * 
+ */
+@Test(suiteName="support-tests")
+public class ByteStringTest {
+	
+	@Test
+	public void testEquality () {
+		Log.log("Testing ByteString equality and hash ...");
+		byte[] bytes = {1, 2, (byte) 0xFF, 0};
+		ByteString wrapped = ByteString.wrap(bytes);
+		ByteString copied = ByteString.copyOf(bytes.clone());
+		assertEquals(wrapped, copied);
+		assertEquals(wrapped.hashCode(), copied.hashCode());
+		assertEquals(wrapped.toByteArray(), bytes);
+		assertNotSame(wrapped.toByteArray(), bytes);
+		assertFalse(wrapped.equals(ByteString.wrap(new byte[]{1, 2, (byte) 0xFF})));
+		assertSame(ByteString.wrap(new byte[0]), ByteString.EMPTY);
+		assertEquals(ByteString.valueOf("key:1"), ByteString.wrap(DefaultCodec.encode("key:1")));
+		assertEquals(ByteString.valueOf("key:1").toString(), "key:1");
+		assertEquals(ByteString.copyOf(ByteBuffer.wrap(bytes, 1, 2)), ByteString.wrap(new byte[]{2, (byte) 0xFF}));
+		
+		boolean inputChecking = false;
+		try { ByteString.wrap(null); }
+		catch (IllegalArgumentException e){ inputChecking = true;}
+		finally { assertTrue(inputChecking);}
+	}
+	
+	@Test
+	public void testSlice () {
+		Log.log("Testing ByteString slices ...");
+		ByteString s = ByteString.valueOf("user:1234:name");
+		ByteString id = s.slice(5, 9);
+		assertEquals(id.length(), 4);
+		assertEquals(id, ByteString.valueOf("1234"));
+		assertEquals(id.hashCode(), ByteString.valueOf("1234").hashCode());
+		assertEquals(id.byteAt(0), (byte) '1');
+		assertEquals(id.toByteArray(), DefaultCodec.encode("1234"));
+		assertEquals(id.slice(1, 3), ByteString.valueOf("23"));
+		assertTrue(s.startsWith(ByteString.valueOf("user:")));
+		assertFalse(id.startsWith(ByteString.valueOf("user:")));
+		assertTrue(s.slice(3, 3).isEmpty());
+		
+		ByteBuffer view = id.asByteBuffer();
+		assertTrue(view.isReadOnly());
+		assertEquals(view.remaining(), 4);
+		assertEquals(view.get(), (byte) '1');
+		
+		boolean inputChecking = false;
+		try { s.slice(4, 100); }
+		catch (IndexOutOfBoundsException e){ inputChecking = true;}
+		finally { assertTrue(inputChecking);}
+	}
+	
+	@Test
+	public void testCompare () {
+		Log.log("Testing ByteString ordering ...");
+		assertTrue(ByteString.valueOf("a").compareTo(ByteString.valueOf("b")) < 0);
+		assertTrue(ByteString.valueOf("ab").compareTo(ByteString.valueOf("a")) > 0);
+		assertEquals(ByteString.valueOf("ab").compareTo(ByteString.valueOf("xab").slice(1, 3)), 0);
+		// unsigned: 0xFF sorts after 0x01
+		assertTrue(ByteString.wrap(new byte[]{(byte) 0xFF}).compareTo(ByteString.wrap(new byte[]{1})) > 0);
+	}
+	
+	@Test
+	public void testMapKeys () {
+		Log.log("Testing ByteString map keys ...");
+		Map<ByteString, Integer> map = new HashMap<ByteString, Integer>();
+		map.put(ByteString.wrap(DefaultCodec.encode("k1")), 1);
+		map.put(ByteString.valueOf("k2"), 2);
+		assertEquals(map.get(ByteString.copyOf(DefaultCodec.encode("k1"))), Integer.valueOf(1));
+		assertEquals(map.get(ByteString.valueOf("xk2").slice(1, 3)), Integer.valueOf(2));
+		assertNull(map.get(ByteString.valueOf("k3")));
+	}
+}
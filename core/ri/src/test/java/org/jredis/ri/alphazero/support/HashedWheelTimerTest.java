@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2009, Joubin Houshyar <alphazero at sensesay dot net>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *     
+ *   * Neither the name of JRedis nor the names of its contributors may be used
+ *     to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */ 
+
+package org.jredis.ri.alphazero.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * 
+ */
+@Test(sequential = true, suiteName="support-tests")
+public class HashedWheelTimerTest {
+	
+	private HashedWheelTimer timer;
+	
+	@BeforeClass
+	public void setup () {
+		// small wheel, to exercise rounds
+		timer = new HashedWheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 8);
+	}
+	
+	@AfterClass
+	public void teardown () {
+		timer.stop();
+	}
+	
+	@Test
+	public void testExpiry () throws InterruptedException {
+		Log.log("Testing HashedWheelTimer expiry ...");
+		final List<Object> expired = new ArrayList<Object>();
+		final CountDownLatch done = new CountDownLatch(3);
+		HashedWheelTimer.Task task = new HashedWheelTimer.Task() {
+			public void onTimeout (HashedWheelTimer.Timeout timeout) {
+				synchronized (expired) { expired.add(timeout.getAttachment()); }
+				done.countDown();
+			}
+		};
+		final long start = System.nanoTime();
+		HashedWheelTimer.Timeout t3 = timer.schedule(task, "c", 150, TimeUnit.MILLISECONDS);
+		HashedWheelTimer.Timeout t1 = timer.schedule(task, "a", 10, TimeUnit.MILLISECONDS);
+		HashedWheelTimer.Timeout t2 = timer.schedule(task, "b", 60, TimeUnit.MILLISECONDS);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150, "expired before deadline");
+		assertEquals(expired.toString(), "[a, b, c]");
+		assertTrue(t1.isExpired() && t2.isExpired() && t3.isExpired());
+		assertFalse(t1.cancel());
+	}
+	
+	@Test
+	public void testCancel () throws InterruptedException {
+		Log.log("Testing HashedWheelTimer cancel ...");
+		final AtomicInteger expired = new AtomicInteger();
+		HashedWheelTimer.Task task = new HashedWheelTimer.Task() {
+			public void onTimeout (HashedWheelTimer.Timeout timeout) { expired.incrementAndGet(); }
+		};
+		final int n = 100000;
+		List<HashedWheelTimer.Timeout> timeouts = new ArrayList<HashedWheelTimer.Timeout>(n);
+		for(int i=0; i<n; i++)
+			timeouts.add(timer.schedule(task, null, 500 + i % 50, TimeUnit.MILLISECONDS));
+		for(int i=0; i<n; i+=2)
+			assertTrue(timeouts.get(i).cancel());
+		
+		final long limit = System.currentTimeMillis() + 10000;
+		while(expired.get() < n/2 && System.currentTimeMillis() < limit)
+			Thread.sleep(10);
+		Thread.sleep(100);
+		assertEquals(expired.get(), n/2);
+		for(int i=0; i<n; i++){
+			HashedWheelTimer.Timeout timeout = timeouts.get(i);
+			assertEquals(timeout.isCancelled(), i % 2 == 0);
+			assertEquals(timeout.isExpired(), i % 2 == 1);
+		}
+	}
+}
@@ -16,6 +16,9 @@
 
 package org.jredis.cluster;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import org.jredis.connector.ConnectionSpec;
 
@@ -61,6 +64,22 @@ public interface ClusterNodeSpec {
 	 */
 	public String getKeyForReplicationInstance (int rangeReplicationIndex);
 	
+	/**
+	 * Read replicas (Redis slaves) of this node.  Replicas do not participate in key
+	 * distribution; they are only used to service read-only commands for the keys 
+	 * mapped to this (master) node.  
+	 * @return an unmodifiable list of the replicas of this node, possibly empty.
+	 */
+	public List<ClusterNodeSpec> getReplicaSpecs ();
+	
+	/**
+	 * Declares a read replica for this node.
+	 * @param replicaSpec
+	 * @return this node spec
+	 * @throws IllegalArgumentException if replicaSpec is null, this node, or already declared.
+	 */
+	public ClusterNodeSpec addReplica (ClusterNodeSpec replicaSpec);
+	
 	// ------------------------------------------------------------------------
 	// Reference Implementation 
 	// ------------------------------------------------------------------------
@@ -83,6 +102,9 @@ public interface ClusterNodeSpec {
 		/** Cluster wide unique identifier */
 		final protected String id;
 		
+		/** read replicas of this node */
+		final protected List<ClusterNodeSpec> replicas = new ArrayList<ClusterNodeSpec>();
+		
 		// ------------------------------------------------------------------------
 		// Constructor(s)
 		// ------------------------------------------------------------------------
@@ -110,6 +132,20 @@ public interface ClusterNodeSpec {
 //        @Override
         final public String getId () { return this.id;}
         
+		/* (non-Javadoc) @see org.jredis.cluster.ClusterNodeSpec#getReplicaSpecs() */
+        final public List<ClusterNodeSpec> getReplicaSpecs () { 
+        	return Collections.unmodifiableList(replicas);
+        }
+        
+		/* (non-Javadoc) @see org.jredis.cluster.ClusterNodeSpec#addReplica(org.jredis.cluster.ClusterNodeSpec) */
+        final public ClusterNodeSpec addReplica (ClusterNodeSpec replicaSpec) {
+        	if(null == replicaSpec) throw new IllegalArgumentException("null replicaSpec");
+        	if(this.equals(replicaSpec)) throw new IllegalArgumentException("node can not be its own replica");
+        	if(replicas.contains(replicaSpec)) throw new IllegalArgumentException("replica already declared: " + replicaSpec);
+        	replicas.add(replicaSpec);
+        	return this;
+        }
+        
 		// ------------------------------------------------------------------------
 		// Identity
 		// ------------------------------------------------------------------------
@@ -19,6 +19,7 @@ package org.jredis.cluster;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import org.jredis.cluster.support.HashTagExtractor;
 
 /**
  * [TODO: document me!]
@@ -46,6 +47,20 @@ public interface ClusterSpec {
 	public ClusterType getType ();
 	public ClusterSpec setType (ClusterType clusterType);
 	
+	/**
+	 * @return the {@link HashTagExtractor} used to determine the portion of
+	 * keys used for mapping keys to nodes.  Never null.
+	 */
+	public HashTagExtractor getHashTagExtractor ();
+	
+	/**
+	 * @param extractor the hash tag policy for key to node mapping.  Use
+	 * {@link HashTagExtractor#NONE} to map using the full key.
+	 * @return this spec
+	 * @throws IllegalArgumentException if extractor is null
+	 */
+	public ClusterSpec setHashTagExtractor (HashTagExtractor extractor);
+	
 	// ------------------------------------------------------------------------
 	// Membership
 	// ------------------------------------------------------------------------
@@ -98,6 +113,9 @@ public interface ClusterSpec {
 //		final protected ClusterModel distributionStrategy;
 		private ClusterType type;
 		
+		/** defaults to {@link HashTagExtractor#NONE} */
+		private HashTagExtractor hashTagExtractor = HashTagExtractor.NONE;
+		
 		/**  */
 		final protected Set<ClusterNodeSpec> nodeSpecs = new HashSet<ClusterNodeSpec>();
 		
@@ -114,6 +132,13 @@ public interface ClusterSpec {
 		public ClusterType getType() { return type; }
 		public ClusterSpec setType(ClusterType type) { this.type = type; return this; }
 		
+		public HashTagExtractor getHashTagExtractor() { return hashTagExtractor; }
+		public ClusterSpec setHashTagExtractor(HashTagExtractor extractor) {
+			if(null == extractor) throw new IllegalArgumentException("null extractor");
+			this.hashTagExtractor = extractor; 
+			return this; 
+		}
+		
 		/* (non-Javadoc) @see org.jredis.cluster.ClusterSpec#addAll(java.util.List) */
 //      @Override
         public boolean addAll (Collection<ClusterNodeSpec> nodes) {
@@ -0,0 +1,91 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.cluster.support;
+
+/**
+ * Determines the portion of a key that is used for mapping the key to a 
+ * cluster node.  Keys that share a hash tag are always mapped to the same
+ * node, which allows a family of related keys (e.g. "{user:1000}:followers"
+ * and "{user:1000}:following") to participate in multi-key commands such as
+ * SINTER, SMOVE, RENAME, or RPOPLPUSH.
+ * <p>
+ * Implementations must be thread-safe and should not allocate when the key
+ * carries no tag.
+ *
+ */
+
+public interface HashTagExtractor {
+	/**
+	 * @param key the full key bytes
+	 * @return the bytes that should be hashed to determine the key's node.
+	 * If key does not carry a hash tag the key itself is returned.
+	 */
+	public byte[] getHashTag (byte[] key);
+	
+	// ------------------------------------------------------------------------
+	// Reference Implementations
+	// ------------------------------------------------------------------------
+	
+	/** Maps keys using the full key bytes -- i.e. no hash tags. */
+	public static final HashTagExtractor NONE = new HashTagExtractor() {
+		public byte[] getHashTag (byte[] key) { return key; }
+	};
+	
+	/** Uses the content of the first (non-empty) "{...}" in key as the hash tag. */
+	public static final HashTagExtractor BRACES = new Delimited((byte)'{', (byte)'}');
+	
+	/**
+	 * Extracts the bytes between the first occurrence of the <code>open</code> 
+	 * delimiter and the first subsequent occurrence of the <code>close</code>
+	 * delimiter.  If either delimiter is missing, or the delimited region is empty,
+	 * the full key is used.
+	 *
+	 */
+	public static class Delimited implements HashTagExtractor {
+		/**  */
+		final private byte open;
+		/**  */
+		final private byte close;
+		
+		/**
+		 * @param open
+		 * @param close
+		 */
+		public Delimited (byte open, byte close) {
+			this.open = open;
+			this.close = close;
+		}
+		
+		/* (non-Javadoc) @see org.jredis.cluster.support.HashTagExtractor#getHashTag(byte[]) */
+		public byte[] getHashTag (byte[] key) {
+			if(null == key) throw new IllegalArgumentException("null key");
+			
+			final int len = key.length;
+			int s = 0;
+			while(s < len && key[s] != open) s++;
+			if(s == len) return key;
+			
+			int e = s+1;
+			while(e < len && key[e] != close) e++;
+			if(e == len || e == s+1) return key;
+			
+			byte[] tag = new byte[e-s-1];
+			System.arraycopy(key, s+1, tag, 0, tag.length);
+			return tag;
+		}
+	}
+}
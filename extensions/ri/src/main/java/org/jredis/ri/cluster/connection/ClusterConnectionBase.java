@@ -17,13 +17,20 @@
 package org.jredis.ri.cluster.connection;
 
 import static org.jredis.ri.alphazero.support.Assert.*;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jredis.ClientRuntimeException;
 import org.jredis.NotSupportedException;
@@ -33,10 +40,14 @@ import org.jredis.cluster.ClusterModel;
 import org.jredis.cluster.ClusterNodeSpec;
 import org.jredis.cluster.ClusterSpec;
 import org.jredis.cluster.connector.ClusterConnection;
+import org.jredis.cluster.support.HashTagExtractor;
 import org.jredis.connector.Connection;
 import org.jredis.connector.ConnectionSpec;
 import org.jredis.protocol.Command;
 import org.jredis.protocol.Response;
+import org.jredis.ri.alphazero.connection.PendingRequest;
+import org.jredis.ri.alphazero.support.LatencyEWMA;
+import org.jredis.ri.alphazero.support.Log;
 
 /**
  * [TODO: document me!]
@@ -57,6 +68,8 @@ abstract public class ClusterConnectionBase implements ClusterConnection, Connec
 	final private Set<Command> supportedCmds = new HashSet<Command>();
 	/**  */
 	final private Map<String, Connection> connections = new HashMap<String, Connection>();
+	/** read replicas of nodes, keyed by (master) node id */
+	final private Map<String, ReplicaSet> replicaSets = new HashMap<String, ReplicaSet>();
 	/** Connector Listeners */
 	final private Set<Connection.Listener> listeners = new HashSet<Connection.Listener>();
 
@@ -129,16 +142,28 @@ abstract public class ClusterConnectionBase implements ClusterConnection, Connec
 	public Future<Response> queueRequest (Command cmd, byte[]... args)
 	        throws ClientRuntimeException, ProviderException 
     {
-		byte[] key = verifyAndGetKeyForRequest(cmd, args);
-		return getConnectionForKey(key).queueRequest(cmd, args);
+		ClusterNodeSpec nodeSpec = getNodeForRequest(cmd, args);
+		Connection master = connections.get(nodeSpec.getId());
+		if(cmd.isSet(Command.Flag.READ_ONLY)){
+			ReplicaSet replicaSet = replicaSets.get(nodeSpec.getId());
+			if(null != replicaSet) 
+				return replicaSet.select().queueRequest(master, cmd, args);
+		}
+		return master.queueRequest(cmd, args);
 	}
 
 	/* (non-Javadoc) @see org.jredis.connector.Connection#serviceRequest(org.jredis.protocol.Command, byte[][]) */
 	public Response serviceRequest (Command cmd, byte[]... args)
 	        throws RedisException, ClientRuntimeException, ProviderException
     {
-		byte[] key = verifyAndGetKeyForRequest(cmd, args);
-		return getConnectionForKey(key).serviceRequest(cmd, args);
+		ClusterNodeSpec nodeSpec = getNodeForRequest(cmd, args);
+		Connection master = connections.get(nodeSpec.getId());
+		if(cmd.isSet(Command.Flag.READ_ONLY)){
+			ReplicaSet replicaSet = replicaSets.get(nodeSpec.getId());
+			if(null != replicaSet) 
+				return replicaSet.select().serviceRequest(master, cmd, args);
+		}
+		return master.serviceRequest(cmd, args);
 	}
 	// ------------------------------------------------------------------------
 	// Event management
@@ -200,20 +225,30 @@ abstract public class ClusterConnectionBase implements ClusterConnection, Connec
 
 	final private void initializeConnections () throws ClientRuntimeException, ProviderException {
 		for(ClusterNodeSpec nodeSpec : model.getSpec().getNodeSpecs()){
-			Connection conn = null;
-			if(getModality() == Connection.Modality.Synchronous){
-				conn = notNull(createSynchConnection(nodeSpec), "", ProviderException.class);
-			}
-			else {
-				conn = notNull(createAsynchConnection(nodeSpec), "", ProviderException.class);
-			}
+			Connection conn = newNodeConnection(nodeSpec);
 			connections.put(nodeSpec.getId(), conn);
 			// TODO: add set as listener to connection
+			
+			List<ClusterNodeSpec> replicaSpecs = nodeSpec.getReplicaSpecs();
+			if(replicaSpecs.size() > 0){
+				Replica[] replicas = new Replica[replicaSpecs.size()];
+				for(int i=0; i<replicas.length; i++){
+					replicas[i] = new Replica(newNodeConnection(replicaSpecs.get(i)));
+				}
+				replicaSets.put(nodeSpec.getId(), new ReplicaSet(replicas));
+			}
 		}
 	}
+	final private Connection newNodeConnection (ClusterNodeSpec nodeSpec) {
+		if(getModality() == Connection.Modality.Synchronous)
+			return notNull(createSynchConnection(nodeSpec), "", ProviderException.class);
+		else
+			return notNull(createAsynchConnection(nodeSpec), "", ProviderException.class);
+	}
 	/**
 	 * Default implementation simply includes all {@link Command}s with {@link Command.RequestType}s
-	 * that include key params in the request.
+	 * that include key params in the request.  Of the {@link Command.RequestType#BULK_SET} commands,
+	 * only the single key (hash) commands are included.
 	 */
 	final private void mapSupportedCommands () {
 		// filter out the unsupported commands
@@ -221,8 +256,17 @@ abstract public class ClusterConnectionBase implements ClusterConnection, Connec
 		for(Command cmd : Command.values()){
 			switch (cmd.requestType){
 			
-			// -- NOT SUPPORTED --
+			// -- SUPPORTED if single key (e.g. HMSET, HMGET) --
 			case BULK_SET:
+				if(cmd.isSet(Command.Flag.MULTI_KEY)) {
+					if(!affirmLackOfSupportFor(cmd))
+						supportedCmds.add(cmd);
+				}
+				else if(affirmSupportFor(cmd))
+					supportedCmds.add(cmd);
+				break;
+				
+			// -- NOT SUPPORTED --
 			case NO_ARG:
 			case VALUE:
 				if(!affirmLackOfSupportFor(cmd))
@@ -248,13 +292,55 @@ abstract public class ClusterConnectionBase implements ClusterConnection, Connec
 		}
 	}
 
+	/**
+	 * Maps the key to its node per the hash tag policy of the cluster spec.
+	 * @param key
+	 * @return the connection for the node that owns the key
+	 */
 	final protected Connection getConnectionForKey(byte[] key){
-		ClusterNodeSpec nodeSpec = model.getNodeForKey(key);
+		HashTagExtractor tags = model.getSpec().getHashTagExtractor();
+		ClusterNodeSpec nodeSpec = model.getNodeForKey(tags.getHashTag(key));
 		String nodeId = nodeSpec.getId();
 		
 		// TEMP TEMP TEMP.
 		return connections.get(nodeId);
 	}
+	
+	/**
+	 * Maps the request to the node that owns all of its keys.  Multi-key requests
+	 * are only serviced if all keys map to the same node, which is guaranteed
+	 * for keys that share a hash tag.
+	 * @param cmd
+	 * @param args
+	 * @return the connection for the node that owns the request's keys
+	 * @throws ClientRuntimeException if keys of a multi-key request map to distinct nodes
+	 */
+	final protected Connection getConnectionForRequest(Command cmd, byte[]...args) {
+		return connections.get(getNodeForRequest(cmd, args).getId());
+	}
+	
+	/**
+	 * @param cmd
+	 * @param args
+	 * @return the (master) node that owns the request's keys
+	 * @throws ClientRuntimeException if keys of a multi-key request map to distinct nodes
+	 * @see ClusterConnectionBase#getConnectionForRequest(Command, byte[]...)
+	 */
+	final protected ClusterNodeSpec getNodeForRequest(Command cmd, byte[]...args) {
+		byte[] key = verifyAndGetKeyForRequest(cmd, args);
+		HashTagExtractor tags = model.getSpec().getHashTagExtractor();
+		byte[] tag = tags.getHashTag(key);
+		ClusterNodeSpec nodeSpec = model.getNodeForKey(tag);
+		
+		final int lastKey = cmd.lastKeyIndex(args.length);
+		for(int i=cmd.firstKey+cmd.keyStep; i<=lastKey; i+=cmd.keyStep){
+			byte[] otag = tags.getHashTag(args[i]);
+			if(Arrays.equals(tag, otag)) continue;
+			if(!nodeSpec.equals(model.getNodeForKey(otag)))
+				throw new ClientRuntimeException(cmd.name() + " keys map to distinct cluster nodes -- use hash tags to co-locate related keys");
+		}
+		return nodeSpec;
+	}
 	// ------------------------------------------------------------------------
 	// Internal ops : Extension points
 	// ------------------------------------------------------------------------
@@ -296,4 +382,202 @@ abstract public class ClusterConnectionBase implements ClusterConnection, Connec
     }
 
 
+
+	// ------------------------------------------------------------------------
+	// Inner Types
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * A read replica connection and its observed latency score.  Synchronous requests
+	 * are timed on return, and queued requests on completion of their 
+	 * {@link PendingRequest}.  Requests that fault on the replica are scored with 
+	 * {@link ReplicaSet#FAULT_PENALTY_NANOS} and retried on the master.
+	 */
+	final static class Replica {
+		/**  */
+		final Connection connection;
+		/**  */
+		final LatencyEWMA latency = new LatencyEWMA();
+		/** {@link System#nanoTime()} of the latest latency sample */
+		volatile long lastSampled = System.nanoTime();
+		
+		Replica (Connection connection) {
+			this.connection = connection;
+		}
+		
+		/**
+		 * @param now {@link System#nanoTime()}
+		 * @return the latency score, halved for every {@link ReplicaSet#SCORE_HALF_LIFE_NANOS}
+		 * without a sample -- so that a faulted replica is eventually probed again.
+		 */
+		double score (long now) {
+			final double avg = latency.getAverage();
+			final long idle = now - lastSampled;
+			if(idle <= ReplicaSet.SCORE_HALF_LIFE_NANOS) return avg;
+			return avg * Math.pow(0.5, (double) idle / ReplicaSet.SCORE_HALF_LIFE_NANOS);
+		}
+		
+		void sample (long nanos) {
+			latency.update(nanos);
+			lastSampled = System.nanoTime();
+		}
+		
+		/**
+		 * Services the request and updates the latency score.  Faulted requests
+		 * are retried on the master.
+		 */
+		Response serviceRequest (Connection master, Command cmd, byte[]... args) 
+			throws RedisException, ClientRuntimeException, ProviderException 
+		{
+			final long start = System.nanoTime();
+			Response response;
+			try {
+				response = connection.serviceRequest(cmd, args);
+			}
+			catch (RedisException e) { 
+				sample(System.nanoTime() - start);
+				throw e; 
+			}
+			catch (ClientRuntimeException e) {
+				sample(ReplicaSet.FAULT_PENALTY_NANOS);
+				Log.problem(String.format("%s read on replica faulted -- retrying on master: %s", cmd.code, e.getLocalizedMessage()));
+				return master.serviceRequest(cmd, args);
+			}
+			sample(System.nanoTime() - start);
+			return response;
+		}
+		
+		/**
+		 * Queues the request and updates the latency score on its completion.  Faulted 
+		 * requests are retried on the master.
+		 */
+		Future<Response> queueRequest (Connection master, Command cmd, byte[]... args) 
+			throws ClientRuntimeException, ProviderException 
+		{
+			final long start = System.nanoTime();
+			Future<Response> future;
+			try {
+				future = connection.queueRequest(cmd, args);
+			}
+			catch (ClientRuntimeException e) {
+				sample(ReplicaSet.FAULT_PENALTY_NANOS);
+				Log.problem(String.format("%s read on replica faulted -- retrying on master: %s", cmd.code, e.getLocalizedMessage()));
+				return master.queueRequest(cmd, args);
+			}
+			if(future instanceof PendingRequest) {
+				((PendingRequest) future).setCompletionListener(new PendingRequest.CompletionListener() {
+					public void onCompletion (PendingRequest request) {
+						if(request.isCancelled()) return;
+						sample(isFault(request) ? ReplicaSet.FAULT_PENALTY_NANOS : System.nanoTime() - start);
+					}
+				});
+			}
+			return new FallbackFuture(future, master, cmd, args);
+		}
+	}
+	
+	/** @return true if the completed request failed for other than a Redis error */
+	static boolean isFault (Future<Response> completed) {
+		try {
+			completed.get();
+			return false;
+		}
+		catch (ExecutionException e) {
+			return !(e.getCause() instanceof RedisException);
+		}
+		catch (CancellationException e) { return false; }
+		catch (InterruptedException e) { 
+			Thread.currentThread().interrupt();
+			return false; 
+		}
+	}
+	
+	/**
+	 * The future of a replica read that requeues the request on the master if the 
+	 * replica faults.
+	 */
+	final static class FallbackFuture implements Future<Response> {
+		final Connection master;
+		final Command cmd;
+		final byte[][] args;
+		volatile Future<Response> current;
+		volatile boolean fellBack = false;
+		
+		FallbackFuture (Future<Response> replicaFuture, Connection master, Command cmd, byte[]... args) {
+			this.current = replicaFuture;
+			this.master = master;
+			this.cmd = cmd;
+			this.args = args;
+		}
+		
+		public Response get () throws InterruptedException, ExecutionException {
+			try {
+				return current.get();
+			}
+			catch (ExecutionException e) {
+				if(!fallBack(e)) throw e;
+				return current.get();
+			}
+		}
+		
+		public Response get (long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			final long deadline = System.nanoTime() + unit.toNanos(timeout);
+			try {
+				return current.get(timeout, unit);
+			}
+			catch (ExecutionException e) {
+				if(!fallBack(e)) throw e;
+				return current.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+		}
+		
+		/** @return true if the request was requeued on the master */
+		private synchronized boolean fallBack (ExecutionException e) {
+			if(fellBack) return true;
+			if(e.getCause() instanceof RedisException) return false;
+			Log.problem(String.format("%s read on replica faulted -- retrying on master: %s", cmd.code, e.getCause()));
+			current = master.queueRequest(cmd, args);
+			fellBack = true;
+			return true;
+		}
+		
+		public boolean cancel (boolean mayInterruptIfRunning) { return current.cancel(mayInterruptIfRunning); }
+		public boolean isCancelled () { return current.isCancelled(); }
+		public boolean isDone () { return current.isDone(); }
+	}
+	
+	/**
+	 * The read replicas of a given master node.  Reads are routed to the replica 
+	 * with the lowest latency score.  Ties -- e.g. replicas that have not been 
+	 * sampled yet -- are broken in rotation.
+	 */
+	final static class ReplicaSet {
+		/** latency sample recorded for a faulted request: 1 sec */
+		static final long FAULT_PENALTY_NANOS = 1000L * 1000L * 1000L;
+		/** half-life of the score of a replica that is not sampled: 1 sec */
+		static final long SCORE_HALF_LIFE_NANOS = 1000L * 1000L * 1000L;
+		/**  */
+		final Replica[] replicas;
+		/** rotating start of the selection scan */
+		final AtomicInteger cursor = new AtomicInteger();
+		
+		ReplicaSet (Replica[] replicas) {
+			this.replicas = replicas;
+		}
+		
+		/** @return the replica with the lowest latency score */
+		Replica select () {
+			final long now = System.nanoTime();
+			final int n = replicas.length;
+			final int first = (cursor.getAndIncrement() & Integer.MAX_VALUE) % n;
+			Replica selected = replicas[first];
+			double min = selected.score(now);
+			for(int i=1; i<n; i++){
+				Replica replica = replicas[(first + i) % n];
+				double score = replica.score(now);
+				if(score < min) { min = score; selected = replica; }
+			}
+			return selected;
+		}
+	}
 }
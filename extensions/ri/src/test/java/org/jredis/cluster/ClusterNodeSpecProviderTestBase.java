@@ -106,6 +106,35 @@ public class ClusterNodeSpecProviderTestBase extends RefImplTestSuiteBase<Cluste
 		if(!didRaiseError) fail("Expecting an IllegalArgumentException raised for invalid object type arg to equals()");
 	}
 	
+	@Test
+	public void testReplicaSpecs () {
+		Log.log("Testing ClusterNodeSpec read replica declaration");
+		ClusterNodeSpec master = newProviderInstance(DefaultConnectionSpec.newSpec("127.0.0.1", 6379, 0, null));
+		ClusterNodeSpec replica1 = newProviderInstance(DefaultConnectionSpec.newSpec("127.0.0.1", 6380, 0, null));
+		ClusterNodeSpec replica2 = newProviderInstance(DefaultConnectionSpec.newSpec("127.0.0.1", 6381, 0, null));
+		
+		assertTrue(master.getReplicaSpecs().isEmpty(), "new node spec should not have replicas");
+		master.addReplica(replica1).addReplica(replica2);
+		assertEquals(master.getReplicaSpecs().size(), 2);
+		assertEquals(master.getReplicaSpecs().get(0), replica1);
+		assertEquals(master.getReplicaSpecs().get(1), replica2);
+		
+		boolean didRaiseError = false;
+		try { master.addReplica(replica1); }
+		catch (IllegalArgumentException e) { didRaiseError = true; }
+		assertTrue(didRaiseError, "Expecting an IllegalArgumentException for duplicate replica");
+		
+		didRaiseError = false;
+		try { master.addReplica(master); }
+		catch (IllegalArgumentException e) { didRaiseError = true; }
+		assertTrue(didRaiseError, "Expecting an IllegalArgumentException for self as replica");
+		
+		didRaiseError = false;
+		try { master.getReplicaSpecs().clear(); }
+		catch (UnsupportedOperationException e) { didRaiseError = true; }
+		assertTrue(didRaiseError, "replica list should not be modifiable");
+	}
+	
 	/**
 	 * We have the full port range of an IPv4 address as our clusterNodes.  Here
 	 * we make sure the ids are unique.
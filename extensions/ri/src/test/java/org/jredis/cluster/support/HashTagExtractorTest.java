@@ -0,0 +1,77 @@
+/*
+ *   Copyright 2009-2010 Joubin Houshyar
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *    
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *    
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.jredis.cluster.support;
+
+import org.jredis.cluster.RefImplTestSuiteBase;
+import org.jredis.ri.alphazero.support.Log;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Tests the reference {@link HashTagExtractor} implementations.
+ *
+ */
+
+@Test(suiteName="extensions-ri-cluster-tests2")
+public class HashTagExtractorTest extends RefImplTestSuiteBase<HashTagExtractor> {
+
+	// ------------------------------------------------------------------------
+	// Specification Interface tested
+	// ------------------------------------------------------------------------
+	
+	/* (non-Javadoc) @see org.jredis.cluster.ProviderTestBase#newProviderInstance() */
+    @Override
+    protected HashTagExtractor newProviderInstance () {
+	    return HashTagExtractor.BRACES;
+    }
+	protected final Class<?> getSpecificationClass () {
+		return HashTagExtractor.class;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Tests
+	// ------------------------------------------------------------------------
+	
+	@Test
+	public void testBracesExtraction () {
+		Log.log("Testing HashTagExtractor.BRACES");
+		
+		assertEquals(provider.getHashTag("{user:1000}:followers".getBytes()), "user:1000".getBytes());
+		assertEquals(provider.getHashTag("{user:1000}:following".getBytes()), "user:1000".getBytes());
+		assertEquals(provider.getHashTag("profile:{user:1000}".getBytes()), "user:1000".getBytes());
+		
+		// only the first tag is used
+		assertEquals(provider.getHashTag("{a}{b}".getBytes()), "a".getBytes());
+		assertEquals(provider.getHashTag("x{a{b}c}".getBytes()), "a{b".getBytes());
+		
+		// no (or empty) tag: full key is used (and not copied)
+		byte[] key = "user:1000".getBytes();
+		assertSame(provider.getHashTag(key), key);
+		key = "{}user:1000".getBytes();
+		assertSame(provider.getHashTag(key), key);
+		key = "user:{1000".getBytes();
+		assertSame(provider.getHashTag(key), key);
+	}
+	
+	@Test
+	public void testNone () {
+		Log.log("Testing HashTagExtractor.NONE");
+		
+		byte[] key = "{user:1000}:followers".getBytes();
+		assertSame(HashTagExtractor.NONE.getHashTag(key), key);
+	}
+}